@@ -0,0 +1,232 @@
+package org.esa.beam.extapi.bench;
+
+import com.sun.javadoc.RootDoc;
+import org.apache.commons.lang.StringUtils;
+import org.esa.beam.extapi.gen.ApiGeneratorConfig;
+import org.esa.beam.extapi.gen.ApiGeneratorConfigImpl;
+import org.esa.beam.extapi.gen.ApiGeneratorDoclet;
+import org.esa.beam.extapi.gen.ApiGeneratorProcessor;
+import org.esa.beam.extapi.gen.ApiInfo;
+import org.esa.beam.extapi.gen.FunctionGenerator;
+import org.esa.beam.extapi.gen.ModuleGenerator;
+import org.esa.beam.extapi.gen.ParameterGenerator;
+import org.esa.beam.extapi.gen.TemplateEval;
+import org.esa.beam.extapi.gen.c.CModuleGenerator;
+import org.esa.beam.extapi.gen.py.PyCModuleGenerator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the streaming emission of the function definitions of the full BEAM API, as done by
+ * {@link ModuleGenerator} using {@code CodeWriter}, with the former emission, which let every generator return
+ * its code fragments as strings, split them into lines and printed each line with indentation.
+ * <p/>
+ * The BEAM source directory is given by the system property {@code beam.extapi.beamSourceDir}.
+ * Allocations are measured by running JMH with the GC profiler, e.g.
+ * <pre>
+ *     java -cp target/benchmarks.jar:$JAVA_HOME/lib/tools.jar org.openjdk.jmh.Main EmissionBenchmark -prof gc -jvmArgs -Dbeam.extapi.beamSourceDir=&lt;dir&gt;
+ * </pre>
+ * and comparing the {@code gc.alloc.rate.norm} values (bytes per generated module).
+ *
+ * @author Norman Fomferra
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class EmissionBenchmark {
+
+    private StreamingCModule streamingCModule;
+    private LegacyCModule legacyCModule;
+    private StreamingPyCModule streamingPyCModule;
+    private LegacyPyCModule legacyPyCModule;
+    private StringWriter stringWriter;
+    private PrintWriter printWriter;
+
+    @Setup
+    public void setUp() throws Exception {
+        final String beamSourceDir = System.getProperty("beam.extapi.beamSourceDir");
+        if (beamSourceDir == null) {
+            throw new IllegalStateException("system property 'beam.extapi.beamSourceDir' not set");
+        }
+        final ApiGeneratorConfig config = ApiGeneratorConfigImpl.load(TemplateEval.kv("beamSourceDir", beamSourceDir));
+        final String sourcePaths = StringUtils.join(config.getSourcePaths(), File.pathSeparatorChar);
+        final ApiInfo[] apiInfo = new ApiInfo[1];
+        final ApiGeneratorDoclet.Handler handler = new ApiGeneratorDoclet.Handler() {
+            @Override
+            public boolean start(RootDoc root) {
+                apiInfo[0] = ApiInfo.create(config, root);
+                return true;
+            }
+        };
+        if (!ApiGeneratorProcessor.run(handler, sourcePaths, config.getPackages())) {
+            throw new IllegalStateException("failed to create API info");
+        }
+        streamingCModule = new StreamingCModule(apiInfo[0]);
+        legacyCModule = new LegacyCModule(apiInfo[0]);
+        streamingPyCModule = new StreamingPyCModule(streamingCModule);
+        legacyPyCModule = new LegacyPyCModule(streamingCModule);
+        stringWriter = new StringWriter(4 * 1024 * 1024);
+        printWriter = new PrintWriter(stringWriter);
+        if (!emit(streamingCModule).equals(emit(legacyCModule))
+                || !emit(streamingPyCModule).equals(emit(legacyPyCModule))) {
+            throw new IllegalStateException("streaming and legacy emission differ");
+        }
+    }
+
+    @Benchmark
+    public int streamingC() throws IOException {
+        return emit(streamingCModule).length();
+    }
+
+    @Benchmark
+    public int legacyC() throws IOException {
+        return emit(legacyCModule).length();
+    }
+
+    @Benchmark
+    public int streamingPy() throws IOException {
+        return emit(streamingPyCModule).length();
+    }
+
+    @Benchmark
+    public int legacyPy() throws IOException {
+        return emit(legacyPyCModule).length();
+    }
+
+    private String emit(Emitter emitter) throws IOException {
+        stringWriter.getBuffer().setLength(0);
+        emitter.emit(printWriter);
+        printWriter.flush();
+        return stringWriter.toString();
+    }
+
+    private interface Emitter {
+        void emit(PrintWriter writer) throws IOException;
+    }
+
+    /**
+     * Makes the module specific parts of a function definition accessible to the legacy emission.
+     */
+    private interface LegacyModule {
+        void writeLocalMethodVarDecl(PrintWriter writer) throws IOException;
+
+        void writeInitCode(PrintWriter writer, FunctionGenerator functionGenerator) throws IOException;
+    }
+
+    private static class StreamingCModule extends CModuleGenerator implements Emitter {
+        StreamingCModule(ApiInfo apiInfo) {
+            super(apiInfo);
+        }
+
+        @Override
+        public void emit(PrintWriter writer) throws IOException {
+            writeFunctionDefinitions(writer);
+        }
+    }
+
+    private static class LegacyCModule extends StreamingCModule implements LegacyModule {
+        LegacyCModule(ApiInfo apiInfo) {
+            super(apiInfo);
+        }
+
+        @Override
+        protected void writeFunctionDefinition(FunctionGenerator functionGenerator, PrintWriter writer) throws IOException {
+            writeLegacyFunctionDefinition(this, functionGenerator, writer);
+        }
+
+        @Override
+        public void writeLocalMethodVarDecl(PrintWriter writer) {
+            super.writeLocalMethodVarDecl(writer);
+        }
+
+        @Override
+        public void writeInitCode(PrintWriter writer, FunctionGenerator functionGenerator) throws IOException {
+            super.writeInitCode(writer, functionGenerator);
+        }
+    }
+
+    private static class StreamingPyCModule extends PyCModuleGenerator implements Emitter {
+        StreamingPyCModule(CModuleGenerator cModuleGenerator) {
+            super(cModuleGenerator);
+        }
+
+        @Override
+        public void emit(PrintWriter writer) throws IOException {
+            writeFunctionDefinitions(writer);
+        }
+    }
+
+    private static class LegacyPyCModule extends StreamingPyCModule implements LegacyModule {
+        LegacyPyCModule(CModuleGenerator cModuleGenerator) {
+            super(cModuleGenerator);
+        }
+
+        @Override
+        protected void writeFunctionDefinition(FunctionGenerator functionGenerator, PrintWriter writer) throws IOException {
+            writeLegacyFunctionDefinition(this, functionGenerator, writer);
+        }
+
+        @Override
+        public void writeLocalMethodVarDecl(PrintWriter writer) throws IOException {
+            super.writeLocalMethodVarDecl(writer);
+        }
+
+        @Override
+        public void writeInitCode(PrintWriter writer, FunctionGenerator functionGenerator) throws IOException {
+            super.writeInitCode(writer, functionGenerator);
+        }
+    }
+
+    /*
+     * The former ModuleGenerator.writeFunctionDefinition() and ModuleGenerator.writeCode().
+     */
+    private static <M extends ModuleGenerator & LegacyModule> void writeLegacyFunctionDefinition(M module, FunctionGenerator functionGenerator, PrintWriter writer) throws IOException {
+        writer.printf("%s\n", functionGenerator.generateFunctionSignature(module));
+        writer.print("{\n");
+        module.writeLocalMethodVarDecl(writer);
+        for (ParameterGenerator parameterGenerator : functionGenerator.getParameterGenerators()) {
+            writeLegacyCode(writer, parameterGenerator.generateLocalVarDecl(module));
+        }
+        writeLegacyCode(writer, functionGenerator.generateLocalVarDecl(module));
+        writeLegacyCode(writer, functionGenerator.generateInitCode(module));
+        module.writeInitCode(writer, functionGenerator);
+        for (ParameterGenerator parameterGenerator : functionGenerator.getParameterGenerators()) {
+            writeLegacyCode(writer, parameterGenerator.generatePreCallCode(module));
+        }
+        writeLegacyCode(writer, functionGenerator.generatePreCallCode(module));
+        writeLegacyCode(writer, functionGenerator.generateCallCode(module));
+        writeLegacyCode(writer, functionGenerator.generatePostCallCode(module));
+        for (ParameterGenerator parameterGenerator : functionGenerator.getParameterGenerators()) {
+            writeLegacyCode(writer, parameterGenerator.generatePostCallCode(module));
+        }
+        writeLegacyCode(writer, functionGenerator.generateReturnCode(module));
+        writer.print("}\n");
+        writer.print("\n");
+    }
+
+    private static void writeLegacyCode(PrintWriter writer, String code) {
+        if (code == null || code.length() == 0) {
+            return;
+        }
+        for (String line : code.split("\n")) {
+            writer.printf("    %s\n", line);
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package org.esa.beam.extapi.bench;
+
+import com.sun.javadoc.RootDoc;
+import org.apache.commons.lang.StringUtils;
+import org.esa.beam.extapi.gen.ApiGeneratorConfig;
+import org.esa.beam.extapi.gen.ApiGeneratorConfigImpl;
+import org.esa.beam.extapi.gen.ApiGeneratorDoclet;
+import org.esa.beam.extapi.gen.ApiGeneratorProcessor;
+import org.esa.beam.extapi.gen.ApiInfo;
+import org.esa.beam.extapi.gen.ApiSnapshot;
+import org.esa.beam.extapi.gen.TemplateEval;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the ways of creating the {@link ApiInfo} of the full BEAM API: the {@code javadoc} tool with
+ * {@link ApiGeneratorDoclet}, the Java compiler with {@link ApiGeneratorProcessor}, and reading an {@link ApiSnapshot}.
+ * <p/>
+ * The BEAM source directory is given by the system property {@code beam.extapi.beamSourceDir}.
+ *
+ * @author Norman Fomferra
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class FrontEndBenchmark {
+
+    private ApiGeneratorConfig config;
+    private String sourcePaths;
+    private File snapshotFile;
+
+    @Setup
+    public void setUp() throws Exception {
+        final String beamSourceDir = System.getProperty("beam.extapi.beamSourceDir");
+        if (beamSourceDir == null) {
+            throw new IllegalStateException("system property 'beam.extapi.beamSourceDir' not set");
+        }
+        config = ApiGeneratorConfigImpl.load(TemplateEval.kv("beamSourceDir", beamSourceDir));
+        sourcePaths = StringUtils.join(config.getSourcePaths(), File.pathSeparatorChar);
+        snapshotFile = File.createTempFile("beam-api", ".snapshot");
+        final ApiInfoHandler handler = new ApiInfoHandler(config) {
+            @Override
+            public boolean start(RootDoc root) {
+                try {
+                    ApiSnapshot.write(root, snapshotFile);
+                } catch (IOException e) {
+                    throw new IllegalStateException(e);
+                }
+                return super.start(root);
+            }
+        };
+        if (!ApiGeneratorProcessor.run(handler, sourcePaths, config.getPackages())) {
+            throw new IllegalStateException("failed to write API snapshot");
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        snapshotFile.delete();
+    }
+
+    @Benchmark
+    public ApiInfo doclet() {
+        final ApiInfoHandler handler = new ApiInfoHandler(config);
+        ApiGeneratorDoclet.run(handler, sourcePaths, config.getPackages());
+        return handler.getApiInfo();
+    }
+
+    @Benchmark
+    public ApiInfo processor() throws IOException {
+        final ApiInfoHandler handler = new ApiInfoHandler(config);
+        ApiGeneratorProcessor.run(handler, sourcePaths, config.getPackages());
+        return handler.getApiInfo();
+    }
+
+    @Benchmark
+    public ApiInfo snapshot() throws IOException {
+        return ApiInfo.create(config, ApiSnapshot.read(snapshotFile));
+    }
+
+    private static class ApiInfoHandler implements ApiGeneratorDoclet.Handler {
+        private final ApiGeneratorConfig config;
+        private ApiInfo apiInfo;
+
+        ApiInfoHandler(ApiGeneratorConfig config) {
+            this.config = config;
+        }
+
+        @Override
+        public boolean start(RootDoc root) {
+            apiInfo = ApiInfo.create(config, root);
+            return true;
+        }
+
+        ApiInfo getApiInfo() {
+            if (apiInfo == null) {
+                throw new IllegalStateException("no API created");
+            }
+            return apiInfo;
+        }
+    }
+}
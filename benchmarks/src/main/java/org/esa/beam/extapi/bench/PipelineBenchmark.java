@@ -0,0 +1,185 @@
+package org.esa.beam.extapi.bench;
+
+import org.esa.beam.extapi.gen.ApiClass;
+import org.esa.beam.extapi.gen.ApiGeneratorConfig;
+import org.esa.beam.extapi.gen.ApiInfo;
+import org.esa.beam.extapi.gen.ApiMethod;
+import org.esa.beam.extapi.gen.SymbolIndex;
+import org.esa.beam.extapi.gen.TemplateEval;
+import org.esa.beam.extapi.gen.c.CModuleGenerator;
+import org.esa.beam.extapi.gen.py.PyCModuleGenerator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import static org.esa.beam.extapi.gen.TemplateEval.kv;
+
+/**
+ * Benchmarks the stages of the API generator separately on a {@link SyntheticApi} of 100, 1000 and 10000 classes:
+ * creating the {@link ApiInfo}, the configuration lookups done for each method, building the {@link SymbolIndex}
+ * (the function names), evaluating templates, and emitting the C and the Python module into memory.
+ * <p/>
+ * {@link #main(String[])} runs the benchmarks and writes the results to a JSON report, by default
+ * {@code target/pipeline-benchmark.json}. The same report is written by
+ * <pre>
+ *     java -jar target/benchmarks.jar PipelineBenchmark -rf json -rff target/pipeline-benchmark.json
+ * </pre>
+ *
+ * @author Norman Fomferra
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class PipelineBenchmark {
+
+    private static final String FRAGMENT = "${r} = (*jenv)->${c}(jenv, ${t}, ${m});\n" +
+            "return ${r} != NULL ? (*jenv)->NewGlobalRef(jenv, ${r}) : NULL;";
+
+    @Param({"100", "1000", "10000"})
+    public int numClasses;
+
+    private ApiGeneratorConfig config;
+    private SyntheticApi api;
+    private ApiInfo apiInfo;
+    private MemoryCModule cModule;
+    private MemoryPyCModule pyCModule;
+
+    @Setup
+    public void setUp() throws IOException {
+        api = SyntheticApi.create(numClasses);
+        config = api.getConfig();
+        apiInfo = ApiInfo.create(config, api.getRootDoc());
+        cModule = new MemoryCModule(apiInfo);
+        pyCModule = new MemoryPyCModule(cModule);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        final Options options = new OptionsBuilder()
+                .include(PipelineBenchmark.class.getSimpleName())
+                .resultFormat(ResultFormatType.JSON)
+                .result(args.length > 0 ? args[0] : "target/pipeline-benchmark.json")
+                .build();
+        new Runner(options).run();
+    }
+
+    @Benchmark
+    public ApiInfo apiInfo() {
+        return ApiInfo.create(config, api.getRootDoc());
+    }
+
+    @Benchmark
+    public int configLookups() {
+        int n = 0;
+        for (ApiClass apiClass : apiInfo.getApiClasses()) {
+            final String className = apiClass.getJavaName();
+            for (ApiMethod apiMethod : apiInfo.getMethodsOf(apiClass)) {
+                if (config.isApiMethod(className, apiMethod.getJavaName(), apiMethod.getJavaSignature())) {
+                    n++;
+                }
+                if (config.getParameterModifiers(className, apiMethod.getJavaName(), apiMethod.getJavaSignature()) != null) {
+                    n++;
+                }
+                n += config.getFunctionName(className, apiMethod.getJavaName(), apiMethod.getJavaSignature()).length();
+            }
+        }
+        return n;
+    }
+
+    @Benchmark
+    public SymbolIndex functionNames() {
+        return SymbolIndex.create(apiInfo);
+    }
+
+    @Benchmark
+    public int templateEval() {
+        final SymbolIndex symbolIndex = apiInfo.getSymbolIndex();
+        final TemplateEval templateEval = cModule.getTemplateEval();
+        int n = 0;
+        for (ApiClass apiClass : apiInfo.getApiClasses()) {
+            final String classVarName = CModuleGenerator.getComponentCClassVarName(apiClass.getType());
+            for (ApiMethod apiMethod : apiInfo.getMethodsOf(apiClass)) {
+                n += templateEval.evalWith(FRAGMENT,
+                                           kv("r", CModuleGenerator.RESULT_VAR_NAME),
+                                           kv("c", symbolIndex.getCFunctionName(apiMethod)),
+                                           kv("t", classVarName),
+                                           kv("m", CModuleGenerator.METHOD_VAR_NAME)).length();
+            }
+        }
+        return n;
+    }
+
+    @Benchmark
+    public long cModule() throws IOException {
+        return cModule.emit();
+    }
+
+    @Benchmark
+    public long pyModule() throws IOException {
+        return pyCModule.emit();
+    }
+
+    /**
+     * Emits the C module into memory, without reading or writing any files.
+     */
+    private static class MemoryCModule extends CModuleGenerator {
+        private long size;
+
+        MemoryCModule(ApiInfo apiInfo) {
+            super(apiInfo);
+        }
+
+        long emit() throws IOException {
+            size = 0;
+            writeModule();
+            return size;
+        }
+
+        @Override
+        protected boolean writeOutputFile(String fileName, String content) {
+            size += content.length();
+            return true;
+        }
+    }
+
+    /**
+     * Emits the Python module into memory, without reading or writing any files.
+     */
+    private static class MemoryPyCModule extends PyCModuleGenerator {
+        private long size;
+
+        MemoryPyCModule(CModuleGenerator cModuleGenerator) {
+            super(cModuleGenerator);
+        }
+
+        long emit() throws IOException {
+            size = 0;
+            writeModule();
+            return size;
+        }
+
+        @Override
+        protected boolean writeOutputFile(String fileName, String content) {
+            size += content.length();
+            return true;
+        }
+    }
+}
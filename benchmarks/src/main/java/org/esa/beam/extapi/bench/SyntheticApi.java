@@ -0,0 +1,98 @@
+package org.esa.beam.extapi.bench;
+
+import com.sun.javadoc.ClassDoc;
+import com.sun.javadoc.ExecutableMemberDoc;
+import com.sun.javadoc.RootDoc;
+import org.esa.beam.extapi.gen.ApiClass;
+import org.esa.beam.extapi.gen.ApiGeneratorConfig;
+import org.esa.beam.extapi.gen.ApiGeneratorConfigImpl;
+import org.esa.beam.extapi.gen.ApiMethod;
+import org.esa.beam.extapi.gen.ApiSnapshot;
+import org.esa.beam.extapi.gen.DocMock;
+import org.esa.beam.extapi.gen.test.TestClass2;
+import org.esa.beam.extapi.gen.test.TestClass3;
+
+import java.awt.Rectangle;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * A synthetic API of a given number of classes, built with {@link DocMock}. Every class copies the members of one
+ * of a few template classes. The configuration renames every third method and ignores every tenth method.
+ * <p/>
+ * The mocked root document is converted into an {@link ApiSnapshot}, so that the benchmarks do not measure
+ * (and accumulate) the invocation recording of the mocks.
+ *
+ * @author Norman Fomferra
+ */
+final class SyntheticApi {
+
+    static final Class<?>[] TEMPLATE_CLASSES = {
+            TestClass2.class,
+            TestClass3.class,
+            File.class,
+            Date.class,
+            Rectangle.class,
+    };
+
+    private final ApiGeneratorConfig config;
+    private final RootDoc rootDoc;
+
+    private SyntheticApi(ApiGeneratorConfig config, RootDoc rootDoc) {
+        this.config = config;
+        this.rootDoc = rootDoc;
+    }
+
+    static SyntheticApi create(int numClasses) throws IOException {
+        final ClassDoc[] templates = new ClassDoc[TEMPLATE_CLASSES.length];
+        for (int i = 0; i < templates.length; i++) {
+            templates[i] = DocMock.createClassDoc(TEMPLATE_CLASSES[i]);
+        }
+        final ClassDoc[] classDocs = new ClassDoc[numClasses];
+        final ApiGeneratorConfigImpl.CConfig[] cConfigs = new ApiGeneratorConfigImpl.CConfig[numClasses];
+        for (int i = 0; i < numClasses; i++) {
+            final String className = String.format("org.esa.beam.synth.p%d.Class%d", i / 100, i);
+            classDocs[i] = DocMock.createClassDoc(className, templates[i % templates.length]);
+            cConfigs[i] = new ApiGeneratorConfigImpl.CConfig(className, createMConfigs(classDocs[i]));
+        }
+        final ByteArrayOutputStream snapshot = new ByteArrayOutputStream(1024 * 1024);
+        ApiSnapshot.write(DocMock.createRootDoc(classDocs), snapshot);
+        final RootDoc rootDoc = ApiSnapshot.read(new ByteArrayInputStream(snapshot.toByteArray()));
+        return new SyntheticApi(new ApiGeneratorConfigImpl(new String[0], new String[0], cConfigs), rootDoc);
+    }
+
+    ApiGeneratorConfig getConfig() {
+        return config;
+    }
+
+    RootDoc getRootDoc() {
+        return rootDoc;
+    }
+
+    private static ApiGeneratorConfigImpl.MConfig[] createMConfigs(ClassDoc classDoc) {
+        final ApiClass apiClass = new ApiClass(classDoc);
+        final List<ApiGeneratorConfigImpl.MConfig> mConfigs = new ArrayList<ApiGeneratorConfigImpl.MConfig>();
+        final List<ExecutableMemberDoc> memberDocs = new ArrayList<ExecutableMemberDoc>();
+        for (ExecutableMemberDoc memberDoc : classDoc.constructors()) {
+            memberDocs.add(memberDoc);
+        }
+        for (ExecutableMemberDoc memberDoc : classDoc.methods()) {
+            memberDocs.add(memberDoc);
+        }
+        for (int i = 0; i < memberDocs.size(); i++) {
+            final ApiMethod apiMethod = new ApiMethod(apiClass, memberDocs.get(i));
+            final String name = apiMethod.getJavaName();
+            if (i % 10 == 9) {
+                mConfigs.add(new ApiGeneratorConfigImpl.MConfig(name, apiMethod.getJavaSignature(), true, null, null));
+            } else if (i % 3 == 2 && !name.equals("<init>")) {
+                mConfigs.add(new ApiGeneratorConfigImpl.MConfig(name, apiMethod.getJavaSignature(), false, name + i, null));
+            }
+        }
+        return mConfigs.toArray(new ApiGeneratorConfigImpl.MConfig[mConfigs.size()]);
+    }
+}
@@ -0,0 +1,147 @@
+package org.esa.beam.extapi.bench;
+
+import org.esa.beam.extapi.gen.CompiledTemplate;
+import org.esa.beam.extapi.gen.TemplateEval;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.esa.beam.extapi.gen.TemplateEval.kv;
+
+/**
+ * Compares the compiled template engine used by {@link TemplateEval} with the former implementation,
+ * which called {@code String.replace("${key}", value)} over the whole text once per key.
+ * <p/>
+ * Two workloads are measured: the lines of the largest stub resource evaluated against the module generator's
+ * key set (as in {@code ModuleGenerator.writeResource()}), and a typical function body fragment evaluated
+ * with a few pairs (as in {@code CFunctionGenerator} and {@code PyCFunctionGenerator}).
+ *
+ * @author Norman Fomferra
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class TemplateEvalBenchmark {
+
+    private static final String FRAGMENT = "if (${p}Elems != NULL && (*jenv)->IsSameObject(jenv, ${p}Array, ${r}Array)) {\n" +
+            "    beam_copy_from_jarray(_resultArray, ${p}Elems, ${p}Length, sizeof (${t}));\n" +
+            "    ${r} = ${p}Elems;\n" +
+            "} else {\n" +
+            "    ${r} = beam_alloc_${t}_array(${r}Array, resultArrayLength);\n" +
+            "}";
+
+    private List<String> stubLines;
+    private Map<String, Object> modulePairs;
+    private Map<String, Object> fragmentPairs;
+    private TemplateEval templateEval;
+
+    @Setup
+    public void setUp() throws IOException {
+        stubLines = readLines("/org/esa/beam/extapi/gen/c/CModuleGenerator-stubs-2.c");
+        modulePairs = new HashMap<String, Object>();
+        modulePairs.put("libName", "beam_capi");
+        modulePairs.put("libNameUC", "BEAM_CAPI");
+        modulePairs.put("typeName", "float");
+        modulePairs.put("ctype", "float");
+        modulePairs.put("elemToItemCall", "PyFloat_FromDouble(elems[i])");
+        modulePairs.put("itemToElemCall", "(float) PyFloat_AsDouble(item)");
+        templateEval = TemplateEval.create(modulePairs);
+        fragmentPairs = new HashMap<String, Object>();
+        fragmentPairs.put("r", "_result");
+        fragmentPairs.put("p", "pixels");
+        fragmentPairs.put("t", "float");
+    }
+
+    @Benchmark
+    public String resourceLegacy() {
+        StringBuilder sb = new StringBuilder();
+        for (String line : stubLines) {
+            String text = line;
+            for (Map.Entry<String, Object> pair : modulePairs.entrySet()) {
+                text = legacyEvalKV(text, pair.getKey(), pair.getValue());
+            }
+            sb.append(text).append('\n');
+        }
+        return sb.toString();
+    }
+
+    @Benchmark
+    public String resourceCompiled() throws IOException {
+        StringWriter writer = new StringWriter();
+        for (String line : stubLines) {
+            templateEval.eval(line, writer);
+            writer.write('\n');
+        }
+        return writer.toString();
+    }
+
+    @Benchmark
+    public String fragmentLegacy() {
+        String text = FRAGMENT;
+        text = legacyEvalKV(text, "r", "_result");
+        text = legacyEvalKV(text, "p", "pixels");
+        text = legacyEvalKV(text, "t", "float");
+        return text;
+    }
+
+    @Benchmark
+    public String fragmentCompiled() {
+        return TemplateEval.eval(FRAGMENT, kv("r", "_result"), kv("p", "pixels"), kv("t", "float"));
+    }
+
+    @Benchmark
+    public String fragmentCompiledMap() {
+        return CompiledTemplate.compile(FRAGMENT).render(fragmentPairs);
+    }
+
+    private static String legacyEvalKV(String text, String key, Object value) {
+        if (value != null) {
+            text = text.replace("${" + key + "}", value.toString());
+        }
+        return text;
+    }
+
+    private static List<String> readLines(String resourceName) throws IOException {
+        InputStream stream = TemplateEval.class.getResourceAsStream(resourceName);
+        if (stream == null) {
+            throw new IOException("resource not found: " + resourceName);
+        }
+        Reader reader = new InputStreamReader(stream);
+        try {
+            StringBuilder sb = new StringBuilder();
+            char[] buffer = new char[8192];
+            int n;
+            while ((n = reader.read(buffer)) > 0) {
+                sb.append(buffer, 0, n);
+            }
+            List<String> lines = new ArrayList<String>();
+            for (String line : sb.toString().split("\n")) {
+                lines.add(line);
+            }
+            return lines;
+        } finally {
+            reader.close();
+        }
+    }
+}
@@ -0,0 +1,132 @@
+#include <stdio.h>
+#include <stdlib.h>
+#include <string.h>
+#include <time.h>
+#include "gen/beam_capi.h"
+
+/*
+ * Compares reading the metadata of all bands of a product call by call with reading it in two batches,
+ * one which gets the bands and one which gets their names and spectral wavelengths.
+ *
+ * Usage: beam_capi_batch_bench <product-file> [<passes>]
+ */
+
+static double get_time()
+{
+    struct timespec t;
+    clock_gettime(CLOCK_MONOTONIC, &t);
+    return t.tv_sec + 1.0e-9 * t.tv_nsec;
+}
+
+/* Returns the time per band in nanoseconds */
+static double measure_calls(Product product, int num_bands, int num_passes, double* checksum)
+{
+    double t0, t1;
+    int pass, i;
+
+    t0 = get_time();
+    for (pass = 0; pass < num_passes; pass++) {
+        for (i = 0; i < num_bands; i++) {
+            Band band = Product_getBandAt(product, i);
+            char* name = Band_getName(band);
+            *checksum += strlen(name) + Band_getSpectralWavelength(band);
+            free(name);
+        }
+    }
+    t1 = get_time();
+
+    return 1.0e9 * (t1 - t0) / ((double) num_passes * num_bands);
+}
+
+/* Returns the time per band in nanoseconds */
+static double measure_batches(Product product, int num_bands, int num_passes, double* checksum)
+{
+    BeamBatch band_batch = beam_batch_new();
+    BeamBatch metadata_batch = beam_batch_new();
+    Band* bands = (Band*) calloc(num_bands, sizeof (Band));
+    double t0, t1;
+    int pass, i;
+
+    t0 = get_time();
+    for (pass = 0; pass < num_passes; pass++) {
+        beam_batch_clear(band_batch);
+        for (i = 0; i < num_bands; i++) {
+            Product_getBandAtBatched(band_batch, product, i);
+        }
+        beam_batch_run(band_batch);
+
+        beam_batch_clear(metadata_batch);
+        for (i = 0; i < num_bands; i++) {
+            bands[i] = beam_batch_take_object(band_batch, i);
+            Band_getNameBatched(metadata_batch, bands[i]);
+            Band_getSpectralWavelengthBatched(metadata_batch, bands[i]);
+        }
+        beam_batch_run(metadata_batch);
+
+        for (i = 0; i < num_bands; i++) {
+            char* name = beam_batch_take_string(metadata_batch, 2 * i);
+            *checksum += strlen(name) + beam_batch_get_float(metadata_batch, 2 * i + 1);
+            free(name);
+        }
+    }
+    t1 = get_time();
+
+    free(bands);
+    beam_batch_delete(band_batch);
+    beam_batch_delete(metadata_batch);
+    return 1.0e9 * (t1 - t0) / ((double) num_passes * num_bands);
+}
+
+int main(int argc, char** argv)
+{
+    Product product;
+    int num_bands;
+    int num_passes;
+    double calls_time, batches_time;
+    double calls_checksum, batches_checksum;
+
+    if (argc <= 1) {
+        fprintf(stderr, "usage: beam_capi_batch_bench <product-file> [<passes>]\n");
+        return 1;
+    }
+
+    num_passes = argc > 2 ? atoi(argv[2]) : 1000;
+
+    if (!beam_create_jvm_with_defaults()) {
+        fprintf(stderr, "error: failed to create Java VM\n");
+        return 2;
+    }
+
+    product = ProductIO_readProduct(argv[1]);
+    if (product == NULL) {
+        fprintf(stderr, "error: failed to read product %s\n", argv[1]);
+        return 3;
+    }
+
+    num_bands = Product_getNumBands(product);
+
+    /* warm-up */
+    calls_checksum = 0.0;
+    batches_checksum = 0.0;
+    measure_calls(product, num_bands, num_passes, &calls_checksum);
+    measure_batches(product, num_bands, num_passes, &batches_checksum);
+
+    calls_checksum = 0.0;
+    batches_checksum = 0.0;
+    calls_time = measure_calls(product, num_bands, num_passes, &calls_checksum);
+    batches_time = measure_batches(product, num_bands, num_passes, &batches_checksum);
+
+    printf("%d bands, %d passes\n", num_bands, num_passes);
+    printf("call by call: %8.1f ns/band (checksum %.1f)\n", calls_time, calls_checksum);
+    printf("batched:      %8.1f ns/band (checksum %.1f)\n", batches_time, batches_checksum);
+    printf("speedup:      %8.2f\n", calls_time / batches_time);
+
+    Product_closeIO(product);
+
+    if (!beam_destroy_jvm()) {
+        fprintf(stderr, "error: failed to destroy Java VM\n");
+        return 4;
+    }
+
+    return 0;
+}
@@ -0,0 +1,79 @@
+#include <stdio.h>
+#include <stdlib.h>
+#include <time.h>
+#include "gen/beam_capi.h"
+
+/*
+ * Measures the time of a single call of a BEAM/C API function, i.e. the overhead of the generated wrapper
+ * code plus the JNI call of a trivial Java method.
+ *
+ * Usage: beam_capi_call_bench <product-file> [<num-calls>]
+ */
+
+static double get_time()
+{
+    struct timespec t;
+    clock_gettime(CLOCK_MONOTONIC, &t);
+    return t.tv_sec + 1.0e-9 * t.tv_nsec;
+}
+
+/* Returns the time of a call in nanoseconds */
+static double measure(Product product, int num_calls, long* checksum)
+{
+    double t0, t1;
+    int i;
+
+    t0 = get_time();
+    for (i = 0; i < num_calls; i++) {
+        *checksum += Product_getSceneRasterWidth(product);
+    }
+    t1 = get_time();
+
+    return 1.0e9 * (t1 - t0) / num_calls;
+}
+
+int main(int argc, char** argv)
+{
+    Product product;
+    int num_calls;
+    long checksum;
+    double best_time;
+    int i;
+
+    if (argc <= 1) {
+        fprintf(stderr, "usage: beam_capi_call_bench <product-file> [<num-calls>]\n");
+        return 1;
+    }
+
+    num_calls = argc > 2 ? atoi(argv[2]) : 10000000;
+
+    if (!beam_create_jvm_with_defaults()) {
+        fprintf(stderr, "error: failed to create Java VM\n");
+        return 2;
+    }
+
+    product = ProductIO_readProduct(argv[1]);
+    if (product == NULL) {
+        fprintf(stderr, "error: failed to read product %s\n", argv[1]);
+        return 3;
+    }
+
+    checksum = 0;
+    best_time = 0.0;
+    for (i = 0; i < 5; i++) {
+        double time = measure(product, num_calls, &checksum);
+        if (i == 0 || time < best_time) {
+            best_time = time;
+        }
+    }
+    printf("%.1f ns/call (checksum %ld)\n", best_time, checksum);
+
+    Product_closeIO(product);
+
+    if (!beam_destroy_jvm()) {
+        fprintf(stderr, "error: failed to destroy Java VM\n");
+        return 4;
+    }
+
+    return 0;
+}
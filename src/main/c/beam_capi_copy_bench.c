@@ -0,0 +1,140 @@
+#include <stdio.h>
+#include <stdlib.h>
+#include <limits.h>
+#include <pthread.h>
+#include <time.h>
+#include "gen/beam_capi.h"
+#include "jni.h"
+
+/*
+ * Copies float tiles of the sizes read from MERIS and OLCI products between C and Java arrays with every
+ * strategy of beam_set_array_copy_limits(), and prints the copy rate and the longest time an allocation of
+ * a Java array took in a second thread meanwhile, which is blocked while the garbage collector waits for a
+ * copy to finish.
+ *
+ * Usage: beam_capi_copy_bench [<passes>]
+ */
+
+JNIEnv* beam_get_jenv();
+int beam_copy_from_jarray(jarray array, char type, void* elems, int array_length);
+int beam_copy_to_jarray(jarray array, char type, const void* elems, int array_length);
+
+typedef struct {
+    const char* name;
+    int width;
+    int height;
+} TileSize;
+
+typedef struct {
+    const char* name;
+    int region_limit;
+    int chunk_size;
+} CopyStrategy;
+
+static const TileSize tile_sizes[] = {
+    {"MERIS RR line", 1121, 1},
+    {"MERIS RR 1121x64", 1121, 64},
+    {"MERIS FR 2241x64", 2241, 64},
+    {"OLCI FR 4865x64", 4865, 64},
+    {"512x512", 512, 512},
+    {"OLCI FR 4865x512", 4865, 512},
+};
+
+static const CopyStrategy strategies[] = {
+    {"region", INT_MAX, INT_MAX},
+    {"chunked 64k", 0, 64 * 1024},
+    {"chunked 256k", 0, 256 * 1024},
+    {"chunked 1M", 0, 1024 * 1024},
+    {"default", 256 * 1024, 64 * 1024},
+};
+
+static volatile int allocating = 0;
+static volatile double max_alloc_time = 0.0;
+
+static double get_time()
+{
+    struct timespec t;
+    clock_gettime(CLOCK_MONOTONIC, &t);
+    return t.tv_sec + 1.0e-9 * t.tv_nsec;
+}
+
+/* Allocates garbage until stopped, so that the garbage collector runs while tiles are copied */
+static void* run_allocations(void* user_data)
+{
+    JNIEnv* jenv = beam_get_jenv();
+    while (allocating) {
+        double t0 = get_time();
+        jarray array = (*jenv)->NewByteArray(jenv, 64 * 1024);
+        double t = get_time() - t0;
+        (*jenv)->DeleteLocalRef(jenv, array);
+        if (t > max_alloc_time) {
+            max_alloc_time = t;
+        }
+    }
+    return NULL;
+}
+
+static void measure(const TileSize* tile_size, const CopyStrategy* strategy, int passes)
+{
+    JNIEnv* jenv = beam_get_jenv();
+    int length = tile_size->width * tile_size->height;
+    float* buffer = (float*) calloc(length, sizeof (float));
+    jarray array = (*jenv)->NewFloatArray(jenv, length);
+    long num_copies = 0;
+    pthread_t thread;
+    double t0, t1;
+
+    beam_set_array_copy_limits(strategy->region_limit, strategy->chunk_size);
+
+    max_alloc_time = 0.0;
+    allocating = 1;
+    pthread_create(&thread, NULL, run_allocations, NULL);
+
+    t0 = get_time();
+    /* copy about 256 MB per pass */
+    while (num_copies * length < (long) passes * 64 * 1024 * 1024) {
+        beam_copy_to_jarray(array, 'F', buffer, length);
+        beam_copy_from_jarray(array, 'F', buffer, length);
+        num_copies += 2;
+    }
+    t1 = get_time();
+
+    allocating = 0;
+    pthread_join(thread, NULL);
+
+    printf("%-18s %-13s %8.0f MB/s  %8.3f ms max. allocation time\n",
+           tile_size->name,
+           strategy->name,
+           num_copies * length * sizeof (float) / (1024.0 * 1024.0) / (t1 - t0),
+           1000.0 * max_alloc_time);
+
+    (*jenv)->DeleteLocalRef(jenv, array);
+    free(buffer);
+}
+
+int main(int argc, char** argv)
+{
+    int passes = argc > 1 ? atoi(argv[1]) : 4;
+    int i, j;
+
+    if (!beam_create_jvm_with_defaults()) {
+        fprintf(stderr, "error: failed to create Java VM\n");
+        return 2;
+    }
+
+    /* warm-up */
+    measure(&tile_sizes[0], &strategies[0], 1);
+
+    for (i = 0; i < sizeof tile_sizes / sizeof tile_sizes[0]; i++) {
+        for (j = 0; j < sizeof strategies / sizeof strategies[0]; j++) {
+            measure(&tile_sizes[i], &strategies[j], passes);
+        }
+    }
+
+    if (!beam_destroy_jvm()) {
+        fprintf(stderr, "error: failed to destroy Java VM\n");
+        return 4;
+    }
+
+    return 0;
+}
@@ -0,0 +1,111 @@
+#include <stdio.h>
+#include <stdlib.h>
+#include <time.h>
+#include <pthread.h>
+#include "gen/beam_capi.h"
+
+/*
+ * Multi-threaded throughput test of the BEAM/C API: every thread calls API functions on the same product
+ * concurrently. Each thread is attached to the Java VM on its first call and detached when it exits.
+ *
+ * Usage: beam_capi_mt_test <product-file> [<max-threads> [<calls-per-thread>]]
+ */
+
+typedef struct {
+    Product product;
+    int num_calls;
+    long checksum;
+} ThreadArgs;
+
+static void* run_calls(void* user_data)
+{
+    ThreadArgs* args = (ThreadArgs*) user_data;
+    int i;
+
+    for (i = 0; i < args->num_calls; i++) {
+        args->checksum += Product_getSceneRasterWidth(args->product);
+        args->checksum += Product_getNumBands(args->product);
+    }
+    return NULL;
+}
+
+static double get_time()
+{
+    struct timespec t;
+    clock_gettime(CLOCK_MONOTONIC, &t);
+    return t.tv_sec + 1.0e-9 * t.tv_nsec;
+}
+
+/* Returns the number of API calls per second made by num_threads threads */
+static double measure(Product product, int num_threads, int num_calls)
+{
+    pthread_t* threads = (pthread_t*) calloc(num_threads, sizeof (pthread_t));
+    ThreadArgs* args = (ThreadArgs*) calloc(num_threads, sizeof (ThreadArgs));
+    double t0, t1;
+    int i;
+
+    t0 = get_time();
+    for (i = 0; i < num_threads; i++) {
+        args[i].product = product;
+        args[i].num_calls = num_calls;
+        pthread_create(&threads[i], NULL, run_calls, &args[i]);
+    }
+    for (i = 0; i < num_threads; i++) {
+        pthread_join(threads[i], NULL);
+    }
+    t1 = get_time();
+
+    free(threads);
+    free(args);
+    return 2.0 * num_threads * num_calls / (t1 - t0);
+}
+
+int main(int argc, char** argv)
+{
+    Product product;
+    int max_threads;
+    int num_calls;
+    int num_threads;
+    double single_rate;
+
+    if (argc <= 1) {
+        fprintf(stderr, "usage: beam_capi_mt_test <product-file> [<max-threads> [<calls-per-thread>]]\n");
+        return 1;
+    }
+
+    max_threads = argc > 2 ? atoi(argv[2]) : 8;
+    num_calls = argc > 3 ? atoi(argv[3]) : 100000;
+
+    if (!beam_create_jvm_with_defaults()) {
+        fprintf(stderr, "error: failed to create Java VM\n");
+        return 2;
+    }
+
+    product = ProductIO_readProduct(argv[1]);
+    if (product == NULL) {
+        fprintf(stderr, "error: failed to read product %s\n", argv[1]);
+        return 3;
+    }
+
+    /* warm-up, also initialises the API */
+    measure(product, 1, num_calls);
+
+    single_rate = 0.0;
+    printf("threads  calls/s      speedup\n");
+    for (num_threads = 1; num_threads <= max_threads; num_threads *= 2) {
+        double rate = measure(product, num_threads, num_calls);
+        if (num_threads == 1) {
+            single_rate = rate;
+        }
+        printf("%7d  %11.0f  %7.2f\n", num_threads, rate, rate / single_rate);
+    }
+
+    Product_closeIO(product);
+
+    if (!beam_destroy_jvm()) {
+        fprintf(stderr, "error: failed to destroy Java VM\n");
+        return 4;
+    }
+
+    return 0;
+}
@@ -0,0 +1,127 @@
+#include <stdio.h>
+#include <stdlib.h>
+#include <time.h>
+#include "gen/beam_capi.h"
+#include "jni.h"
+
+/*
+ * Reads a band of a product tile by tile, first with Java array pooling disabled, then enabled, and prints
+ * the number of garbage collections of the Java VM and their time (see beam_set_array_pooling()).
+ *
+ * Usage: beam_capi_pool_bench <product-file> [<passes> [<tile-height>]]
+ */
+
+JNIEnv* beam_get_jenv();
+
+static double get_time()
+{
+    struct timespec t;
+    clock_gettime(CLOCK_MONOTONIC, &t);
+    return t.tv_sec + 1.0e-9 * t.tv_nsec;
+}
+
+/* Sums the collection counts or times of all garbage collectors of the Java VM */
+static long get_gc_total(const char* method_name)
+{
+    JNIEnv* jenv = beam_get_jenv();
+    jclass factory_class = (*jenv)->FindClass(jenv, "java/lang/management/ManagementFactory");
+    jclass list_class = (*jenv)->FindClass(jenv, "java/util/List");
+    jclass bean_class = (*jenv)->FindClass(jenv, "java/lang/management/GarbageCollectorMXBean");
+    jmethodID get_beans = (*jenv)->GetStaticMethodID(jenv, factory_class, "getGarbageCollectorMXBeans", "()Ljava/util/List;");
+    jmethodID size = (*jenv)->GetMethodID(jenv, list_class, "size", "()I");
+    jmethodID get = (*jenv)->GetMethodID(jenv, list_class, "get", "(I)Ljava/lang/Object;");
+    jmethodID get_value = (*jenv)->GetMethodID(jenv, bean_class, method_name, "()J");
+    jobject beans = (*jenv)->CallStaticObjectMethod(jenv, factory_class, get_beans);
+    jint num_beans = (*jenv)->CallIntMethod(jenv, beans, size);
+    long total = 0;
+    jint i;
+
+    for (i = 0; i < num_beans; i++) {
+        jobject bean = (*jenv)->CallObjectMethod(jenv, beans, get, i);
+        total += (long) (*jenv)->CallLongMethod(jenv, bean, get_value);
+        (*jenv)->DeleteLocalRef(jenv, bean);
+    }
+    (*jenv)->DeleteLocalRef(jenv, beans);
+    (*jenv)->DeleteLocalRef(jenv, bean_class);
+    (*jenv)->DeleteLocalRef(jenv, list_class);
+    (*jenv)->DeleteLocalRef(jenv, factory_class);
+    return total;
+}
+
+static void measure(Band band, int width, int height, int tile_height, int passes, boolean pooling)
+{
+    float* buffer = (float*) malloc(width * tile_height * sizeof (float));
+    long gc_count0, gc_time0;
+    double t0, t1;
+    int pass, y;
+
+    beam_set_array_pooling(pooling);
+    gc_count0 = get_gc_total("getCollectionCount");
+    gc_time0 = get_gc_total("getCollectionTime");
+    t0 = get_time();
+    for (pass = 0; pass < passes; pass++) {
+        for (y = 0; y + tile_height <= height; y += tile_height) {
+            float* pixels = Band_readPixelsFloat(band, 0, y, width, tile_height, buffer, width * tile_height, NULL);
+            if (pixels != buffer) {
+                free(pixels);
+            }
+        }
+    }
+    t1 = get_time();
+    printf("%-8s %9.3f s  %6ld GCs  %6ld ms GC time\n",
+           pooling ? "pooled" : "unpooled",
+           t1 - t0,
+           get_gc_total("getCollectionCount") - gc_count0,
+           get_gc_total("getCollectionTime") - gc_time0);
+    free(buffer);
+}
+
+int main(int argc, char** argv)
+{
+    Product product;
+    Band band;
+    BeamArrayPoolStats stats;
+    int width, height, passes, tile_height;
+
+    if (argc <= 1) {
+        fprintf(stderr, "usage: beam_capi_pool_bench <product-file> [<passes> [<tile-height>]]\n");
+        return 1;
+    }
+
+    passes = argc > 2 ? atoi(argv[2]) : 20;
+    tile_height = argc > 3 ? atoi(argv[3]) : 64;
+
+    if (!beam_create_jvm_with_defaults()) {
+        fprintf(stderr, "error: failed to create Java VM\n");
+        return 2;
+    }
+
+    product = ProductIO_readProduct(argv[1]);
+    if (product == NULL) {
+        fprintf(stderr, "error: failed to read product %s\n", argv[1]);
+        return 3;
+    }
+
+    band = Product_getBandAt(product, 0);
+    width = Product_getSceneRasterWidth(product);
+    height = Product_getSceneRasterHeight(product);
+
+    /* warm-up */
+    measure(band, width, height, tile_height, 1, 0);
+
+    measure(band, width, height, tile_height, passes, 0);
+    measure(band, width, height, tile_height, passes, 1);
+
+    beam_get_array_pool_stats(&stats);
+    printf("pool: %ld acquired, %ld reused, %ld allocated, %ld evicted\n",
+           stats.acquired, stats.reused, stats.allocated, stats.evicted);
+
+    Product_closeIO(product);
+
+    if (!beam_destroy_jvm()) {
+        fprintf(stderr, "error: failed to destroy Java VM\n");
+        return 4;
+    }
+
+    return 0;
+}
@@ -0,0 +1,88 @@
+#include <stdio.h>
+#include <stdlib.h>
+#include <pthread.h>
+#include <sys/resource.h>
+#include "gen/beam_capi.h"
+
+/*
+ * Soak test of the BEAM/C API: a native thread, which never returns to Java, reads the pixels of a band
+ * many times. The maximum resident set size of the process is printed regularly; it must not grow, because
+ * every API function deletes the local references it creates.
+ *
+ * Usage: beam_capi_soak_test <product-file> [<num-calls>]
+ */
+
+typedef struct {
+    Band band;
+    int width;
+    int height;
+    long num_calls;
+} SoakArgs;
+
+static long get_max_rss_kb()
+{
+    struct rusage usage;
+    getrusage(RUSAGE_SELF, &usage);
+    return usage.ru_maxrss;
+}
+
+static void* run_soak(void* user_data)
+{
+    SoakArgs* args = (SoakArgs*) user_data;
+    float* buffer = (float*) malloc(args->width * sizeof (float));
+    long i;
+
+    for (i = 0; i < args->num_calls; i++) {
+        float* pixels = Band_readPixelsFloat(args->band, 0, (int) (i % args->height), args->width, 1, buffer, args->width, NULL);
+        if (pixels != buffer) {
+            free(pixels);
+        }
+        if (i % (args->num_calls / 10) == 0) {
+            printf("%ld calls, max. RSS %ld kB\n", i, get_max_rss_kb());
+        }
+    }
+    printf("%ld calls, max. RSS %ld kB\n", i, get_max_rss_kb());
+
+    free(buffer);
+    return NULL;
+}
+
+int main(int argc, char** argv)
+{
+    Product product;
+    SoakArgs args;
+    pthread_t thread;
+
+    if (argc <= 1) {
+        fprintf(stderr, "usage: beam_capi_soak_test <product-file> [<num-calls>]\n");
+        return 1;
+    }
+
+    if (!beam_create_jvm_with_defaults()) {
+        fprintf(stderr, "error: failed to create Java VM\n");
+        return 2;
+    }
+
+    product = ProductIO_readProduct(argv[1]);
+    if (product == NULL) {
+        fprintf(stderr, "error: failed to read product %s\n", argv[1]);
+        return 3;
+    }
+
+    args.band = Product_getBandAt(product, 0);
+    args.width = Product_getSceneRasterWidth(product);
+    args.height = Product_getSceneRasterHeight(product);
+    args.num_calls = argc > 2 ? atol(argv[2]) : 10000000L;
+
+    pthread_create(&thread, NULL, run_soak, &args);
+    pthread_join(thread, NULL);
+
+    Product_closeIO(product);
+
+    if (!beam_destroy_jvm()) {
+        fprintf(stderr, "error: failed to destroy Java VM\n");
+        return 4;
+    }
+
+    return 0;
+}
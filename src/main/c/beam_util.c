@@ -3,6 +3,9 @@
 
 #ifdef WIN32
 #include <windows.h>
+#else
+#include <dirent.h>
+#include <sys/stat.h>
 #endif
 #include <stdio.h>
 #include <stdlib.h>
@@ -72,17 +75,24 @@ void Util_listDir(const char* parent_dir, Util_handleDirEntry handler, void* use
 	free(wpattern);
 #else
     DIR* dir;
-    class dirent* ent;
-    class stat st;
+    struct dirent* ent;
+    struct stat st;
+    char* path;
+    int is_dir;
 
     dir = opendir(parent_dir);
     if (dir != NULL) {
         while ((ent = readdir(dir)) != NULL) {
-            handler(parent_dir, ent->d_name, (st.st_mode & S_IFDIR) != 0, user_data);    
+            path = NULL;
+            Util_appendString(&path, parent_dir);
+            Util_appendString(&path, "/");
+            Util_appendString(&path, ent->d_name);
+            is_dir = path != NULL && stat(path, &st) == 0 && S_ISDIR(st.st_mode);
+            free(path);
+            handler(parent_dir, ent->d_name, is_dir, user_data);
         }
+        closedir(dir);
     }
-
-    closedir(dir);
 #endif
 }
 
@@ -20,15 +20,10 @@ import com.sun.javadoc.DocErrorReporter;
 import com.sun.javadoc.Doclet;
 import com.sun.javadoc.LanguageVersion;
 import com.sun.javadoc.RootDoc;
-import org.apache.commons.lang.StringUtils;
-import org.esa.beam.extapi.gen.c.CModuleGenerator;
-import org.esa.beam.extapi.gen.py.PyCModuleGenerator;
 import org.jdom.JDOMException;
 
 import java.io.File;
 import java.io.IOException;
-import java.util.HashMap;
-import java.util.Map;
 
 /**
  * @author Norman Fomferra
@@ -40,37 +35,99 @@ public class ApiGeneratorDoclet extends Doclet {
     }
 
     public static void main(String[] args) throws JDOMException, IOException {
-        if (args.length != 1) {
+        if (args.length != 1 && !(args.length == 3 && (args[1].equals(WRITE_SNAPSHOT_OPTION) || args[1].equals(READ_SNAPSHOT_OPTION)))) {
             System.out.println("Usage:");
-            System.out.println("    ApiGeneratorDoclet <beamSourceDir>");
+            System.out.println("    ApiGeneratorDoclet <beamSourceDir> [" + WRITE_SNAPSHOT_OPTION + " <file> | " + READ_SNAPSHOT_OPTION + " <file>]");
+            System.out.println("Options:");
+            System.out.println("    " + WRITE_SNAPSHOT_OPTION + " <file>  Also write the parsed API to the given snapshot file.");
+            System.out.println("    " + READ_SNAPSHOT_OPTION + " <file>   Read the API from the given snapshot file instead of parsing the BEAM sources.");
             System.exit(-1);
         }
-        final DefaultHandler handler = new DefaultHandler(args[0]);
-        final String sourcePaths = StringUtils.join(handler.config.getSourcePaths(), File.pathSeparatorChar);
-        run(handler, sourcePaths, handler.config.getPackages());
+        final GenerationSession session = createDefaultSession(args[0]);
+        if (args.length == 3 && args[1].equals(READ_SNAPSHOT_OPTION)) {
+            session.setInputSnapshot(new File(args[2]));
+        } else if (args.length == 3) {
+            session.setOutputSnapshot(new File(args[2]));
+        }
+        if (!session.call()) {
+            System.exit(1);
+        }
     }
 
     /**
-     * This field is required to allow for multi-threaded javadoc invocations which is required for junit.
+     * Command-line option used to write the parsed API to an {@link ApiSnapshot} file.
      */
-    private final static Map<Thread, Handler> HANDLER_MAP = new HashMap<Thread, Handler>();
-
-    public static void run(final Handler handler, String sourcePaths, String... packages) {
-        final JavadocRunnable runnable = new JavadocRunnable(sourcePaths, packages);
-        final Thread thread;
-        synchronized (HANDLER_MAP) {
-            if (HANDLER_MAP.isEmpty()) {
-                thread = Thread.currentThread();
-            } else {
-                thread = new Thread(runnable);
-            }
-            HANDLER_MAP.put(Thread.currentThread(), handler);
+    public static final String WRITE_SNAPSHOT_OPTION = "-writeSnapshot";
+
+    /**
+     * Command-line option used to generate the modules from an {@link ApiSnapshot} file instead of the BEAM sources.
+     */
+    public static final String READ_SNAPSHOT_OPTION = "-readSnapshot";
+
+    /**
+     * System property used to select the {@link ModuleGenerator.EmissionMode}, either "serial" (the default) or "parallel".
+     */
+    public static final String EMISSION_MODE_PROPERTY = "beam.extapi.gen.emissionMode";
+
+    /**
+     * System property used to switch off the incremental generation of modules, either "true" (the default) or "false".
+     */
+    public static final String INCREMENTAL_PROPERTY = "beam.extapi.gen.incremental";
+
+    /**
+     * System property used to select the {@link ModuleGenerator.OutputMode}, either "single_source" (the default)
+     * or "source_per_class".
+     */
+    public static final String OUTPUT_MODE_PROPERTY = "beam.extapi.gen.outputMode";
+
+    /**
+     * The handler of the javadoc run of the current thread. Javadoc calls the static {@link #start(RootDoc)}
+     * in the thread which invoked it, so concurrent runs in different threads do not interfere.
+     */
+    private static final ThreadLocal<HandlerCall> HANDLER = new ThreadLocal<HandlerCall>();
+
+    /**
+     * Runs the {@code javadoc} tool on the given packages in the current thread.
+     *
+     * @param handler     The handler which is called with the root document.
+     * @param sourcePaths The source paths, separated by {@link File#pathSeparatorChar}.
+     * @param packages    The names of the packages to be processed.
+     * @return The result of the handler, {@code false} if the handler has not been called.
+     */
+    public static boolean run(Handler handler, String sourcePaths, String... packages) {
+        if (HANDLER.get() != null) {
+            throw new IllegalStateException("javadoc is already running in thread " + Thread.currentThread());
         }
-        if (Thread.currentThread() != thread) {
-            thread.start();
-        } else {
-            runnable.run();
+        final HandlerCall handlerCall = new HandlerCall(handler);
+        HANDLER.set(handlerCall);
+        try {
+            Javadoc.run(ApiGeneratorDoclet.class.getName(), sourcePaths, packages);
+        } finally {
+            HANDLER.remove();
         }
+        return handlerCall.success;
+    }
+
+    /**
+     * Creates a session which generates the modules using the default configuration found in the given BEAM
+     * source directory and the options given by the system properties {@link #EMISSION_MODE_PROPERTY},
+     * {@link #OUTPUT_MODE_PROPERTY} and {@link #INCREMENTAL_PROPERTY}.
+     *
+     * @param beamSourceDir The BEAM source directory.
+     * @return A new session.
+     */
+    public static GenerationSession createDefaultSession(String beamSourceDir) {
+        final ApiGeneratorConfig config;
+        try {
+            config = ApiGeneratorConfigImpl.load(TemplateEval.kv("beamSourceDir", beamSourceDir));
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+        final GenerationSession session = new GenerationSession(config);
+        session.setEmissionMode(getEmissionMode());
+        session.setOutputMode(getOutputMode());
+        session.setIncremental(isIncremental());
+        return session;
     }
 
     /**
@@ -81,14 +138,12 @@ public class ApiGeneratorDoclet extends Doclet {
      */
     @SuppressWarnings("UnusedDeclaration")
     public static boolean start(RootDoc root) {
-        final Thread thread = Thread.currentThread();
-        final Handler handler = HANDLER_MAP.get(thread);
-        if (handler == null) {
-            throw new IllegalStateException("no handler for thread " + thread);
+        final HandlerCall handlerCall = HANDLER.get();
+        if (handlerCall == null) {
+            throw new IllegalStateException("no handler for thread " + Thread.currentThread());
         }
-        final boolean start = handler.start(root);
-        HANDLER_MAP.remove(thread);
-        return start;
+        handlerCall.success = handlerCall.handler.start(root);
+        return handlerCall.success;
     }
 
     @SuppressWarnings("UnusedDeclaration")
@@ -107,47 +162,45 @@ public class ApiGeneratorDoclet extends Doclet {
         return LanguageVersion.JAVA_1_5;
     }
 
-    private static class JavadocRunnable implements Runnable {
+    static ModuleGenerator.EmissionMode getEmissionMode() {
+        final String value = System.getProperty(EMISSION_MODE_PROPERTY, ModuleGenerator.EmissionMode.SERIAL.name());
+        return ModuleGenerator.EmissionMode.valueOf(value.trim().toUpperCase());
+    }
 
-        private final String sourcePaths;
-        private final String[] packages;
+    static ModuleGenerator.OutputMode getOutputMode() {
+        final String value = System.getProperty(OUTPUT_MODE_PROPERTY, ModuleGenerator.OutputMode.SINGLE_SOURCE.name());
+        return ModuleGenerator.OutputMode.valueOf(value.trim().toUpperCase());
+    }
 
-        public JavadocRunnable(String sourcePaths, String[] packages) {
-            this.sourcePaths = sourcePaths;
-            this.packages = packages;
-        }
+    static boolean isIncremental() {
+        return Boolean.parseBoolean(System.getProperty(INCREMENTAL_PROPERTY, "true").trim());
+    }
 
-        @Override
-        public void run() {
-            Javadoc.run(ApiGeneratorDoclet.class.getName(), sourcePaths, packages);
-        }
+    private static class HandlerCall {
+        private final Handler handler;
+        private boolean success;
 
+        private HandlerCall(Handler handler) {
+            this.handler = handler;
+        }
     }
 
-    private static class DefaultHandler implements Handler {
+    /**
+     * Generates the modules of a {@link GenerationSession} from the root document. Also used by {@link ApiGeneratorProcessor}.
+     */
+    static class DefaultHandler implements Handler {
 
-        private final ApiGeneratorConfig config;
+        final GenerationSession session;
 
-        private DefaultHandler(String beamSourceDir) {
-            try {
-                config = ApiGeneratorConfigImpl.load(TemplateEval.kv("beamSourceDir", beamSourceDir));
-            } catch (Exception e) {
-                throw new RuntimeException(e);
-            }
+        DefaultHandler(GenerationSession session) {
+            this.session = session;
         }
 
         @Override
         public boolean start(RootDoc root) {
             try {
-                ApiInfo apiInfo = ApiInfo.create(config, root);
-                final CModuleGenerator cModuleGenerator = new CModuleGenerator(apiInfo);
-                final PyCModuleGenerator pyCModuleGenerator = new PyCModuleGenerator(cModuleGenerator);
-                cModuleGenerator.run();
-                pyCModuleGenerator.run();
+                session.generate(root);
                 return true;
-            } catch (IOException e) {
-                e.printStackTrace();
-                return false;
             } catch (Exception e) {
                 e.printStackTrace();
                 return false;
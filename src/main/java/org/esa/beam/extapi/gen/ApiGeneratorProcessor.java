@@ -0,0 +1,190 @@
+/*
+ * Copyright (C) 2010 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+
+package org.esa.beam.extapi.gen;
+
+import com.sun.javadoc.RootDoc;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.annotation.processing.SupportedOptions;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * An annotation processor which generates the API modules from the classes of the first processing round.
+ * It is an alternative to {@link ApiGeneratorDoclet} which uses the Java compiler instead of the {@code javadoc} tool.
+ * The {@link ApiInfo} is created from a {@link RootDoc} provided by {@link ElementDocs}.
+ * <p/>
+ * The processor can be used within a {@code javac} run, e.g.
+ * <pre>
+ *     javac -proc:only -processor org.esa.beam.extapi.gen.ApiGeneratorProcessor -Abeam.extapi.beamSourceDir=&lt;dir&gt; ...
+ * </pre>
+ * or standalone using {@link #main(String[])}, which compiles the configured source packages.
+ *
+ * @author Norman Fomferra
+ */
+@SupportedAnnotationTypes("*")
+@SupportedOptions({ApiGeneratorProcessor.BEAM_SOURCE_DIR_OPTION, ApiGeneratorProcessor.SNAPSHOT_OPTION})
+public class ApiGeneratorProcessor extends AbstractProcessor {
+
+    /**
+     * Processor option giving the BEAM source directory used to load the default configuration.
+     */
+    public static final String BEAM_SOURCE_DIR_OPTION = "beam.extapi.beamSourceDir";
+
+    /**
+     * Processor option giving an {@link ApiSnapshot} file to be written.
+     */
+    public static final String SNAPSHOT_OPTION = "beam.extapi.snapshot";
+
+    private final ApiGeneratorDoclet.Handler handler;
+    private boolean processed;
+    private boolean success;
+
+    public ApiGeneratorProcessor() {
+        this(null);
+    }
+
+    /**
+     * @param handler The handler which is called with the root document, or {@code null} to generate the
+     *                modules using the processor options.
+     */
+    public ApiGeneratorProcessor(ApiGeneratorDoclet.Handler handler) {
+        this.handler = handler;
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 1 && !(args.length == 3 && args[1].equals(ApiGeneratorDoclet.WRITE_SNAPSHOT_OPTION))) {
+            System.out.println("Usage:");
+            System.out.println("    ApiGeneratorProcessor <beamSourceDir> [" + ApiGeneratorDoclet.WRITE_SNAPSHOT_OPTION + " <file>]");
+            System.exit(-1);
+        }
+        final GenerationSession session = ApiGeneratorDoclet.createDefaultSession(args[0]);
+        session.setFrontEnd(GenerationSession.FrontEnd.PROCESSOR);
+        if (args.length == 3) {
+            session.setOutputSnapshot(new File(args[2]));
+        }
+        if (!session.call()) {
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Runs the Java compiler on the source files of the given packages. Only annotation processing is performed,
+     * no class files are generated.
+     *
+     * @param handler     The handler which is called with the root document.
+     * @param sourcePaths The source paths, separated by {@link File#pathSeparatorChar}.
+     * @param packages    The names of the packages to be processed. Sub-packages are not included.
+     * @return The result of the handler, {@code false} if the handler has not been called.
+     * @throws IOException If an I/O error occurs.
+     */
+    public static boolean run(ApiGeneratorDoclet.Handler handler, String sourcePaths, String... packages) throws IOException {
+        final JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        if (compiler == null) {
+            throw new IllegalStateException("no system Java compiler available, a JDK is required");
+        }
+        final StandardJavaFileManager fileManager = compiler.getStandardFileManager(null, null, null);
+        try {
+            final List<File> sourceFiles = getSourceFiles(sourcePaths, packages);
+            final Iterable<? extends JavaFileObject> compilationUnits = fileManager.getJavaFileObjectsFromFiles(sourceFiles);
+            final List<String> options = Arrays.asList("-proc:only", "-implicit:none", "-sourcepath", sourcePaths);
+            final JavaCompiler.CompilationTask task = compiler.getTask(null, fileManager, null, options, null, compilationUnits);
+            final ApiGeneratorProcessor processor = new ApiGeneratorProcessor(handler);
+            task.setProcessors(Collections.singletonList(processor));
+            // The result of the compiler is ignored, since unresolved dependencies
+            // of the processed sources are reported as errors.
+            task.call();
+            return processor.success;
+        } finally {
+            fileManager.close();
+        }
+    }
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        if (processed || roundEnv.processingOver()) {
+            return false;
+        }
+        processed = true;
+        final ApiGeneratorDoclet.Handler handler = this.handler != null ? this.handler : createHandler();
+        if (handler == null) {
+            return false;
+        }
+        final RootDoc root = ElementDocs.createRootDoc(processingEnv, ElementFilter.typesIn(roundEnv.getRootElements()));
+        success = handler.start(root);
+        if (!success) {
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, "API generation failed");
+        }
+        return false;
+    }
+
+    private ApiGeneratorDoclet.Handler createHandler() {
+        final String beamSourceDir = processingEnv.getOptions().get(BEAM_SOURCE_DIR_OPTION);
+        if (beamSourceDir == null) {
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.WARNING,
+                                                     "API generation skipped, option -A" + BEAM_SOURCE_DIR_OPTION + " not set");
+            return null;
+        }
+        final GenerationSession session = ApiGeneratorDoclet.createDefaultSession(beamSourceDir);
+        final String snapshotFile = processingEnv.getOptions().get(SNAPSHOT_OPTION);
+        if (snapshotFile != null) {
+            session.setOutputSnapshot(new File(snapshotFile));
+        }
+        return new ApiGeneratorDoclet.DefaultHandler(session);
+    }
+
+    private static List<File> getSourceFiles(String sourcePaths, String[] packages) {
+        final List<File> sourceFiles = new ArrayList<File>();
+        for (String packageName : packages) {
+            for (String sourcePath : sourcePaths.split(File.pathSeparator)) {
+                final File packageDir = new File(sourcePath, packageName.replace('.', File.separatorChar));
+                final File[] files = packageDir.listFiles(new FilenameFilter() {
+                    @Override
+                    public boolean accept(File dir, String name) {
+                        return name.endsWith(".java") && !name.equals("package-info.java");
+                    }
+                });
+                if (files != null) {
+                    Arrays.sort(files);
+                    sourceFiles.addAll(Arrays.asList(files));
+                }
+            }
+        }
+        return sourceFiles;
+    }
+}
@@ -15,6 +15,7 @@ public final class ApiInfo {
     private final Map<ApiClass, ApiMembers> apiClasses;
     private final Map<ApiClass, ApiMembers> allClasses;
     private final Set<ApiClass> usedNonApiClasses;
+    private volatile SymbolIndex symbolIndex;
 
     private ApiInfo(ApiGeneratorConfig config,
                     Map<ApiClass, ApiMembers> apiClasses,
@@ -30,6 +31,23 @@ public final class ApiInfo {
         return config;
     }
 
+    /**
+     * @return The names of the generated symbols, created on first use.
+     */
+    public SymbolIndex getSymbolIndex() {
+        SymbolIndex index = symbolIndex;
+        if (index == null) {
+            synchronized (this) {
+                index = symbolIndex;
+                if (index == null) {
+                    index = SymbolIndex.create(this);
+                    symbolIndex = index;
+                }
+            }
+        }
+        return index;
+    }
+
     public Set<ApiClass> getApiClasses() {
         return Collections.unmodifiableSet(apiClasses.keySet());
     }
@@ -0,0 +1,556 @@
+/*
+ * Copyright (C) 2010 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+
+package org.esa.beam.extapi.gen;
+
+import com.sun.javadoc.ClassDoc;
+import com.sun.javadoc.ConstructorDoc;
+import com.sun.javadoc.ExecutableMemberDoc;
+import com.sun.javadoc.FieldDoc;
+import com.sun.javadoc.MemberDoc;
+import com.sun.javadoc.MethodDoc;
+import com.sun.javadoc.Parameter;
+import com.sun.javadoc.ProgramElementDoc;
+import com.sun.javadoc.RootDoc;
+import com.sun.javadoc.Tag;
+import com.sun.javadoc.Type;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import static org.esa.beam.extapi.gen.DocProxies.*;
+
+/**
+ * A compact binary snapshot of the parts of a Javadoc {@link RootDoc} that are used to create an {@link ApiInfo}:
+ * the public classes and their superclasses, their public constructors, methods and fields, the types of
+ * these members, the enum constants and the raw Javadoc comments.
+ * <p/>
+ * A snapshot is read back as a {@link RootDoc} whose documents implement only the subset of the
+ * {@code com.sun.javadoc} API used by the generators. {@link ApiInfo#create(ApiGeneratorConfig, RootDoc)} can
+ * therefore be called with a changed configuration, and the module generators can run without parsing
+ * the BEAM sources again.
+ *
+ * @author Norman Fomferra
+ */
+public final class ApiSnapshot {
+
+    private static final int MAGIC = 0x42454150;
+    private static final int FORMAT_VERSION = 1;
+
+    private ApiSnapshot() {
+    }
+
+    public static void write(RootDoc rootDoc, File file) throws IOException {
+        final OutputStream stream = new FileOutputStream(file);
+        try {
+            write(rootDoc, stream);
+        } finally {
+            stream.close();
+        }
+    }
+
+    public static void write(RootDoc rootDoc, OutputStream stream) throws IOException {
+        final GZIPOutputStream gzipStream = new GZIPOutputStream(new BufferedOutputStream(stream, 64 * 1024));
+        final SnapshotWriter writer = new SnapshotWriter(new DataOutputStream(gzipStream));
+        writer.write(rootDoc);
+        gzipStream.finish();
+        gzipStream.flush();
+    }
+
+    public static RootDoc read(File file) throws IOException {
+        final InputStream stream = new FileInputStream(file);
+        try {
+            return read(stream);
+        } finally {
+            stream.close();
+        }
+    }
+
+    public static RootDoc read(InputStream stream) throws IOException {
+        final DataInputStream dataInput = new DataInputStream(new GZIPInputStream(new BufferedInputStream(stream, 64 * 1024)));
+        return new SnapshotReader(dataInput).read();
+    }
+
+    /////////////////////////////////////////////////////////////////////////////////////
+    // Writing
+    //
+
+    private static class SnapshotWriter {
+
+        private final DataOutputStream out;
+        private final Map<String, Integer> strings = new HashMap<String, Integer>(4096);
+        private final Map<String, Integer> classIndexes = new LinkedHashMap<String, Integer>(1024);
+        private final List<ClassDoc> classes = new ArrayList<ClassDoc>(1024);
+        private final List<Boolean> classMembers = new ArrayList<Boolean>(1024);
+        private final Map<String, Integer> typeIndexes = new LinkedHashMap<String, Integer>(1024);
+        private final List<Type> types = new ArrayList<Type>(1024);
+
+        private SnapshotWriter(DataOutputStream out) {
+            this.out = out;
+        }
+
+        void write(RootDoc rootDoc) throws IOException {
+            final ClassDoc[] rootClasses = nonNull(rootDoc.classes());
+            final List<Integer> includedClasses = new ArrayList<Integer>(rootClasses.length);
+            for (ClassDoc classDoc : rootClasses) {
+                if (classDoc.isPublic()) {
+                    includedClasses.add(addClass(classDoc, true));
+                }
+            }
+            // Member types may add further classes and types, so the tables are collected before they are written
+            for (int i = 0; i < classes.size(); i++) {
+                if (classMembers.get(i)) {
+                    collectMemberTypes(classes.get(i));
+                }
+            }
+
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT_VERSION);
+
+            out.writeInt(classes.size());
+            for (ClassDoc classDoc : classes) {
+                writeString(classDoc.qualifiedName());
+                writeString(classDoc.typeName());
+                writeString(classDoc.simpleTypeName());
+                writeString(classDoc.modifiers());
+                out.writeByte(getFlags(classDoc));
+                writeString(classDoc.getRawCommentText());
+            }
+
+            out.writeInt(types.size());
+            for (Type type : types) {
+                writeString(type.typeName());
+                writeString(type.qualifiedTypeName());
+                writeString(type.simpleTypeName());
+                writeString(type.dimension());
+                out.writeByte(type.isPrimitive() ? FLAG_PRIMITIVE : 0);
+                out.writeInt(getClassIndex(type.asClassDoc()));
+            }
+
+            for (int i = 0; i < classes.size(); i++) {
+                final ClassDoc classDoc = classes.get(i);
+                out.writeInt(getClassIndex(classDoc.superclass()));
+                final FieldDoc[] enumConstants = classDoc.isEnum() ? nonNull(classDoc.enumConstants()) : new FieldDoc[0];
+                out.writeInt(enumConstants.length);
+                for (FieldDoc enumConstant : enumConstants) {
+                    writeString(enumConstant.name());
+                }
+                if (classMembers.get(i)) {
+                    writeFields(getPublicMembers(classDoc.fields()));
+                    writeExecutableMembers(getPublicMembers(classDoc.constructors()));
+                    writeExecutableMembers(getPublicMembers(classDoc.methods()));
+                } else {
+                    out.writeInt(0);
+                    out.writeInt(0);
+                    out.writeInt(0);
+                }
+            }
+
+            out.writeInt(includedClasses.size());
+            for (Integer index : includedClasses) {
+                out.writeInt(index);
+            }
+            out.flush();
+        }
+
+        private int addClass(ClassDoc classDoc, boolean withMembers) {
+            final String name = classDoc.qualifiedName();
+            Integer index = classIndexes.get(name);
+            if (index == null) {
+                index = classes.size();
+                classIndexes.put(name, index);
+                classes.add(classDoc);
+                classMembers.add(false);
+            }
+            if (withMembers && !classMembers.get(index) && !isObjectClass(classDoc)) {
+                classMembers.set(index, true);
+                // members of superclasses are API members of their subclasses
+                final ClassDoc superclass = classDoc.superclass();
+                if (superclass != null) {
+                    addClass(superclass, true);
+                }
+            }
+            return index;
+        }
+
+        private void collectMemberTypes(ClassDoc classDoc) {
+            for (FieldDoc fieldDoc : getPublicMembers(classDoc.fields())) {
+                addType(fieldDoc.type());
+            }
+            for (ConstructorDoc constructorDoc : getPublicMembers(classDoc.constructors())) {
+                addParameterTypes(constructorDoc);
+            }
+            for (MethodDoc methodDoc : getPublicMembers(classDoc.methods())) {
+                addType(methodDoc.returnType());
+                addParameterTypes(methodDoc);
+            }
+        }
+
+        private void addParameterTypes(ExecutableMemberDoc memberDoc) {
+            for (Parameter parameter : nonNull(memberDoc.parameters())) {
+                addType(parameter.type());
+            }
+        }
+
+        private int addType(Type type) {
+            final ClassDoc classDoc = type.asClassDoc();
+            final String key = type.qualifiedTypeName() + type.dimension() + "|" + type.typeName() + "|" + (classDoc != null);
+            Integer index = typeIndexes.get(key);
+            if (index == null) {
+                index = types.size();
+                typeIndexes.put(key, index);
+                types.add(type);
+                if (classDoc != null) {
+                    addClass(classDoc, false);
+                }
+            }
+            return index;
+        }
+
+        private int getClassIndex(ClassDoc classDoc) {
+            if (classDoc == null) {
+                return -1;
+            }
+            final Integer index = classIndexes.get(classDoc.qualifiedName());
+            return index != null ? index : -1;
+        }
+
+        private int getTypeIndex(Type type) {
+            final ClassDoc classDoc = type.asClassDoc();
+            return typeIndexes.get(type.qualifiedTypeName() + type.dimension() + "|" + type.typeName() + "|" + (classDoc != null));
+        }
+
+        private void writeFields(List<FieldDoc> fieldDocs) throws IOException {
+            out.writeInt(fieldDocs.size());
+            for (FieldDoc fieldDoc : fieldDocs) {
+                writeMember(fieldDoc);
+                out.writeInt(getTypeIndex(fieldDoc.type()));
+                writeString(fieldDoc.constantValueExpression());
+                writeConstantValue(fieldDoc.constantValue());
+            }
+        }
+
+        private void writeExecutableMembers(List<? extends ExecutableMemberDoc> memberDocs) throws IOException {
+            out.writeInt(memberDocs.size());
+            for (ExecutableMemberDoc memberDoc : memberDocs) {
+                writeMember(memberDoc);
+                out.writeInt(memberDoc instanceof MethodDoc ? getTypeIndex(((MethodDoc) memberDoc).returnType()) : -1);
+                final Parameter[] parameters = nonNull(memberDoc.parameters());
+                out.writeInt(parameters.length);
+                for (Parameter parameter : parameters) {
+                    writeString(parameter.name());
+                    out.writeInt(getTypeIndex(parameter.type()));
+                }
+            }
+        }
+
+        private void writeMember(MemberDoc memberDoc) throws IOException {
+            writeString(memberDoc.name());
+            writeString(memberDoc.modifiers());
+            int flags = getFlags(memberDoc);
+            final Tag[] deprecatedTags = memberDoc.tags("deprecated");
+            if (deprecatedTags != null && deprecatedTags.length > 0) {
+                flags |= FLAG_DEPRECATED;
+            }
+            out.writeByte(flags);
+            writeString(memberDoc.getRawCommentText());
+        }
+
+        private void writeConstantValue(Object value) throws IOException {
+            if (value instanceof String) {
+                out.writeByte('s');
+                writeString((String) value);
+            } else if (value instanceof Integer) {
+                out.writeByte('I');
+                out.writeInt((Integer) value);
+            } else if (value instanceof Long) {
+                out.writeByte('J');
+                out.writeLong((Long) value);
+            } else if (value instanceof Float) {
+                out.writeByte('F');
+                out.writeFloat((Float) value);
+            } else if (value instanceof Double) {
+                out.writeByte('D');
+                out.writeDouble((Double) value);
+            } else if (value instanceof Boolean) {
+                out.writeByte('Z');
+                out.writeBoolean((Boolean) value);
+            } else if (value instanceof Character) {
+                out.writeByte('C');
+                out.writeChar((Character) value);
+            } else if (value instanceof Short) {
+                out.writeByte('S');
+                out.writeShort((Short) value);
+            } else if (value instanceof Byte) {
+                out.writeByte('B');
+                out.writeByte((Byte) value);
+            } else {
+                out.writeByte(0);
+            }
+        }
+
+        /**
+         * Writes a string as index into the string pool. A string which is not yet in the pool is appended
+         * to it and follows its index.
+         */
+        private void writeString(String s) throws IOException {
+            if (s == null) {
+                out.writeInt(-1);
+                return;
+            }
+            final Integer index = strings.get(s);
+            if (index != null) {
+                out.writeInt(index);
+            } else {
+                final int newIndex = strings.size();
+                strings.put(s, newIndex);
+                out.writeInt(newIndex);
+                writeLongString(s);
+            }
+        }
+
+        /**
+         * Raw comments may exceed the 64K limit of {@link DataOutputStream#writeUTF}.
+         */
+        private void writeLongString(String s) throws IOException {
+            final byte[] bytes = s.getBytes("UTF-8");
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+
+        private static int getFlags(ProgramElementDoc doc) {
+            int flags = 0;
+            if (doc.isPublic()) {
+                flags |= FLAG_PUBLIC;
+            }
+            if (doc.isStatic()) {
+                flags |= FLAG_STATIC;
+            }
+            if (doc.isFinal()) {
+                flags |= FLAG_FINAL;
+            }
+            if (doc instanceof MethodDoc && ((MethodDoc) doc).isAbstract()) {
+                flags |= FLAG_ABSTRACT;
+            }
+            if (doc instanceof ClassDoc && ((ClassDoc) doc).isInterface()) {
+                flags |= FLAG_INTERFACE;
+            }
+            if (doc.isEnum()) {
+                flags |= FLAG_ENUM;
+            }
+            return flags;
+        }
+
+        private static <T extends ProgramElementDoc> List<T> getPublicMembers(T[] memberDocs) {
+            final List<T> publicMembers = new ArrayList<T>();
+            if (memberDocs != null) {
+                for (T memberDoc : memberDocs) {
+                    if (memberDoc.isPublic()) {
+                        publicMembers.add(memberDoc);
+                    }
+                }
+            }
+            return publicMembers;
+        }
+
+        private static ClassDoc[] nonNull(ClassDoc[] array) {
+            return array != null ? array : new ClassDoc[0];
+        }
+
+        private static FieldDoc[] nonNull(FieldDoc[] array) {
+            return array != null ? array : new FieldDoc[0];
+        }
+
+        private static Parameter[] nonNull(Parameter[] array) {
+            return array != null ? array : new Parameter[0];
+        }
+    }
+
+    /////////////////////////////////////////////////////////////////////////////////////
+    // Reading
+    //
+
+    private static class SnapshotReader {
+
+        private final DataInputStream in;
+        private final List<String> strings = new ArrayList<String>(4096);
+
+        private SnapshotReader(DataInputStream in) {
+            this.in = in;
+        }
+
+        RootDoc read() throws IOException {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("not an API snapshot");
+            }
+            final int formatVersion = in.readInt();
+            if (formatVersion != FORMAT_VERSION) {
+                throw new IOException("unsupported API snapshot format version " + formatVersion);
+            }
+
+            final ClassHandler[] classHandlers = new ClassHandler[in.readInt()];
+            final ClassDoc[] classDocs = new ClassDoc[classHandlers.length];
+            for (int i = 0; i < classHandlers.length; i++) {
+                final ClassHandler handler = new ClassHandler();
+                handler.qualifiedName = readString();
+                handler.typeName = readString();
+                handler.simpleTypeName = readString();
+                handler.modifiers = readString();
+                handler.flags = in.readUnsignedByte();
+                handler.rawCommentText = readString();
+                classHandlers[i] = handler;
+                classDocs[i] = newProxy(ClassDoc.class, handler);
+                handler.classDoc = classDocs[i];
+            }
+
+            final Type[] types = new Type[in.readInt()];
+            for (int i = 0; i < types.length; i++) {
+                final TypeHandler handler = new TypeHandler();
+                handler.typeName = readString();
+                handler.qualifiedTypeName = readString();
+                handler.simpleTypeName = readString();
+                handler.dimension = readString();
+                handler.flags = in.readUnsignedByte();
+                final int classIndex = in.readInt();
+                handler.classDoc = classIndex >= 0 ? classDocs[classIndex] : null;
+                types[i] = newProxy(Type.class, handler);
+            }
+
+            for (int i = 0; i < classHandlers.length; i++) {
+                final ClassHandler handler = classHandlers[i];
+                final ClassDoc classDoc = classDocs[i];
+                final int superclassIndex = in.readInt();
+                handler.superclass = superclassIndex >= 0 ? classDocs[superclassIndex] : null;
+                handler.enumConstants = new FieldDoc[in.readInt()];
+                for (int j = 0; j < handler.enumConstants.length; j++) {
+                    final MemberHandler memberHandler = new MemberHandler(classDoc);
+                    memberHandler.name = readString();
+                    memberHandler.modifiers = "public static final";
+                    memberHandler.flags = FLAG_PUBLIC | FLAG_STATIC | FLAG_FINAL | FLAG_ENUM;
+                    memberHandler.type = classDoc;
+                    handler.enumConstants[j] = newProxy(FieldDoc.class, memberHandler);
+                }
+                handler.fields = new FieldDoc[in.readInt()];
+                for (int j = 0; j < handler.fields.length; j++) {
+                    final MemberHandler memberHandler = readMember(classDoc);
+                    memberHandler.type = types[in.readInt()];
+                    memberHandler.constantValueExpression = readString();
+                    memberHandler.constantValue = readConstantValue();
+                    handler.fields[j] = newProxy(FieldDoc.class, memberHandler);
+                }
+                handler.constructors = new ConstructorDoc[in.readInt()];
+                for (int j = 0; j < handler.constructors.length; j++) {
+                    final MemberHandler memberHandler = readExecutableMember(classDoc, types);
+                    memberHandler.constructor = true;
+                    handler.constructors[j] = newProxy(ConstructorDoc.class, memberHandler);
+                }
+                handler.methods = new MethodDoc[in.readInt()];
+                for (int j = 0; j < handler.methods.length; j++) {
+                    handler.methods[j] = newProxy(MethodDoc.class, readExecutableMember(classDoc, types));
+                }
+            }
+
+            final ClassDoc[] includedClasses = new ClassDoc[in.readInt()];
+            for (int i = 0; i < includedClasses.length; i++) {
+                includedClasses[i] = classDocs[in.readInt()];
+            }
+            return newProxy(RootDoc.class, new RootHandler(includedClasses));
+        }
+
+        private MemberHandler readExecutableMember(ClassDoc classDoc, Type[] types) throws IOException {
+            final MemberHandler memberHandler = readMember(classDoc);
+            final int returnTypeIndex = in.readInt();
+            memberHandler.type = returnTypeIndex >= 0 ? types[returnTypeIndex] : null;
+            memberHandler.parameters = new Parameter[in.readInt()];
+            for (int k = 0; k < memberHandler.parameters.length; k++) {
+                final ParameterHandler parameterHandler = new ParameterHandler();
+                parameterHandler.name = readString();
+                parameterHandler.type = types[in.readInt()];
+                memberHandler.parameters[k] = newProxy(Parameter.class, parameterHandler);
+            }
+            return memberHandler;
+        }
+
+        private MemberHandler readMember(ClassDoc classDoc) throws IOException {
+            final MemberHandler memberHandler = new MemberHandler(classDoc);
+            memberHandler.name = readString();
+            memberHandler.modifiers = readString();
+            memberHandler.flags = in.readUnsignedByte();
+            memberHandler.rawCommentText = readString();
+            return memberHandler;
+        }
+
+        private Object readConstantValue() throws IOException {
+            final int tag = in.readUnsignedByte();
+            switch (tag) {
+                case 's':
+                    return readString();
+                case 'I':
+                    return in.readInt();
+                case 'J':
+                    return in.readLong();
+                case 'F':
+                    return in.readFloat();
+                case 'D':
+                    return in.readDouble();
+                case 'Z':
+                    return in.readBoolean();
+                case 'C':
+                    return in.readChar();
+                case 'S':
+                    return in.readShort();
+                case 'B':
+                    return in.readByte();
+                default:
+                    return null;
+            }
+        }
+
+        private String readString() throws IOException {
+            final int index = in.readInt();
+            if (index < 0) {
+                return null;
+            }
+            if (index < strings.size()) {
+                return strings.get(index);
+            }
+            final byte[] bytes = new byte[in.readInt()];
+            in.readFully(bytes);
+            final String s = new String(bytes, "UTF-8");
+            strings.add(s);
+            return s;
+        }
+    }
+
+    private static boolean isObjectClass(ClassDoc classDoc) {
+        return "java.lang.Object".equals(classDoc.qualifiedName());
+    }
+}
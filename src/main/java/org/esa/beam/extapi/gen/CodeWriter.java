@@ -0,0 +1,193 @@
+package org.esa.beam.extapi.gen;
+
+import java.io.IOException;
+
+import static org.esa.beam.extapi.gen.TemplateEval.KV;
+
+/**
+ * An {@link Appendable} which writes generated code into another {@link Appendable} and indents every line
+ * by the current indentation.
+ * <p/>
+ * Code is written in fragments of one or more lines, e.g. by the {@link StreamingFunctionGenerator}s.
+ * Line ends are written lazily, so that each fragment is terminated by exactly one line end when
+ * {@link #endLine()} is called: trailing line ends of a fragment are dropped and a missing one is added.
+ * This is the behaviour of {@code ModuleGenerator} for code fragments given as strings.
+ *
+ * @author Norman Fomferra
+ */
+public final class CodeWriter implements Appendable {
+
+    public static final String DEFAULT_INDENT = "    ";
+
+    private final Appendable out;
+    private final String indentUnit;
+    private String indent;
+    private int indentLevel;
+    private boolean atLineStart;
+    private int pendingLineEnds;
+
+    /**
+     * Creates a code writer which writes into a new {@link StringBuilder}.
+     */
+    public CodeWriter() {
+        this(new StringBuilder());
+    }
+
+    public CodeWriter(Appendable out) {
+        this(out, DEFAULT_INDENT);
+    }
+
+    public CodeWriter(Appendable out, String indentUnit) {
+        this.out = out;
+        this.indentUnit = indentUnit;
+        this.indent = "";
+        this.atLineStart = true;
+    }
+
+    public Appendable getOut() {
+        return out;
+    }
+
+    public int getIndentLevel() {
+        return indentLevel;
+    }
+
+    public CodeWriter indent() {
+        indentLevel++;
+        updateIndent();
+        return this;
+    }
+
+    public CodeWriter outdent() {
+        if (indentLevel == 0) {
+            throw new IllegalStateException("indentLevel == 0");
+        }
+        indentLevel--;
+        updateIndent();
+        return this;
+    }
+
+    @Override
+    public CodeWriter append(CharSequence csq) throws IOException {
+        final CharSequence s = csq != null ? csq : "null";
+        return append(s, 0, s.length());
+    }
+
+    @Override
+    public CodeWriter append(CharSequence csq, int start, int end) throws IOException {
+        final CharSequence s = csq != null ? csq : "null";
+        int i = start;
+        while (i < end) {
+            if (s.charAt(i) == '\n') {
+                pendingLineEnds++;
+                i++;
+            } else {
+                int runEnd = i + 1;
+                while (runEnd < end && s.charAt(runEnd) != '\n') {
+                    runEnd++;
+                }
+                beginText();
+                out.append(s, i, runEnd);
+                i = runEnd;
+            }
+        }
+        return this;
+    }
+
+    @Override
+    public CodeWriter append(char c) throws IOException {
+        if (c == '\n') {
+            pendingLineEnds++;
+        } else {
+            beginText();
+            out.append(c);
+        }
+        return this;
+    }
+
+    /**
+     * Terminates the current line, if any text has been written to it. Pending line ends are dropped.
+     *
+     * @return This writer.
+     * @throws IOException If an I/O error occurs.
+     */
+    public CodeWriter endLine() throws IOException {
+        if (!atLineStart) {
+            out.append('\n');
+            atLineStart = true;
+        }
+        pendingLineEnds = 0;
+        return this;
+    }
+
+    /**
+     * Writes a code fragment and terminates its last line.
+     *
+     * @param code The code fragment, may be {@code null}.
+     * @return This writer.
+     * @throws IOException If an I/O error occurs.
+     */
+    public CodeWriter writeCode(CharSequence code) throws IOException {
+        if (code != null) {
+            append(code);
+        }
+        return endLine();
+    }
+
+    /**
+     * Renders a template pattern as code fragment and terminates its last line.
+     *
+     * @param pattern The template pattern.
+     * @param pairs   The placeholder values.
+     * @return This writer.
+     * @throws IOException If an I/O error occurs.
+     * @see CompiledTemplate
+     */
+    public CodeWriter writeTemplate(String pattern, KV... pairs) throws IOException {
+        CompiledTemplate.compile(pattern).render(pairs, this);
+        return endLine();
+    }
+
+    /**
+     * @return The code written so far, without the last line end, or {@code null} if no code has been written.
+     * Only supported if this writer writes into a {@link StringBuilder}, and intended to implement the
+     * {@code String}-returning generator methods.
+     */
+    public String toCode() {
+        if (!(out instanceof StringBuilder)) {
+            throw new IllegalStateException("not writing into a StringBuilder");
+        }
+        final StringBuilder sb = (StringBuilder) out;
+        final int length = sb.length() > 0 && sb.charAt(sb.length() - 1) == '\n' ? sb.length() - 1 : sb.length();
+        return length > 0 ? sb.substring(0, length) : null;
+    }
+
+    @Override
+    public String toString() {
+        return out.toString();
+    }
+
+    private void beginText() throws IOException {
+        while (pendingLineEnds > 0) {
+            if (atLineStart) {
+                // an empty line within a fragment
+                out.append(indent);
+            }
+            out.append('\n');
+            atLineStart = true;
+            pendingLineEnds--;
+        }
+        if (atLineStart) {
+            out.append(indent);
+            atLineStart = false;
+        }
+    }
+
+    private void updateIndent() {
+        final StringBuilder sb = new StringBuilder(indentLevel * indentUnit.length());
+        for (int i = 0; i < indentLevel; i++) {
+            sb.append(indentUnit);
+        }
+        indent = sb.toString();
+    }
+}
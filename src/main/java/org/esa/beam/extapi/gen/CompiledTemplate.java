@@ -0,0 +1,210 @@
+package org.esa.beam.extapi.gen;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.esa.beam.extapi.gen.TemplateEval.KV;
+
+/**
+ * A template pattern which has been parsed once into literal and placeholder segments.
+ * Placeholders have the form <code>${key}</code>. A placeholder whose key is unknown or whose value
+ * is <code>null</code> is rendered unchanged, which is the behaviour of {@link TemplateEval}.
+ * Immutable object.
+ *
+ * @author Norman Fomferra
+ */
+public final class CompiledTemplate {
+
+    /**
+     * Upper bound for the number of cached templates. Patterns are usually literals from the generator
+     * code or lines of the stub resources, so this limit is never reached in a normal generator run.
+     */
+    private static final int MAX_CACHE_SIZE = 16 * 1024;
+    private static final Map<String, CompiledTemplate> CACHE = new ConcurrentHashMap<String, CompiledTemplate>(1024);
+
+    private final String pattern;
+    private final String[] literals;
+    private final String[] keys;
+    private final String[] placeholders;
+
+    private CompiledTemplate(String pattern, String[] literals, String[] keys, String[] placeholders) {
+        this.pattern = pattern;
+        this.literals = literals;
+        this.keys = keys;
+        this.placeholders = placeholders;
+    }
+
+    /**
+     * Returns the compiled form of the given pattern. Compiled templates are cached by pattern.
+     *
+     * @param pattern The template pattern.
+     * @return The compiled template.
+     */
+    public static CompiledTemplate compile(String pattern) {
+        CompiledTemplate template = CACHE.get(pattern);
+        if (template == null) {
+            template = parse(pattern);
+            if (CACHE.size() < MAX_CACHE_SIZE) {
+                CACHE.put(pattern, template);
+            }
+        }
+        return template;
+    }
+
+    public String getPattern() {
+        return pattern;
+    }
+
+    /**
+     * @return {@code true} if the pattern contains at least one placeholder.
+     */
+    public boolean hasPlaceholders() {
+        return keys.length > 0;
+    }
+
+    public String render(Map<String, ?> values) {
+        if (keys.length == 0) {
+            return pattern;
+        }
+        StringBuilder sb = new StringBuilder(pattern.length() + 16 * keys.length);
+        try {
+            render(values, sb);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return sb.toString();
+    }
+
+    public String render(KV... pairs) {
+        if (keys.length == 0) {
+            return pattern;
+        }
+        StringBuilder sb = new StringBuilder(pattern.length() + 16 * keys.length);
+        try {
+            render(pairs, sb);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return sb.toString();
+    }
+
+    public String render(KV[] pairs, Map<String, ?> defaults) {
+        if (keys.length == 0) {
+            return pattern;
+        }
+        StringBuilder sb = new StringBuilder(pattern.length() + 16 * keys.length);
+        try {
+            render(pairs, defaults, sb);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Renders this template in a single pass into the given output.
+     *
+     * @param values The placeholder values.
+     * @param out    The output.
+     * @throws IOException If an I/O error occurs.
+     */
+    public void render(Map<String, ?> values, Appendable out) throws IOException {
+        for (int i = 0; i < keys.length; i++) {
+            out.append(literals[i]);
+            appendValue(out, i, values.get(keys[i]));
+        }
+        out.append(literals[keys.length]);
+    }
+
+    /**
+     * Renders this template in a single pass into the given output. If a key occurs more than once,
+     * the first pair with a non-<code>null</code> value is used.
+     *
+     * @param pairs The placeholder values.
+     * @param out   The output.
+     * @throws IOException If an I/O error occurs.
+     */
+    public void render(KV[] pairs, Appendable out) throws IOException {
+        for (int i = 0; i < keys.length; i++) {
+            out.append(literals[i]);
+            appendValue(out, i, lookup(pairs, keys[i]));
+        }
+        out.append(literals[keys.length]);
+    }
+
+    /**
+     * Renders this template in a single pass into the given output. Values are looked up in the given pairs
+     * first and then in the given default values.
+     *
+     * @param pairs    The placeholder values.
+     * @param defaults The default placeholder values.
+     * @param out      The output.
+     * @throws IOException If an I/O error occurs.
+     */
+    public void render(KV[] pairs, Map<String, ?> defaults, Appendable out) throws IOException {
+        for (int i = 0; i < keys.length; i++) {
+            out.append(literals[i]);
+            Object value = lookup(pairs, keys[i]);
+            if (value == null) {
+                value = defaults.get(keys[i]);
+            }
+            appendValue(out, i, value);
+        }
+        out.append(literals[keys.length]);
+    }
+
+    @Override
+    public String toString() {
+        return pattern;
+    }
+
+    private void appendValue(Appendable out, int i, Object value) throws IOException {
+        if (value != null) {
+            out.append(value.toString());
+        } else {
+            out.append(placeholders[i]);
+        }
+    }
+
+    private static Object lookup(KV[] pairs, String key) {
+        for (KV pair : pairs) {
+            if (pair.value != null && key.equals(pair.key)) {
+                return pair.value;
+            }
+        }
+        return null;
+    }
+
+    static CompiledTemplate parse(String pattern) {
+        List<String> literals = new ArrayList<String>();
+        List<String> keys = new ArrayList<String>();
+        List<String> placeholders = new ArrayList<String>();
+        StringBuilder literal = new StringBuilder();
+        int pos = 0;
+        while (pos < pattern.length()) {
+            int start = pattern.indexOf("${", pos);
+            if (start < 0) {
+                break;
+            }
+            int end = pattern.indexOf('}', start + 2);
+            if (end < 0) {
+                break;
+            }
+            literal.append(pattern, pos, start);
+            literals.add(literal.toString());
+            literal.setLength(0);
+            keys.add(pattern.substring(start + 2, end));
+            placeholders.add(pattern.substring(start, end + 1));
+            pos = end + 1;
+        }
+        literal.append(pattern, pos, pattern.length());
+        literals.add(literal.toString());
+        return new CompiledTemplate(pattern,
+                                    literals.toArray(new String[literals.size()]),
+                                    keys.toArray(new String[keys.size()]),
+                                    placeholders.toArray(new String[placeholders.size()]));
+    }
+}
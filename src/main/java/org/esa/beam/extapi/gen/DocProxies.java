@@ -0,0 +1,334 @@
+/*
+ * Copyright (C) 2010 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+
+package org.esa.beam.extapi.gen;
+
+import com.sun.javadoc.ClassDoc;
+import com.sun.javadoc.ConstructorDoc;
+import com.sun.javadoc.FieldDoc;
+import com.sun.javadoc.MethodDoc;
+import com.sun.javadoc.Parameter;
+import com.sun.javadoc.Tag;
+import com.sun.javadoc.Type;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+
+/**
+ * Lightweight implementations of the subset of the {@code com.sun.javadoc} API which is used to create an {@link ApiInfo}.
+ * The documents are created by {@link ApiSnapshot} and {@link ElementDocs}. Calls of other methods result in
+ * an {@link UnsupportedOperationException}.
+ *
+ * @author Norman Fomferra
+ */
+final class DocProxies {
+
+    static final int FLAG_PUBLIC = 0x01;
+    static final int FLAG_STATIC = 0x02;
+    static final int FLAG_FINAL = 0x04;
+    static final int FLAG_ABSTRACT = 0x08;
+    static final int FLAG_INTERFACE = 0x10;
+    static final int FLAG_ENUM = 0x20;
+    static final int FLAG_PRIMITIVE = 0x40;
+    static final int FLAG_DEPRECATED = 0x80;
+
+    private DocProxies() {
+    }
+
+    @SuppressWarnings("unchecked")
+    static <T> T newProxy(Class<T> docType, InvocationHandler handler) {
+        return (T) Proxy.newProxyInstance(DocProxies.class.getClassLoader(), new Class<?>[]{docType}, handler);
+    }
+
+    /**
+     * Base class of the document handlers. Calls of methods which are not implemented by a handler
+     * result in an {@link UnsupportedOperationException}.
+     */
+    abstract static class DocHandler implements InvocationHandler {
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            final String name = method.getName();
+            final int argCount = args != null ? args.length : 0;
+            if (argCount == 1 && name.equals("equals")) {
+                return proxy == args[0];
+            } else if (argCount == 0 && name.equals("hashCode")) {
+                return System.identityHashCode(proxy);
+            } else if (argCount == 1 && name.equals("compareTo")) {
+                return toString().compareTo(String.valueOf(args[0]));
+            } else if (argCount == 0 && name.equals("toString")) {
+                return toString();
+            }
+            final Object result = invoke(name, args);
+            if (result == UNSUPPORTED) {
+                throw new UnsupportedOperationException(String.format("%s.%s() is not supported",
+                                                                      method.getDeclaringClass().getSimpleName(), name));
+            }
+            return result;
+        }
+
+        /**
+         * @return The result or {@link #UNSUPPORTED}.
+         */
+        protected abstract Object invoke(String name, Object[] args);
+    }
+
+    static final Object UNSUPPORTED = new Object();
+
+    static class RootHandler extends DocHandler {
+        private final ClassDoc[] classes;
+
+        RootHandler(ClassDoc[] classes) {
+            this.classes = classes;
+        }
+
+        @Override
+        protected Object invoke(String name, Object[] args) {
+            if (name.equals("classes")) {
+                return classes.clone();
+            }
+            return UNSUPPORTED;
+        }
+
+        @Override
+        public String toString() {
+            return "RootDoc";
+        }
+    }
+
+    static class TypeHandler extends DocHandler {
+        String typeName;
+        String qualifiedTypeName;
+        String simpleTypeName;
+        String dimension;
+        int flags;
+        ClassDoc classDoc;
+
+        @Override
+        protected Object invoke(String name, Object[] args) {
+            if (name.equals("typeName")) {
+                return typeName;
+            } else if (name.equals("qualifiedTypeName")) {
+                return qualifiedTypeName;
+            } else if (name.equals("simpleTypeName")) {
+                return simpleTypeName;
+            } else if (name.equals("dimension")) {
+                return dimension;
+            } else if (name.equals("isPrimitive")) {
+                return (flags & FLAG_PRIMITIVE) != 0;
+            } else if (name.equals("asClassDoc")) {
+                return classDoc;
+            } else if (name.equals("asParameterizedType") || name.equals("asTypeVariable")
+                    || name.equals("asWildcardType") || name.equals("asAnnotationTypeDoc")) {
+                return null;
+            }
+            return UNSUPPORTED;
+        }
+
+        @Override
+        public String toString() {
+            return qualifiedTypeName + dimension;
+        }
+    }
+
+    /**
+     * Common part of classes and members.
+     */
+    abstract static class ProgramElementHandler extends DocHandler {
+        String modifiers;
+        int flags;
+        String rawCommentText;
+
+        @Override
+        protected Object invoke(String name, Object[] args) {
+            if (name.equals("modifiers")) {
+                return modifiers;
+            } else if (name.equals("isPublic")) {
+                return (flags & FLAG_PUBLIC) != 0;
+            } else if (name.equals("isStatic")) {
+                return (flags & FLAG_STATIC) != 0;
+            } else if (name.equals("isFinal")) {
+                return (flags & FLAG_FINAL) != 0;
+            } else if (name.equals("isAbstract")) {
+                return (flags & FLAG_ABSTRACT) != 0;
+            } else if (name.equals("isInterface")) {
+                return (flags & FLAG_INTERFACE) != 0;
+            } else if (name.equals("isPrivate") || name.equals("isProtected") || name.equals("isPackagePrivate")) {
+                return false;
+            } else if (name.equals("getRawCommentText")) {
+                return rawCommentText;
+            } else if (name.equals("tags")) {
+                final boolean deprecated = (flags & FLAG_DEPRECATED) != 0;
+                if (args == null || "deprecated".equals(args[0]) || "@deprecated".equals(args[0])) {
+                    return deprecated ? new Tag[]{newProxy(Tag.class, new TagHandler(this))} : new Tag[0];
+                }
+                return new Tag[0];
+            }
+            return UNSUPPORTED;
+        }
+    }
+
+    static class ClassHandler extends ProgramElementHandler {
+        String qualifiedName;
+        String typeName;
+        String simpleTypeName;
+        ClassDoc classDoc;
+        ClassDoc superclass;
+        FieldDoc[] enumConstants;
+        FieldDoc[] fields;
+        ConstructorDoc[] constructors;
+        MethodDoc[] methods;
+
+        @Override
+        protected Object invoke(String name, Object[] args) {
+            if (name.equals("qualifiedName") || name.equals("qualifiedTypeName")) {
+                return qualifiedName;
+            } else if (name.equals("name") || name.equals("typeName")) {
+                return typeName;
+            } else if (name.equals("simpleTypeName")) {
+                return simpleTypeName;
+            } else if (name.equals("dimension")) {
+                return "";
+            } else if (name.equals("isPrimitive")) {
+                return false;
+            } else if (name.equals("isEnum")) {
+                return (flags & FLAG_ENUM) != 0;
+            } else if (name.equals("isClass") || name.equals("isIncluded")) {
+                return true;
+            } else if (name.equals("asClassDoc")) {
+                return classDoc;
+            } else if (name.equals("superclass")) {
+                return superclass;
+            } else if (name.equals("enumConstants")) {
+                return enumConstants.clone();
+            } else if (name.equals("fields")) {
+                return fields.clone();
+            } else if (name.equals("constructors")) {
+                return constructors.clone();
+            } else if (name.equals("methods")) {
+                return methods.clone();
+            } else if (name.equals("asParameterizedType") || name.equals("asTypeVariable")
+                    || name.equals("asWildcardType") || name.equals("asAnnotationTypeDoc")) {
+                return null;
+            }
+            return super.invoke(name, args);
+        }
+
+        @Override
+        public String toString() {
+            return qualifiedName;
+        }
+    }
+
+    /**
+     * Handles fields, constructors and methods.
+     */
+    static class MemberHandler extends ProgramElementHandler {
+        final ClassDoc containingClass;
+        String name;
+        boolean constructor;
+        /**
+         * The field type or the method return type.
+         */
+        Type type;
+        Parameter[] parameters;
+        String constantValueExpression;
+        Object constantValue;
+
+        MemberHandler(ClassDoc containingClass) {
+            this.containingClass = containingClass;
+        }
+
+        @Override
+        protected Object invoke(String methodName, Object[] args) {
+            if (methodName.equals("name")) {
+                return constructor ? containingClass.name() : name;
+            } else if (methodName.equals("qualifiedName")) {
+                return containingClass.qualifiedName() + "." + name;
+            } else if (methodName.equals("containingClass")) {
+                return containingClass;
+            } else if (methodName.equals("isConstructor")) {
+                return constructor;
+            } else if (methodName.equals("isMethod")) {
+                return !constructor && parameters != null;
+            } else if (methodName.equals("isField")) {
+                return parameters == null && (flags & FLAG_ENUM) == 0;
+            } else if (methodName.equals("isEnumConstant")) {
+                return (flags & FLAG_ENUM) != 0;
+            } else if (methodName.equals("type") || methodName.equals("returnType")) {
+                return type;
+            } else if (methodName.equals("parameters")) {
+                return parameters.clone();
+            } else if (methodName.equals("constantValueExpression")) {
+                return constantValueExpression;
+            } else if (methodName.equals("constantValue")) {
+                return constantValue;
+            }
+            return super.invoke(methodName, args);
+        }
+
+        @Override
+        public String toString() {
+            return containingClass.qualifiedName() + "." + name;
+        }
+    }
+
+    static class ParameterHandler extends DocHandler {
+        String name;
+        Type type;
+
+        @Override
+        protected Object invoke(String methodName, Object[] args) {
+            if (methodName.equals("name")) {
+                return name;
+            } else if (methodName.equals("type")) {
+                return type;
+            } else if (methodName.equals("typeName")) {
+                return type.typeName();
+            }
+            return UNSUPPORTED;
+        }
+
+        @Override
+        public String toString() {
+            return type + " " + name;
+        }
+    }
+
+    static class TagHandler extends DocHandler {
+        private final ProgramElementHandler holder;
+
+        TagHandler(ProgramElementHandler holder) {
+            this.holder = holder;
+        }
+
+        @Override
+        protected Object invoke(String name, Object[] args) {
+            if (name.equals("name") || name.equals("kind")) {
+                return "@deprecated";
+            } else if (name.equals("text")) {
+                return "";
+            }
+            return UNSUPPORTED;
+        }
+
+        @Override
+        public String toString() {
+            return "@deprecated " + holder;
+        }
+    }
+}
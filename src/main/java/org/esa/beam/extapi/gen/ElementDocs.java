@@ -0,0 +1,309 @@
+/*
+ * Copyright (C) 2010 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+
+package org.esa.beam.extapi.gen;
+
+import com.sun.javadoc.ClassDoc;
+import com.sun.javadoc.ConstructorDoc;
+import com.sun.javadoc.FieldDoc;
+import com.sun.javadoc.MethodDoc;
+import com.sun.javadoc.Parameter;
+import com.sun.javadoc.RootDoc;
+import com.sun.javadoc.Type;
+
+import javax.annotation.processing.ProcessingEnvironment;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.ArrayType;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.lang.model.util.Elements;
+import javax.lang.model.util.Types;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+import static org.esa.beam.extapi.gen.DocProxies.*;
+
+/**
+ * Creates a Javadoc {@link RootDoc} from the {@code javax.lang.model} elements of an annotation processing round,
+ * so that an {@link ApiInfo} can be created by a Java compiler instead of the {@code javadoc} tool.
+ * <p/>
+ * The documents are created eagerly and implement the same subset of the {@code com.sun.javadoc} API
+ * as the documents of an {@link ApiSnapshot}. They remain valid after the processing round and may be used
+ * by multiple threads.
+ *
+ * @author Norman Fomferra
+ */
+public final class ElementDocs {
+
+    private static final Pattern DEPRECATED_TAG_PATTERN = Pattern.compile("(?m)^\\s*@deprecated\\b");
+
+    private final Elements elements;
+    private final Types types;
+    private final Map<TypeElement, ClassHandler> classHandlers = new HashMap<TypeElement, ClassHandler>(1024);
+    private final Set<TypeElement> memberClasses = new HashSet<TypeElement>(1024);
+    private final LinkedList<TypeElement> pendingClasses = new LinkedList<TypeElement>();
+    private final Map<String, Type> typeCache = new HashMap<String, Type>(1024);
+
+    private ElementDocs(ProcessingEnvironment processingEnv) {
+        this.elements = processingEnv.getElementUtils();
+        this.types = processingEnv.getTypeUtils();
+    }
+
+    /**
+     * Creates a root document. Like the result of the {@code javadoc} tool with its default access level,
+     * the returned root's classes are the given public and protected classes and their public and protected
+     * nested classes.
+     *
+     * @param processingEnv The processing environment.
+     * @param typeElements  The included classes, usually the root elements of the first processing round.
+     * @return The root document.
+     */
+    public static RootDoc createRootDoc(ProcessingEnvironment processingEnv, Collection<? extends TypeElement> typeElements) {
+        return new ElementDocs(processingEnv).createRootDoc(typeElements);
+    }
+
+    private RootDoc createRootDoc(Collection<? extends TypeElement> typeElements) {
+        final List<ClassDoc> includedClasses = new ArrayList<ClassDoc>(typeElements.size());
+        for (TypeElement typeElement : typeElements) {
+            addIncludedClass(typeElement, includedClasses);
+        }
+        // Member types may reference further classes, which are created without members
+        while (!pendingClasses.isEmpty()) {
+            addMembers(pendingClasses.removeFirst());
+        }
+        return newProxy(RootDoc.class, new RootHandler(includedClasses.toArray(new ClassDoc[includedClasses.size()])));
+    }
+
+    private void addIncludedClass(TypeElement typeElement, List<ClassDoc> includedClasses) {
+        final Set<Modifier> modifiers = typeElement.getModifiers();
+        if (!modifiers.contains(Modifier.PUBLIC) && !modifiers.contains(Modifier.PROTECTED)) {
+            return;
+        }
+        includedClasses.add(getClassDoc(typeElement, true));
+        for (TypeElement nestedElement : ElementFilter.typesIn(typeElement.getEnclosedElements())) {
+            addIncludedClass(nestedElement, includedClasses);
+        }
+    }
+
+    private ClassDoc getClassDoc(TypeElement typeElement, boolean withMembers) {
+        ClassHandler handler = classHandlers.get(typeElement);
+        if (handler == null) {
+            handler = new ClassHandler();
+            final String qualifiedName = typeElement.getQualifiedName().toString();
+            final String packageName = elements.getPackageOf(typeElement).getQualifiedName().toString();
+            handler.qualifiedName = qualifiedName;
+            handler.typeName = packageName.isEmpty() ? qualifiedName : qualifiedName.substring(packageName.length() + 1);
+            handler.simpleTypeName = typeElement.getSimpleName().toString();
+            initProgramElement(handler, typeElement);
+            if (typeElement.getKind() == ElementKind.INTERFACE || typeElement.getKind() == ElementKind.ANNOTATION_TYPE) {
+                handler.flags |= FLAG_INTERFACE;
+            } else if (typeElement.getKind() == ElementKind.ENUM) {
+                handler.flags |= FLAG_ENUM;
+            }
+            handler.fields = new FieldDoc[0];
+            handler.constructors = new ConstructorDoc[0];
+            handler.methods = new MethodDoc[0];
+            handler.classDoc = newProxy(ClassDoc.class, handler);
+            handler.enumConstants = getEnumConstants(typeElement, handler.classDoc);
+            classHandlers.put(typeElement, handler);
+        }
+        if (withMembers && !handler.qualifiedName.equals("java.lang.Object") && memberClasses.add(typeElement)) {
+            pendingClasses.add(typeElement);
+            // members of superclasses are API members of their subclasses
+            final TypeMirror superclass = typeElement.getSuperclass();
+            if (superclass.getKind() == TypeKind.DECLARED) {
+                handler.superclass = getClassDoc((TypeElement) ((DeclaredType) superclass).asElement(), true);
+            }
+        }
+        return handler.classDoc;
+    }
+
+    private FieldDoc[] getEnumConstants(TypeElement typeElement, ClassDoc classDoc) {
+        final List<FieldDoc> enumConstants = new ArrayList<FieldDoc>();
+        if (typeElement.getKind() == ElementKind.ENUM) {
+            for (VariableElement element : ElementFilter.fieldsIn(typeElement.getEnclosedElements())) {
+                if (element.getKind() == ElementKind.ENUM_CONSTANT) {
+                    final MemberHandler handler = new MemberHandler(classDoc);
+                    handler.name = element.getSimpleName().toString();
+                    handler.modifiers = "public static final";
+                    handler.flags = FLAG_PUBLIC | FLAG_STATIC | FLAG_FINAL | FLAG_ENUM;
+                    handler.type = classDoc;
+                    enumConstants.add(newProxy(FieldDoc.class, handler));
+                }
+            }
+        }
+        return enumConstants.toArray(new FieldDoc[enumConstants.size()]);
+    }
+
+    private void addMembers(TypeElement typeElement) {
+        final ClassHandler classHandler = classHandlers.get(typeElement);
+        final ClassDoc classDoc = classHandler.classDoc;
+        final List<? extends Element> enclosedElements = typeElement.getEnclosedElements();
+
+        final List<FieldDoc> fields = new ArrayList<FieldDoc>();
+        for (VariableElement element : ElementFilter.fieldsIn(enclosedElements)) {
+            if (element.getKind() == ElementKind.FIELD && element.getModifiers().contains(Modifier.PUBLIC)) {
+                final MemberHandler handler = createMember(classDoc, element);
+                handler.type = getType(element.asType());
+                handler.constantValue = element.getConstantValue();
+                handler.constantValueExpression = handler.constantValue != null ? elements.getConstantExpression(handler.constantValue) : null;
+                fields.add(newProxy(FieldDoc.class, handler));
+            }
+        }
+
+        final List<ConstructorDoc> constructors = new ArrayList<ConstructorDoc>();
+        for (ExecutableElement element : ElementFilter.constructorsIn(enclosedElements)) {
+            if (element.getModifiers().contains(Modifier.PUBLIC)) {
+                final MemberHandler handler = createExecutableMember(classDoc, element);
+                handler.constructor = true;
+                constructors.add(newProxy(ConstructorDoc.class, handler));
+            }
+        }
+
+        final List<MethodDoc> methods = new ArrayList<MethodDoc>();
+        for (ExecutableElement element : ElementFilter.methodsIn(enclosedElements)) {
+            if (element.getModifiers().contains(Modifier.PUBLIC)) {
+                final MemberHandler handler = createExecutableMember(classDoc, element);
+                handler.type = getType(element.getReturnType());
+                methods.add(newProxy(MethodDoc.class, handler));
+            }
+        }
+
+        classHandler.fields = fields.toArray(new FieldDoc[fields.size()]);
+        classHandler.constructors = constructors.toArray(new ConstructorDoc[constructors.size()]);
+        classHandler.methods = methods.toArray(new MethodDoc[methods.size()]);
+    }
+
+    private MemberHandler createExecutableMember(ClassDoc classDoc, ExecutableElement element) {
+        final MemberHandler handler = createMember(classDoc, element);
+        final List<? extends VariableElement> parameterElements = element.getParameters();
+        handler.parameters = new Parameter[parameterElements.size()];
+        for (int i = 0; i < handler.parameters.length; i++) {
+            final ParameterHandler parameterHandler = new ParameterHandler();
+            parameterHandler.name = parameterElements.get(i).getSimpleName().toString();
+            parameterHandler.type = getType(parameterElements.get(i).asType());
+            handler.parameters[i] = newProxy(Parameter.class, parameterHandler);
+        }
+        return handler;
+    }
+
+    private MemberHandler createMember(ClassDoc classDoc, Element element) {
+        final MemberHandler handler = new MemberHandler(classDoc);
+        handler.name = element.getSimpleName().toString();
+        initProgramElement(handler, element);
+        if (DEPRECATED_TAG_PATTERN.matcher(handler.rawCommentText).find()) {
+            handler.flags |= FLAG_DEPRECATED;
+        }
+        return handler;
+    }
+
+    private void initProgramElement(ProgramElementHandler handler, Element element) {
+        final Set<Modifier> modifiers = element.getModifiers();
+        final StringBuilder sb = new StringBuilder();
+        for (Modifier modifier : Modifier.values()) {
+            if (modifiers.contains(modifier)) {
+                if (sb.length() > 0) {
+                    sb.append(' ');
+                }
+                sb.append(modifier);
+            }
+        }
+        handler.modifiers = sb.toString();
+        if (modifiers.contains(Modifier.PUBLIC)) {
+            handler.flags |= FLAG_PUBLIC;
+        }
+        if (modifiers.contains(Modifier.STATIC)) {
+            handler.flags |= FLAG_STATIC;
+        }
+        if (modifiers.contains(Modifier.FINAL)) {
+            handler.flags |= FLAG_FINAL;
+        }
+        if (modifiers.contains(Modifier.ABSTRACT)) {
+            handler.flags |= FLAG_ABSTRACT;
+        }
+        final String docComment = elements.getDocComment(element);
+        handler.rawCommentText = docComment != null ? docComment : "";
+    }
+
+    /**
+     * Converts a type mirror into a Javadoc type. As in Javadoc, a class type is the class document itself,
+     * type arguments are not taken into account and a type variable is represented by its name.
+     */
+    private Type getType(TypeMirror typeMirror) {
+        if (typeMirror.getKind() == TypeKind.TYPEVAR) {
+            // type variables of the same name may have different bounds
+            return createType(typeMirror);
+        }
+        final String key = typeMirror.toString();
+        Type type = typeCache.get(key);
+        if (type == null) {
+            type = createType(typeMirror);
+            typeCache.put(key, type);
+        }
+        return type;
+    }
+
+    private Type createType(TypeMirror typeMirror) {
+        final TypeKind kind = typeMirror.getKind();
+        if (kind == TypeKind.DECLARED) {
+            return getClassDoc((TypeElement) ((DeclaredType) typeMirror).asElement(), false);
+        }
+        final TypeHandler handler = new TypeHandler();
+        handler.dimension = "";
+        if (kind.isPrimitive() || kind == TypeKind.VOID) {
+            handler.typeName = kind.name().toLowerCase();
+            handler.qualifiedTypeName = handler.typeName;
+            handler.simpleTypeName = handler.typeName;
+            handler.flags = FLAG_PRIMITIVE;
+        } else if (kind == TypeKind.ARRAY) {
+            final Type componentType = getType(((ArrayType) typeMirror).getComponentType());
+            handler.typeName = componentType.typeName();
+            handler.qualifiedTypeName = componentType.qualifiedTypeName();
+            handler.simpleTypeName = componentType.simpleTypeName();
+            handler.dimension = componentType.dimension() + "[]";
+            handler.flags = componentType.isPrimitive() ? FLAG_PRIMITIVE : 0;
+            handler.classDoc = componentType.asClassDoc();
+        } else if (kind == TypeKind.TYPEVAR) {
+            handler.typeName = typeMirror.toString();
+            handler.qualifiedTypeName = handler.typeName;
+            handler.simpleTypeName = handler.typeName;
+            handler.classDoc = getType(types.erasure(typeMirror)).asClassDoc();
+        } else if (kind == TypeKind.WILDCARD) {
+            return getType(types.erasure(typeMirror));
+        } else {
+            // Unresolved types, e.g. if a dependency is not on the source path
+            final String name = typeMirror.toString();
+            handler.typeName = name.substring(name.lastIndexOf('.') + 1);
+            handler.qualifiedTypeName = name;
+            handler.simpleTypeName = handler.typeName;
+        }
+        return newProxy(Type.class, handler);
+    }
+}
@@ -1,10 +1,22 @@
 package org.esa.beam.extapi.gen;
 
+import java.util.List;
+
 /**
  * @author Norman Fomferra
  */
 public interface FunctionGeneratorFactory {
     FunctionGenerator createFunctionGenerator(ApiMethod apiMethod) throws GeneratorException;
 
+    /**
+     * Creates the generators of additional functions for the given method, e.g. functions which take the
+     * parameters of the method in another form.
+     *
+     * @param apiMethod The API method.
+     * @return The generators, may be empty.
+     * @throws GeneratorException If a generator cannot be created.
+     */
+    List<FunctionGenerator> createVariantFunctionGenerators(ApiMethod apiMethod) throws GeneratorException;
+
     ParameterGenerator[] createParameterGenerators(ApiMethod apiMethod) throws GeneratorException;
 }
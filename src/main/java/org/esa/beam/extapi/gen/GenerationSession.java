@@ -0,0 +1,224 @@
+/*
+ * Copyright (C) 2010 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+
+package org.esa.beam.extapi.gen;
+
+import com.sun.javadoc.RootDoc;
+import org.apache.commons.lang.StringUtils;
+import org.esa.beam.extapi.gen.c.CModuleGenerator;
+import org.esa.beam.extapi.gen.py.PyCModuleGenerator;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.Callable;
+
+/**
+ * A single run of the API generator: reads the API, creates the {@link ApiInfo} and generates the C and Python
+ * modules into the session's output directory.
+ * <p/>
+ * A session has its own configuration and keeps no global state, so that sessions, e.g. generating different
+ * binding variants into different output directories, can be run concurrently by an
+ * {@link java.util.concurrent.ExecutorService}. A session instance itself must only be called once at a time.
+ * <p/>
+ * The API is read from the first source which is set: the {@link RootDoc} given by {@link #setRootDoc(RootDoc)},
+ * the {@link ApiSnapshot} given by {@link #setInputSnapshot(File)}, or the sources of the configured packages,
+ * which are parsed using the given {@link FrontEnd}.
+ *
+ * @author Norman Fomferra
+ */
+public class GenerationSession implements Callable<Boolean> {
+
+    /**
+     * The tool used to parse the sources of the API.
+     */
+    public enum FrontEnd {
+        /**
+         * The {@code javadoc} tool with {@link ApiGeneratorDoclet}.
+         */
+        DOCLET,
+        /**
+         * The Java compiler with {@link ApiGeneratorProcessor}.
+         */
+        PROCESSOR,
+    }
+
+    private final ApiGeneratorConfig config;
+    private FrontEnd frontEnd;
+    private RootDoc rootDoc;
+    private File inputSnapshot;
+    private File outputSnapshot;
+    private File outputDir;
+    private ModuleGenerator.EmissionMode emissionMode;
+    private ModuleGenerator.OutputMode outputMode;
+    private boolean incremental;
+    private ApiInfo apiInfo;
+
+    public GenerationSession(ApiGeneratorConfig config) {
+        this.config = config;
+        this.frontEnd = FrontEnd.DOCLET;
+        this.emissionMode = ModuleGenerator.EmissionMode.SERIAL;
+        this.outputMode = ModuleGenerator.OutputMode.SINGLE_SOURCE;
+        this.incremental = true;
+    }
+
+    public ApiGeneratorConfig getConfig() {
+        return config;
+    }
+
+    public FrontEnd getFrontEnd() {
+        return frontEnd;
+    }
+
+    public void setFrontEnd(FrontEnd frontEnd) {
+        this.frontEnd = frontEnd;
+    }
+
+    public RootDoc getRootDoc() {
+        return rootDoc;
+    }
+
+    public void setRootDoc(RootDoc rootDoc) {
+        this.rootDoc = rootDoc;
+    }
+
+    public File getInputSnapshot() {
+        return inputSnapshot;
+    }
+
+    public void setInputSnapshot(File inputSnapshot) {
+        this.inputSnapshot = inputSnapshot;
+    }
+
+    public File getOutputSnapshot() {
+        return outputSnapshot;
+    }
+
+    /**
+     * @param outputSnapshot An {@link ApiSnapshot} file to be written from the API read by this session, may be {@code null}.
+     */
+    public void setOutputSnapshot(File outputSnapshot) {
+        this.outputSnapshot = outputSnapshot;
+    }
+
+    public File getOutputDir() {
+        return outputDir;
+    }
+
+    /**
+     * @param outputDir The output directory of the modules, or {@code null} to use the module generators' defaults.
+     */
+    public void setOutputDir(File outputDir) {
+        this.outputDir = outputDir;
+    }
+
+    public ModuleGenerator.EmissionMode getEmissionMode() {
+        return emissionMode;
+    }
+
+    public void setEmissionMode(ModuleGenerator.EmissionMode emissionMode) {
+        this.emissionMode = emissionMode;
+    }
+
+    public ModuleGenerator.OutputMode getOutputMode() {
+        return outputMode;
+    }
+
+    public void setOutputMode(ModuleGenerator.OutputMode outputMode) {
+        this.outputMode = outputMode;
+    }
+
+    public boolean isIncremental() {
+        return incremental;
+    }
+
+    public void setIncremental(boolean incremental) {
+        this.incremental = incremental;
+    }
+
+    /**
+     * @return The API of the last call, or {@code null} if the session has not been called yet.
+     */
+    public ApiInfo getApiInfo() {
+        return apiInfo;
+    }
+
+    /**
+     * Reads the API and generates the modules.
+     *
+     * @return {@code true} on success, {@code false} if the sources could not be parsed.
+     * @throws IOException If an I/O error occurs.
+     */
+    @Override
+    public Boolean call() throws IOException {
+        if (rootDoc != null) {
+            generate(rootDoc);
+            return true;
+        }
+        if (inputSnapshot != null) {
+            generate(ApiSnapshot.read(inputSnapshot));
+            return true;
+        }
+        final IOException[] error = new IOException[1];
+        final ApiGeneratorDoclet.Handler handler = new ApiGeneratorDoclet.Handler() {
+            @Override
+            public boolean start(RootDoc root) {
+                try {
+                    generate(root);
+                    return true;
+                } catch (IOException e) {
+                    error[0] = e;
+                    return false;
+                }
+            }
+        };
+        final String sourcePaths = StringUtils.join(config.getSourcePaths(), File.pathSeparatorChar);
+        final boolean success;
+        if (frontEnd == FrontEnd.PROCESSOR) {
+            success = ApiGeneratorProcessor.run(handler, sourcePaths, config.getPackages());
+        } else {
+            success = ApiGeneratorDoclet.run(handler, sourcePaths, config.getPackages());
+        }
+        if (error[0] != null) {
+            throw error[0];
+        }
+        return success;
+    }
+
+    /**
+     * Generates the modules from the given root document.
+     *
+     * @param root The root document.
+     * @throws IOException If an I/O error occurs.
+     */
+    public void generate(RootDoc root) throws IOException {
+        if (outputSnapshot != null) {
+            ApiSnapshot.write(root, outputSnapshot);
+            System.out.println("API snapshot written to " + outputSnapshot);
+        }
+        apiInfo = ApiInfo.create(config, root);
+        final CModuleGenerator cModuleGenerator = new CModuleGenerator(apiInfo);
+        final PyCModuleGenerator pyCModuleGenerator = new PyCModuleGenerator(cModuleGenerator);
+        for (ModuleGenerator moduleGenerator : new ModuleGenerator[]{cModuleGenerator, pyCModuleGenerator}) {
+            if (outputDir != null) {
+                moduleGenerator.setOutputDir(outputDir);
+            }
+            moduleGenerator.setEmissionMode(emissionMode);
+            moduleGenerator.setOutputMode(outputMode);
+            moduleGenerator.setIncremental(incremental);
+            moduleGenerator.run();
+        }
+    }
+}
@@ -1,8 +1,10 @@
 package org.esa.beam.extapi.gen;
 
+import com.sun.javadoc.ClassDoc;
 import com.sun.javadoc.Doc;
 import com.sun.javadoc.ProgramElementDoc;
 import com.sun.javadoc.Type;
+import com.sun.javadoc.TypeVariable;
 import org.apache.commons.lang.StringUtils;
 
 import java.util.ArrayList;
@@ -34,6 +36,33 @@ public class JavadocHelpers {
         }
     }
 
+    /**
+     * @return The qualified Java name of the given type, type variables are replaced by their first bound.
+     */
+    public static String getJavaTypeName(Type type) {
+        final TypeVariable typeVariable = type.asTypeVariable();
+        if (typeVariable != null) {
+            final Type[] bounds = typeVariable.bounds();
+            return (bounds.length > 0 ? bounds[0].qualifiedTypeName() : "java.lang.Object") + type.dimension();
+        }
+        if (isTypeVariable(type)) {
+            return type.asClassDoc().qualifiedName() + type.dimension();
+        }
+        return type.qualifiedTypeName() + type.dimension();
+    }
+
+    /**
+     * Tests whether the given type is a type variable. The types of the annotation processor front end and of
+     * API snapshots do not model type variables, they are recognised by their class, which is their erasure.
+     */
+    public static boolean isTypeVariable(Type type) {
+        if (type.asTypeVariable() != null) {
+            return true;
+        }
+        final ClassDoc classDoc = type.asClassDoc();
+        return !type.isPrimitive() && classDoc != null && !classDoc.qualifiedName().equals(type.qualifiedTypeName());
+    }
+
     public static boolean isVoid(Type type) {
         return type.qualifiedTypeName().equals("void");
     }
@@ -81,6 +110,9 @@ public class JavadocHelpers {
     }
 
     public static String convertToPythonDoc(ApiInfo apiInfo, Doc doc, String indent, boolean cCodeString) {
+        if (doc == null) {
+            return "";
+        }
         String text = doc.getRawCommentText();
         if (text == null) {
             return "";
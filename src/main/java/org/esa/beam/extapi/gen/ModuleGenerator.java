@@ -17,11 +17,22 @@
 package org.esa.beam.extapi.gen;
 
 import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.PrintWriter;
+import java.io.Reader;
+import java.io.StringWriter;
 import java.io.Writer;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import static org.esa.beam.extapi.gen.TemplateEval.KV;
 
@@ -30,33 +41,137 @@ import static org.esa.beam.extapi.gen.TemplateEval.KV;
  */
 public abstract class ModuleGenerator implements GeneratorContext {
 
+    /**
+     * Controls how function definitions are emitted.
+     */
+    public enum EmissionMode {
+        /**
+         * Function definitions are rendered one after the other by the calling thread.
+         */
+        SERIAL,
+        /**
+         * The function definitions of each API class are rendered concurrently into separate buffers, which are
+         * then concatenated in API class order. The output is identical to the {@link #SERIAL} output.
+         */
+        PARALLEL
+    }
+
+    /**
+     * Controls how the C source code of a module is organised.
+     */
+    public enum OutputMode {
+        /**
+         * All code of a module is written into a single C source file {@code <module>.c}.
+         */
+        SINGLE_SOURCE,
+        /**
+         * The function definitions of each API class are written into a C source file {@code <module>_<class>.c}.
+         * The module's global variables, stubs and tables are written into {@code <module>.c}, the declarations
+         * shared by all source files into the private header {@code <module>_private.h}.
+         */
+        SOURCE_PER_CLASS
+    }
+
+    public static final String MANIFEST_FILE_EXT = ".manifest";
+
     private final ApiInfo apiInfo;
+    private final Set<ApiClass> apiClasses;
     private final Map<ApiClass, List<FunctionGenerator>> functionGenerators;
+    private final Set<FunctionGenerator> variantFunctionGenerators;
+    private boolean duplicateFunctionsRemoved;
     private final TemplateEval templateEval;
+    private EmissionMode emissionMode;
+    private OutputMode outputMode;
+    private File outputDir;
+    private boolean incremental;
+    private ModuleManifest lastManifest;
+    private ModuleManifest manifest;
 
-    protected ModuleGenerator(ApiInfo apiInfo, FunctionGeneratorFactory factory) {
+    protected ModuleGenerator(ApiInfo apiInfo, FunctionGeneratorFactory factory, File outputDir) {
         this.apiInfo = apiInfo;
-        functionGenerators = createFunctionGenerators(apiInfo, factory);
+        this.outputDir = outputDir;
+        apiClasses = Collections.unmodifiableSet(new TreeSet<ApiClass>(apiInfo.getApiClasses()));
+        variantFunctionGenerators = Collections.newSetFromMap(new IdentityHashMap<FunctionGenerator, Boolean>());
+        functionGenerators = createFunctionGenerators(apiInfo, factory, variantFunctionGenerators);
         templateEval = TemplateEval.create();
+        emissionMode = EmissionMode.SERIAL;
+        outputMode = OutputMode.SINGLE_SOURCE;
+        incremental = true;
     }
 
     public ApiInfo getApiInfo() {
         return apiInfo;
     }
 
+    /**
+     * @return The API classes, sorted by their Java names.
+     */
     public Set<ApiClass> getApiClasses() {
-        return apiInfo.getApiClasses();
+        return apiClasses;
     }
 
     public TemplateEval getTemplateEval() {
         return templateEval;
     }
 
+    public EmissionMode getEmissionMode() {
+        return emissionMode;
+    }
+
+    public void setEmissionMode(EmissionMode emissionMode) {
+        this.emissionMode = emissionMode;
+    }
+
+    public OutputMode getOutputMode() {
+        return outputMode;
+    }
+
+    public void setOutputMode(OutputMode outputMode) {
+        this.outputMode = outputMode;
+    }
+
+    public File getOutputDir() {
+        return outputDir;
+    }
+
+    public void setOutputDir(File outputDir) {
+        this.outputDir = outputDir;
+    }
+
+    public boolean isIncremental() {
+        return incremental;
+    }
+
+    /**
+     * @param incremental If {@code true}, the module is not generated again if the fingerprints of its API classes
+     *                    and methods are the same as in the manifest of the last run and none of the files written
+     *                    by the last run have been modified.
+     */
+    public void setIncremental(boolean incremental) {
+        this.incremental = incremental;
+    }
+
+    /**
+     * @return The manifest of the current run, or {@code null} if {@link #run()} has not been called.
+     */
+    public ModuleManifest getManifest() {
+        return manifest;
+    }
+
     public String format(String pattern, KV ... pairs) {
-        return templateEval.add(pairs).eval(pattern);
+        return templateEval.evalWith(pattern, pairs);
     }
 
+    /**
+     * @throws IllegalStateException If two functions of the class have the same name, caused by a
+     *                               {@link GeneratorException}.
+     */
     public List<FunctionGenerator> getFunctionGenerators(ApiClass apiClass) {
+        try {
+            removeDuplicateFunctions();
+        } catch (GeneratorException e) {
+            throw new IllegalStateException(e.getMessage(), e);
+        }
         List<FunctionGenerator> generatorList = functionGenerators.get(apiClass);
         return generatorList != null ? generatorList : new ArrayList<FunctionGenerator>(0);
     }
@@ -71,6 +186,103 @@ public abstract class ModuleGenerator implements GeneratorContext {
     public void run() throws IOException {
         getTemplateEval().add("libName", getModuleName());
         getTemplateEval().add("libNameUC", getModuleName().toUpperCase().replace("-", "_"));
+
+        final File manifestFile = new File(outputDir, getModuleName() + MANIFEST_FILE_EXT);
+        lastManifest = incremental ? ModuleManifest.load(manifestFile) : null;
+        manifest = ModuleManifest.create(this);
+        if (manifest.isSameModule(lastManifest) && isUpToDate(lastManifest)) {
+            System.out.printf("%s: module is up-to-date, skipped\n", getModuleName());
+            return;
+        }
+        if (lastManifest != null) {
+            System.out.printf("%s: %d class(es), %d method(s) changed\n", getModuleName(),
+                              manifest.getChangedClasses(lastManifest).size(),
+                              manifest.getChangedMethods(lastManifest).size());
+        }
+        writeModule();
+        if (lastManifest != null) {
+            deleteObsoleteFiles(lastManifest);
+        }
+        manifest.store(manifestFile);
+    }
+
+    /**
+     * Writes all files of the module using {@link #writeOutputFile(String, String)}.
+     *
+     * @throws IOException If an I/O error occurs.
+     */
+    protected abstract void writeModule() throws IOException;
+
+    /**
+     * Writes a file of the module into the output directory. An existing file is only rewritten
+     * if its content differs from the given content.
+     *
+     * @param fileName The file name.
+     * @param content  The file content.
+     * @return {@code true} if the file has been written.
+     * @throws IOException If an I/O error occurs.
+     */
+    protected boolean writeOutputFile(String fileName, String content) throws IOException {
+        if (manifest != null) {
+            manifest.setFileHash(fileName, ModuleManifest.getContentHash(content));
+        }
+        final File file = new File(outputDir, fileName);
+        if (file.isFile() && ModuleManifest.isSameContent(readFile(file), content)) {
+            System.out.printf("%s: %s is unchanged\n", getModuleName(), fileName);
+            return false;
+        }
+        final Writer writer = new FileWriter(file);
+        try {
+            writer.write(content);
+        } finally {
+            writer.close();
+        }
+        System.out.printf("%s: %s written\n", getModuleName(), fileName);
+        return true;
+    }
+
+    /**
+     * Deletes the files written by the last run which have not been written by the current run,
+     * e.g. the source files of API classes that have been removed.
+     */
+    private void deleteObsoleteFiles(ModuleManifest lastManifest) {
+        for (String fileName : lastManifest.getFileHashes().keySet()) {
+            if (manifest.getFileHash(fileName) == null) {
+                final File file = new File(outputDir, fileName);
+                if (file.isFile() && file.delete()) {
+                    System.out.printf("%s: %s deleted\n", getModuleName(), fileName);
+                }
+            }
+        }
+    }
+
+    private boolean isUpToDate(ModuleManifest lastManifest) throws IOException {
+        final Map<String, String> fileHashes = lastManifest.getFileHashes();
+        if (fileHashes.isEmpty()) {
+            return false;
+        }
+        for (Map.Entry<String, String> entry : fileHashes.entrySet()) {
+            final File file = new File(outputDir, entry.getKey());
+            if (!file.isFile() || !entry.getValue().equals(ModuleManifest.getContentHash(readFile(file)))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static String readFile(File file) throws IOException {
+        final Reader reader = new FileReader(file);
+        try {
+            final StringBuilder sb = new StringBuilder((int) file.length());
+            final char[] buffer = new char[16 * 1024];
+            int n;
+            while ((n = reader.read(buffer)) > 0) {
+                sb.append(buffer, 0, n);
+            }
+            return sb.toString();
+        } finally {
+            reader.close();
+        }
     }
 
     protected void writeCHeader(Writer writer) throws IOException {
@@ -101,27 +313,242 @@ public abstract class ModuleGenerator implements GeneratorContext {
     }
 
     protected void writeFunctionDefinition(FunctionGenerator functionGenerator, PrintWriter writer) throws IOException {
-        writer.printf("%s\n", functionGenerator.generateFunctionSignature(this));
-        writer.print("{\n");
+        writer.print(functionGenerator.generateFunctionSignature(this));
+        writer.print("\n{\n");
         writeLocalMethodVarDecl(writer);
-        for (ParameterGenerator parameterGenerator : functionGenerator.getParameterGenerators()) {
-            writeCode(writer, parameterGenerator.generateLocalVarDecl(this));
+        final StreamingFunctionGenerator generator = StreamingGenerators.of(functionGenerator);
+        final StreamingParameterGenerator[] parameterGenerators = StreamingGenerators.of(functionGenerator.getParameterGenerators());
+        final CodeWriter codeWriter = new CodeWriter(writer).indent();
+        for (StreamingParameterGenerator parameterGenerator : parameterGenerators) {
+            parameterGenerator.writeLocalVarDecl(this, codeWriter);
         }
-        writeCode(writer, functionGenerator.generateLocalVarDecl(this));
-        writeCode(writer, functionGenerator.generateInitCode(this));
+        generator.writeLocalVarDecl(this, codeWriter);
+        generator.writeInitCode(this, codeWriter);
+        codeWriter.endLine();
         writeInitCode(writer, functionGenerator);
-        for (ParameterGenerator parameterGenerator : functionGenerator.getParameterGenerators()) {
-            writeCode(writer, parameterGenerator.generatePreCallCode(this));
+        for (StreamingParameterGenerator parameterGenerator : parameterGenerators) {
+            parameterGenerator.writePreCallCode(this, codeWriter);
+        }
+        generator.writePreCallCode(this, codeWriter);
+        generator.writeCallCode(this, codeWriter);
+        generator.writePostCallCode(this, codeWriter);
+        for (StreamingParameterGenerator parameterGenerator : parameterGenerators) {
+            parameterGenerator.writePostCallCode(this, codeWriter);
+        }
+        generator.writeReturnCode(this, codeWriter);
+        codeWriter.endLine();
+        writer.print("}\n\n");
+    }
+
+    /**
+     * Writes the function definitions of all API classes using the current {@link EmissionMode}.
+     *
+     * @param writer The writer.
+     * @throws IOException If an I/O error occurs.
+     */
+    protected void writeFunctionDefinitions(PrintWriter writer) throws IOException {
+        if (emissionMode == EmissionMode.PARALLEL) {
+            writeFunctionDefinitionsParallel(writer);
+        } else {
+            for (ApiClass apiClass : getApiClasses()) {
+                writeFunctionDefinitions(apiClass, writer);
+            }
+        }
+    }
+
+    protected void writeFunctionDefinitions(ApiClass apiClass, PrintWriter writer) throws IOException {
+        for (FunctionGenerator generator : getFunctionGenerators(apiClass)) {
+            writeFunctionDefinition(generator, writer);
         }
-        writeCode(writer, functionGenerator.generatePreCallCode(this));
-        writeCode(writer, functionGenerator.generateCallCode(this));
-        writeCode(writer, functionGenerator.generatePostCallCode(this));
-        for (ParameterGenerator parameterGenerator : functionGenerator.getParameterGenerators()) {
-            writeCode(writer, parameterGenerator.generatePostCallCode(this));
+    }
+
+    private void writeFunctionDefinitionsParallel(PrintWriter writer) throws IOException {
+        final List<String> contents = renderClasses(getApiClasses(), new ClassWriter() {
+            @Override
+            public void write(ApiClass apiClass, PrintWriter writer) throws IOException {
+                writeFunctionDefinitions(apiClass, writer);
+            }
+        });
+        for (String content : contents) {
+            writer.write(content);
+        }
+    }
+
+    /**
+     * Writes one C source file per API class, used in {@link OutputMode#SOURCE_PER_CLASS} mode. If the module
+     * is generated incrementally, the source files of classes whose fingerprints did not change since the last
+     * run are neither generated nor written again.
+     *
+     * @return The names of the source files of all API classes.
+     * @throws IOException If an I/O error occurs.
+     */
+    protected List<String> writeClassSources() throws IOException {
+        final List<String> fileNames = new ArrayList<String>(getApiClasses().size());
+        final List<ApiClass> changedClasses = new ArrayList<ApiClass>(getApiClasses().size());
+        for (ApiClass apiClass : getApiClasses()) {
+            final String fileName = getClassSourceFileName(apiClass);
+            fileNames.add(fileName);
+            if (isUnchanged(apiClass, fileName)) {
+                manifest.setFileHash(fileName, lastManifest.getFileHash(fileName));
+            } else {
+                changedClasses.add(apiClass);
+            }
+        }
+        final List<String> contents = renderClasses(changedClasses, new ClassWriter() {
+            @Override
+            public void write(ApiClass apiClass, PrintWriter writer) throws IOException {
+                writeClassSource(apiClass, writer);
+            }
+        });
+        for (int i = 0; i < changedClasses.size(); i++) {
+            writeOutputFile(getClassSourceFileName(changedClasses.get(i)), contents.get(i));
+        }
+        return fileNames;
+    }
+
+    protected void writeClassSource(ApiClass apiClass, PrintWriter writer) throws IOException {
+        writeFileInfo(writer);
+        writer.printf("#include \"%s\"\n", getPrivateHeaderFileName());
+        writer.printf("\n");
+        writeFunctionDefinitions(apiClass, writer);
+    }
+
+    public String getClassSourceFileName(ApiClass apiClass) {
+        return getModuleName() + "_" + apiClass.getType().typeName().replace('.', '_') + ".c";
+    }
+
+    public String getPrivateHeaderFileName() {
+        return getModuleName() + "_private.h";
+    }
+
+    /**
+     * Writes the file {@code <module>.mk} which defines the make variables {@code <MODULE>_SRCS} and
+     * {@code <MODULE>_HDRS}, the lists of C source and header files of the module.
+     *
+     * @param sourceFileNames The C source files.
+     * @param headerFileNames The C header files.
+     * @throws IOException If an I/O error occurs.
+     */
+    protected void writeMakefile(List<String> sourceFileNames, List<String> headerFileNames) throws IOException {
+        final String varPrefix = getModuleName().toUpperCase().replace("-", "_");
+        final StringWriter content = new StringWriter();
+        final PrintWriter writer = new PrintWriter(content);
+        writer.printf("#\n");
+        writer.printf("# DO NOT EDIT THIS FILE, IT IS MACHINE-GENERATED\n");
+        writer.printf("# Included by the Makefile in the project directory\n");
+        writer.printf("#\n");
+        writer.printf("\n");
+        writeMakeVar(writer, varPrefix + "_SRCS", sourceFileNames);
+        writer.printf("\n");
+        writeMakeVar(writer, varPrefix + "_HDRS", headerFileNames);
+        writer.close();
+        writeOutputFile(getModuleName() + ".mk", content.toString());
+    }
+
+    private static void writeMakeVar(PrintWriter writer, String name, List<String> fileNames) {
+        writer.printf("%s =", name);
+        for (String fileName : fileNames) {
+            writer.printf(" \\\n    $(GEN_DIR)/%s", fileName);
+        }
+        writer.printf("\n");
+    }
+
+    /**
+     * Writes a variable declaration.
+     *
+     * @param writer       The writer.
+     * @param storageClass The storage class, e.g. "static", "extern" or an empty string.
+     * @param declaration  The declaration, e.g. "JNIEnv* jenv".
+     * @param initValue    The initial value, or {@code null}. Not used for extern declarations.
+     */
+    protected static void writeVarDecl(PrintWriter writer, String storageClass, String declaration, String initValue) {
+        if (!storageClass.isEmpty()) {
+            writer.printf("%s ", storageClass);
+        }
+        if (initValue != null && !storageClass.equals("extern")) {
+            writer.printf("%s = %s;\n", declaration, initValue);
+        } else {
+            writer.printf("%s;\n", declaration);
+        }
+    }
+
+    private boolean isUnchanged(ApiClass apiClass, String fileName) throws IOException {
+        if (lastManifest == null || !manifest.getVersion().equals(lastManifest.getVersion())) {
+            return false;
+        }
+        final String classFingerprint = manifest.getClassFingerprint(apiClass.getJavaName());
+        final String fileHash = lastManifest.getFileHash(fileName);
+        final File file = new File(outputDir, fileName);
+        return classFingerprint.equals(lastManifest.getClassFingerprint(apiClass.getJavaName()))
+                && fileHash != null
+                && file.isFile()
+                && fileHash.equals(ModuleManifest.getContentHash(readFile(file)));
+    }
+
+    private interface ClassWriter {
+        void write(ApiClass apiClass, PrintWriter writer) throws IOException;
+    }
+
+    /**
+     * Renders the given API classes into separate buffers, concurrently in {@link EmissionMode#PARALLEL} mode.
+     *
+     * @param apiClasses  The API classes.
+     * @param classWriter Writes the code of a single API class.
+     * @return The rendered code in API class order.
+     * @throws IOException If an I/O error occurs.
+     */
+    private List<String> renderClasses(Collection<ApiClass> apiClasses, final ClassWriter classWriter) throws IOException {
+        final List<Callable<String>> tasks = new ArrayList<Callable<String>>(apiClasses.size());
+        for (final ApiClass apiClass : apiClasses) {
+            tasks.add(new Callable<String>() {
+                @Override
+                public String call() throws IOException {
+                    final StringWriter buffer = new StringWriter(16 * 1024);
+                    final PrintWriter bufferWriter = new PrintWriter(buffer);
+                    classWriter.write(apiClass, bufferWriter);
+                    bufferWriter.flush();
+                    return buffer.toString();
+                }
+            });
+        }
+        final List<String> contents = new ArrayList<String>(tasks.size());
+        if (emissionMode != EmissionMode.PARALLEL) {
+            for (Callable<String> task : tasks) {
+                try {
+                    contents.add(task.call());
+                } catch (IOException e) {
+                    throw e;
+                } catch (Exception e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+            return contents;
+        }
+        final int numThreads = Runtime.getRuntime().availableProcessors();
+        final ExecutorService executorService = Executors.newFixedThreadPool(numThreads);
+        try {
+            final List<Future<String>> futures = new ArrayList<Future<String>>(tasks.size());
+            for (Callable<String> task : tasks) {
+                futures.add(executorService.submit(task));
+            }
+            for (Future<String> future : futures) {
+                contents.add(future.get());
+            }
+            return contents;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("interrupted while emitting function definitions", e);
+        } catch (ExecutionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IOException(cause);
+        } finally {
+            executorService.shutdownNow();
         }
-        writeCode(writer, functionGenerator.generateReturnCode(this));
-        writer.print("}\n");
-        writer.print("\n");
     }
 
     protected abstract void writeLocalMethodVarDecl(PrintWriter writer) throws IOException;
@@ -129,21 +556,32 @@ public abstract class ModuleGenerator implements GeneratorContext {
     protected abstract void writeInitCode(PrintWriter writer, FunctionGenerator functionGenerator) throws IOException;
 
     protected void writeCode(PrintWriter writer, String code) throws IOException {
-        String[] callCode = generateLines(code);
-        for (String line : callCode) {
-            writer.printf("    %s\n", line);
-        }
+        new CodeWriter(writer).indent().writeCode(code);
     }
 
     protected void writeResource(Writer writer, String resourceName, KV ... pairs) throws IOException {
-        final BufferedReader bufferedReader = new BufferedReader(new InputStreamReader(getClass().getResourceAsStream(resourceName)));
+        final BufferedReader bufferedReader = new BufferedReader(new InputStreamReader(getResourceAsStream(resourceName)));
         try {
-            templateEval.add(pairs).eval(bufferedReader, writer);
+            templateEval.eval(bufferedReader, writer, pairs);
         } finally {
             bufferedReader.close();
         }
     }
 
+    /**
+     * Resources are looked up relative to the generator class which declares them, so that subclasses
+     * in other packages find them too.
+     */
+    private InputStream getResourceAsStream(String resourceName) {
+        for (Class<?> type = getClass(); type != null; type = type.getSuperclass()) {
+            final InputStream stream = type.getResourceAsStream(resourceName);
+            if (stream != null) {
+                return stream;
+            }
+        }
+        throw new IllegalArgumentException("resource not found: " + resourceName);
+    }
+
     protected void writeFileInfo(PrintWriter writer) {
         writer.write(String.format("/*\n" +
                                            " * DO NOT EDIT THIS FILE, IT IS MACHINE-GENERATED\n" +
@@ -152,14 +590,50 @@ public abstract class ModuleGenerator implements GeneratorContext {
         writer.write("\n");
     }
 
-    protected String[] generateLines(String code) {
-        if (code == null || code.length() == 0) {
-            return new String[0];
+    /**
+     * Removes the variant function generators, e.g. {@code ...Interned}, whose function name is already used by
+     * another function of the same class. The functions of the API methods are never removed, their names must be
+     * unique. Function names are only known after the subclass has been constructed, so this is done on the first
+     * access.
+     */
+    private synchronized void removeDuplicateFunctions() throws GeneratorException {
+        if (duplicateFunctionsRemoved) {
+            return;
+        }
+        for (ApiClass apiClass : new TreeSet<ApiClass>(functionGenerators.keySet())) {
+            final List<FunctionGenerator> generators = functionGenerators.get(apiClass);
+            final Map<String, FunctionGenerator> functions = new HashMap<String, FunctionGenerator>();
+            for (FunctionGenerator generator : generators) {
+                if (!variantFunctionGenerators.contains(generator)) {
+                    final String functionName = generator.getFunctionName(this);
+                    final FunctionGenerator other = functions.put(functionName, generator);
+                    if (other != null) {
+                        throw new GeneratorException(String.format("class %s: methods %s and %s have the same function name %s",
+                                                                   apiClass.getJavaName(),
+                                                                   other.getApiMethod().getJavaName(),
+                                                                   generator.getApiMethod().getJavaName(),
+                                                                   functionName));
+                    }
+                }
+            }
+            final Iterator<FunctionGenerator> iterator = generators.iterator();
+            while (iterator.hasNext()) {
+                final FunctionGenerator generator = iterator.next();
+                if (variantFunctionGenerators.contains(generator)) {
+                    final String functionName = generator.getFunctionName(this);
+                    if (functions.containsKey(functionName)) {
+                        iterator.remove();
+                    } else {
+                        functions.put(functionName, generator);
+                    }
+                }
+            }
         }
-        return code.split("\n");
+        duplicateFunctionsRemoved = true;
     }
 
-    private static Map<ApiClass, List<FunctionGenerator>> createFunctionGenerators(ApiInfo apiInfo, FunctionGeneratorFactory factory) {
+    private static Map<ApiClass, List<FunctionGenerator>> createFunctionGenerators(ApiInfo apiInfo, FunctionGeneratorFactory factory,
+                                                                              Set<FunctionGenerator> variantFunctionGenerators) {
         Map<ApiClass, List<FunctionGenerator>> map = new HashMap<ApiClass, List<FunctionGenerator>>();
         Set<ApiClass> apiClasses = apiInfo.getApiClasses();
         for (ApiClass apiClass : apiClasses) {
@@ -169,6 +643,9 @@ public abstract class ModuleGenerator implements GeneratorContext {
                 try {
                     FunctionGenerator functionGenerator = factory.createFunctionGenerator(apiMethod);
                     functionGenerators.add(functionGenerator);
+                    List<FunctionGenerator> variants = factory.createVariantFunctionGenerators(apiMethod);
+                    functionGenerators.addAll(variants);
+                    variantFunctionGenerators.addAll(variants);
                 } catch (GeneratorException e) {
                     System.out.printf("error: %s\n", e.getMessage());
                 }
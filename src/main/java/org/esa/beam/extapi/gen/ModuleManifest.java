@@ -0,0 +1,454 @@
+/*
+ * Copyright (C) 2010 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+
+package org.esa.beam.extapi.gen;
+
+import com.sun.javadoc.ClassDoc;
+import com.sun.javadoc.FieldDoc;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.URISyntaxException;
+import java.security.CodeSource;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+
+/**
+ * The fingerprints of the API classes and methods a module has been generated from, and the content
+ * hashes of the files it has written. A manifest is stored next to the generated files and is used to find out
+ * whether a module must be regenerated at all, and whether a generated file must be rewritten.
+ * <p/>
+ * A fingerprint covers everything a generator derives its output from: signatures, Java modifiers, the parameter
+ * modifiers and function names given by the {@link ApiGeneratorConfig}, the Javadoc used for the Python docs and
+ * the {@link #GENERATOR_VERSION}. The module fingerprint also covers the {@link #getGeneratorFingerprint() code}
+ * of the generators, i.e. their classes, the code templates in them and the stub resources, so that a module
+ * is regenerated whenever the generators are modified.
+ *
+ * @author Norman Fomferra
+ */
+public final class ModuleManifest {
+
+    /**
+     * Should be increased whenever a change of the generators changes the generated code. Changes of the generator
+     * classes and stub resources are detected by the {@link #getGeneratorFingerprint() generator fingerprint} anyway.
+     */
+    public static final String GENERATOR_VERSION = "1.14";
+
+    private static final String VERSION_KEY = "generator.version";
+    private static final String MODULE_KEY = "module";
+    private static final String CLASS_KEY_PREFIX = "class.";
+    private static final String METHOD_KEY_PREFIX = "method.";
+    private static final String FILE_KEY_PREFIX = "file.";
+
+    /**
+     * The line of the file header written by {@link ModuleGenerator#writeFileInfo} which contains the creation date.
+     * It is ignored when file contents are compared.
+     */
+    private static final String FILE_INFO_DATE_LINE = " * File created at ";
+
+    private static String generatorFingerprint;
+
+    private final String version;
+    private final String moduleFingerprint;
+    private final Map<String, String> classFingerprints;
+    private final Map<String, String> methodFingerprints;
+    private final Map<String, String> fileHashes;
+
+    private ModuleManifest(String version,
+                           String moduleFingerprint,
+                           Map<String, String> classFingerprints,
+                           Map<String, String> methodFingerprints,
+                           Map<String, String> fileHashes) {
+        this.version = version;
+        this.moduleFingerprint = moduleFingerprint;
+        this.classFingerprints = classFingerprints;
+        this.methodFingerprints = methodFingerprints;
+        this.fileHashes = fileHashes;
+    }
+
+    /**
+     * Computes the manifest of the given module. The new manifest has no file hashes.
+     *
+     * @param context The module generator.
+     * @return The manifest.
+     */
+    public static ModuleManifest create(ModuleGenerator context) {
+        final ApiInfo apiInfo = context.getApiInfo();
+        final Map<String, String> classFingerprints = new TreeMap<String, String>();
+        final Map<String, String> methodFingerprints = new TreeMap<String, String>();
+        final Digest moduleDigest = new Digest();
+        moduleDigest.add(GENERATOR_VERSION).add(getGeneratorFingerprint());
+        moduleDigest.add(context.getModuleName()).add(context.getOutputMode());
+        for (ApiClass apiClass : new TreeSet<ApiClass>(apiInfo.getAllClasses())) {
+            final Digest classDigest = new Digest();
+            classDigest.add(GENERATOR_VERSION).add(apiClass.getJavaName());
+            classDigest.add(apiInfo.getApiClasses().contains(apiClass));
+            final ClassDoc classDoc = apiClass.getType().asClassDoc();
+            if (classDoc != null) {
+                classDigest.add(classDoc.isEnum()).add(classDoc.getRawCommentText());
+            }
+            for (ApiConstant constant : apiInfo.getConstantsOf(apiClass)) {
+                final FieldDoc fieldDoc = constant.getFieldDoc();
+                classDigest.add(constant.getJavaName()).add(constant.getJavaSignature());
+                classDigest.add(fieldDoc.constantValueExpression());
+            }
+            for (FunctionGenerator generator : context.getFunctionGenerators(apiClass)) {
+                final ApiMethod apiMethod = generator.getApiMethod();
+                final String methodFingerprint = getFingerprint(context, generator);
+                methodFingerprints.put(apiMethod.getEnclosingClass().getJavaName() + "#" + apiMethod.getJavaName() + apiMethod.getJavaSignature(),
+                                       methodFingerprint);
+                classDigest.add(methodFingerprint);
+            }
+            final String classFingerprint = classDigest.toString();
+            classFingerprints.put(apiClass.getJavaName(), classFingerprint);
+            moduleDigest.add(apiClass.getJavaName()).add(classFingerprint);
+        }
+        return new ModuleManifest(GENERATOR_VERSION,
+                                  moduleDigest.toString(),
+                                  classFingerprints,
+                                  methodFingerprints,
+                                  new TreeMap<String, String>());
+    }
+
+    /**
+     * Loads a manifest.
+     *
+     * @param file The manifest file.
+     * @return The manifest, or {@code null} if the file does not exist.
+     * @throws IOException If an I/O error occurs.
+     */
+    public static ModuleManifest load(File file) throws IOException {
+        if (!file.isFile()) {
+            return null;
+        }
+        final Properties properties = new Properties();
+        final InputStream stream = new FileInputStream(file);
+        try {
+            properties.load(stream);
+        } finally {
+            stream.close();
+        }
+        final Map<String, String> classFingerprints = new TreeMap<String, String>();
+        final Map<String, String> methodFingerprints = new TreeMap<String, String>();
+        final Map<String, String> fileHashes = new TreeMap<String, String>();
+        for (String key : properties.stringPropertyNames()) {
+            final String value = properties.getProperty(key);
+            if (key.startsWith(CLASS_KEY_PREFIX)) {
+                classFingerprints.put(key.substring(CLASS_KEY_PREFIX.length()), value);
+            } else if (key.startsWith(METHOD_KEY_PREFIX)) {
+                methodFingerprints.put(key.substring(METHOD_KEY_PREFIX.length()), value);
+            } else if (key.startsWith(FILE_KEY_PREFIX)) {
+                fileHashes.put(key.substring(FILE_KEY_PREFIX.length()), value);
+            }
+        }
+        return new ModuleManifest(properties.getProperty(VERSION_KEY),
+                                  properties.getProperty(MODULE_KEY),
+                                  classFingerprints,
+                                  methodFingerprints,
+                                  fileHashes);
+    }
+
+    public void store(File file) throws IOException {
+        final Properties properties = new Properties();
+        properties.setProperty(VERSION_KEY, version);
+        properties.setProperty(MODULE_KEY, moduleFingerprint);
+        for (Map.Entry<String, String> entry : classFingerprints.entrySet()) {
+            properties.setProperty(CLASS_KEY_PREFIX + entry.getKey(), entry.getValue());
+        }
+        for (Map.Entry<String, String> entry : methodFingerprints.entrySet()) {
+            properties.setProperty(METHOD_KEY_PREFIX + entry.getKey(), entry.getValue());
+        }
+        for (Map.Entry<String, String> entry : fileHashes.entrySet()) {
+            properties.setProperty(FILE_KEY_PREFIX + entry.getKey(), entry.getValue());
+        }
+        final OutputStream stream = new FileOutputStream(file);
+        try {
+            properties.store(stream, "DO NOT EDIT THIS FILE, IT IS MACHINE-GENERATED");
+        } finally {
+            stream.close();
+        }
+    }
+
+    public String getVersion() {
+        return version;
+    }
+
+    public String getModuleFingerprint() {
+        return moduleFingerprint;
+    }
+
+    public String getClassFingerprint(String className) {
+        return classFingerprints.get(className);
+    }
+
+    /**
+     * @param methodKey The method key, which is {@code <className>#<methodName><signature>}.
+     * @return The fingerprint of the method, or {@code null}.
+     */
+    public String getMethodFingerprint(String methodKey) {
+        return methodFingerprints.get(methodKey);
+    }
+
+    public Map<String, String> getFileHashes() {
+        return Collections.unmodifiableMap(fileHashes);
+    }
+
+    public String getFileHash(String fileName) {
+        return fileHashes.get(fileName);
+    }
+
+    public void setFileHash(String fileName, String hash) {
+        fileHashes.put(fileName, hash);
+    }
+
+    /**
+     * Tests whether this manifest describes the same module as the given (previous) one.
+     *
+     * @param other The other manifest, may be {@code null}.
+     * @return {@code true} if the module fingerprints are equal.
+     */
+    public boolean isSameModule(ModuleManifest other) {
+        return other != null
+                && version.equals(other.version)
+                && moduleFingerprint.equals(other.moduleFingerprint);
+    }
+
+    /**
+     * @param other The other (previous) manifest, may be {@code null}.
+     * @return The names of the classes which have been added or changed with respect to the given manifest.
+     */
+    public Set<String> getChangedClasses(ModuleManifest other) {
+        return getChangedKeys(classFingerprints, other != null ? other.classFingerprints : null);
+    }
+
+    /**
+     * @param other The other (previous) manifest, may be {@code null}.
+     * @return The keys of the methods which have been added or changed with respect to the given manifest.
+     */
+    public Set<String> getChangedMethods(ModuleManifest other) {
+        return getChangedKeys(methodFingerprints, other != null ? other.methodFingerprints : null);
+    }
+
+    /**
+     * Computes the hash of a generated file's content. The line of the file header which contains
+     * the creation date is not taken into account.
+     *
+     * @param content The file content.
+     * @return The content hash.
+     */
+    public static String getContentHash(String content) {
+        return new Digest().add(stripFileInfoDate(content)).toString();
+    }
+
+    /**
+     * Tests whether two generated file contents are equal. The line of the file header which contains
+     * the creation date is not taken into account.
+     *
+     * @param content1 The first content.
+     * @param content2 The second content.
+     * @return {@code true}, if so.
+     */
+    public static boolean isSameContent(String content1, String content2) {
+        return stripFileInfoDate(content1).equals(stripFileInfoDate(content2));
+    }
+
+    private static String stripFileInfoDate(String content) {
+        final int start = content.indexOf(FILE_INFO_DATE_LINE);
+        if (start < 0) {
+            return content;
+        }
+        final int end = content.indexOf('\n', start);
+        return end < 0 ? content.substring(0, start) : content.substring(0, start) + content.substring(end);
+    }
+
+    /**
+     * Computes the fingerprint of the generator code, which is the content of all class and resource files in the
+     * directory or JAR file this class has been loaded from. If the code location cannot be read, the fingerprint
+     * is unique, so that modules are always regenerated.
+     *
+     * @return The generator fingerprint.
+     */
+    public static synchronized String getGeneratorFingerprint() {
+        if (generatorFingerprint == null) {
+            File location = null;
+            try {
+                final CodeSource codeSource = ModuleManifest.class.getProtectionDomain().getCodeSource();
+                if (codeSource != null && codeSource.getLocation() != null) {
+                    location = new File(codeSource.getLocation().toURI());
+                }
+            } catch (URISyntaxException e) {
+                // fall through
+            } catch (IllegalArgumentException e) {
+                // fall through, not a file URI
+            }
+            try {
+                generatorFingerprint = location != null ? getCodeFingerprint(location) : null;
+            } catch (IOException e) {
+                generatorFingerprint = null;
+            }
+            if (generatorFingerprint == null) {
+                System.out.printf("generator code not found, modules will not be generated incrementally\n");
+                generatorFingerprint = new Digest().add(System.nanoTime()).add(System.identityHashCode(ModuleManifest.class)).toString();
+            }
+        }
+        return generatorFingerprint;
+    }
+
+    /**
+     * Computes the fingerprint of the files in a class directory or JAR file.
+     *
+     * @param location The class directory or JAR file.
+     * @return The fingerprint, or {@code null} if the location is neither a directory nor a file.
+     * @throws IOException If an I/O error occurs.
+     */
+    static String getCodeFingerprint(File location) throws IOException {
+        final Digest digest = new Digest();
+        if (location.isDirectory()) {
+            addDirectory(digest, location, "");
+        } else if (location.isFile()) {
+            final JarFile jarFile = new JarFile(location);
+            try {
+                final Map<String, JarEntry> entries = new TreeMap<String, JarEntry>();
+                for (Enumeration<JarEntry> e = jarFile.entries(); e.hasMoreElements(); ) {
+                    final JarEntry entry = e.nextElement();
+                    if (!entry.isDirectory()) {
+                        entries.put(entry.getName(), entry);
+                    }
+                }
+                for (Map.Entry<String, JarEntry> entry : entries.entrySet()) {
+                    digest.add(entry.getKey()).add(jarFile.getInputStream(entry.getValue()));
+                }
+            } finally {
+                jarFile.close();
+            }
+        } else {
+            return null;
+        }
+        return digest.toString();
+    }
+
+    private static void addDirectory(Digest digest, File dir, String path) throws IOException {
+        final File[] files = dir.listFiles();
+        if (files == null) {
+            throw new IOException("failed to list " + dir);
+        }
+        Arrays.sort(files);
+        for (File file : files) {
+            final String name = path + file.getName();
+            if (file.isDirectory()) {
+                addDirectory(digest, file, name + "/");
+            } else {
+                digest.add(name).add(new FileInputStream(file));
+            }
+        }
+    }
+
+    private static String getFingerprint(GeneratorContext context, FunctionGenerator generator) {
+        final ApiMethod apiMethod = generator.getApiMethod();
+        final Digest digest = new Digest();
+        digest.add(GENERATOR_VERSION);
+        digest.add(apiMethod.getEnclosingClass().getJavaName());
+        digest.add(apiMethod.getJavaName()).add(apiMethod.getJavaSignature());
+        digest.add(apiMethod.getMemberDoc().modifiers());
+        digest.add(generator.getClass().getName());
+        digest.add(generator.getFunctionName(context));
+        for (ApiParameter parameter : context.getParametersFor(apiMethod)) {
+            digest.add(parameter.getJavaName()).add(parameter.getJavaSignature()).add(parameter.getModifier());
+        }
+        digest.add(apiMethod.getMemberDoc().getRawCommentText());
+        return digest.toString();
+    }
+
+    private static Set<String> getChangedKeys(Map<String, String> fingerprints, Map<String, String> otherFingerprints) {
+        final Set<String> changedKeys = new TreeSet<String>();
+        for (Map.Entry<String, String> entry : fingerprints.entrySet()) {
+            if (otherFingerprints == null || !entry.getValue().equals(otherFingerprints.get(entry.getKey()))) {
+                changedKeys.add(entry.getKey());
+            }
+        }
+        return changedKeys;
+    }
+
+    /**
+     * Accumulates values into an MD5 digest. Each value is terminated by a zero byte so that
+     * adjacent values cannot be confused.
+     */
+    private static class Digest {
+
+        private final MessageDigest messageDigest;
+
+        private Digest() {
+            try {
+                messageDigest = MessageDigest.getInstance("MD5");
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        Digest add(Object value) {
+            try {
+                messageDigest.update(String.valueOf(value).getBytes("UTF-8"));
+            } catch (UnsupportedEncodingException e) {
+                throw new IllegalStateException(e);
+            }
+            messageDigest.update((byte) 0);
+            return this;
+        }
+
+        /**
+         * Adds the content of a stream and closes it.
+         */
+        Digest add(InputStream stream) throws IOException {
+            try {
+                final byte[] buffer = new byte[16 * 1024];
+                int n;
+                while ((n = stream.read(buffer)) > 0) {
+                    messageDigest.update(buffer, 0, n);
+                }
+            } finally {
+                stream.close();
+            }
+            messageDigest.update((byte) 0);
+            return this;
+        }
+
+        @Override
+        public String toString() {
+            final byte[] bytes = messageDigest.digest();
+            final StringBuilder sb = new StringBuilder(2 * bytes.length);
+            for (byte b : bytes) {
+                sb.append(Character.forDigit((b >> 4) & 0x0f, 16));
+                sb.append(Character.forDigit(b & 0x0f, 16));
+            }
+            return sb.toString();
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package org.esa.beam.extapi.gen;
+
+import java.io.IOException;
+
+/**
+ * A {@link FunctionGenerator} which writes the code fragments of a function body directly into a {@link CodeWriter}.
+ * Each method writes a complete fragment of zero or more lines, or nothing.
+ * <p/>
+ * Generators which only implement {@link FunctionGenerator} are adapted by {@link StreamingGenerators}.
+ *
+ * @author Norman Fomferra
+ */
+public interface StreamingFunctionGenerator extends FunctionGenerator {
+
+    void writeLocalVarDecl(GeneratorContext context, CodeWriter writer) throws IOException;
+
+    void writeInitCode(GeneratorContext context, CodeWriter writer) throws IOException;
+
+    void writePreCallCode(GeneratorContext context, CodeWriter writer) throws IOException;
+
+    void writeCallCode(GeneratorContext context, CodeWriter writer) throws IOException;
+
+    void writePostCallCode(GeneratorContext context, CodeWriter writer) throws IOException;
+
+    void writeReturnCode(GeneratorContext context, CodeWriter writer) throws IOException;
+}
@@ -0,0 +1,194 @@
+package org.esa.beam.extapi.gen;
+
+import com.sun.javadoc.Type;
+
+import java.io.IOException;
+
+/**
+ * Adapts generators which return their code fragments as strings to the streaming generator interfaces.
+ *
+ * @author Norman Fomferra
+ */
+public final class StreamingGenerators {
+
+    private StreamingGenerators() {
+    }
+
+    public static StreamingFunctionGenerator of(FunctionGenerator generator) {
+        if (generator instanceof StreamingFunctionGenerator) {
+            return (StreamingFunctionGenerator) generator;
+        }
+        return new FunctionGeneratorAdapter(generator);
+    }
+
+    public static StreamingParameterGenerator of(ParameterGenerator generator) {
+        if (generator instanceof StreamingParameterGenerator) {
+            return (StreamingParameterGenerator) generator;
+        }
+        return new ParameterGeneratorAdapter(generator);
+    }
+
+    public static StreamingParameterGenerator[] of(ParameterGenerator[] generators) {
+        final StreamingParameterGenerator[] streamingGenerators = new StreamingParameterGenerator[generators.length];
+        for (int i = 0; i < generators.length; i++) {
+            streamingGenerators[i] = of(generators[i]);
+        }
+        return streamingGenerators;
+    }
+
+    private static class FunctionGeneratorAdapter implements StreamingFunctionGenerator {
+        private final FunctionGenerator generator;
+
+        private FunctionGeneratorAdapter(FunctionGenerator generator) {
+            this.generator = generator;
+        }
+
+        @Override
+        public void writeLocalVarDecl(GeneratorContext context, CodeWriter writer) throws IOException {
+            writer.writeCode(generator.generateLocalVarDecl(context));
+        }
+
+        @Override
+        public void writeInitCode(GeneratorContext context, CodeWriter writer) throws IOException {
+            writer.writeCode(generator.generateInitCode(context));
+        }
+
+        @Override
+        public void writePreCallCode(GeneratorContext context, CodeWriter writer) throws IOException {
+            writer.writeCode(generator.generatePreCallCode(context));
+        }
+
+        @Override
+        public void writeCallCode(GeneratorContext context, CodeWriter writer) throws IOException {
+            writer.writeCode(generator.generateCallCode(context));
+        }
+
+        @Override
+        public void writePostCallCode(GeneratorContext context, CodeWriter writer) throws IOException {
+            writer.writeCode(generator.generatePostCallCode(context));
+        }
+
+        @Override
+        public void writeReturnCode(GeneratorContext context, CodeWriter writer) throws IOException {
+            writer.writeCode(generator.generateReturnCode(context));
+        }
+
+        @Override
+        public ApiMethod getApiMethod() {
+            return generator.getApiMethod();
+        }
+
+        @Override
+        public ParameterGenerator[] getParameterGenerators() {
+            return generator.getParameterGenerators();
+        }
+
+        @Override
+        public String getFunctionName(GeneratorContext context) {
+            return generator.getFunctionName(context);
+        }
+
+        @Override
+        public String generateInitCode(GeneratorContext context) {
+            return generator.generateInitCode(context);
+        }
+
+        @Override
+        public String generateFunctionSignature(GeneratorContext context) {
+            return generator.generateFunctionSignature(context);
+        }
+
+        @Override
+        public String generateReturnCode(GeneratorContext context) {
+            return generator.generateReturnCode(context);
+        }
+
+        @Override
+        public String generateDocText(GeneratorContext context) {
+            return generator.generateDocText(context);
+        }
+
+        @Override
+        public String generateParamListDecl(GeneratorContext context) {
+            return generator.generateParamListDecl(context);
+        }
+
+        @Override
+        public String generateLocalVarDecl(GeneratorContext context) {
+            return generator.generateLocalVarDecl(context);
+        }
+
+        @Override
+        public String generatePreCallCode(GeneratorContext context) {
+            return generator.generatePreCallCode(context);
+        }
+
+        @Override
+        public String generateCallCode(GeneratorContext context) {
+            return generator.generateCallCode(context);
+        }
+
+        @Override
+        public String generatePostCallCode(GeneratorContext context) {
+            return generator.generatePostCallCode(context);
+        }
+    }
+
+    private static class ParameterGeneratorAdapter implements StreamingParameterGenerator {
+        private final ParameterGenerator generator;
+
+        private ParameterGeneratorAdapter(ParameterGenerator generator) {
+            this.generator = generator;
+        }
+
+        @Override
+        public void writeLocalVarDecl(GeneratorContext context, CodeWriter writer) throws IOException {
+            writer.writeCode(generator.generateLocalVarDecl(context));
+        }
+
+        @Override
+        public void writePreCallCode(GeneratorContext context, CodeWriter writer) throws IOException {
+            writer.writeCode(generator.generatePreCallCode(context));
+        }
+
+        @Override
+        public void writePostCallCode(GeneratorContext context, CodeWriter writer) throws IOException {
+            writer.writeCode(generator.generatePostCallCode(context));
+        }
+
+        @Override
+        public String getName() {
+            return generator.getName();
+        }
+
+        @Override
+        public Type getType() {
+            return generator.getType();
+        }
+
+        @Override
+        public String generateParamListDecl(GeneratorContext context) {
+            return generator.generateParamListDecl(context);
+        }
+
+        @Override
+        public String generateLocalVarDecl(GeneratorContext context) {
+            return generator.generateLocalVarDecl(context);
+        }
+
+        @Override
+        public String generatePreCallCode(GeneratorContext context) {
+            return generator.generatePreCallCode(context);
+        }
+
+        @Override
+        public String generateCallCode(GeneratorContext context) {
+            return generator.generateCallCode(context);
+        }
+
+        @Override
+        public String generatePostCallCode(GeneratorContext context) {
+            return generator.generatePostCallCode(context);
+        }
+    }
+}
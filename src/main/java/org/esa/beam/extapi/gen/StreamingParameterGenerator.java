@@ -0,0 +1,20 @@
+package org.esa.beam.extapi.gen;
+
+import java.io.IOException;
+
+/**
+ * A {@link ParameterGenerator} which writes its code fragments directly into a {@link CodeWriter}.
+ * Each method writes a complete fragment of zero or more lines, or nothing.
+ * <p/>
+ * Generators which only implement {@link ParameterGenerator} are adapted by {@link StreamingGenerators}.
+ *
+ * @author Norman Fomferra
+ */
+public interface StreamingParameterGenerator extends ParameterGenerator {
+
+    void writeLocalVarDecl(GeneratorContext context, CodeWriter writer) throws IOException;
+
+    void writePreCallCode(GeneratorContext context, CodeWriter writer) throws IOException;
+
+    void writePostCallCode(GeneratorContext context, CodeWriter writer) throws IOException;
+}
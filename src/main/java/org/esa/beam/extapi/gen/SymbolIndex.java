@@ -0,0 +1,196 @@
+package org.esa.beam.extapi.gen;
+
+import com.sun.javadoc.Type;
+import org.esa.beam.extapi.gen.py.PyCModuleGenerator;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * The names of the generated symbols of all API methods and of the Python types of all classes. Built once from an {@link ApiInfo}
+ * and shared by all module generators, see {@link ApiInfo#getSymbolIndex()}.
+ * <p/>
+ * API methods which are mapped to the same C function base name form an overload group.
+ * The members of an overload group are numbered in their natural order, e.g.
+ * {@code String_valueOf1}, {@code String_valueOf2}, ...
+ * Immutable object.
+ *
+ * @author Norman Fomferra
+ */
+public final class SymbolIndex {
+
+    private final Map<ApiMethod, Symbol> symbols;
+    private final SortedMap<String, List<ApiMethod>> overloadGroups;
+    private final Map<String, String> pyTypeVarNames;
+
+    private SymbolIndex(Map<ApiMethod, Symbol> symbols,
+                        SortedMap<String, List<ApiMethod>> overloadGroups,
+                        Map<String, String> pyTypeVarNames) {
+        this.symbols = symbols;
+        this.overloadGroups = overloadGroups;
+        this.pyTypeVarNames = pyTypeVarNames;
+    }
+
+    public static SymbolIndex create(ApiInfo apiInfo) {
+        final ApiGeneratorConfig config = apiInfo.getConfig();
+        final SortedMap<String, List<ApiMethod>> groups = new TreeMap<String, List<ApiMethod>>();
+        for (ApiClass apiClass : apiInfo.getApiClasses()) {
+            final String className = getClassName(apiClass.getType());
+            final String qualifiedClassName = apiClass.getType().qualifiedTypeName();
+            for (ApiMethod apiMethod : apiInfo.getMethodsOf(apiClass)) {
+                String methodName = config.getFunctionName(qualifiedClassName,
+                                                           apiMethod.getJavaName(),
+                                                           apiMethod.getJavaSignature());
+                if (methodName.equals("<init>")) {
+                    methodName = "new" + className;
+                }
+                final String baseName = className + "_" + methodName;
+                List<ApiMethod> group = groups.get(baseName);
+                if (group == null) {
+                    group = new ArrayList<ApiMethod>(1);
+                    groups.put(baseName, group);
+                }
+                group.add(apiMethod);
+            }
+        }
+
+        final Map<ApiMethod, Symbol> symbols = new HashMap<ApiMethod, Symbol>(groups.size() * 2);
+        final SortedMap<String, List<ApiMethod>> overloadGroups = new TreeMap<String, List<ApiMethod>>();
+        for (Map.Entry<String, List<ApiMethod>> entry : groups.entrySet()) {
+            final String baseName = entry.getKey();
+            final List<ApiMethod> group = entry.getValue();
+            if (group.size() > 1) {
+                Collections.sort(group);
+                final List<ApiMethod> overloadGroup = Collections.unmodifiableList(group);
+                overloadGroups.put(baseName, overloadGroup);
+                for (int i = 0; i < group.size(); i++) {
+                    final ApiMethod apiMethod = group.get(i);
+                    symbols.put(apiMethod, new Symbol(apiMethod, baseName + (i + 1), overloadGroup));
+                }
+            } else {
+                final ApiMethod apiMethod = group.get(0);
+                symbols.put(apiMethod, new Symbol(apiMethod, baseName, Collections.singletonList(apiMethod)));
+            }
+        }
+
+        final Map<String, String> pyTypeVarNames = new HashMap<String, String>(apiInfo.getAllClasses().size() * 2);
+        for (ApiClass apiClass : apiInfo.getAllClasses()) {
+            final Type type = apiClass.getType();
+            if (!JavadocHelpers.isString(type) && !JavadocHelpers.isTypeVariable(type)) {
+                pyTypeVarNames.put(type.qualifiedTypeName(),
+                                   String.format(PyCModuleGenerator.TYPE_VAR_NAME_PATTERN, getClassName(type)));
+            }
+        }
+        return new SymbolIndex(symbols, Collections.unmodifiableSortedMap(overloadGroups), pyTypeVarNames);
+    }
+
+    /**
+     * @param type A Java type.
+     * @return The C (and Python) name of the class of the given type, e.g. {@code Map_Entry}.
+     */
+    public static String getClassName(Type type) {
+        return type.typeName().replace('.', '_');
+    }
+
+    /**
+     * @param apiMethod An API method.
+     * @return The symbol of the given method, or {@code null} if the method is not part of the API.
+     */
+    public Symbol getSymbol(ApiMethod apiMethod) {
+        return symbols.get(apiMethod);
+    }
+
+    public String getCFunctionName(ApiMethod apiMethod) {
+        final Symbol symbol = symbols.get(apiMethod);
+        return symbol != null ? symbol.cFunctionName : null;
+    }
+
+    public String getPyFunctionName(ApiMethod apiMethod) {
+        final Symbol symbol = symbols.get(apiMethod);
+        return symbol != null ? symbol.pyFunctionName : null;
+    }
+
+    public String getPyMethodName(ApiMethod apiMethod) {
+        final Symbol symbol = symbols.get(apiMethod);
+        return symbol != null ? symbol.pyMethodName : null;
+    }
+
+    public List<ApiMethod> getOverloadGroup(ApiMethod apiMethod) {
+        final Symbol symbol = symbols.get(apiMethod);
+        return symbol != null ? symbol.overloadGroup : Collections.<ApiMethod>emptyList();
+    }
+
+    /**
+     * @param type A Java class type.
+     * @return The name of the variable of the Python type generated for the class, or of the JObject type if
+     *         there is none.
+     */
+    public String getPyTypeVarName(Type type) {
+        final String pyTypeVarName = pyTypeVarNames.get(type.qualifiedTypeName());
+        return pyTypeVarName != null ? pyTypeVarName : PyCModuleGenerator.JOBJECT_TYPE_VAR_NAME;
+    }
+
+    /**
+     * @return The overload groups having more than one member, keyed by their C function base name.
+     */
+    public SortedMap<String, List<ApiMethod>> getOverloadGroups() {
+        return overloadGroups;
+    }
+
+    /**
+     * The generated symbols of an API method.
+     */
+    public static final class Symbol {
+        private final ApiMethod apiMethod;
+        private final String cFunctionName;
+        private final String pyFunctionName;
+        private final String pyMethodName;
+        private final List<ApiMethod> overloadGroup;
+
+        private Symbol(ApiMethod apiMethod, String cFunctionName, List<ApiMethod> overloadGroup) {
+            this.apiMethod = apiMethod;
+            this.cFunctionName = cFunctionName;
+            this.pyFunctionName = PyCModuleGenerator.BEAM_PYAPI_VARNAMEPREFIX + cFunctionName;
+            this.pyMethodName = cFunctionName.substring(getClassName(apiMethod.getEnclosingClass().getType()).length() + 1);
+            this.overloadGroup = overloadGroup;
+        }
+
+        public ApiMethod getApiMethod() {
+            return apiMethod;
+        }
+
+        /**
+         * @return The name of the function in the C API, e.g. {@code Product_getBand}.
+         */
+        public String getCFunctionName() {
+            return cFunctionName;
+        }
+
+        /**
+         * @return The name of the function in the Python extension module, e.g. {@code BeamPyProduct_getBand}.
+         */
+        public String getPyFunctionName() {
+            return pyFunctionName;
+        }
+
+        /**
+         * @return The name of the method of the Python type, e.g. {@code getBand}, overloads are numbered like the
+         *         C functions.
+         */
+        public String getPyMethodName() {
+            return pyMethodName;
+        }
+
+        /**
+         * @return The API methods sharing the C function base name with this symbol's method, including it.
+         */
+        public List<ApiMethod> getOverloadGroup() {
+            return overloadGroup;
+        }
+    }
+}
@@ -4,10 +4,15 @@ import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.Reader;
 import java.io.Writer;
-import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
+ * Evaluates template patterns containing <code>${key}</code> placeholders.
+ * Patterns are compiled once into {@link CompiledTemplate}s and rendered in a single pass.
+ * Instances may be shared between threads. Use {@link #evalWith} to supply additional pairs
+ * for a single evaluation without modifying the shared pairs.
+ *
  * @author Norman Fomferra
  */
 public class TemplateEval {
@@ -15,14 +20,15 @@ public class TemplateEval {
     private final Map<String, Object> pairs;
 
     public TemplateEval(KV... pairs) {
-        this.pairs = new HashMap<String, Object>();
-        for (KV pair : pairs) {
-            this.pairs.put(pair.key, pair.value);
-        }
+        this.pairs = new ConcurrentHashMap<String, Object>();
+        add(pairs);
     }
 
     private TemplateEval(Map<String, Object> pairs) {
-        this.pairs = new HashMap<String, Object>(pairs);
+        this.pairs = new ConcurrentHashMap<String, Object>();
+        for (Map.Entry<String, Object> pair : pairs.entrySet()) {
+            add(pair.getKey(), pair.getValue());
+        }
     }
 
     public static TemplateEval create(Map<String, Object> map) {
@@ -30,58 +36,63 @@ public class TemplateEval {
     }
 
     public static TemplateEval create(KV... pairs) {
-        Map<String, Object> map = new HashMap<String, Object>();
-        for (KV pair : pairs) {
-            map.put(pair.key, pair.value);
-        }
-        return create(map);
+        return new TemplateEval(pairs);
     }
 
     public TemplateEval add(String key, Object value) {
-        this.pairs.put(key, value);
+        // A null value leaves the placeholder unchanged, which is the same as having no value at all
+        if (value != null) {
+            this.pairs.put(key, value);
+        } else {
+            this.pairs.remove(key);
+        }
         return this;
     }
 
     public TemplateEval add(KV... pairs) {
         for (KV pair : pairs) {
-            this.pairs.put(pair.key, pair.value);
+            add(pair.key, pair.value);
         }
         return this;
     }
 
     public String eval(String pattern) {
-        String text = pattern;
-        for (Map.Entry<String, Object> pair : pairs.entrySet()) {
-            text = evalKV(text, pair.getKey(), pair.getValue());
-        }
-        return text;
+        return CompiledTemplate.compile(pattern).render(pairs);
+    }
+
+    public TemplateEval eval(String pattern, Appendable out) throws IOException {
+        CompiledTemplate.compile(pattern).render(pairs, out);
+        return this;
+    }
+
+    /**
+     * Evaluates the pattern using the given pairs in addition to the pairs of this object.
+     * The given pairs take precedence. This object is not modified.
+     *
+     * @param pattern The pattern.
+     * @param pairs   Additional pairs used for this evaluation only.
+     * @return The evaluated text.
+     */
+    public String evalWith(String pattern, KV... pairs) {
+        return CompiledTemplate.compile(pattern).render(pairs, this.pairs);
     }
 
     public TemplateEval eval(Reader reader, Writer writer) throws IOException {
+        return eval(reader, writer, new KV[0]);
+    }
+
+    public TemplateEval eval(Reader reader, Writer writer, KV... pairs) throws IOException {
         final BufferedReader bufferedReader = new BufferedReader(reader);
         String line;
         while ((line = bufferedReader.readLine()) != null) {
-            writer.write(eval(line));
+            CompiledTemplate.compile(line).render(pairs, this.pairs, writer);
             writer.write("\n");
         }
         return this;
     }
 
     public static String eval(String pattern, KV... pairs) {
-        String text = pattern;
-        for (KV pair : pairs) {
-            final String key = pair.key;
-            final Object value = pair.value;
-            text = evalKV(text, key, value);
-        }
-        return text;
-    }
-
-    private static String evalKV(String text, String key, Object value) {
-        if (value != null) {
-            text = text.replace("${" + key + "}", value.toString());
-        }
-        return text;
+        return CompiledTemplate.compile(pattern).render(pairs);
     }
 
     public static KV kv(String key, Object value) {
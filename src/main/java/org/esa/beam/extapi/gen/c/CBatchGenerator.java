@@ -0,0 +1,268 @@
+package org.esa.beam.extapi.gen.c;
+
+import com.sun.javadoc.Type;
+import org.esa.beam.extapi.gen.FunctionGenerator;
+import org.esa.beam.extapi.gen.GeneratorContext;
+import org.esa.beam.extapi.gen.JavadocHelpers;
+import org.esa.beam.extapi.gen.ParameterGenerator;
+
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.esa.beam.extapi.gen.c.CModuleGenerator.THIS_VAR_NAME;
+
+/**
+ * Generates the {@code ...Batched} variants of the API functions and the dispatch methods of the
+ * {@link CModuleGenerator#BATCH_DISPATCHER_CLASS_NAME batch dispatcher class}.
+ * <p/>
+ * A {@code ...Batched} function does not call the Java method, it records the call in a batch: the call ID, which
+ * is the index of the function in {@link #getFunctionGenerators()}, and the arguments. {@code beam_batch_run()}
+ * passes all recorded calls to the dispatcher class, which makes them in a single JNI call.
+ *
+ * @author Norman Fomferra
+ */
+public class CBatchGenerator {
+
+    public static final String FUNCTION_NAME_SUFFIX = "Batched";
+    public static final String BATCH_VAR_NAME = "batch";
+    public static final String INDEX_VAR_NAME = "_index";
+
+    // Number of calls dispatched by one method of the dispatcher class. Methods of more than 8000 bytes of
+    // byte code are not compiled by the HotSpot JIT, a call takes up to 70 bytes.
+    static final int CALLS_PER_METHOD = 100;
+
+    private final GeneratorContext context;
+    private final List<CFunctionGenerator> functionGenerators;
+
+    public CBatchGenerator(GeneratorContext context, List<FunctionGenerator> functionGenerators) {
+        this.context = context;
+        this.functionGenerators = new ArrayList<CFunctionGenerator>();
+        for (FunctionGenerator functionGenerator : functionGenerators) {
+            if (isApplicable(functionGenerator)) {
+                this.functionGenerators.add((CFunctionGenerator) functionGenerator);
+            }
+        }
+    }
+
+    /**
+     * Tests whether a batched variant can be generated for the given function. This is the case for the functions
+     * of methods whose parameters are primitive values or objects other than strings, and which return nothing,
+     * a primitive value, a string or an object. Constructors and methods with type variable parameters are not
+     * batched.
+     *
+     * @param functionGenerator The function generator.
+     * @return {@code true}, if so.
+     */
+    static boolean isApplicable(FunctionGenerator functionGenerator) {
+        if (!(functionGenerator instanceof CFunctionGenerator)
+                || functionGenerator instanceof CFunctionGenerator.DirectMethod
+                || functionGenerator instanceof CFunctionGenerator.InternedStringMethod
+                || functionGenerator instanceof CFunctionGenerator.StringIntoMethod) {
+            return false;
+        }
+        final CFunctionGenerator generator = (CFunctionGenerator) functionGenerator;
+        if (generator.getMemberDoc().isConstructor() || !generator.getReturnType().dimension().isEmpty()) {
+            return false;
+        }
+        for (ParameterGenerator parameterGenerator : generator.getParameterGenerators()) {
+            if (!(parameterGenerator instanceof CParameterGenerator.PrimitiveScalar
+                    || parameterGenerator instanceof CParameterGenerator.ObjectScalar)) {
+                return false;
+            }
+            // the argument could not be cast to the type expected by the method, e.g. for Comparable.compareTo(T)
+            if (JavadocHelpers.isTypeVariable(parameterGenerator.getType())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return The functions which have a batched variant, in the order of their call IDs.
+     */
+    public List<CFunctionGenerator> getFunctionGenerators() {
+        return Collections.unmodifiableList(functionGenerators);
+    }
+
+    public String getFunctionName(FunctionGenerator generator) {
+        return generator.getFunctionName(context) + FUNCTION_NAME_SUFFIX;
+    }
+
+    public String generateFunctionSignature(CFunctionGenerator generator) {
+        final StringBuilder parameterList = new StringBuilder();
+        parameterList.append("BeamBatch ").append(BATCH_VAR_NAME);
+        if (!generator.getMemberDoc().isStatic()) {
+            parameterList.append(", ");
+            parameterList.append(JavadocHelpers.getCTypeName(generator.getEnclosingClass().getType()));
+            parameterList.append(' ').append(THIS_VAR_NAME);
+        }
+        for (ParameterGenerator parameterGenerator : generator.getParameterGenerators()) {
+            parameterList.append(", ").append(parameterGenerator.generateParamListDecl(context));
+        }
+        return String.format("int %s(%s)", getFunctionName(generator), parameterList);
+    }
+
+    public void writeFunctionDeclarations(PrintWriter writer) {
+        writer.write("\n");
+        writer.write("/* Batched variants of the functions above, see beam_batch_run() */\n");
+        writer.write("\n");
+        for (CFunctionGenerator generator : functionGenerators) {
+            writer.printf("%s;\n", generateFunctionSignature(generator));
+        }
+    }
+
+    public void writeFunctionDefinitions(PrintWriter writer) {
+        for (int callId = 0; callId < functionGenerators.size(); callId++) {
+            final CFunctionGenerator generator = functionGenerators.get(callId);
+            final List<String> putCalls = new ArrayList<String>();
+            int numValues = 0;
+            int numObjects = 0;
+            if (!generator.getMemberDoc().isStatic()) {
+                putCalls.add(String.format("beam_batch_put_object(%s, %s);", BATCH_VAR_NAME, THIS_VAR_NAME));
+                numObjects++;
+            }
+            for (ParameterGenerator parameterGenerator : generator.getParameterGenerators()) {
+                final String putType = getPutTypeName(parameterGenerator.getType());
+                putCalls.add(String.format("beam_batch_put_%s(%s, %s);", putType, BATCH_VAR_NAME, parameterGenerator.getName()));
+                if (putType.equals("object")) {
+                    numObjects++;
+                } else {
+                    numValues++;
+                }
+            }
+            final String addCall = String.format("beam_batch_add_call(%s, %d, '%c', %d, %d)",
+                                                 BATCH_VAR_NAME, callId, getResultType(generator.getReturnType()),
+                                                 numValues, numObjects);
+
+            writer.printf("%s\n", generateFunctionSignature(generator));
+            writer.printf("{\n");
+            if (putCalls.isEmpty()) {
+                writer.printf("    return %s;\n", addCall);
+            } else {
+                writer.printf("    int %s = %s;\n", INDEX_VAR_NAME, addCall);
+                writer.printf("    if (%s >= 0) {\n", INDEX_VAR_NAME);
+                for (String putCall : putCalls) {
+                    writer.printf("        %s\n", putCall);
+                }
+                writer.printf("    }\n");
+                writer.printf("    return %s;\n", INDEX_VAR_NAME);
+            }
+            writer.printf("}\n");
+            writer.printf("\n");
+        }
+    }
+
+    /**
+     * Writes the dispatch methods of the dispatcher class, every method makes the calls of
+     * {@link #CALLS_PER_METHOD} call IDs.
+     */
+    public void writeDispatchMethods(PrintWriter writer) {
+        final int numMethods = (functionGenerators.size() + CALLS_PER_METHOD - 1) / CALLS_PER_METHOD;
+
+        writer.printf("    private void dispatch(int group, int id, int index) throws Exception {\n");
+        writer.printf("        switch (group) {\n");
+        for (int i = 0; i < numMethods; i++) {
+            writer.printf("            case %d:\n", i);
+            writer.printf("                dispatch%d(id, index);\n", i);
+            writer.printf("                break;\n");
+        }
+        writer.printf("            default:\n");
+        writer.printf("                throw new IllegalArgumentException(\"invalid call ID \" + id);\n");
+        writer.printf("        }\n");
+        writer.printf("    }\n");
+
+        for (int i = 0; i < numMethods; i++) {
+            writer.printf("\n");
+            writer.printf("    private void dispatch%d(int id, int index) throws Exception {\n", i);
+            writer.printf("        switch (id) {\n");
+            final int maxCallId = Math.min(functionGenerators.size(), (i + 1) * CALLS_PER_METHOD);
+            for (int callId = i * CALLS_PER_METHOD; callId < maxCallId; callId++) {
+                final CFunctionGenerator generator = functionGenerators.get(callId);
+                writer.printf("            case %d:\n", callId);
+                writer.printf("                %s;\n", generateDispatchCode(generator));
+                writer.printf("                break;\n");
+            }
+            writer.printf("            default:\n");
+            writer.printf("                throw new IllegalArgumentException(\"invalid call ID \" + id);\n");
+            writer.printf("        }\n");
+            writer.printf("    }\n");
+        }
+    }
+
+    private static String generateDispatchCode(CFunctionGenerator generator) {
+        final String className = JavadocHelpers.getJavaTypeName(generator.getEnclosingClass().getType());
+        final StringBuilder argumentList = new StringBuilder();
+        for (ParameterGenerator parameterGenerator : generator.getParameterGenerators()) {
+            if (argumentList.length() > 0) {
+                argumentList.append(", ");
+            }
+            argumentList.append(generateGetExpr(parameterGenerator.getType()));
+        }
+        final String call = String.format("%s.%s(%s)",
+                                          generator.getMemberDoc().isStatic() ? className : "((" + className + ") getObject())",
+                                          generator.getApiMethod().getJavaName(),
+                                          argumentList);
+        final Type returnType = generator.getReturnType();
+        if (JavadocHelpers.isVoid(returnType)) {
+            return call;
+        }
+        final String putType;
+        if (!returnType.isPrimitive()) {
+            putType = "Object";
+        } else if (returnType.typeName().equals("byte")
+                || returnType.typeName().equals("short")
+                || returnType.typeName().equals("char")) {
+            putType = "Int";
+        } else {
+            putType = JavadocHelpers.firstCharToUpperCase(returnType.typeName());
+        }
+        return String.format("put%s(index, %s)", putType, call);
+    }
+
+    private static String generateGetExpr(Type type) {
+        if (!type.isPrimitive()) {
+            return String.format("(%s) getObject()", JavadocHelpers.getJavaTypeName(type));
+        }
+        final String typeName = type.typeName();
+        if (typeName.equals("byte") || typeName.equals("short") || typeName.equals("char")) {
+            return String.format("(%s) getInt()", typeName);
+        }
+        return String.format("get%s()", JavadocHelpers.firstCharToUpperCase(typeName));
+    }
+
+    private static String getPutTypeName(Type type) {
+        if (!type.isPrimitive()) {
+            return "object";
+        }
+        final String typeName = type.typeName();
+        if (typeName.equals("long") || typeName.equals("float") || typeName.equals("double")) {
+            return typeName;
+        }
+        return "int";
+    }
+
+    /**
+     * @return The JNI signature character of the result type, 'S' for strings, 'I' for all primitive types stored
+     *         as int.
+     */
+    private static char getResultType(Type type) {
+        if (JavadocHelpers.isVoid(type)) {
+            return 'V';
+        } else if (JavadocHelpers.isString(type)) {
+            return 'S';
+        } else if (!type.isPrimitive()) {
+            return 'L';
+        }
+        final String typeName = type.typeName();
+        if (typeName.equals("long")) {
+            return 'J';
+        } else if (typeName.equals("float")) {
+            return 'F';
+        } else if (typeName.equals("double")) {
+            return 'D';
+        }
+        return 'I';
+    }
+}
@@ -1,16 +1,22 @@
 package org.esa.beam.extapi.gen.c;
 
 import com.sun.javadoc.ExecutableMemberDoc;
+import com.sun.javadoc.Parameter;
 import com.sun.javadoc.Type;
 import org.esa.beam.extapi.gen.ApiClass;
 import org.esa.beam.extapi.gen.ApiMethod;
 import org.esa.beam.extapi.gen.ApiParameter;
-import org.esa.beam.extapi.gen.FunctionGenerator;
+import org.esa.beam.extapi.gen.CodeWriter;
 import org.esa.beam.extapi.gen.GeneratorContext;
 import org.esa.beam.extapi.gen.JavadocHelpers;
 import org.esa.beam.extapi.gen.ParameterGenerator;
+import org.esa.beam.extapi.gen.StreamingFunctionGenerator;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Arrays;
+import java.util.List;
 
-import static org.esa.beam.extapi.gen.TemplateEval.eval;
 import static org.esa.beam.extapi.gen.TemplateEval.kv;
 import static org.esa.beam.extapi.gen.c.CModuleGenerator.METHOD_VAR_NAME;
 import static org.esa.beam.extapi.gen.c.CModuleGenerator.THIS_VAR_NAME;
@@ -18,7 +24,14 @@ import static org.esa.beam.extapi.gen.c.CModuleGenerator.THIS_VAR_NAME;
 /**
  * @author Norman Fomferra
  */
-public abstract class CFunctionGenerator implements FunctionGenerator {
+public abstract class CFunctionGenerator implements StreamingFunctionGenerator {
+
+    /**
+     * Written right after the JNI call of the Java method: if the method has thrown an exception, it is cleared and
+     * recorded as error of the calling thread (see {@code beam_has_error()}), so that the function makes no further
+     * JNI call while it is pending. The function then returns 0 or {@code NULL}.
+     */
+    static final String EXCEPTION_CHECK_CODE = "if ((*jenv)->ExceptionCheck(jenv)) beam_catch_exception(jenv);";
 
     protected final ApiMethod apiMethod;
     protected final ParameterGenerator[] parameterGenerators;
@@ -57,7 +70,7 @@ public abstract class CFunctionGenerator implements FunctionGenerator {
 
     @Override
     public String generateFunctionSignature(GeneratorContext context) {
-        String returnTypeName = JavadocHelpers.getCTypeName(getReturnType());
+        String returnTypeName = generateReturnTypeName();
         String functionName = getFunctionName(context);
         String parameterList = generateParameterList(context);
         if (parameterList.isEmpty()) {
@@ -75,18 +88,93 @@ public abstract class CFunctionGenerator implements FunctionGenerator {
     }
 
     @Override
-    public String generateInitCode(GeneratorContext context) {
-        return null;
+    public void writeLocalVarDecl(GeneratorContext context, CodeWriter writer) throws IOException {
+        if (isInstanceMethod()) {
+            writer.writeTemplate("jobject ${t} = NULL;",
+                                 kv("t", CModuleGenerator.THIS_REF_VAR_NAME));
+        }
     }
 
     @Override
-    public String generatePreCallCode(GeneratorContext context) {
-        return null;
+    public void writeInitCode(GeneratorContext context, CodeWriter writer) throws IOException {
     }
 
     @Override
-    public String generatePostCallCode(GeneratorContext context) {
-        return null;
+    public void writePreCallCode(GeneratorContext context, CodeWriter writer) throws IOException {
+    }
+
+    @Override
+    public void writePostCallCode(GeneratorContext context, CodeWriter writer) throws IOException {
+    }
+
+    @Override
+    public void writeReturnCode(GeneratorContext context, CodeWriter writer) throws IOException {
+    }
+
+    @Override
+    public final String generateLocalVarDecl(GeneratorContext context) {
+        final CodeWriter writer = new CodeWriter();
+        try {
+            writeLocalVarDecl(context, writer);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return writer.toCode();
+    }
+
+    @Override
+    public final String generateInitCode(GeneratorContext context) {
+        final CodeWriter writer = new CodeWriter();
+        try {
+            writeInitCode(context, writer);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return writer.toCode();
+    }
+
+    @Override
+    public final String generatePreCallCode(GeneratorContext context) {
+        final CodeWriter writer = new CodeWriter();
+        try {
+            writePreCallCode(context, writer);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return writer.toCode();
+    }
+
+    @Override
+    public final String generateCallCode(GeneratorContext context) {
+        final CodeWriter writer = new CodeWriter();
+        try {
+            writeCallCode(context, writer);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return writer.toCode();
+    }
+
+    @Override
+    public final String generatePostCallCode(GeneratorContext context) {
+        final CodeWriter writer = new CodeWriter();
+        try {
+            writePostCallCode(context, writer);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return writer.toCode();
+    }
+
+    @Override
+    public final String generateReturnCode(GeneratorContext context) {
+        final CodeWriter writer = new CodeWriter();
+        try {
+            writeReturnCode(context, writer);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return writer.toCode();
     }
 
     protected boolean hasReturnParameter(GeneratorContext context) {
@@ -115,7 +203,7 @@ public abstract class CFunctionGenerator implements FunctionGenerator {
             argumentList.append(METHOD_VAR_NAME);
         } else {
             functionName = String.format("Call%sMethod", generateCallTypeName(context));
-            argumentList.append(THIS_VAR_NAME);
+            argumentList.append(CModuleGenerator.THIS_REF_VAR_NAME);
             argumentList.append(", ");
             argumentList.append(METHOD_VAR_NAME);
         }
@@ -156,12 +244,45 @@ public abstract class CFunctionGenerator implements FunctionGenerator {
         return parameterList.toString();
     }
 
-    private boolean isInstanceMethod() {
+    protected String generateReturnTypeName() {
+        return JavadocHelpers.getCTypeName(getReturnType());
+    }
+
+    boolean isInstanceMethod() {
         return !getMemberDoc().isStatic() && !getMemberDoc().isConstructor();
     }
 
     protected abstract String generateCallTypeName(GeneratorContext context);
 
+    /**
+     * Gets the number of local references created by the function of the given method: one for the result if it
+     * is an object, a string or an array, and one for each string and array parameter. The function pushes a local
+     * frame of this capacity, which is popped before it returns. If the capacity is 0, no local frame is pushed.
+     *
+     * @param apiMethod The API method.
+     * @return The capacity of the local frame of the function.
+     */
+    static int getLocalFrameCapacity(ApiMethod apiMethod) {
+        int capacity = isLocalRefType(apiMethod.getReturnType()) ? 1 : 0;
+        for (Parameter parameter : apiMethod.getMemberDoc().parameters()) {
+            final Type type = parameter.type();
+            if (JavadocHelpers.isString(type) || !type.dimension().isEmpty()) {
+                capacity++;
+            }
+        }
+        return capacity;
+    }
+
+    private static boolean isLocalRefType(Type type) {
+        return !JavadocHelpers.isVoid(type) && (!type.isPrimitive() || !type.dimension().isEmpty());
+    }
+
+    protected void writePopLocalFrame(CodeWriter writer) throws IOException {
+        if (getLocalFrameCapacity(getApiMethod()) > 0) {
+            writer.writeCode("(*jenv)->PopLocalFrame(jenv, NULL);");
+        }
+    }
+
     @Override
     public String generateDocText(GeneratorContext context) {
         // todo: generate C Doxygen-style documentation
@@ -180,18 +301,16 @@ public abstract class CFunctionGenerator implements FunctionGenerator {
         }
 
         @Override
-        public String generateLocalVarDecl(GeneratorContext context) {
-            return null;
-        }
-
-        @Override
-        public String generateCallCode(GeneratorContext context) {
-            return String.format("%s;", generateJniCall(context));
+        public void writeCallCode(GeneratorContext context, CodeWriter writer) throws IOException {
+            writer.writeTemplate("${c};\n" +
+                                         "${x}",
+                                 kv("c", generateJniCall(context)),
+                                 kv("x", EXCEPTION_CHECK_CODE));
         }
 
         @Override
-        public String generateReturnCode(GeneratorContext context) {
-            return null;
+        public void writeReturnCode(GeneratorContext context, CodeWriter writer) throws IOException {
+            writePopLocalFrame(writer);
         }
     }
 
@@ -201,19 +320,27 @@ public abstract class CFunctionGenerator implements FunctionGenerator {
         }
 
         @Override
-        public String generateLocalVarDecl(GeneratorContext context) {
-            String targetTypeName = JavadocHelpers.getCTypeName(getReturnType());
-            return String.format("%s %s = (%s) 0;", targetTypeName, CModuleGenerator.RESULT_VAR_NAME, targetTypeName);
+        public void writeLocalVarDecl(GeneratorContext context, CodeWriter writer) throws IOException {
+            super.writeLocalVarDecl(context, writer);
+            writer.writeTemplate("${t} ${r} = (${t}) 0;",
+                                 kv("t", JavadocHelpers.getCTypeName(getReturnType())),
+                                 kv("r", CModuleGenerator.RESULT_VAR_NAME));
         }
 
         @Override
-        public String generateCallCode(GeneratorContext context) {
-            return String.format("%s = %s;", CModuleGenerator.RESULT_VAR_NAME, generateJniCall(context));
+        public void writeCallCode(GeneratorContext context, CodeWriter writer) throws IOException {
+            writer.writeTemplate("${r} = ${c};\n" +
+                                         "${x}",
+                                 kv("r", CModuleGenerator.RESULT_VAR_NAME),
+                                 kv("c", generateJniCall(context)),
+                                 kv("x", EXCEPTION_CHECK_CODE));
         }
 
         @Override
-        public String generateReturnCode(GeneratorContext context) {
-            return String.format("return %s;", CModuleGenerator.RESULT_VAR_NAME);
+        public void writeReturnCode(GeneratorContext context, CodeWriter writer) throws IOException {
+            writePopLocalFrame(writer);
+            writer.writeTemplate("return ${r};",
+                                 kv("r", CModuleGenerator.RESULT_VAR_NAME));
         }
     }
 
@@ -230,9 +357,12 @@ public abstract class CFunctionGenerator implements FunctionGenerator {
         }
 
         @Override
-        public String generateReturnCode(GeneratorContext context) {
-            return String.format("return %s != NULL ? (*jenv)->NewGlobalRef(jenv, %s) : NULL;",
-                                 CModuleGenerator.RESULT_VAR_NAME, CModuleGenerator.RESULT_VAR_NAME);
+        public void writeReturnCode(GeneratorContext context, CodeWriter writer) throws IOException {
+            writer.writeTemplate("${r} = beam_new_handle(jenv, ${r});",
+                                 kv("r", CModuleGenerator.RESULT_VAR_NAME));
+            writePopLocalFrame(writer);
+            writer.writeTemplate("return ${r};",
+                                 kv("r", CModuleGenerator.RESULT_VAR_NAME));
         }
     }
 
@@ -241,12 +371,6 @@ public abstract class CFunctionGenerator implements FunctionGenerator {
         ValueMethod(ApiMethod apiMethod, ParameterGenerator[] parameterGenerators) {
             super(apiMethod, parameterGenerators);
         }
-
-        @Override
-        public String generateLocalVarDecl(GeneratorContext context) {
-            String targetTypeName = JavadocHelpers.getCTypeName(getReturnType());
-            return String.format("%s %s = (%s) 0;", targetTypeName, CModuleGenerator.RESULT_VAR_NAME, targetTypeName);
-        }
     }
 
 
@@ -274,9 +398,12 @@ public abstract class CFunctionGenerator implements FunctionGenerator {
         }
 
         @Override
-        public String generateReturnCode(GeneratorContext context) {
-            return String.format("return %s != NULL ? (*jenv)->NewGlobalRef(jenv, %s) : NULL;",
-                                 CModuleGenerator.RESULT_VAR_NAME, CModuleGenerator.RESULT_VAR_NAME);
+        public void writeReturnCode(GeneratorContext context, CodeWriter writer) throws IOException {
+            writer.writeTemplate("${r} = beam_new_handle(jenv, ${r});",
+                                 kv("r", CModuleGenerator.RESULT_VAR_NAME));
+            writePopLocalFrame(writer);
+            writer.writeTemplate("return ${r};",
+                                 kv("r", CModuleGenerator.RESULT_VAR_NAME));
         }
     }
 
@@ -286,21 +413,94 @@ public abstract class CFunctionGenerator implements FunctionGenerator {
         }
 
         @Override
-        public String generateLocalVarDecl(GeneratorContext context) {
-            return super.generateLocalVarDecl(context) + "\n" +
-                    "jstring _resultString = NULL;";
+        public void writeLocalVarDecl(GeneratorContext context, CodeWriter writer) throws IOException {
+            super.writeLocalVarDecl(context, writer);
+            writer.writeCode("jstring _resultString = NULL;");
         }
 
         @Override
-        public String generateCallCode(GeneratorContext context) {
-            return String.format("_resultString = %s;\n" +
-                                         "%s = beam_alloc_string(_resultString);",
-                                 generateJniCall(context), CModuleGenerator.RESULT_VAR_NAME);
+        public void writeCallCode(GeneratorContext context, CodeWriter writer) throws IOException {
+            writer.writeTemplate("_resultString = ${c};\n" +
+                                         "${x}\n" +
+                                         "${r} = beam_alloc_string(_resultString);",
+                                 kv("r", CModuleGenerator.RESULT_VAR_NAME),
+                                 kv("c", generateJniCall(context)),
+                                 kv("x", EXCEPTION_CHECK_CODE));
         }
 
         @Override
-        public String generateReturnCode(GeneratorContext context) {
-            return String.format("return %s;", CModuleGenerator.RESULT_VAR_NAME);
+        public void writeReturnCode(GeneratorContext context, CodeWriter writer) throws IOException {
+            writePopLocalFrame(writer);
+            writer.writeTemplate("return ${r};",
+                                 kv("r", CModuleGenerator.RESULT_VAR_NAME));
+        }
+    }
+
+    /**
+     * The {@code ...Interned} variant of a {@link StringMethod}, which returns the string from the string cache of
+     * the API instead of a copy: the caller must neither modify nor free it. The string remains valid until
+     * {@code beam_clear_string_cache()} is called, also if the cache has overflown and retired it meanwhile.
+     */
+    static class InternedStringMethod extends StringMethod {
+
+        public static final String FUNCTION_NAME_SUFFIX = "Interned";
+
+        InternedStringMethod(ApiMethod apiMethod, ParameterGenerator[] parameterGenerators) {
+            super(apiMethod, parameterGenerators);
+        }
+
+        @Override
+        public String getFunctionName(GeneratorContext context) {
+            return super.getFunctionName(context) + FUNCTION_NAME_SUFFIX;
+        }
+
+        @Override
+        protected String generateReturnTypeName() {
+            return "const char*";
+        }
+
+        @Override
+        public void writeCallCode(GeneratorContext context, CodeWriter writer) throws IOException {
+            writer.writeTemplate("_resultString = ${c};\n" +
+                                         "${x}\n" +
+                                         "${r} = (char*) beam_intern_string(_resultString);",
+                                 kv("r", CModuleGenerator.RESULT_VAR_NAME),
+                                 kv("c", generateJniCall(context)),
+                                 kv("x", EXCEPTION_CHECK_CODE));
+        }
+    }
+
+    /**
+     * The {@code ...Into} variant of a {@link StringMethod}, which copies the string into the caller's buffer
+     * of the given capacity instead of allocating it, and returns the buffer. A string which does not fit is
+     * truncated.
+     */
+    static class StringIntoMethod extends StringMethod {
+
+        public static final String FUNCTION_NAME_SUFFIX = "Into";
+
+        StringIntoMethod(ApiMethod apiMethod, ParameterGenerator[] parameterGenerators) {
+            super(apiMethod, parameterGenerators);
+        }
+
+        @Override
+        public String getFunctionName(GeneratorContext context) {
+            return super.getFunctionName(context) + FUNCTION_NAME_SUFFIX;
+        }
+
+        @Override
+        public String generateParamListDecl(GeneratorContext context) {
+            return "char* resultChars, int resultCapacity";
+        }
+
+        @Override
+        public void writeCallCode(GeneratorContext context, CodeWriter writer) throws IOException {
+            writer.writeTemplate("_resultString = ${c};\n" +
+                                         "${x}\n" +
+                                         "${r} = beam_copy_string(_resultString, resultChars, resultCapacity);",
+                                 kv("r", CModuleGenerator.RESULT_VAR_NAME),
+                                 kv("c", generateJniCall(context)),
+                                 kv("x", EXCEPTION_CHECK_CODE));
         }
     }
 
@@ -315,32 +515,37 @@ public abstract class CFunctionGenerator implements FunctionGenerator {
         }
 
         @Override
-        public String generateLocalVarDecl(GeneratorContext context) {
-            return super.generateLocalVarDecl(context)
-                    + eval("\njarray ${r}Array = NULL;",
-                           kv("r", CModuleGenerator.RESULT_VAR_NAME));
+        public void writeLocalVarDecl(GeneratorContext context, CodeWriter writer) throws IOException {
+            super.writeLocalVarDecl(context, writer);
+            writer.writeTemplate("jarray ${r}Array = NULL;",
+                                 kv("r", CModuleGenerator.RESULT_VAR_NAME));
         }
 
         @Override
-        public String generateCallCode(GeneratorContext context) {
+        public void writeCallCode(GeneratorContext context, CodeWriter writer) throws IOException {
             if (hasReturnParameter(context)) {
                 // NOTE: ParameterGenerator.<T>Array will generate code which sets ${r} = ...
-                return eval("${r}Array = ${c};",
-                            kv("r", CModuleGenerator.RESULT_VAR_NAME),
-                            kv("c", generateJniCall(context)));
+                writer.writeTemplate("${r}Array = ${c};\n" +
+                                             "${x}",
+                                     kv("r", CModuleGenerator.RESULT_VAR_NAME),
+                                     kv("c", generateJniCall(context)),
+                                     kv("x", EXCEPTION_CHECK_CODE));
             } else {
-                return eval("${r}Array = ${c};\n" +
-                                    "${r} = ${f}(${r}Array, resultArrayLength);",
-                            kv("r", CModuleGenerator.RESULT_VAR_NAME),
-                            kv("c", generateJniCall(context)),
-                            kv("f", getAllocFunctionName()));
+                writer.writeTemplate("${r}Array = ${c};\n" +
+                                             "${x}\n" +
+                                             "${r} = ${f}(${r}Array, resultArrayLength);",
+                                     kv("r", CModuleGenerator.RESULT_VAR_NAME),
+                                     kv("c", generateJniCall(context)),
+                                     kv("x", EXCEPTION_CHECK_CODE),
+                                     kv("f", getAllocFunctionName()));
             }
         }
 
         @Override
-        public String generateReturnCode(GeneratorContext context) {
-            return eval("return ${r};",
-                        kv("r", CModuleGenerator.RESULT_VAR_NAME));
+        public void writeReturnCode(GeneratorContext context, CodeWriter writer) throws IOException {
+            writePopLocalFrame(writer);
+            writer.writeTemplate("return ${r};",
+                                 kv("r", CModuleGenerator.RESULT_VAR_NAME));
         }
 
         protected abstract String getAllocFunctionName();
@@ -381,4 +586,249 @@ public abstract class CFunctionGenerator implements FunctionGenerator {
             return "beam_alloc_string_array";
         }
     }
+
+    /**
+     * Generates the {@code ...Direct} variant of a function whose primitive array parameters are passed to Java
+     * as direct buffers wrapping the caller's memory. The function calls a static method of the generated
+     * {@link CModuleGenerator#DIRECT_BRIDGE_CLASS_NAME bridge class}, which passes Java arrays to the API method and
+     * copies the elements between the arrays and the buffers: the elements are copied once at most, no array is
+     * created or copied by the C code.
+     * <p/>
+     * If the bridge class is not found, the variants return 0 or {@code NULL}.
+     */
+    static class DirectMethod extends CFunctionGenerator {
+
+        public static final String FUNCTION_NAME_SUFFIX = "Direct";
+
+        // Primitive types for which a java.nio buffer exists, boolean and char arrays are not supported
+        private static final List<String> BUFFER_TYPE_NAMES = Arrays.asList("byte", "short", "int", "long", "float", "double");
+
+        DirectMethod(ApiMethod apiMethod, ParameterGenerator[] parameterGenerators) {
+            super(apiMethod, parameterGenerators);
+        }
+
+        /**
+         * Tests whether a direct variant can be generated for the given method. This is the case for methods
+         * which have primitive array parameters and which return nothing, a primitive value, or the array passed
+         * as {@link ApiParameter.Modifier#RETURN} parameter.
+         *
+         * @param apiMethod  The API method.
+         * @param parameters The parameters of the method.
+         * @return {@code true}, if so.
+         */
+        static boolean isApplicable(ApiMethod apiMethod, ApiParameter[] parameters) {
+            if (apiMethod.getMemberDoc().isConstructor()) {
+                return false;
+            }
+            boolean hasArrayParameter = false;
+            boolean hasReturnParameter = false;
+            for (ApiParameter parameter : parameters) {
+                final Type type = parameter.getType();
+                if (JavadocHelpers.isPrimitiveArray(type)) {
+                    if (!BUFFER_TYPE_NAMES.contains(type.typeName())) {
+                        return false;
+                    }
+                    hasArrayParameter = true;
+                    if (parameter.getModifier() == ApiParameter.Modifier.RETURN) {
+                        hasReturnParameter = type.typeName().equals(apiMethod.getReturnType().typeName());
+                    }
+                }
+            }
+            final Type returnType = apiMethod.getReturnType();
+            if (returnType.dimension().isEmpty()) {
+                return hasArrayParameter && returnType.isPrimitive();
+            }
+            return hasReturnParameter && JavadocHelpers.isPrimitiveArray(returnType);
+        }
+
+        @Override
+        public String getFunctionName(GeneratorContext context) {
+            return getBridgeMethodName(context) + FUNCTION_NAME_SUFFIX;
+        }
+
+        /**
+         * @return The name of the static method of the bridge class, which is the name of the function of the
+         *         API method.
+         */
+        public String getBridgeMethodName(GeneratorContext context) {
+            return context.getFunctionNameFor(getApiMethod());
+        }
+
+        /**
+         * @return The JNI signature of the static method of the bridge class.
+         */
+        public String getBridgeMethodSignature() {
+            final StringBuilder signature = new StringBuilder("(");
+            if (!getMemberDoc().isStatic()) {
+                signature.append('L').append(getEnclosingClass().getResourceName()).append(';');
+            }
+            for (ParameterGenerator parameterGenerator : parameterGenerators) {
+                if (parameterGenerator instanceof CParameterGenerator.DirectBuffer) {
+                    signature.append("Ljava/nio/ByteBuffer;");
+                } else {
+                    signature.append(((CParameterGenerator) parameterGenerator).parameter.getJavaSignature());
+                }
+            }
+            signature.append(')');
+            if (isArrayMethod()) {
+                signature.append('I');
+            } else {
+                final String methodSignature = getApiMethod().getJavaSignature();
+                signature.append(methodSignature.substring(methodSignature.indexOf(')') + 1));
+            }
+            return signature.toString();
+        }
+
+        /**
+         * Writes the static method of the bridge class.
+         */
+        public void writeBridgeMethod(GeneratorContext context, PrintWriter writer) {
+            final StringBuilder parameterList = new StringBuilder();
+            final StringBuilder argumentList = new StringBuilder();
+            if (!getMemberDoc().isStatic()) {
+                parameterList.append(JavadocHelpers.getJavaTypeName(getEnclosingClass().getType())).append(' ').append(THIS_VAR_NAME);
+            }
+            for (ParameterGenerator parameterGenerator : parameterGenerators) {
+                final String name = parameterGenerator.getName();
+                if (parameterList.length() > 0) {
+                    parameterList.append(", ");
+                }
+                if (argumentList.length() > 0) {
+                    argumentList.append(", ");
+                }
+                if (parameterGenerator instanceof CParameterGenerator.DirectBuffer) {
+                    parameterList.append("ByteBuffer ").append(name).append("Buffer");
+                } else {
+                    parameterList.append(JavadocHelpers.getJavaTypeName(parameterGenerator.getType())).append(' ').append(name);
+                }
+                argumentList.append(name);
+            }
+            final String call = String.format("%s.%s(%s)",
+                                              getMemberDoc().isStatic() ? JavadocHelpers.getJavaTypeName(getEnclosingClass().getType()) : THIS_VAR_NAME,
+                                              getApiMethod().getJavaName(),
+                                              argumentList);
+
+            final String returnTypeName = isArrayMethod() ? "int" : getReturnType().typeName();
+            writer.printf("    public static %s %s(%s) {\n", returnTypeName, getBridgeMethodName(context), parameterList);
+            for (ParameterGenerator parameterGenerator : parameterGenerators) {
+                if (parameterGenerator instanceof CParameterGenerator.DirectBuffer) {
+                    writer.printf("        final %s %s = %s;\n",
+                                  JavadocHelpers.getJavaTypeName(parameterGenerator.getType()),
+                                  parameterGenerator.getName(),
+                                  ((CParameterGenerator.DirectBuffer) parameterGenerator).generateBridgeArrayExpr());
+                }
+            }
+            if (isArrayMethod()) {
+                writer.printf("        return putArray(%s, %sBuffer);\n", call, getReturnParameterName(context));
+            } else {
+                if (JavadocHelpers.isVoid(getReturnType())) {
+                    writer.printf("        %s;\n", call);
+                } else {
+                    writer.printf("        final %s %s = %s;\n", returnTypeName, CModuleGenerator.RESULT_VAR_NAME, call);
+                }
+                for (ParameterGenerator parameterGenerator : parameterGenerators) {
+                    if (parameterGenerator instanceof CParameterGenerator.DirectBuffer) {
+                        final String code = ((CParameterGenerator.DirectBuffer) parameterGenerator).generateBridgeCopyBackCode();
+                        if (code != null) {
+                            writer.printf("        %s\n", code);
+                        }
+                    }
+                }
+                if (!JavadocHelpers.isVoid(getReturnType())) {
+                    writer.printf("        return %s;\n", CModuleGenerator.RESULT_VAR_NAME);
+                }
+            }
+            writer.printf("    }\n");
+            writer.printf("\n");
+        }
+
+        @Override
+        public String generateParamListDecl(GeneratorContext context) {
+            return isArrayMethod() ? "int* resultArrayLength" : null;
+        }
+
+        @Override
+        public void writeLocalVarDecl(GeneratorContext context, CodeWriter writer) throws IOException {
+            super.writeLocalVarDecl(context, writer);
+            if (!JavadocHelpers.isVoid(getReturnType())) {
+                writer.writeTemplate("${t} ${r} = (${t}) 0;",
+                                     kv("t", JavadocHelpers.getCTypeName(getReturnType())),
+                                     kv("r", CModuleGenerator.RESULT_VAR_NAME));
+            }
+            if (isArrayMethod()) {
+                writer.writeTemplate("jint ${r}Length = -1;",
+                                     kv("r", CModuleGenerator.RESULT_VAR_NAME));
+            }
+        }
+
+        @Override
+        protected String generateCallTypeName(GeneratorContext context) {
+            if (isArrayMethod()) {
+                return "Int";
+            }
+            return JavadocHelpers.firstCharToUpperCase(getReturnType().typeName());
+        }
+
+        @Override
+        public void writeCallCode(GeneratorContext context, CodeWriter writer) throws IOException {
+            final StringBuilder argumentList = new StringBuilder();
+            argumentList.append(CModuleGenerator.getDirectBridgeClassVarName());
+            argumentList.append(", ");
+            argumentList.append(METHOD_VAR_NAME);
+            if (!getMemberDoc().isStatic()) {
+                argumentList.append(", ");
+                argumentList.append(CModuleGenerator.THIS_REF_VAR_NAME);
+            }
+            for (ParameterGenerator parameterGenerator : parameterGenerators) {
+                argumentList.append(", ");
+                argumentList.append(parameterGenerator.generateCallCode(context));
+            }
+            final String call = String.format("(*jenv)->CallStatic%sMethod(jenv, %s)",
+                                              generateCallTypeName(context), argumentList);
+            if (JavadocHelpers.isVoid(getReturnType())) {
+                writer.writeTemplate("${c};\n" +
+                                             "${x}",
+                                     kv("c", call),
+                                     kv("x", EXCEPTION_CHECK_CODE));
+            } else if (isArrayMethod()) {
+                // NOTE: ParameterGenerator.DirectBuffer will generate code which sets ${r} = ...
+                // the call returns 0 if an exception has been thrown, but no array has been written then
+                writer.writeTemplate("${r}Length = ${c};\n" +
+                                             "if ((*jenv)->ExceptionCheck(jenv)) {\n" +
+                                             "    beam_catch_exception(jenv);\n" +
+                                             "    ${r}Length = -1;\n" +
+                                             "}",
+                                     kv("r", CModuleGenerator.RESULT_VAR_NAME),
+                                     kv("c", call));
+            } else {
+                writer.writeTemplate("${r} = ${c};\n" +
+                                             "${x}",
+                                     kv("r", CModuleGenerator.RESULT_VAR_NAME),
+                                     kv("c", call),
+                                     kv("x", EXCEPTION_CHECK_CODE));
+            }
+        }
+
+        @Override
+        public void writeReturnCode(GeneratorContext context, CodeWriter writer) throws IOException {
+            writePopLocalFrame(writer);
+            if (!JavadocHelpers.isVoid(getReturnType())) {
+                writer.writeTemplate("return ${r};",
+                                     kv("r", CModuleGenerator.RESULT_VAR_NAME));
+            }
+        }
+
+        private boolean isArrayMethod() {
+            return !getReturnType().dimension().isEmpty();
+        }
+
+        private String getReturnParameterName(GeneratorContext context) {
+            for (ApiParameter parameter : context.getParametersFor(getApiMethod())) {
+                if (parameter.getModifier() == ApiParameter.Modifier.RETURN) {
+                    return parameter.getJavaName();
+                }
+            }
+            throw new IllegalStateException();
+        }
+    }
 }
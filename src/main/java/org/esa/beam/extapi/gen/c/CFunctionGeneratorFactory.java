@@ -14,6 +14,9 @@ import org.esa.beam.extapi.gen.GeneratorException;
 import org.esa.beam.extapi.gen.JavadocHelpers;
 import org.esa.beam.extapi.gen.ParameterGenerator;
 
+import java.util.ArrayList;
+import java.util.List;
+
 /**
  * @author Norman Fomferra
  */
@@ -62,11 +65,36 @@ public class CFunctionGeneratorFactory implements FunctionGeneratorFactory {
         return functionGenerator;
     }
 
+    @Override
+    public List<FunctionGenerator> createVariantFunctionGenerators(ApiMethod apiMethod) throws GeneratorException {
+        List<FunctionGenerator> functionGenerators = new ArrayList<FunctionGenerator>();
+        if (CFunctionGenerator.DirectMethod.isApplicable(apiMethod, apiInfo.getParametersFor(apiMethod))) {
+            ParameterGenerator[] parameterGenerators = createParameterGenerators(apiMethod);
+            for (int i = 0; i < parameterGenerators.length; i++) {
+                if (parameterGenerators[i] instanceof CParameterGenerator.PrimitiveArray) {
+                    ApiParameter parameter = ((CParameterGenerator) parameterGenerators[i]).parameter;
+                    parameterGenerators[i] = new CParameterGenerator.DirectBuffer(parameter);
+                }
+            }
+            functionGenerators.add(new CFunctionGenerator.DirectMethod(apiMethod, parameterGenerators));
+        }
+        if (!apiMethod.getMemberDoc().isConstructor()
+                && apiMethod.getReturnType().dimension().isEmpty()
+                && JavadocHelpers.isString(apiMethod.getReturnType())) {
+            functionGenerators.add(new CFunctionGenerator.InternedStringMethod(apiMethod, createParameterGenerators(apiMethod)));
+            functionGenerators.add(new CFunctionGenerator.StringIntoMethod(apiMethod, createParameterGenerators(apiMethod)));
+        }
+        return functionGenerators;
+    }
+
     @Override
     public ParameterGenerator[] createParameterGenerators(ApiMethod apiMethod) throws GeneratorException {
         ExecutableMemberDoc memberDoc = apiMethod.getMemberDoc();
         ApiParameter[] parameters = apiInfo.getParametersFor(apiMethod);
         CParameterGenerator[] parameterGenerators = new CParameterGenerator[parameters.length];
+        // an array whose elements cannot be copied releases the arrays acquired so far and returns
+        List<String> acquiredArrayNames = new ArrayList<String>();
+        String returnStatement = !memberDoc.isConstructor() && JavadocHelpers.isVoid(apiMethod.getReturnType()) ? "return;" : "return _result;";
         for (int i = 0; i < parameterGenerators.length; i++) {
             ApiParameter parameter = parameters[i];
             CParameterGenerator parameterGenerator;
@@ -82,7 +110,10 @@ public class CFunctionGeneratorFactory implements FunctionGeneratorFactory {
                     parameterGenerator = new CParameterGenerator.ObjectScalar(parameter);
                 }
             } else if (JavadocHelpers.isPrimitiveArray(parameterType)) {
-                parameterGenerator = new CParameterGenerator.PrimitiveArray(parameter);
+                acquiredArrayNames.add(parameter.getJavaName());
+                parameterGenerator = new CParameterGenerator.PrimitiveArray(parameter,
+                                                                            new ArrayList<String>(acquiredArrayNames),
+                                                                            returnStatement);
             } else if (JavadocHelpers.isStringArray(parameterType)) {
                 parameterGenerator = new CParameterGenerator.StringArray(parameter);
             } else if (JavadocHelpers.isObjectArray(parameterType)) {
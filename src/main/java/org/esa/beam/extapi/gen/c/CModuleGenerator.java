@@ -16,6 +16,7 @@
 
 package org.esa.beam.extapi.gen.c;
 
+import com.sun.javadoc.ClassDoc;
 import com.sun.javadoc.FieldDoc;
 import com.sun.javadoc.Type;
 import org.esa.beam.extapi.gen.ApiClass;
@@ -25,17 +26,17 @@ import org.esa.beam.extapi.gen.ApiMethod;
 import org.esa.beam.extapi.gen.FunctionGenerator;
 import org.esa.beam.extapi.gen.JavadocHelpers;
 import org.esa.beam.extapi.gen.ModuleGenerator;
+import org.esa.beam.extapi.gen.ParameterGenerator;
+import org.esa.beam.extapi.gen.SymbolIndex;
 
 import java.io.File;
-import java.io.FileWriter;
 import java.io.IOException;
 import java.io.PrintWriter;
-import java.util.Arrays;
-import java.util.HashMap;
+import java.io.StringWriter;
+import java.util.ArrayList;
 import java.util.List;
-import java.util.Map;
-import java.util.Set;
-import java.util.TreeSet;
+
+import static org.esa.beam.extapi.gen.TemplateEval.kv;
 
 /**
  * @author Norman Fomferra
@@ -46,15 +47,22 @@ public class CModuleGenerator extends ModuleGenerator {
     public static final String BEAM_CAPI_SRCDIR = "src/main/c/gen";
     public static final String BEAM_CAPI_NAME = "beam_capi";
     public static final String THIS_VAR_NAME = "_this";
+    public static final String THIS_REF_VAR_NAME = "_thisRef";
     public static final String METHOD_VAR_NAME = "_method";
     public static final String RESULT_VAR_NAME = "_result";
     public static final String CLASS_VAR_NAME_PATTERN = "class%s";
+    public static final String METHOD_INDEX_PATTERN = "BEAM_METHOD_%s";
+    public static final String DIRECT_BRIDGE_CLASS_NAME = "org.esa.beam.extapi.capi.DirectBridge";
+    public static final String BATCH_DISPATCHER_CLASS_NAME = "org.esa.beam.extapi.capi.BatchDispatcher";
+    public static final String BATCH_RUN_METHOD_INDEX_NAME = "BEAM_METHOD_BATCH_RUN";
 
-    private final Map<ApiMethod, String> functionNames;
+    private final SymbolIndex symbolIndex;
+    private CBatchGenerator batchGenerator;
 
     public CModuleGenerator(ApiInfo apiInfo) {
-        super(apiInfo, new CFunctionGeneratorFactory(apiInfo));
-        this.functionNames = createFunctionNames(apiInfo);
+        super(apiInfo, new CFunctionGeneratorFactory(apiInfo), new File(BEAM_CAPI_SRCDIR));
+        this.symbolIndex = apiInfo.getSymbolIndex();
+        printOverloadGroups(symbolIndex);
         getTemplateEval().add("libName", BEAM_CAPI_NAME);
         getTemplateEval().add("libNameUC", BEAM_CAPI_NAME.toUpperCase().replace("-", "_"));
     }
@@ -66,57 +74,100 @@ public class CModuleGenerator extends ModuleGenerator {
     @Override
     public void run() throws IOException {
         super.run();
+        printStats();
+    }
+
+    @Override
+    protected void writeModule() throws IOException {
+        final List<String> sourceFileNames = new ArrayList<String>();
+        final List<String> headerFileNames = new ArrayList<String>();
         writeWinDef();
         writeCHeader();
+        writeDirectBridge();
+        writeBatchDispatcher();
+        headerFileNames.add(BEAM_CAPI_NAME + ".h");
+        if (getOutputMode() == OutputMode.SOURCE_PER_CLASS) {
+            writePrivateHeader();
+            headerFileNames.add(getPrivateHeaderFileName());
+            sourceFileNames.addAll(writeClassSources());
+        }
         writeCSource();
-        printStats();
+        sourceFileNames.add(0, BEAM_CAPI_NAME + ".c");
+        writeMakefile(sourceFileNames, headerFileNames);
     }
 
     @Override
     public String getFunctionNameFor(ApiMethod apiMethod) {
-        return functionNames.get(apiMethod);
+        return symbolIndex.getCFunctionName(apiMethod);
     }
 
     public static String getComponentCClassName(Type type) {
-        return type.typeName().replace('.', '_');
+        return SymbolIndex.getClassName(type);
     }
 
     public static String getComponentCClassVarName(Type type) {
         return String.format(CLASS_VAR_NAME_PATTERN, getComponentCClassName(type));
     }
 
-    public static String getFunctionBaseName(ApiInfo apiInfo, ApiMethod apiMethod) {
-        String targetTypeName = getComponentCClassName(apiMethod.getEnclosingClass().getType());
-        String methodCName = apiInfo.getConfig().getFunctionName(apiMethod.getEnclosingClass().getType().qualifiedTypeName(),
-                                                                 apiMethod.getJavaName(),
-                                                                 apiMethod.getJavaSignature());
-        if (methodCName.equals("<init>")) {
-            methodCName = String.format("new%s", targetTypeName);
+    public static String getDirectBridgeClassVarName() {
+        return String.format(CLASS_VAR_NAME_PATTERN, getSimpleClassName(DIRECT_BRIDGE_CLASS_NAME));
+    }
+
+    public static String getBatchDispatcherClassVarName() {
+        return String.format(CLASS_VAR_NAME_PATTERN, getSimpleClassName(BATCH_DISPATCHER_CLASS_NAME));
+    }
+
+    private static String getSimpleClassName(String className) {
+        return className.substring(className.lastIndexOf('.') + 1);
+    }
+
+    private static String getPackageName(String className) {
+        return className.substring(0, className.lastIndexOf('.'));
+    }
+
+    /**
+     * @return The generator of the {@code ...Batched} functions.
+     */
+    public CBatchGenerator getBatchGenerator() {
+        if (batchGenerator == null) {
+            final List<FunctionGenerator> functionGenerators = new ArrayList<FunctionGenerator>();
+            for (ApiClass apiClass : getApiClasses()) {
+                functionGenerators.addAll(getFunctionGenerators(apiClass));
+            }
+            batchGenerator = new CBatchGenerator(this, functionGenerators);
         }
-        return String.format("%s_%s", targetTypeName, methodCName);
+        return batchGenerator;
+    }
+
+    /**
+     * @return The name of the enum constant which indexes the method table entry of the given function.
+     */
+    public String getMethodIndexName(FunctionGenerator generator) {
+        return String.format(METHOD_INDEX_PATTERN, generator.getFunctionName(this));
     }
 
     private void writeWinDef() throws IOException {
-        PrintWriter writer = new PrintWriter(new FileWriter(new File(BEAM_CAPI_SRCDIR, BEAM_CAPI_NAME + ".def")));
-        try {
-            writeResource(writer, "CModuleGenerator-stubs.def");
-            for (ApiClass apiClass : getApiClasses()) {
-                for (FunctionGenerator generator : getFunctionGenerators(apiClass)) {
-                    writer.printf("\t%s\n", getFunctionNameFor(generator.getApiMethod()));
-                }
+        final StringWriter content = new StringWriter();
+        final PrintWriter writer = new PrintWriter(content);
+        writeResource(writer, "CModuleGenerator-stubs.def");
+        for (ApiClass apiClass : getApiClasses()) {
+            for (FunctionGenerator generator : getFunctionGenerators(apiClass)) {
+                writer.printf("\t%s\n", generator.getFunctionName(this));
             }
-        } finally {
-            writer.close();
         }
+        for (CFunctionGenerator generator : getBatchGenerator().getFunctionGenerators()) {
+            writer.printf("\t%s\n", getBatchGenerator().getFunctionName(generator));
+        }
+        writer.close();
+        writeOutputFile(BEAM_CAPI_NAME + ".def", content.toString());
     }
 
     private void writeCHeader() throws IOException {
-        PrintWriter writer = new PrintWriter(new FileWriter(new File(BEAM_CAPI_SRCDIR, BEAM_CAPI_NAME + ".h")));
-        try {
-            writeCHeader(writer);
-        } finally {
-            writer.close();
-        }
+        final StringWriter content = new StringWriter();
+        final PrintWriter writer = new PrintWriter(content);
+        writeCHeader(writer);
+        writer.close();
+        writeOutputFile(BEAM_CAPI_NAME + ".h", content.toString());
     }
 
     protected void writeCHeaderContents(PrintWriter writer) throws IOException {
@@ -169,62 +220,84 @@ public class CModuleGenerator extends ModuleGenerator {
                 writeFunctionDeclaration(writer, generator);
             }
         }
+        getBatchGenerator().writeFunctionDeclarations(writer);
+    }
+
+    /**
+     * Writes the Java source of the bridge class called by the {@code ...Direct} functions. It must be compiled
+     * against the BEAM API and put on the class path of the Java VM, otherwise these functions are not available.
+     */
+    private void writeDirectBridge() throws IOException {
+        final String simpleClassName = getSimpleClassName(DIRECT_BRIDGE_CLASS_NAME);
+        final StringWriter content = new StringWriter();
+        final PrintWriter writer = new PrintWriter(content);
+        writeFileInfo(writer);
+        writeResource(writer, "CModuleGenerator-DirectBridge.java",
+                      kv("packageName", getPackageName(DIRECT_BRIDGE_CLASS_NAME)),
+                      kv("className", simpleClassName));
+        for (ApiClass apiClass : getApiClasses()) {
+            for (FunctionGenerator generator : getFunctionGenerators(apiClass)) {
+                if (generator instanceof CFunctionGenerator.DirectMethod) {
+                    ((CFunctionGenerator.DirectMethod) generator).writeBridgeMethod(this, writer);
+                }
+            }
+        }
+        writer.printf("}\n");
+        writer.close();
+        writeOutputFile(simpleClassName + ".java", content.toString());
+    }
+
+    /**
+     * Writes the Java source of the dispatcher class which makes the calls recorded by the {@code ...Batched}
+     * functions. Like the bridge class, it must be compiled against the BEAM API and put on the class path.
+     */
+    private void writeBatchDispatcher() throws IOException {
+        final String simpleClassName = getSimpleClassName(BATCH_DISPATCHER_CLASS_NAME);
+        final StringWriter content = new StringWriter();
+        final PrintWriter writer = new PrintWriter(content);
+        writeFileInfo(writer);
+        writeResource(writer, "CModuleGenerator-BatchDispatcher.java",
+                      kv("packageName", getPackageName(BATCH_DISPATCHER_CLASS_NAME)),
+                      kv("className", simpleClassName),
+                      kv("callsPerMethod", String.valueOf(CBatchGenerator.CALLS_PER_METHOD)));
+        getBatchGenerator().writeDispatchMethods(writer);
+        writer.printf("}\n");
+        writer.close();
+        writeOutputFile(simpleClassName + ".java", content.toString());
     }
 
     private void writeCSource() throws IOException {
-        PrintWriter writer = new PrintWriter(new FileWriter(new File(BEAM_CAPI_SRCDIR, BEAM_CAPI_NAME + ".c")));
+        final boolean sourcePerClass = getOutputMode() == OutputMode.SOURCE_PER_CLASS;
+        final StringWriter content = new StringWriter();
+        final PrintWriter writer = new PrintWriter(content);
         try {
             writeFileInfo(writer);
-            writer.printf("#include <stdlib.h>\n");
-            writer.printf("#include <string.h>\n");
-            writer.printf("#include \"%s\"\n", BEAM_CAPI_NAME + ".h");
-            writer.printf("#include \"jni.h\"\n");
-
-            writer.printf("\n");
-            writeResource(writer, "CModuleGenerator-stubs-1.c");
-            writer.printf("\n");
-
-            writer.printf("/* Java API classes. */\n");
-            for (ApiClass apiClass : getApiClasses()) {
-                writer.write(String.format("static jclass %s;\n",
-                                           getComponentCClassVarName(apiClass.getType())));
+            if (sourcePerClass) {
+                writer.printf("#include \"%s\"\n", getPrivateHeaderFileName());
+                writer.printf("\n");
+                writeGlobalVars(writer, "");
+            } else {
+                writeIncludes(writer);
+                writeGlobalVars(writer, "static");
             }
             writer.printf("\n");
 
-            writer.printf("\n");
-            writer.printf("/* Other Java classes used in the API. */\n");
-            writer.write(String.format("static jclass %s;\n",
-                                       String.format(CLASS_VAR_NAME_PATTERN, "String")));
-            for (ApiClass usedApiClass : getApiInfo().getUsedNonApiClasses()) {
-                if (usedApiClass.getType().asClassDoc().isEnum()) {
-                    System.out.println("Warning: unhandled enum detected: enum " + usedApiClass);
-                    System.out.printf("enum %s {\n", usedApiClass.getType().simpleTypeName());
-                    final FieldDoc[] fieldDocs = usedApiClass.getType().asClassDoc().enumConstants();
-                    for (FieldDoc fieldDoc : fieldDocs) {
-                        System.out.printf("    %s,\n", fieldDoc.name());
-                    }
-                    System.out.printf("}\n");
-                }
-                writer.write(String.format("static jclass %s;\n",
-                                           getComponentCClassVarName(usedApiClass.getType())));
+            printEnumWarnings();
+            writeClassVars(writer, sourcePerClass ? "" : "static");
+            if (!sourcePerClass) {
+                writeMethodIndexes(writer);
             }
-            writer.write("\n");
+            writeMethodTable(writer, sourcePerClass ? "" : "static");
+            writeMethodDefs(writer);
 
-            writer.write("\n");
-            for (ApiClass apiClass : getApiClasses()) {
-                List<ApiConstant> constants = getApiInfo().getConstantsOf(apiClass);
-                if (!constants.isEmpty()) {
-                    writer.printf("/* Constants of %s */\n", getComponentCClassName(apiClass.getType()));
-                    for (ApiConstant constant : constants) {
-                        writer.write(String.format("static const %s %s_%s = %s;\n",
-                                                   JavadocHelpers.getCTypeName(constant.getType()),
-                                                   getComponentCClassName(apiClass.getType()),
-                                                   constant.getJavaName(),
-                                                   getConstantCValue(constant)));
-                    }
+            if (!sourcePerClass) {
+                writer.write("\n");
+                // declared extern in the public header
+                for (ApiClass apiClass : getApiClasses()) {
+                    writeConstants(writer, apiClass, "");
                 }
+                writer.write("\n");
             }
-            writer.write("\n");
 
             writer.printf("\n");
             writeResource(writer, "CModuleGenerator-stubs-2.c");
@@ -233,17 +306,8 @@ public class CModuleGenerator extends ModuleGenerator {
             /////////////////////////////////////////////////////////////////////////////////////
             // beam_init_api()
             //
-            writer.write("int beam_init_api()\n");
+            writer.write("static int beam_init_classes(JNIEnv* jenv)\n");
             writer.write("{\n");
-            writer.printf("" +
-                                  "    if (api_init != 0) {\n" +
-                                  "        return 0;\n" +
-                                  "    }\n");
-            writer.printf("" +
-                                  "    if (!beam_is_jvm_created() && !beam_create_jvm_with_defaults()) {\n" +
-                                  "        return 1;\n" +
-                                  "    }\n");
-
             int errCode = 1000;
             writeClassDef(writer,
                           String.format(CLASS_VAR_NAME_PATTERN, "String"),
@@ -258,21 +322,209 @@ public class CModuleGenerator extends ModuleGenerator {
                               errCode);
                 errCode++;
             }
-            writer.write("    api_init = 1;\n");
-            writer.write("    return 0;\n");
+            writer.write(String.format("    %s = beam_find_class(jenv, \"%s\");\n",
+                                       getDirectBridgeClassVarName(), DIRECT_BRIDGE_CLASS_NAME.replace('.', '/')));
+            writer.write(String.format("    if (%s == NULL) {\n", getDirectBridgeClassVarName()));
+            writer.write("        /* the ...Direct functions are not available */\n");
+            writer.write("        (*jenv)->ExceptionClear(jenv);\n");
+            writer.write("    }\n");
+            writer.write(String.format("    %s = beam_find_class(jenv, \"%s\");\n",
+                                       getBatchDispatcherClassVarName(), BATCH_DISPATCHER_CLASS_NAME.replace('.', '/')));
+            writer.write(String.format("    if (%s == NULL) {\n", getBatchDispatcherClassVarName()));
+            writer.write("        /* beam_batch_run() is not available */\n");
+            writer.write("        (*jenv)->ExceptionClear(jenv);\n");
+            writer.write("    }\n");
+            writer.write("\n");
+            writer.write("    return beam_init_methods(jenv);\n");
+            writer.write("}\n\n");
+
+            writer.write("int beam_init_api()\n");
+            writer.write("{\n");
+            writer.write("" +
+                                 "    JNIEnv* jenv;\n" +
+                                 "    int result = 0;\n" +
+                                 "\n" +
+                                 "    if (BEAM_LOAD_ACQUIRE(api_init) != 0) {\n" +
+                                 "        return 0;\n" +
+                                 "    }\n" +
+                                 "    if (!beam_is_jvm_created()) {\n" +
+                                 "        /* initialises the API after the Java VM has been created */\n" +
+                                 "        return beam_create_jvm_with_defaults() ? 0 : 1;\n" +
+                                 "    }\n" +
+                                 "    BEAM_LOCK_API();\n" +
+                                 "    if (api_init == 0) {\n" +
+                                 "        if ((jenv = beam_get_thread_jenv()) == NULL) {\n" +
+                                 "            result = 2;\n" +
+                                 "        } else {\n" +
+                                 "            result = beam_init_classes(jenv);\n" +
+                                 "            if (result == 0) {\n" +
+                                 "                BEAM_STORE_RELEASE(api_init, 1);\n" +
+                                 "            }\n" +
+                                 "        }\n" +
+                                 "    }\n" +
+                                 "    BEAM_UNLOCK_API();\n" +
+                                 "    return result;\n");
             writer.write("}\n\n");
 
             /////////////////////////////////////////////////////////////////////////////////////
             // Generate function code
             //
-            for (ApiClass apiClass : getApiClasses()) {
-                for (FunctionGenerator generator : getFunctionGenerators(apiClass)) {
-                    writeFunctionDefinition(generator, writer);
-                }
+            if (!sourcePerClass) {
+                writeFunctionDefinitions(writer);
             }
+            writer.write("\n");
+            getBatchGenerator().writeFunctionDefinitions(writer);
         } finally {
             writer.close();
         }
+        writeOutputFile(BEAM_CAPI_NAME + ".c", content.toString());
+    }
+
+    private void writePrivateHeader() throws IOException {
+        final String guardName = getPrivateHeaderFileName().toUpperCase().replace('.', '_').replace('-', '_');
+        final StringWriter content = new StringWriter();
+        final PrintWriter writer = new PrintWriter(content);
+        writeFileInfo(writer);
+        writer.printf("#ifndef %s\n", guardName);
+        writer.printf("#define %s\n", guardName);
+        writer.printf("\n");
+        writeIncludes(writer);
+        writer.printf("/* Global variables, defined in %s.c */\n", BEAM_CAPI_NAME);
+        writeGlobalVars(writer, "extern");
+        writer.printf("\n");
+        writeClassVars(writer, "extern");
+        writeMethodIndexes(writer);
+        writeMethodTable(writer, "extern");
+        writer.printf("#endif /* !%s */\n", guardName);
+        writer.close();
+        writeOutputFile(getPrivateHeaderFileName(), content.toString());
+    }
+
+    @Override
+    protected void writeClassSource(ApiClass apiClass, PrintWriter writer) throws IOException {
+        writeFileInfo(writer);
+        writer.printf("#include \"%s\"\n", getPrivateHeaderFileName());
+        writer.printf("\n");
+        // constants are declared extern in the public header
+        writeConstants(writer, apiClass, "");
+        writer.printf("\n");
+        writeFunctionDefinitions(apiClass, writer);
+    }
+
+    private void writeIncludes(PrintWriter writer) throws IOException {
+        writer.printf("#include <stdlib.h>\n");
+        writer.printf("#include <string.h>\n");
+        writer.printf("#include \"%s\"\n", BEAM_CAPI_NAME + ".h");
+        writer.printf("#include \"jni.h\"\n");
+
+        writer.printf("\n");
+        writeResource(writer, "CModuleGenerator-stubs-1.c");
+        writer.printf("\n");
+    }
+
+    private static void writeGlobalVars(PrintWriter writer, String storageClass) {
+        writeVarDecl(writer, storageClass, "JavaVM* jvm", "NULL");
+        writeVarDecl(writer, storageClass, "int api_init", "0");
+    }
+
+    private void writeClassVars(PrintWriter writer, String storageClass) {
+        writer.printf("/* Java API classes. */\n");
+        for (ApiClass apiClass : getApiClasses()) {
+            writeVarDecl(writer, storageClass, "jclass " + getComponentCClassVarName(apiClass.getType()), null);
+        }
+        writer.printf("\n");
+
+        writer.printf("\n");
+        writer.printf("/* Other Java classes used in the API. */\n");
+        writeVarDecl(writer, storageClass, "jclass " + String.format(CLASS_VAR_NAME_PATTERN, "String"), null);
+        for (ApiClass usedApiClass : getApiInfo().getUsedNonApiClasses()) {
+            writeVarDecl(writer, storageClass, "jclass " + getComponentCClassVarName(usedApiClass.getType()), null);
+        }
+        writer.write("\n");
+
+        writer.printf("/* Bridge class of the ...Direct functions, NULL if it is not on the class path. */\n");
+        writeVarDecl(writer, storageClass, "jclass " + getDirectBridgeClassVarName(), null);
+        writer.printf("/* Dispatcher class of the ...Batched functions, NULL if it is not on the class path. */\n");
+        writeVarDecl(writer, storageClass, "jclass " + getBatchDispatcherClassVarName(), null);
+        writer.write("\n");
+    }
+
+    private void writeMethodIndexes(PrintWriter writer) {
+        writer.printf("/* Indexes into the method table. */\n");
+        writer.printf("enum BeamMethodIndex {\n");
+        for (ApiClass apiClass : getApiClasses()) {
+            for (FunctionGenerator generator : getFunctionGenerators(apiClass)) {
+                writer.printf("    %s,\n", getMethodIndexName(generator));
+            }
+        }
+        writer.printf("    %s,\n", BATCH_RUN_METHOD_INDEX_NAME);
+        writer.printf("    BEAM_METHOD_COUNT\n");
+        writer.printf("};\n");
+        writer.printf("\n");
+    }
+
+    private static void writeMethodTable(PrintWriter writer, String storageClass) {
+        writer.printf("/* Java API methods, resolved once by beam_init_api(). */\n");
+        writeVarDecl(writer, storageClass, "jmethodID beam_methods[BEAM_METHOD_COUNT]", null);
+        writer.printf("\n");
+    }
+
+    private void writeMethodDefs(PrintWriter writer) {
+        writer.printf("/* Definitions of the methods in the method table. */\n");
+        writer.printf("static const BeamMethodDef beam_method_defs[BEAM_METHOD_COUNT] = {\n");
+        for (ApiClass apiClass : getApiClasses()) {
+            for (FunctionGenerator generator : getFunctionGenerators(apiClass)) {
+                final ApiMethod apiMethod = generator.getApiMethod();
+                if (generator instanceof CFunctionGenerator.DirectMethod) {
+                    final CFunctionGenerator.DirectMethod directMethod = (CFunctionGenerator.DirectMethod) generator;
+                    writer.printf("    {&%s, \"%s\", \"%s\", 1},\n",
+                                  getDirectBridgeClassVarName(),
+                                  directMethod.getBridgeMethodName(this),
+                                  directMethod.getBridgeMethodSignature());
+                    continue;
+                }
+                writer.printf("    {&%s, \"%s\", \"%s\", %d},\n",
+                              getComponentCClassVarName(apiClass.getType()),
+                              apiMethod.getJavaName(),
+                              apiMethod.getJavaSignature(),
+                              apiMethod.getMemberDoc().isStatic() ? 1 : 0);
+            }
+        }
+        writer.printf("    {&%s, \"run\", \"(ILjava/nio/ByteBuffer;[Ljava/lang/Object;Ljava/nio/ByteBuffer;[Ljava/lang/Object;)I\", 1},\n",
+                      getBatchDispatcherClassVarName());
+        writer.printf("};\n");
+        writer.printf("\n");
+    }
+
+    private void writeConstants(PrintWriter writer, ApiClass apiClass, String storageClass) {
+        List<ApiConstant> constants = getApiInfo().getConstantsOf(apiClass);
+        if (!constants.isEmpty()) {
+            writer.printf("/* Constants of %s */\n", getComponentCClassName(apiClass.getType()));
+            for (ApiConstant constant : constants) {
+                writeVarDecl(writer,
+                             storageClass,
+                             String.format("const %s %s_%s",
+                                           JavadocHelpers.getCTypeName(constant.getType()),
+                                           getComponentCClassName(apiClass.getType()),
+                                           constant.getJavaName()),
+                             getConstantCValue(constant));
+            }
+        }
+    }
+
+    private void printEnumWarnings() {
+        for (ApiClass usedApiClass : getApiInfo().getUsedNonApiClasses()) {
+            final ClassDoc classDoc = usedApiClass.getType().asClassDoc();
+            if (classDoc != null && classDoc.isEnum()) {
+                System.out.println("Warning: unhandled enum detected: enum " + usedApiClass);
+                System.out.printf("enum %s {\n", usedApiClass.getType().simpleTypeName());
+                final FieldDoc[] fieldDocs = classDoc.enumConstants();
+                for (FieldDoc fieldDoc : fieldDocs) {
+                    System.out.printf("    %s,\n", fieldDoc.name());
+                }
+                System.out.printf("}\n");
+            }
+        }
     }
 
     private String getConstantCValue(ApiConstant constant) {
@@ -281,7 +533,7 @@ public class CModuleGenerator extends ModuleGenerator {
     }
 
     private void writeClassDef(PrintWriter writer, String classVarName, String classResourceName, int errCode) {
-        writer.write(String.format("    %s = (*jenv)->FindClass(jenv, \"%s\");\n",
+        writer.write(String.format("    %s = beam_find_class(jenv, \"%s\");\n",
                                    classVarName, classResourceName));
         writer.write(String.format("    if (%s == NULL) return %d;\n",
                                    classVarName, errCode));
@@ -290,42 +542,38 @@ public class CModuleGenerator extends ModuleGenerator {
 
     @Override
     protected void writeInitCode(PrintWriter writer, FunctionGenerator functionGenerator) throws IOException {
-        writeInitVmCode(writer, functionGenerator);
-        writeInitMethodCode(writer, functionGenerator);
-    }
-
-    private void writeInitVmCode(PrintWriter writer, FunctionGenerator generator) {
+        final ApiMethod apiMethod = functionGenerator.getApiMethod();
+        final String returnStatement = JavadocHelpers.isVoid(apiMethod.getReturnType()) ? "return;" : "return _result;";
         writer.printf("\n");
-        if (JavadocHelpers.isVoid(generator.getApiMethod().getReturnType())) {
-            writer.printf("    if (beam_init_api() != 0) return;\n");
+        writer.printf("    if ((jenv = beam_get_jenv()) == NULL) %s\n", returnStatement);
+        if (functionGenerator instanceof CFunctionGenerator.DirectMethod) {
+            // the method is not resolved if the bridge class has not been found
+            writer.printf("    if ((%s = beam_methods[%s]) == NULL) %s\n", METHOD_VAR_NAME, getMethodIndexName(functionGenerator), returnStatement);
         } else {
-            writer.printf("    if (beam_init_api() != 0) return _result;\n");
+            writer.printf("    %s = beam_methods[%s];\n", METHOD_VAR_NAME, getMethodIndexName(functionGenerator));
+        }
+        if (functionGenerator instanceof CFunctionGenerator && ((CFunctionGenerator) functionGenerator).isInstanceMethod()) {
+            // a stale handle must not be passed to Java as null, the error is recorded for beam_has_error()
+            writer.printf("    if ((%s = beam_resolve_handle(jenv, %s)) == NULL) %s\n", THIS_REF_VAR_NAME, THIS_VAR_NAME, returnStatement);
+        }
+        for (ParameterGenerator parameterGenerator : functionGenerator.getParameterGenerators()) {
+            if (parameterGenerator instanceof CParameterGenerator.ObjectScalar) {
+                final String name = parameterGenerator.getName();
+                writer.printf("    if (%s != NULL && (%sRef = beam_resolve_handle(jenv, %s)) == NULL) %s\n", name, name, name, returnStatement);
+            }
+        }
+        final int localFrameCapacity = CFunctionGenerator.getLocalFrameCapacity(apiMethod);
+        if (localFrameCapacity > 0) {
+            // all local references are deleted when the frame is popped, the API may be called in a native loop
+            writer.printf("    if ((*jenv)->PushLocalFrame(jenv, %d) != 0) %s\n", localFrameCapacity, returnStatement);
         }
         writer.printf("\n");
     }
 
     @Override
     protected void writeLocalMethodVarDecl(PrintWriter writer) {
-        writer.printf("    static jmethodID %s = NULL;\n", METHOD_VAR_NAME);
-    }
-
-    private void writeInitMethodCode(PrintWriter writer, FunctionGenerator functionGenerator) {
-        final ApiMethod apiMethod = functionGenerator.getApiMethod();
-
-        writer.printf("    if (%s == NULL) {\n", METHOD_VAR_NAME);
-        writer.printf("        %s = (*jenv)->%s(jenv, %s, \"%s\", \"%s\");\n",
-                      METHOD_VAR_NAME,
-                      apiMethod.getMemberDoc().isStatic() ? "GetStaticMethodID" : "GetMethodID",
-                      getComponentCClassVarName(apiMethod.getEnclosingClass().getType()),
-                      apiMethod.getJavaName(),
-                      apiMethod.getJavaSignature());
-        if (JavadocHelpers.isVoid(apiMethod.getReturnType())) {
-            writer.printf("        if (%s == NULL) return;\n", METHOD_VAR_NAME);
-        } else {
-            writer.printf("        if (%s == NULL) return _result;\n", METHOD_VAR_NAME);
-        }
-        writer.printf("    }\n");
-        writer.printf("\n");
+        writer.printf("    JNIEnv* jenv;\n");
+        writer.printf("    jmethodID %s;\n", METHOD_VAR_NAME);
     }
 
     private void printStats() {
@@ -338,77 +586,24 @@ public class CModuleGenerator extends ModuleGenerator {
         System.out.printf("#Classes: %d, #Methods: %d\n", numClasses, numMethods);
     }
 
-    private static Map<ApiMethod, String> createFunctionNames(ApiInfo apiInfo) {
-        Map<String, Set<ApiMethod>> sameTargetFunctionNames = collectApiMethodsWithSameFunctionName(apiInfo);
-
-        ///////////////////////////////////////////
-        final Set<String> keySet = sameTargetFunctionNames.keySet();
-        final String[] keys = keySet.toArray(new String[keySet.size()]);
-        Arrays.sort(keys);
+    private static void printOverloadGroups(SymbolIndex symbolIndex) {
         ApiClass lastEnclosingClass = null;
-        for (String key : keys) {
-            final Set<ApiMethod> apiMethods = sameTargetFunctionNames.get(key);
-            if (apiMethods.size() > 1) {
-                for (ApiMethod apiMethod : apiMethods) {
-                    final ApiClass enclosingClass = apiMethod.getEnclosingClass();
-                    boolean classChange = !enclosingClass.equals(lastEnclosingClass);
-                    lastEnclosingClass = enclosingClass;
-
-                    if (classChange) {
-                        System.out.printf("</class>\n");
-                        System.out.printf("<class name=\"%s\">\n", enclosingClass.getJavaName());
-                    }
-
-                    System.out.printf("    <method name=\"%s\" sig=\"%s\" renameTo=\"%s...\"/>\n",
-                                      apiMethod.getJavaName().equals("<init>") ? "&lt;init&gt;" : apiMethod.getJavaName(),
-                                      apiMethod.getJavaSignature(),
-                                      apiMethod.getJavaName().equals("<init>") ? "new" : apiMethod.getJavaName());
-
+        for (List<ApiMethod> apiMethods : symbolIndex.getOverloadGroups().values()) {
+            for (ApiMethod apiMethod : apiMethods) {
+                final ApiClass enclosingClass = apiMethod.getEnclosingClass();
+                boolean classChange = !enclosingClass.equals(lastEnclosingClass);
+                lastEnclosingClass = enclosingClass;
+
+                if (classChange) {
+                    System.out.printf("</class>\n");
+                    System.out.printf("<class name=\"%s\">\n", enclosingClass.getJavaName());
                 }
+
+                System.out.printf("    <method name=\"%s\" sig=\"%s\" renameTo=\"%s...\"/>\n",
+                                  apiMethod.getJavaName().equals("<init>") ? "&lt;init&gt;" : apiMethod.getJavaName(),
+                                  apiMethod.getJavaSignature(),
+                                  apiMethod.getJavaName().equals("<init>") ? "new" : apiMethod.getJavaName());
             }
         }
-        ///////////////////////////////////////////
-
-        return createFunctionNames(apiInfo, sameTargetFunctionNames);
-    }
-
-    private static Map<ApiMethod, String> createFunctionNames(ApiInfo apiInfo, Map<String, Set<ApiMethod>> sameTargetFunctionNames) {
-        Set<ApiClass> apiClasses = apiInfo.getApiClasses();
-        Map<ApiMethod, String> targetFunctionNames = new HashMap<ApiMethod, String>(apiClasses.size() * 100);
-        for (ApiClass apiClass : apiClasses) {
-            for (ApiMethod apiMethod : apiInfo.getMethodsOf(apiClass)) {
-                String functionBaseName = getFunctionBaseName(apiInfo, apiMethod);
-                Set<ApiMethod> apiMethods = sameTargetFunctionNames.get(functionBaseName);
-                if (apiMethods.size() > 1) {
-                    int index = 1;
-                    for (ApiMethod m : apiMethods) {
-                        final String renameTo = getFunctionBaseName(apiInfo, m) + index;
-                        targetFunctionNames.put(m, renameTo);
-                        index++;
-                    }
-                } else if (apiMethods.size() == 1) {
-                    final ApiMethod m = apiMethods.iterator().next();
-                    targetFunctionNames.put(m, getFunctionBaseName(apiInfo, m));
-                }
-            }
-        }
-        return targetFunctionNames;
-    }
-
-    private static Map<String, Set<ApiMethod>> collectApiMethodsWithSameFunctionName(ApiInfo apiInfo) {
-        Map<String, Set<ApiMethod>> sameTargetFunctionNames = new HashMap<String, Set<ApiMethod>>(1000);
-        for (ApiClass apiClass : apiInfo.getApiClasses()) {
-            for (ApiMethod apiMethod : apiInfo.getMethodsOf(apiClass)) {
-                String functionBaseName = getFunctionBaseName(apiInfo, apiMethod);
-                Set<ApiMethod> apiMethods = sameTargetFunctionNames.get(functionBaseName);
-                if (apiMethods == null) {
-                    apiMethods = new TreeSet<ApiMethod>();
-                    sameTargetFunctionNames.put(functionBaseName, apiMethods);
-                }
-                apiMethods.add(apiMethod);
-            }
-        }
-        return sameTargetFunctionNames;
     }
-
 }
@@ -2,8 +2,13 @@ package org.esa.beam.extapi.gen.c;
 
 import com.sun.javadoc.Type;
 import org.esa.beam.extapi.gen.ApiParameter;
+import org.esa.beam.extapi.gen.CodeWriter;
 import org.esa.beam.extapi.gen.GeneratorContext;
-import org.esa.beam.extapi.gen.ParameterGenerator;
+import org.esa.beam.extapi.gen.StreamingParameterGenerator;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
 
 import static org.esa.beam.extapi.gen.TemplateEval.eval;
 import static org.esa.beam.extapi.gen.TemplateEval.kv;
@@ -12,7 +17,7 @@ import static org.esa.beam.extapi.gen.JavadocHelpers.getComponentCTypeName;
 /**
  * @author Norman Fomferra
  */
-public abstract class CParameterGenerator implements ParameterGenerator {
+public abstract class CParameterGenerator implements StreamingParameterGenerator {
     protected final ApiParameter parameter;
 
     protected CParameterGenerator(ApiParameter parameter) {
@@ -30,18 +35,48 @@ public abstract class CParameterGenerator implements ParameterGenerator {
     }
 
     @Override
-    public String generateLocalVarDecl(GeneratorContext context) {
-        return null;
+    public void writeLocalVarDecl(GeneratorContext context, CodeWriter writer) throws IOException {
     }
 
     @Override
-    public String generatePreCallCode(GeneratorContext context) {
-        return null;
+    public void writePreCallCode(GeneratorContext context, CodeWriter writer) throws IOException {
     }
 
     @Override
-    public String generatePostCallCode(GeneratorContext context) {
-        return null;
+    public void writePostCallCode(GeneratorContext context, CodeWriter writer) throws IOException {
+    }
+
+    @Override
+    public final String generateLocalVarDecl(GeneratorContext context) {
+        final CodeWriter writer = new CodeWriter();
+        try {
+            writeLocalVarDecl(context, writer);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return writer.toCode();
+    }
+
+    @Override
+    public final String generatePreCallCode(GeneratorContext context) {
+        final CodeWriter writer = new CodeWriter();
+        try {
+            writePreCallCode(context, writer);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return writer.toCode();
+    }
+
+    @Override
+    public final String generatePostCallCode(GeneratorContext context) {
+        final CodeWriter writer = new CodeWriter();
+        try {
+            writePostCallCode(context, writer);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return writer.toCode();
     }
 
     static class PrimitiveScalar extends CParameterGenerator {
@@ -77,9 +112,18 @@ public abstract class CParameterGenerator implements ParameterGenerator {
             return String.format("%s %s", typeName, getName());
         }
 
+        /**
+         * The reference is resolved by the init code of the function, see {@link CModuleGenerator}.
+         */
+        @Override
+        public void writeLocalVarDecl(GeneratorContext context, CodeWriter writer) throws IOException {
+            writer.writeTemplate("jobject ${p}Ref = NULL;",
+                                 kv("p", getName()));
+        }
+
         @Override
         public String generateCallCode(GeneratorContext context) {
-            return getName();
+            return String.format("%sRef", getName());
         }
     }
 
@@ -95,14 +139,15 @@ public abstract class CParameterGenerator implements ParameterGenerator {
         }
 
         @Override
-        public String generateLocalVarDecl(GeneratorContext context) {
-            return String.format("jstring %sString = NULL;", getName());
+        public void writeLocalVarDecl(GeneratorContext context, CodeWriter writer) throws IOException {
+            writer.writeTemplate("jstring ${p}String = NULL;",
+                                 kv("p", getName()));
         }
 
         @Override
-        public String generatePreCallCode(GeneratorContext context) {
-            return String.format("%sString = (*jenv)->NewStringUTF(jenv, %s);",
-                                 getName(), getName());
+        public void writePreCallCode(GeneratorContext context, CodeWriter writer) throws IOException {
+            writer.writeTemplate("${p}String = (*jenv)->NewStringUTF(jenv, ${p});",
+                                 kv("p", getName()));
         }
 
         @Override
@@ -113,8 +158,22 @@ public abstract class CParameterGenerator implements ParameterGenerator {
 
      static class PrimitiveArray extends CParameterGenerator {
 
+        private final List<String> acquiredArrayNames;
+        private final String returnStatement;
+
         PrimitiveArray(ApiParameter parameter) {
+            this(parameter, Arrays.asList(parameter.getJavaName()), "return _result;");
+        }
+
+        /**
+         * @param acquiredArrayNames The names of the array parameters of the function acquired up to and including
+         *                           this one, which are released if the elements cannot be copied.
+         * @param returnStatement    The statement which returns from the function without calling Java then.
+         */
+        PrimitiveArray(ApiParameter parameter, List<String> acquiredArrayNames, String returnStatement) {
             super(parameter);
+            this.acquiredArrayNames = acquiredArrayNames;
+            this.returnStatement = returnStatement;
         }
 
         @Override
@@ -126,25 +185,32 @@ public abstract class CParameterGenerator implements ParameterGenerator {
         }
 
         @Override
-        public String generateLocalVarDecl(GeneratorContext context) {
-            return eval("jarray ${p}Array = NULL;",
-                        kv("p", getName()));
+        public void writeLocalVarDecl(GeneratorContext context, CodeWriter writer) throws IOException {
+            writer.writeTemplate("jarray ${p}Array = NULL;",
+                                 kv("p", getName()));
         }
 
         @Override
-        public String generatePreCallCode(GeneratorContext context) {
-            String typeName = getType().simpleTypeName();
-            String typeNameUC = firstCharToUpperCase(typeName);
+        public void writePreCallCode(GeneratorContext context, CodeWriter writer) throws IOException {
             if (parameter.getModifier() == ApiParameter.Modifier.IN) {
-                return eval("${p}Array = (*jenv)->New${tuc}Array(jenv, ${p}Length);\n" +
-                                    "beam_copy_to_jarray(${p}Array, ${p}Elems, ${p}Length, sizeof (${t}));",
-                            kv("t", typeName),
-                            kv("tuc", typeNameUC),
-                            kv("p", getName()));
+                final StringBuilder releaseCode = new StringBuilder();
+                for (String arrayName : acquiredArrayNames) {
+                    releaseCode.append(String.format("    beam_release_array(%sArray);\n", arrayName));
+                }
+                writer.writeTemplate("${p}Array = beam_acquire_array(jenv, '${tc}', ${p}Length);\n" +
+                                             "if (!beam_copy_to_jarray(${p}Array, '${tc}', ${p}Elems, ${p}Length)) {\n" +
+                                             "${rel}" +
+                                             "    (*jenv)->PopLocalFrame(jenv, NULL);\n" +
+                                             "    ${ret}\n" +
+                                             "}",
+                                     kv("tc", getTypeChar()),
+                                     kv("p", getName()),
+                                     kv("rel", releaseCode),
+                                     kv("ret", returnStatement));
             } else {
-                return eval("${p}Array = (*jenv)->New${tuc}Array(jenv, ${p}Length);",
-                            kv("tuc", typeNameUC),
-                            kv("p", getName()));
+                writer.writeTemplate("${p}Array = beam_acquire_array(jenv, '${tc}', ${p}Length);",
+                                     kv("tc", getTypeChar()),
+                                     kv("p", getName()));
             }
         }
 
@@ -154,26 +220,110 @@ public abstract class CParameterGenerator implements ParameterGenerator {
         }
 
         @Override
-        public String generatePostCallCode(GeneratorContext context) {
-            if (parameter.getModifier() == ApiParameter.Modifier.IN) {
-                return null;
-            } else if (parameter.getModifier() == ApiParameter.Modifier.OUT) {
-                return eval("beam_copy_from_jarray(${p}Array, ${p}Elems, ${p}Length, sizeof (${t}));" +
-                                    "",
-                            kv("p", getName()),
-                            kv("t", getType().simpleTypeName()));
-            } else {
-                return eval("" +
-                                    "if (${p}Elems != NULL && (*jenv)->IsSameObject(jenv, ${p}Array, ${r}Array)) {\n" +
-                                    "    beam_copy_from_jarray(_resultArray, ${p}Elems, ${p}Length, sizeof (${t}));\n" +
-                                    "    ${r} = ${p}Elems;\n" +
-                                    "} else {\n" +
-                                    "    ${r} = beam_alloc_${t}_array(${r}Array, resultArrayLength);\n" +
-                                    "}",
-                            kv("r", CModuleGenerator.RESULT_VAR_NAME),
-                            kv("p", getName()),
-                            kv("t", getType().simpleTypeName()));
+        public void writePostCallCode(GeneratorContext context, CodeWriter writer) throws IOException {
+            if (parameter.getModifier() == ApiParameter.Modifier.OUT) {
+                writer.writeTemplate("beam_copy_from_jarray(${p}Array, '${tc}', ${p}Elems, ${p}Length);",
+                                     kv("tc", getTypeChar()),
+                                     kv("p", getName()));
+            } else if (parameter.getModifier() == ApiParameter.Modifier.RETURN) {
+                // the elements are not returned if they could not be copied
+                writer.writeTemplate("if (${p}Elems != NULL && (*jenv)->IsSameObject(jenv, ${p}Array, ${r}Array)) {\n" +
+                                             "    if (beam_copy_from_jarray(_resultArray, '${tc}', ${p}Elems, ${p}Length)) {\n" +
+                                             "        ${r} = ${p}Elems;\n" +
+                                             "    }\n" +
+                                             "} else {\n" +
+                                             "    ${r} = beam_alloc_${t}_array(${r}Array, resultArrayLength);\n" +
+                                             "}",
+                                     kv("r", CModuleGenerator.RESULT_VAR_NAME),
+                                     kv("p", getName()),
+                                     kv("t", getType().simpleTypeName()),
+                                     kv("tc", getTypeChar()));
             }
+            writer.writeTemplate("beam_release_array(${p}Array);",
+                                 kv("p", getName()));
+        }
+
+        /**
+         * @return The JNI signature character of the element type, e.g. "F" for float arrays, which selects the
+         *         array pool and the copy functions.
+         */
+        private String getTypeChar() {
+            return String.valueOf(parameter.getJavaSignature().charAt(1));
+        }
+    }
+
+
+    /**
+     * A primitive array parameter of a {@link CFunctionGenerator.DirectMethod}: the caller's elements are
+     * wrapped by a direct buffer, no Java array is created in C.
+     */
+    static class DirectBuffer extends CParameterGenerator {
+
+        DirectBuffer(ApiParameter parameter) {
+            super(parameter);
+        }
+
+        @Override
+        public String generateParamListDecl(GeneratorContext context) {
+            return eval("${c}${t}* ${p}Elems, int ${p}Length",
+                        kv("c", parameter.getModifier() == ApiParameter.Modifier.IN ? "const " : ""),
+                        kv("t", getComponentCTypeName(getType())),
+                        kv("p", getName()));
+        }
+
+        @Override
+        public void writeLocalVarDecl(GeneratorContext context, CodeWriter writer) throws IOException {
+            writer.writeTemplate("jobject ${p}Buffer = NULL;",
+                                 kv("p", getName()));
+        }
+
+        @Override
+        public void writePreCallCode(GeneratorContext context, CodeWriter writer) throws IOException {
+            writer.writeTemplate("if (${p}Elems != NULL) {\n" +
+                                         "    ${p}Buffer = (*jenv)->NewDirectByteBuffer(jenv, (void*) ${p}Elems, (jlong) ${p}Length * sizeof (${t}));\n" +
+                                         "}",
+                                 kv("t", getComponentCTypeName(getType())),
+                                 kv("p", getName()));
+        }
+
+        @Override
+        public String generateCallCode(GeneratorContext context) {
+            return eval("${p}Buffer", kv("p", getName()));
+        }
+
+        @Override
+        public void writePostCallCode(GeneratorContext context, CodeWriter writer) throws IOException {
+            if (parameter.getModifier() == ApiParameter.Modifier.RETURN) {
+                // the bridge method returns the number of elements it has written into the buffer, or -1
+                writer.writeTemplate("if (${r}Length >= 0) {\n" +
+                                             "    ${r} = ${p}Elems;\n" +
+                                             "    if (resultArrayLength != NULL) {\n" +
+                                             "        *resultArrayLength = ${r}Length;\n" +
+                                             "    }\n" +
+                                             "}",
+                                     kv("r", CModuleGenerator.RESULT_VAR_NAME),
+                                     kv("p", getName()));
+            }
+        }
+
+        /**
+         * @return The Java expression which converts the buffer into the array passed to the API method.
+         */
+        String generateBridgeArrayExpr() {
+            return eval("${f}${tuc}Array(${p}Buffer)",
+                        kv("f", parameter.getModifier() == ApiParameter.Modifier.IN ? "get" : "new"),
+                        kv("tuc", firstCharToUpperCase(getType().simpleTypeName())),
+                        kv("p", getName()));
+        }
+
+        /**
+         * @return The Java statement which copies the array back into the buffer, or {@code null}.
+         */
+        String generateBridgeCopyBackCode() {
+            if (parameter.getModifier() == ApiParameter.Modifier.OUT) {
+                return eval("putArray(${p}, ${p}Buffer);", kv("p", getName()));
+            }
+            return null;
         }
     }
 
@@ -193,16 +343,16 @@ public abstract class CParameterGenerator implements ParameterGenerator {
         }
 
         @Override
-        public String generateLocalVarDecl(GeneratorContext context) {
-            return eval("jarray ${p}Array = NULL;",
-                        kv("p", getName()));
+        public void writeLocalVarDecl(GeneratorContext context, CodeWriter writer) throws IOException {
+            writer.writeTemplate("jarray ${p}Array = NULL;",
+                                 kv("p", getName()));
         }
 
         @Override
-        public String generatePreCallCode(GeneratorContext context) {
-            return eval("${p}Array = beam_new_jobject_array(${p}Elems, ${p}Length, ${c});",
-                        kv("p", getName()),
-                        kv("c", CModuleGenerator.getComponentCClassVarName(getType())));
+        public void writePreCallCode(GeneratorContext context, CodeWriter writer) throws IOException {
+            writer.writeTemplate("${p}Array = beam_new_jobject_array(${p}Elems, ${p}Length, ${c});",
+                                 kv("p", getName()),
+                                 kv("c", CModuleGenerator.getComponentCClassVarName(getType())));
         }
 
         @Override
@@ -210,11 +360,6 @@ public abstract class CParameterGenerator implements ParameterGenerator {
             return eval("${p}Array",
                         kv("p", getName()));
         }
-
-        @Override
-        public String generatePostCallCode(GeneratorContext context) {
-            return null;
-        }
     }
 
 
@@ -231,15 +376,15 @@ public abstract class CParameterGenerator implements ParameterGenerator {
         }
 
         @Override
-        public String generateLocalVarDecl(GeneratorContext context) {
-            return eval("jobjectArray ${p}Array = NULL;",
-                        kv("p", getName()));
+        public void writeLocalVarDecl(GeneratorContext context, CodeWriter writer) throws IOException {
+            writer.writeTemplate("jobjectArray ${p}Array = NULL;",
+                                 kv("p", getName()));
         }
 
         @Override
-        public String generatePreCallCode(GeneratorContext context) {
-            return eval("${p}Array = beam_new_jstring_array(${p}Elems, ${p}Length);",
-                        kv("p", getName()));
+        public void writePreCallCode(GeneratorContext context, CodeWriter writer) throws IOException {
+            writer.writeTemplate("${p}Array = beam_new_jstring_array(${p}Elems, ${p}Length);",
+                                 kv("p", getName()));
         }
 
         @Override
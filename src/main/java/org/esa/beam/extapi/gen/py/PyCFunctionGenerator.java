@@ -8,11 +8,13 @@ import org.esa.beam.extapi.gen.ApiParameter;
 import org.esa.beam.extapi.gen.FunctionGenerator;
 import org.esa.beam.extapi.gen.GeneratorContext;
 import org.esa.beam.extapi.gen.JavadocHelpers;
+import org.esa.beam.extapi.gen.SymbolIndex;
 import org.esa.beam.extapi.gen.TemplateEval;
-import org.esa.beam.extapi.gen.c.CModuleGenerator;
+
+import java.util.ArrayList;
+import java.util.List;
 
 import static org.esa.beam.extapi.gen.JavadocHelpers.getComponentCTypeName;
-import static org.esa.beam.extapi.gen.TemplateEval.eval;
 import static org.esa.beam.extapi.gen.TemplateEval.kv;
 import static org.esa.beam.extapi.gen.py.PyCModuleGenerator.RESULT_VAR_NAME;
 import static org.esa.beam.extapi.gen.py.PyCModuleGenerator.THIS_VAR_NAME;
@@ -60,17 +62,46 @@ public abstract class PyCFunctionGenerator implements FunctionGenerator {
         return parameterGenerators;
     }
 
+    /**
+     * The signature depends on the calling convention, see {@link #generateMethodFlags()}.
+     */
     @Override
     public String generateFunctionSignature(GeneratorContext context) {
-        return String.format("PyObject* %s(PyObject* self, PyObject* args)",
-                             context.getFunctionNameFor(getApiMethod()));
+        final String parameterList;
+        if (parameterGenerators.length == 0) {
+            parameterList = "PyObject* self, PyObject* args";
+        } else if (parameterGenerators.length == 1) {
+            parameterList = "PyObject* self, PyObject* arg";
+        } else {
+            parameterList = "PyObject* self, PyObject* const* args, Py_ssize_t nargs";
+        }
+        return String.format("PyObject* %s(%s)", context.getFunctionNameFor(getApiMethod()), parameterList);
+    }
+
+    /**
+     * Functions without parameters are called with {@code METH_NOARGS}, functions with one parameter with
+     * {@code METH_O}, all others with {@code METH_FASTCALL}, so that the arguments are neither packed into a tuple
+     * nor parsed with a format string. Constructors and static methods are static methods of the type.
+     *
+     * @return The flags of the method of the Python type.
+     */
+    public String generateMethodFlags() {
+        final String flags;
+        if (parameterGenerators.length == 0) {
+            flags = "METH_NOARGS";
+        } else if (parameterGenerators.length == 1) {
+            flags = "METH_O";
+        } else {
+            flags = "METH_FASTCALL";
+        }
+        return isInstanceMethod() ? flags : flags + " | METH_STATIC";
     }
 
     @Override
     public final String generateLocalVarDecl(GeneratorContext context) {
         StringBuilder sb = new StringBuilder();
         if (isInstanceMethod()) {
-            sb.append(generateObjectTypeDecl(PyCModuleGenerator.THIS_VAR_NAME));
+            sb.append(format("void* ${this};"));
         }
         String lvd = generateLocalVarDecl0(context);
         if (lvd != null) {
@@ -85,13 +116,7 @@ public abstract class PyCFunctionGenerator implements FunctionGenerator {
     protected abstract String generateLocalVarDecl0(GeneratorContext context);
 
     String format(String pattern, TemplateEval.KV... pairs) {
-        return templateEval.add(pairs).eval(pattern);
-    }
-
-    static String generateObjectTypeDecl(String varName) {
-        return eval("const char* ${var}Type;\n" +
-                            "unsigned PY_LONG_LONG ${var};",
-                    kv("var", varName));
+        return templateEval.evalWith(pattern, pairs);
     }
 
     @Override
@@ -99,46 +124,132 @@ public abstract class PyCFunctionGenerator implements FunctionGenerator {
         return null;
     }
 
+    /**
+     * The function is a method of the Python type of its class, {@code self} is the object of an instance method.
+     */
     @Override
     public String generateInitCode(GeneratorContext context) {
-        StringBuilder formatString = new StringBuilder();
-        StringBuilder argumentsStrings = new StringBuilder();
+        StringBuilder code = new StringBuilder();
         if (isInstanceMethod()) {
-            formatString.append("(sK)");
-            argumentsStrings.append(format("&${this}Type, &${this}"));
-        }
-        for (PyCParameterGenerator pyCParameterGenerator : getParameterGenerators()) {
-            String format = pyCParameterGenerator.generateParseFormat(context);
-            if (format != null) {
-                formatString.append(format);
+            code.append(format("${this} = ((BeamPy_JObject*) self)->handle;"));
+        }
+        // the number of arguments is checked by Python for METH_NOARGS and METH_O
+        final List<String> conditions = new ArrayList<String>();
+        final List<String> assignments = new ArrayList<String>();
+        if (parameterGenerators.length > 1) {
+            conditions.add(String.format("beam_check_pyargs(\"%s.%s\", nargs, %d)",
+                                         SymbolIndex.getClassName(getEnclosingClass().getType()),
+                                         context.getApiInfo().getSymbolIndex().getPyMethodName(apiMethod),
+                                         parameterGenerators.length));
+        }
+        for (int i = 0; i < parameterGenerators.length; i++) {
+            final String arg = parameterGenerators.length == 1 ? "arg" : String.format("args[%d]", i);
+            final String assignment = parameterGenerators[i].generateArgAssignment(arg);
+            if (assignment != null) {
+                assignments.add(assignment);
             }
-            String args = pyCParameterGenerator.generateParseArgs(context);
-            if (args != null) {
-                if (argumentsStrings.length() > 0) {
-                    argumentsStrings.append(", ");
-                }
-                argumentsStrings.append(args);
+            final String convertCall = parameterGenerators[i].generateConvertCall(arg);
+            if (convertCall != null) {
+                conditions.add(convertCall);
             }
         }
-        if (argumentsStrings.length() > 0) {
-            return String.format("if (!PyArg_ParseTuple(args, \"%s:%s\", %s)) {\n" +
-                                         "    return NULL;\n" +
-                                         "}",
-                                 formatString,
-                                 getCApiFunctionName(context),
-                                 argumentsStrings);
+        if (!conditions.isEmpty()) {
+            if (code.length() > 0) {
+                code.append("\n");
+            }
+            code.append("if (!").append(conditions.get(0));
+            for (String condition : conditions.subList(1, conditions.size())) {
+                code.append("\n        || !").append(condition);
+            }
+            code.append(") {\n" +
+                                "    return NULL;\n" +
+                                "}");
+        }
+        // objects are assigned after the number of arguments has been checked
+        for (String assignment : assignments) {
+            if (code.length() > 0) {
+                code.append("\n");
+            }
+            code.append(assignment);
         }
-        return null;
+        return code.length() > 0 ? code.toString() : null;
     }
 
     @Override
     public String generatePreCallCode(GeneratorContext context) {
-        return null;
+        // if the elements of an array argument cannot be acquired, the ones acquired before are released
+        final StringBuilder code = new StringBuilder();
+        final List<PyCParameterGenerator> acquired = new ArrayList<PyCParameterGenerator>();
+        for (PyCParameterGenerator array : getAcquiredParameters()) {
+            code.append(format("if (!${call}) {\n", kv("call", array.generateAcquireCall())));
+            for (PyCParameterGenerator acquiredArray : acquired) {
+                code.append(format("    ${call};\n", kv("call", acquiredArray.generateReleaseCall())));
+            }
+            code.append("    return NULL;\n");
+            code.append("}\n");
+            acquired.add(array);
+        }
+        // all arguments are C values now, other Python threads may run while the Java method is called
+        code.append("Py_BEGIN_ALLOW_THREADS");
+        return code.toString();
     }
 
     @Override
     public String generatePostCallCode(GeneratorContext context) {
-        return null;
+        final StringBuilder code = new StringBuilder();
+        code.append("Py_END_ALLOW_THREADS\n");
+        for (PyCParameterGenerator array : getAcquiredParameters()) {
+            code.append(generateReleaseCode(array)).append("\n");
+        }
+        // the C function has returned 0 or NULL if the Java method has thrown an exception
+        code.append("if (beam_has_error()) {\n" +
+                            "    return beam_raise_java_error();\n" +
+                            "}");
+        return code.toString();
+    }
+
+    /**
+     * @return The code which releases the elements of the given array argument after the call.
+     */
+    protected String generateReleaseCode(PyCParameterGenerator array) {
+        return format("${call};", kv("call", array.generateReleaseCall()));
+    }
+
+    /**
+     * @return The array parameters, whose elements are acquired before the call and released after it.
+     */
+    protected List<PyCParameterGenerator> getAcquiredParameters() {
+        final List<PyCParameterGenerator> arrays = new ArrayList<PyCParameterGenerator>();
+        for (PyCParameterGenerator parameterGenerator : parameterGenerators) {
+            if (parameterGenerator.generateAcquireCall() != null) {
+                arrays.add(parameterGenerator);
+            }
+        }
+        return arrays;
+    }
+
+    /**
+     * @return The buffer protocol format of the given primitive Java type, see the Python struct module.
+     */
+    static String getBufferFormat(String typeName) {
+        if (typeName.equals("boolean")) {
+            return "?";
+        } else if (typeName.equals("char")) {
+            return "c";
+        } else if (typeName.equals("byte")) {
+            return "b";
+        } else if (typeName.equals("short")) {
+            return "h";
+        } else if (typeName.equals("int")) {
+            return "i";
+        } else if (typeName.equals("long")) {
+            return "q";
+        } else if (typeName.equals("float")) {
+            return "f";
+        } else if (typeName.equals("double")) {
+            return "d";
+        }
+        throw new IllegalArgumentException("not a primitive type: " + typeName);
     }
 
     protected boolean hasReturnParameter(GeneratorContext context) {
@@ -184,9 +295,7 @@ public abstract class PyCFunctionGenerator implements FunctionGenerator {
     }
 
     private String getCApiFunctionName(GeneratorContext context) {
-        final PyCModuleGenerator pyCModuleGenerator = (PyCModuleGenerator) context;
-        final CModuleGenerator cModuleGenerator = pyCModuleGenerator.getCModuleGenerator();
-        return cModuleGenerator.getFunctionNameFor(apiMethod);
+        return context.getApiInfo().getSymbolIndex().getCFunctionName(apiMethod);
     }
 
     private boolean isInstanceMethod() {
@@ -196,17 +305,7 @@ public abstract class PyCFunctionGenerator implements FunctionGenerator {
     @Override
     public String generateDocText(GeneratorContext context) {
         // todo: generate Python-style documentation
-        final String text = JavadocHelpers.encodeCCodeString(apiMethod.getMemberDoc().getRawCommentText());
-        if (isInstanceMethod()) {
-            final String thisParamText = String.format("@param this The %s object.", JavadocHelpers.getComponentCTypeName(apiMethod.getEnclosingClass().getType()));
-            final int i = text.indexOf("@param");
-            if (i > 0) {
-                return String.format("%s\\n%s\\n%s", text.substring(0, i), thisParamText, text.substring(i));
-            } else {
-                return String.format("%s\\n%s", text, thisParamText);
-            }
-        }
-        return text;
+        return JavadocHelpers.encodeCCodeString(apiMethod.getMemberDoc().getRawCommentText());
     }
 
     static class VoidMethod extends PyCFunctionGenerator {
@@ -310,12 +409,8 @@ public abstract class PyCFunctionGenerator implements FunctionGenerator {
 
         @Override
         public String generateReturnCode(GeneratorContext context) {
-            return format("if (${res} != NULL) {\n" +
-                                  "    return Py_BuildValue(\"(sK)\", \"${type}\", (unsigned PY_LONG_LONG) ${res});\n" +
-                                  "} else {\n" +
-                                  "    return Py_BuildValue(\"\");\n" +
-                                  "}",
-                          kv("type", JavadocHelpers.getCTypeName(getReturnType())));
+            return format("return beam_new_pyjobject(&${type}, ${res});",
+                          kv("type", PyCModuleGenerator.getTypeVarName(context.getApiInfo(), getReturnType())));
         }
     }
 
@@ -393,16 +488,66 @@ public abstract class PyCFunctionGenerator implements FunctionGenerator {
             super(apiMethod, parameterGenerators);
         }
 
+        @Override
+        public String generateLocalVarDecl0(GeneratorContext context) {
+            return format("${t}* ${res};\n" +
+                                  "int ${res}Length;",
+                          kv("t", getComponentCTypeName(getReturnType())));
+        }
+
+        /**
+         * The returned C array is not converted into a list, it is wrapped by a CArray, which frees it and
+         * exposes it through the buffer protocol. If the API function has returned the array passed as
+         * {@link ApiParameter.Modifier#RETURN} argument, the argument is returned.
+         */
         @Override
         public String generateReturnCode(GeneratorContext context) {
+            final PyCParameterGenerator.PrimitiveArray returnArray = getReturnArrayParameter();
+            if (returnArray != null) {
+                return format("if (${res} == NULL) {\n" +
+                                      "    return Py_BuildValue(\"\");\n" +
+                                      "} else if ((void*) ${res} == ${p}Buffer.buf) {\n" +
+                                      "    return beam_return_pyarray(&${p}Buffer, ${p}Seq, \"${format}\", ${p}Length);\n" +
+                                      "} else {\n" +
+                                      "    return beam_new_pycarray(\"${format}\", ${res}, ${res}Length);\n" +
+                                      "}\n",
+                              kv("p", returnArray.getName()),
+                              kv("format", getBufferFormat(getReturnType().typeName())));
+            }
             return format("if (${res} != NULL) {\n" +
-                                  "    ${res}Seq = beam_new_pyseq_from_${type}_array(${res}, ${res}Length);\n" +
-                                  "    free(${res});\n" +
-                                  "    return ${res}Seq;\n" +
+                                  "    return beam_new_pycarray(\"${format}\", ${res}, ${res}Length);\n" +
                                   "} else {\n" +
                                   "    return Py_BuildValue(\"\");\n" +
                                   "}\n",
-                          kv("type", getComponentCTypeName(getReturnType())));
+                          kv("format", getBufferFormat(getReturnType().typeName())));
+        }
+
+        /**
+         * The elements of the array passed as {@link ApiParameter.Modifier#RETURN} argument are kept if the API
+         * function has returned them, they are released by {@code beam_return_pyarray()}.
+         */
+        @Override
+        protected String generateReleaseCode(PyCParameterGenerator array) {
+            if (array == getReturnArrayParameter()) {
+                return format("if (${res} == NULL || (void*) ${res} != ${p}Buffer.buf) {\n" +
+                                      "    ${call};\n" +
+                                      "}",
+                              kv("p", array.getName()),
+                              kv("call", array.generateReleaseCall()));
+            }
+            return super.generateReleaseCode(array);
+        }
+
+        private PyCParameterGenerator.PrimitiveArray getReturnArrayParameter() {
+            for (PyCParameterGenerator parameterGenerator : parameterGenerators) {
+                if (parameterGenerator instanceof PyCParameterGenerator.PrimitiveArray) {
+                    final PyCParameterGenerator.PrimitiveArray array = (PyCParameterGenerator.PrimitiveArray) parameterGenerator;
+                    if (array.isReturnParameter() && array.getType().typeName().equals(getReturnType().typeName())) {
+                        return array;
+                    }
+                }
+            }
+            return null;
         }
     }
 
@@ -414,13 +559,13 @@ public abstract class PyCFunctionGenerator implements FunctionGenerator {
         @Override
         public String generateReturnCode(GeneratorContext context) {
             return format("if (${res} != NULL) {\n" +
-                                  "    ${res}Seq = beam_new_pyseq_from_jobject_array(\"${type}\", ${res}, ${res}Length);\n" +
+                                  "    ${res}Seq = beam_new_pyseq_from_jobject_array(&${type}, ${res}, ${res}Length);\n" +
                                   "    free(${res});\n" +
                                   "    return ${res}Seq;\n" +
                                   "} else {\n" +
                                   "    return Py_BuildValue(\"\");\n" +
                                   "}\n",
-                          kv("type", getComponentCTypeName(getReturnType())));
+                          kv("type", PyCModuleGenerator.getTypeVarName(context.getApiInfo(), getReturnType())));
         }
     }
 
@@ -432,7 +577,7 @@ public abstract class PyCFunctionGenerator implements FunctionGenerator {
         @Override
         public String generateReturnCode(GeneratorContext context) {
             return format("if (${res} != NULL) {\n" +
-                                  "    ${res}Seq = beam_new_pyseq_from_string_array(${res}, ${res}Length);\n" +
+                                  "    ${res}Seq = beam_new_pyseq_from_string_array((const char**) ${res}, ${res}Length);\n" +
                                   "    beam_release_string_array(${res}, ${res}Length);\n" +
                                   "    return ${res}Seq;\n" +
                                   "} else {\n" +
@@ -13,6 +13,9 @@ import org.esa.beam.extapi.gen.FunctionGeneratorFactory;
 import org.esa.beam.extapi.gen.GeneratorException;
 import org.esa.beam.extapi.gen.JavadocHelpers;
 
+import java.util.Collections;
+import java.util.List;
+
 /**
  * @author Norman Fomferra
  */
@@ -61,6 +64,11 @@ public class PyCFunctionGeneratorFactory implements FunctionGeneratorFactory {
         return functionGenerator;
     }
 
+    @Override
+    public List<FunctionGenerator> createVariantFunctionGenerators(ApiMethod apiMethod) {
+        return Collections.emptyList();
+    }
+
     @Override
     public PyCParameterGenerator[] createParameterGenerators(ApiMethod apiMethod) throws GeneratorException {
         ExecutableMemberDoc memberDoc = apiMethod.getMemberDoc();
@@ -16,21 +16,25 @@
 
 package org.esa.beam.extapi.gen.py;
 
+import com.sun.javadoc.ClassDoc;
 import com.sun.javadoc.Type;
 import org.esa.beam.extapi.gen.ApiClass;
 import org.esa.beam.extapi.gen.ApiConstant;
+import org.esa.beam.extapi.gen.ApiInfo;
 import org.esa.beam.extapi.gen.ApiMethod;
 import org.esa.beam.extapi.gen.FunctionGenerator;
 import org.esa.beam.extapi.gen.JavadocHelpers;
 import org.esa.beam.extapi.gen.ModuleGenerator;
-import org.esa.beam.extapi.gen.ParameterGenerator;
+import org.esa.beam.extapi.gen.SymbolIndex;
 import org.esa.beam.extapi.gen.c.CModuleGenerator;
 
 import java.io.File;
-import java.io.FileWriter;
 import java.io.IOException;
 import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.TreeSet;
 
 import static org.esa.beam.extapi.gen.TemplateEval.kv;
 
@@ -45,12 +49,13 @@ public class PyCModuleGenerator extends ModuleGenerator {
     public static final String BEAM_PYAPI_VARNAMEPREFIX = "BeamPy";
     public static final String THIS_VAR_NAME = "thisObj";
     public static final String RESULT_VAR_NAME = "result";
-    public static final String SELF_OBJ_NAME = "_obj";
+    public static final String TYPE_VAR_NAME_PATTERN = "BeamPy_%sType";
+    public static final String JOBJECT_TYPE_VAR_NAME = "BeamPy_JObjectType";
 
     private final CModuleGenerator cModuleGenerator;
 
     public PyCModuleGenerator(CModuleGenerator cModuleGenerator) {
-        super(cModuleGenerator.getApiInfo(), new PyCFunctionGeneratorFactory(cModuleGenerator.getApiInfo()));
+        super(cModuleGenerator.getApiInfo(), new PyCFunctionGeneratorFactory(cModuleGenerator.getApiInfo()), new File(BEAM_PYAPI_SRCDIR));
         this.cModuleGenerator = cModuleGenerator;
     }
 
@@ -65,145 +70,145 @@ public class PyCModuleGenerator extends ModuleGenerator {
 
     @Override
     public String getFunctionNameFor(ApiMethod apiMethod) {
-        return BEAM_PYAPI_VARNAMEPREFIX + cModuleGenerator.getFunctionNameFor(apiMethod);
+        return getApiInfo().getSymbolIndex().getPyFunctionName(apiMethod);
     }
 
     @Override
-    public void run() throws IOException {
-        super.run();
+    protected void writeModule() throws IOException {
+        final List<String> sourceFileNames = new ArrayList<String>();
+        final List<String> headerFileNames = new ArrayList<String>();
         writeWinDef();
         writeCHeader();
+        headerFileNames.add(BEAM_PYAPI_NAME + ".h");
+        if (getOutputMode() == OutputMode.SOURCE_PER_CLASS) {
+            writePrivateHeader();
+            headerFileNames.add(getPrivateHeaderFileName());
+            sourceFileNames.addAll(writeClassSources());
+        }
         writeCSource();
+        sourceFileNames.add(0, BEAM_PYAPI_NAME + ".c");
+        writeMakefile(sourceFileNames, headerFileNames);
         writePythonSource();
     }
 
+    /**
+     * The Python module only imports the extension module, whose types are the Python classes of the API.
+     */
     private void writePythonSource() throws IOException {
-        final PrintWriter writer = new PrintWriter(new FileWriter(new File(BEAM_PYAPI_SRCDIR, BEAM_PYAPI_NAME + ".py")));
+        final StringWriter content = new StringWriter();
+        final PrintWriter writer = new PrintWriter(content);
         try {
             writer.printf("from _%s import *\n", BEAM_PYAPI_NAME);
-            writer.printf("\n");
-            for (ApiClass apiClass : getApiInfo().getAllClasses()) {
-                final String commentText = JavadocHelpers.convertToPythonDoc(getApiInfo(), apiClass.getType().asClassDoc(), "", false);
-                if (!commentText.isEmpty()) {
-                    writer.printf("\"\"\"\n%s\n\"\"\"\n", commentText);
-                }
-                writer.printf("class %s:\n", getClassName(apiClass.getType()));
-                writer.printf("    def __init__(self, obj):\n");
-                writer.printf("        self.%s = obj\n", SELF_OBJ_NAME);
-                writer.printf("\n");
-                for (FunctionGenerator generator : getFunctionGenerators(apiClass)) {
-                    String instanceFName = generator.getApiMethod().getJavaName();
-                    if (instanceFName.equals("<init>")) {
-                        instanceFName = "new" + getClassName(apiClass.getType());
-                    }
-                    String staticFName = getCModuleGenerator().getFunctionNameFor(generator.getApiMethod());
-                    StringBuilder params = new StringBuilder();
-                    for (ParameterGenerator parameterGenerator : generator.getParameterGenerators()) {
-                        if (params.length() > 0) {
-                            params.append(", ");
-                        }
-                        params.append(parameterGenerator.getName());
-                    }
-                    StringBuilder args = new StringBuilder();
-                    for (ParameterGenerator parameterGenerator : generator.getParameterGenerators()) {
-                        if (args.length() > 0) {
-                            args.append(", ");
-                        }
-                        if (isObject(parameterGenerator.getType())) {
-                            args.append(parameterGenerator.getName());
-                            args.append(".");
-                            args.append(SELF_OBJ_NAME);
-                        } else {
-                            args.append(parameterGenerator.getName());
-                        }
-                    }
-
-                    final String functionCommentText = JavadocHelpers.convertToPythonDoc(getApiInfo(),
-                                                                                         generator.getApiMethod().getMemberDoc(),
-                                                                                         "        ",
-                                                                                         false);
-
-                    if (JavadocHelpers.isVoid(generator.getApiMethod().getReturnType())) {
-                        if (JavadocHelpers.isInstance(generator.getApiMethod().getMemberDoc())) {
-                            writePythonInstanceFuncHeader(writer, instanceFName, params, functionCommentText);
-                            writer.printf("        %s(self.%s%s)\n", staticFName, SELF_OBJ_NAME, args.length() > 0 ? ", " + args : "");
-                            writer.printf("        return\n");
-                        } else {
-                            writePythonStaticFuncHeader(writer, instanceFName, params, functionCommentText);
-                            writer.printf("        %s(%s)\n", staticFName, args);
-                            writer.printf("        return\n");
-                        }
-                    } else {
-                        if (isObject(generator.getApiMethod().getReturnType())) {
-                            String className = getClassName(generator.getApiMethod().getReturnType());
-                            if (JavadocHelpers.isInstance(generator.getApiMethod().getMemberDoc())) {
-                                writePythonInstanceFuncHeader(writer, instanceFName, params, functionCommentText);
-                                writer.printf("        return %s(%s(self.%s%s))\n", className, staticFName, SELF_OBJ_NAME, args.length() > 0 ? ", " + args : "");
-                            } else {
-                                writePythonStaticFuncHeader(writer, instanceFName, params, functionCommentText);
-                                writer.printf("        return %s(%s(%s))\n", className, staticFName, args);
-                            }
-                        } else {
-                            if (JavadocHelpers.isInstance(generator.getApiMethod().getMemberDoc())) {
-                                writePythonInstanceFuncHeader(writer, instanceFName, params, functionCommentText);
-                                writer.printf("        return %s(self.%s%s)\n", staticFName, SELF_OBJ_NAME, args.length() > 0 ? ", " + args : "");
-                            } else {
-                                writePythonStaticFuncHeader(writer, instanceFName, params, functionCommentText);
-                                writer.printf("        return %s(%s)\n", staticFName, args);
-                            }
-                        }
-                    }
-                    writer.printf("\n");
-                }
-                writer.printf("\n");
-            }
         } finally {
             writer.close();
         }
+        writeOutputFile(BEAM_PYAPI_NAME + ".py", content.toString());
     }
 
-    private void writePythonStaticFuncHeader(PrintWriter writer, String instanceFName, StringBuilder params, String functionCommentText) {
-        writer.printf("    def %s(%s):\n", instanceFName, params);
-        if (!functionCommentText.isEmpty()) {
-            writer.printf("        \"\"\"\n");
-            writer.printf("%s\n", functionCommentText);
-            writer.printf("        \"\"\"\n");
-        }
+    /**
+     * @return The classes, for which Python types are generated: the API classes and the classes used by them.
+     */
+    List<ApiClass> getTypeClasses() {
+        return getTypeClasses(getApiInfo());
     }
 
-    private void writePythonInstanceFuncHeader(PrintWriter writer, String instanceFName, StringBuilder params, String functionCommentText) {
-        writer.printf("    def %s(self%s):\n", instanceFName, params.length() > 0 ? ", " + params : "");
-        if (!functionCommentText.isEmpty()) {
-            writer.printf("        \"\"\"\n");
-            writer.printf("%s\n", functionCommentText);
-            writer.printf("        \"\"\"\n");
+    private static List<ApiClass> getTypeClasses(ApiInfo apiInfo) {
+        final List<ApiClass> typeClasses = new ArrayList<ApiClass>();
+        for (ApiClass apiClass : new TreeSet<ApiClass>(apiInfo.getAllClasses())) {
+            if (!JavadocHelpers.isString(apiClass.getType()) && !JavadocHelpers.isTypeVariable(apiClass.getType())) {
+                typeClasses.add(apiClass);
+            }
         }
+        return typeClasses;
     }
 
-    private String getClassName(Type type) {
-        return type.typeName().replace('.', '_');
+    /**
+     * @param apiInfo The API info.
+     * @param type    A Java class type.
+     * @return The name of the variable of the Python type generated for the class, or of the JObject type if
+     *         there is none. The names are looked up in the symbol index of the API.
+     */
+    static String getTypeVarName(ApiInfo apiInfo, Type type) {
+        return apiInfo.getSymbolIndex().getPyTypeVarName(type);
     }
 
-    private boolean isObject(Type type) {
-        return !type.isPrimitive() && !JavadocHelpers.isString(type);
+    /**
+     * @return The type of the superclass if it is an API class, so that the type hierarchy of the API classes is the
+     *         one of the Java classes, otherwise the JObject type.
+     */
+    private static String getBaseTypeVarName(ApiInfo apiInfo, ApiClass apiClass) {
+        if (apiInfo.getApiClasses().contains(apiClass)) {
+            final ClassDoc superclass = apiClass.getType().asClassDoc().superclass();
+            if (superclass != null) {
+                for (ApiClass superApiClass : apiInfo.getApiClasses()) {
+                    if (superApiClass.getType().qualifiedTypeName().equals(superclass.qualifiedTypeName())) {
+                        return getTypeVarName(apiInfo, superclass);
+                    }
+                }
+            }
+        }
+        return JOBJECT_TYPE_VAR_NAME;
     }
 
-    private void writeWinDef() throws IOException {
-        PrintWriter writer = new PrintWriter(new FileWriter(new File(BEAM_PYAPI_SRCDIR, BEAM_PYAPI_NAME + ".def")));
-        try {
-            writeResource(writer, "PyCModuleGenerator-stubs.def");
-        } finally {
-            writer.close();
+    /**
+     * Writes a Python type for every class. The API functions of a class are the methods of its type, constructors
+     * and static methods are static methods.
+     */
+    private void writeTypes(PrintWriter writer) throws IOException {
+        for (ApiClass apiClass : getTypeClasses()) {
+            final String typeName = SymbolIndex.getClassName(apiClass.getType());
+            writer.printf("\n");
+            writer.printf("static PyMethodDef BeamPy_%s_Methods[] = {\n", typeName);
+            if (getApiClasses().contains(apiClass)) {
+                final SymbolIndex symbolIndex = getApiInfo().getSymbolIndex();
+                for (FunctionGenerator generator : getFunctionGenerators(apiClass)) {
+                    writer.printf("    {\"%s\", (PyCFunction) %s, %s, \"%s\"},\n",
+                                  symbolIndex.getPyMethodName(generator.getApiMethod()),
+                                  generator.getFunctionName(this),
+                                  ((PyCFunctionGenerator) generator).generateMethodFlags(),
+                                  generator.generateDocText(this));
+                }
+            }
+            writer.printf("    {NULL, NULL, 0, NULL}  /* Sentinel */\n");
+            writer.printf("};\n");
+            writer.printf("\n");
+            final ClassDoc classDoc = apiClass.getType().asClassDoc();
+            writeResource(writer, "PyCModuleGenerator-stubs-5.c",
+                          kv("typeName", typeName),
+                          kv("doc", classDoc != null ? JavadocHelpers.encodeCCodeString(classDoc.getRawCommentText()) : ""));
+        }
+
+        writer.printf("int beam_add_pyjobject_types(PyObject* module)\n");
+        writer.printf("{\n");
+        for (ApiClass apiClass : getTypeClasses()) {
+            writer.printf("    %s.tp_base = &%s;\n",
+                          getTypeVarName(getApiInfo(), apiClass.getType()),
+                          getBaseTypeVarName(getApiInfo(), apiClass));
         }
+        writer.printf("    if (beam_add_pyjobject_type(module, \"JObject\", &%s) < 0) {\n", JOBJECT_TYPE_VAR_NAME);
+        writer.printf("        return -1;\n");
+        writer.printf("    }\n");
+        for (ApiClass apiClass : getTypeClasses()) {
+            writer.printf("    if (beam_add_pyjobject_type(module, \"%s\", &%s) < 0) {\n",
+                          SymbolIndex.getClassName(apiClass.getType()),
+                          getTypeVarName(getApiInfo(), apiClass.getType()));
+            writer.printf("        return -1;\n");
+            writer.printf("    }\n");
+        }
+        writer.printf("    return 0;\n");
+        writer.printf("}\n");
+    }
+
+    private void writeWinDef() throws IOException {
+        final StringWriter content = new StringWriter();
+        writeResource(content, "PyCModuleGenerator-stubs.def");
+        writeOutputFile(BEAM_PYAPI_NAME + ".def", content.toString());
     }
 
     private void writeCHeader() throws IOException {
-        final FileWriter fileWriter = new FileWriter(new File(BEAM_PYAPI_SRCDIR, BEAM_PYAPI_NAME + ".h"));
-        try {
-            writeCHeader(fileWriter);
-        } finally {
-            fileWriter.close();
-        }
+        final StringWriter content = new StringWriter();
+        writeCHeader(content);
+        writeOutputFile(BEAM_PYAPI_NAME + ".h", content.toString());
     }
 
     @Override
@@ -211,47 +216,39 @@ public class PyCModuleGenerator extends ModuleGenerator {
     }
 
     private void writeCSource() throws IOException {
-        PrintWriter writer = new PrintWriter(new FileWriter(new File(BEAM_PYAPI_SRCDIR, BEAM_PYAPI_NAME + ".c")));
+        final StringWriter content = new StringWriter();
+        final PrintWriter writer = new PrintWriter(content);
+        final boolean sourcePerClass = getOutputMode() == OutputMode.SOURCE_PER_CLASS;
         try {
             writeFileInfo(writer);
-            writer.printf("#include \"%s\"\n", BEAM_PYAPI_NAME + ".h");
-            writer.printf("#include \"%s\"\n", CModuleGenerator.BEAM_CAPI_NAME + ".h");
-            writer.printf("#include \"python.h\"\n");
-
-            writer.printf("\n");
-            writeResource(writer, "PyCModuleGenerator-stubs-1.c");
-            writer.printf("\n");
-
-            writer.write("\n");
-            for (ApiClass apiClass : getApiClasses()) {
-                List<ApiConstant> constants = getApiInfo().getConstantsOf(apiClass);
-                if (!constants.isEmpty()) {
-                    for (ApiConstant constant : constants) {
-                        // todo: generate Python constants
+            if (sourcePerClass) {
+                writer.printf("#include \"%s\"\n", getPrivateHeaderFileName());
+                writer.printf("\n");
+                writeGlobalVars(writer, "");
+            } else {
+                writeIncludes(writer);
+                writeGlobalVars(writer, "static");
+
+                writer.write("\n");
+                for (ApiClass apiClass : getApiClasses()) {
+                    List<ApiConstant> constants = getApiInfo().getConstantsOf(apiClass);
+                    if (!constants.isEmpty()) {
+                        for (ApiConstant constant : constants) {
+                            // todo: generate Python constants
+                        }
                     }
                 }
-            }
-            writer.write("\n");
+                writer.write("\n");
 
-            writer.printf("\n");
-            for (ApiClass apiClass : getApiClasses()) {
-                for (FunctionGenerator generator : getFunctionGenerators(apiClass)) {
-                    writer.printf("%s;\n", generator.generateFunctionSignature(this));
-                }
+                writeFunctionDeclarations(writer);
             }
-            writer.printf("\n");
+
+            writeTypes(writer);
 
             writer.printf("\n");
             writer.printf("static PyMethodDef BeamPy_Methods[] = {\n");
-
-            for (ApiClass apiClass : getApiClasses()) {
-                for (FunctionGenerator generator : getFunctionGenerators(apiClass)) {
-                    writer.printf("    {\"%s\", %s, METH_VARARGS, \"%s\"},\n",
-                                  generator.getFunctionName(cModuleGenerator),
-                                  generator.getFunctionName(this),
-                                  generator.generateDocText(this));
-                }
-            }
+            writer.printf("    {\"beam_get_error_stack_trace\", BeamPy_getErrorStackTrace, METH_NOARGS, \"%s\"},\n",
+                          "Gets the stack trace of the last Java exception raised as error.");
             writer.printf("    {NULL, NULL, 0, NULL}  /* Sentinel */\n");
             writer.printf("};\n");
             writer.printf("\n");
@@ -260,10 +257,8 @@ public class PyCModuleGenerator extends ModuleGenerator {
             writeResource(writer, "PyCModuleGenerator-stubs-2.c");
             writer.printf("\n");
 
-            for (ApiClass apiClass : getApiClasses()) {
-                for (FunctionGenerator generator : getFunctionGenerators(apiClass)) {
-                    writeFunctionDefinition(generator, writer);
-                }
+            if (!sourcePerClass) {
+                writeFunctionDefinitions(writer);
             }
 
             writer.printf("\n");
@@ -281,6 +276,55 @@ public class PyCModuleGenerator extends ModuleGenerator {
         } finally {
             writer.close();
         }
+        writeOutputFile(BEAM_PYAPI_NAME + ".c", content.toString());
+    }
+
+    private void writePrivateHeader() throws IOException {
+        final String guardName = getPrivateHeaderFileName().toUpperCase().replace('.', '_').replace('-', '_');
+        final StringWriter content = new StringWriter();
+        final PrintWriter writer = new PrintWriter(content);
+        writeFileInfo(writer);
+        writer.printf("#ifndef %s\n", guardName);
+        writer.printf("#define %s\n", guardName);
+        writer.printf("\n");
+        writeIncludes(writer);
+        writer.printf("/* Global variables, defined in %s.c */\n", BEAM_PYAPI_NAME);
+        writeGlobalVars(writer, "extern");
+        writeFunctionDeclarations(writer);
+        writer.printf("#endif /* !%s */\n", guardName);
+        writer.close();
+        writeOutputFile(getPrivateHeaderFileName(), content.toString());
+    }
+
+    /**
+     * Python.h is included first, as it may change the definitions of the standard headers.
+     */
+    private void writeIncludes(PrintWriter writer) throws IOException {
+        writer.printf("#include <Python.h>\n");
+        writer.printf("#include \"%s\"\n", BEAM_PYAPI_NAME + ".h");
+        writer.printf("#include \"%s\"\n", CModuleGenerator.BEAM_CAPI_NAME + ".h");
+
+        writer.printf("\n");
+        writeResource(writer, "PyCModuleGenerator-stubs-1.c");
+        writer.printf("\n");
+    }
+
+    private static void writeGlobalVars(PrintWriter writer, String storageClass) {
+        writeVarDecl(writer, storageClass, "PyObject* BeamPy_Error", null);
+    }
+
+    private void writeFunctionDeclarations(PrintWriter writer) {
+        writer.printf("\n");
+        for (ApiClass apiClass : getTypeClasses()) {
+            writer.printf("extern PyTypeObject %s;\n", getTypeVarName(getApiInfo(), apiClass.getType()));
+        }
+        writer.printf("\n");
+        for (ApiClass apiClass : getApiClasses()) {
+            for (FunctionGenerator generator : getFunctionGenerators(apiClass)) {
+                writeFunctionDeclaration(writer, generator);
+            }
+        }
+        writer.printf("\n");
     }
 
     void writeArrayConverters(PrintWriter writer, String typeName, String ctype, String elemToItemCall, String itemToElemCall) throws IOException {
@@ -56,9 +56,35 @@ public abstract class PyCParameterGenerator implements ParameterGenerator {
         return null;
     }
 
-    public abstract String generateParseFormat(GeneratorContext context);
+    /**
+     * @param arg The Python argument.
+     * @return The call which converts the argument into the C value of the parameter, it returns 0 and raises a
+     *         Python error if the argument cannot be converted, or {@code null} if the argument is kept as object.
+     */
+    public abstract String generateConvertCall(String arg);
+
+    /**
+     * @param arg The Python argument.
+     * @return The statement which keeps the argument as object, or {@code null} if it is converted.
+     */
+    public String generateArgAssignment(String arg) {
+        return null;
+    }
 
-    public abstract String generateParseArgs(GeneratorContext context);
+    /**
+     * @return The call which acquires the elements of an array argument, it returns 0 and raises a Python error
+     *         if it fails, or {@code null} if the argument is not acquired.
+     */
+    String generateAcquireCall() {
+        return null;
+    }
+
+    /**
+     * @return The call which releases the elements acquired by the {@link #generateAcquireCall() acquire call}.
+     */
+    String generateReleaseCall() {
+        return null;
+    }
 
     static class PrimitiveScalar extends PyCParameterGenerator {
         PrimitiveScalar(ApiParameter parameter) {
@@ -66,33 +92,17 @@ public abstract class PyCParameterGenerator implements ParameterGenerator {
         }
 
         @Override
-        public String generateParseFormat(GeneratorContext context) {
+        public String generateConvertCall(String arg) {
             String s = getType().typeName();
-            if (s.equals("boolean")) {
-                return "p";
-            } else if (s.equals("char")) {
-                return "C";
-            } else if (s.equals("byte")) {
-                return "b";
-            } else if (s.equals("short")) {
-                return "h";
-            } else if (s.equals("int")) {
-                return "i";
+            if (s.equals("boolean") || s.equals("char") || s.equals("byte") || s.equals("short")
+                    || s.equals("int") || s.equals("float") || s.equals("double")) {
+                return String.format("beam_convert_py%s(%s, &%s)", s, arg, getName());
             } else if (s.equals("long")) {
-                return "L";
-            } else if (s.equals("float")) {
-                return "f";
-            } else if (s.equals("double")) {
-                return "d";
+                return String.format("beam_convert_pydlong(%s, &%s)", arg, getName());
             } else {
                 throw new IllegalArgumentException("can't deal with type '" + s + "'");
             }
         }
-
-        @Override
-        public String generateParseArgs(GeneratorContext context) {
-            return "&" + getName();
-        }
     }
 
     static class ObjectScalar extends PyCParameterGenerator {
@@ -102,7 +112,7 @@ public abstract class PyCParameterGenerator implements ParameterGenerator {
 
         @Override
         public String generateLocalVarDecl(GeneratorContext context) {
-            return PyCFunctionGenerator.generateObjectTypeDecl(getName());
+            return String.format("void* %s;", getName());
         }
 
         @Override
@@ -111,13 +121,8 @@ public abstract class PyCParameterGenerator implements ParameterGenerator {
         }
 
         @Override
-        public String generateParseFormat(GeneratorContext context) {
-            return "(sK)";
-        }
-
-        @Override
-        public String generateParseArgs(GeneratorContext context) {
-            return String.format("&%sType, &%s", getName(), getName());
+        public String generateConvertCall(String arg) {
+            return String.format("beam_convert_pyjobject(%s, &%s)", arg, getName());
         }
     }
 
@@ -132,16 +137,19 @@ public abstract class PyCParameterGenerator implements ParameterGenerator {
         }
 
         @Override
-        public String generateParseFormat(GeneratorContext context) {
-            return "s";
-        }
-
-        @Override
-        public String generateParseArgs(GeneratorContext context) {
-            return "&" + getName();
+        public String generateConvertCall(String arg) {
+            return String.format("beam_convert_pystring(%s, &%s)", arg, getName());
         }
     }
 
+    /**
+     * A primitive array parameter. The argument may be any object which exports a contiguous buffer of the
+     * element type, e.g. an {@code array.array}, a NumPy array or a {@code CArray}, whose memory is passed to the
+     * C API function, or any other sequence, whose items are copied into a C array.
+     * <p/>
+     * The elements are acquired and released by the {@link PyCFunctionGenerator}, so that the ones acquired
+     * before are released if acquiring the elements of an argument fails.
+     */
     static class PrimitiveArray extends PyCParameterGenerator {
 
         PrimitiveArray(ApiParameter parameter) {
@@ -150,79 +158,71 @@ public abstract class PyCParameterGenerator implements ParameterGenerator {
 
         @Override
         public String generateLocalVarDecl(GeneratorContext context) {
-            return eval("${t}* ${p};\n" +
-                                "int ${p}Length;\n" +
-                                "PyObject* ${p}Seq;",
+            return eval("PyObject* ${p}Seq;\n" +
+                                "Py_buffer ${p}Buffer;\n" +
+                                "int ${p}Length;",
+                        kv("p", getName()));
+        }
+
+        @Override
+        public String generateCallCode(GeneratorContext context) {
+            return eval("(${t}*) ${p}Buffer.buf, ${p}Length",
                         kv("t", getComponentCTypeName(getType())),
                         kv("p", getName()));
         }
 
         @Override
-        public String generatePreCallCode(GeneratorContext context) {
-            return eval("${p} = beam_new_${t}_array_from_pyseq(${p}Seq, &${p}Length);",
-                        kv("p", getName()),
-                        kv("t", getComponentCTypeName(getType())));
-            /*
-            String typeName = getType().simpleTypeName();
-            String typeNameUC = TypeHelpers.firstCharToUpperCase(typeName);
-            if (parameter.getModifier() == ApiParameter.Modifier.IN) {
-                return eval("${p}Array = (*jenv)->New${tuc}Array(jenv, ${p}Length);\n" +
-                                    "beam_copy_to_jarray(${p}Array, ${p}Elems, ${p}Length, sizeof (${t}));",
-                            kv("t", typeName),
-                            kv("tuc", typeNameUC),
-                            kv("p", getName()));
-            } else {
-                return eval("${p}Array = (*jenv)->New${tuc}Array(jenv, ${p}Length);",
-                            kv("tuc", typeNameUC),
-                            kv("p", getName()));
-            }
-            */
+        public String generateConvertCall(String arg) {
+            return null;
         }
 
         @Override
-        public String generateCallCode(GeneratorContext context) {
-            return eval("${p}, ${p}Length",
-                        kv("p", getName()));
+        public String generateArgAssignment(String arg) {
+            return eval("${p}Seq = ${a};", kv("p", getName()), kv("a", arg));
         }
 
+        /**
+         * The buffer must be writable if the API method writes into the array. The elements of a
+         * {@link ApiParameter.Modifier#RETURN} argument may be copied, the copy is returned, those of an
+         * {@link ApiParameter.Modifier#OUT} argument may not.
+         */
         @Override
-        public String generatePostCallCode(GeneratorContext context) {
-            /*
-            if (parameter.getModifier() == ApiParameter.Modifier.IN) {
-                return null;
-            } else if (parameter.getModifier() == ApiParameter.Modifier.OUT) {
-                return eval("beam_copy_from_jarray(${p}Array, ${p}Elems, ${p}Length, sizeof (${t}));" +
-                                    "",
-                            kv("p", getName()),
-                            kv("t", getType().simpleTypeName()));
-            } else {
-                return eval("" +
-                                    "if (${p}Elems != NULL && (*jenv)->IsSameObject(jenv, ${p}Array, ${r}Array)) {\n" +
-                                    "    beam_copy_from_jarray(_resultArray, ${p}Elems, ${p}Length, sizeof (${t}));\n" +
-                                    "    ${r} = ${p}Elems;\n" +
-                                    "} else {\n" +
-                                    "    ${r} = beam_alloc_${t}_array(${r}Array, resultArrayLength);\n" +
-                                    "}",
-                            kv("r", CModuleGenerator.RESULT_VAR_NAME),
-                            kv("p", getName()),
-                            kv("t", getType().simpleTypeName()));
+        String generateAcquireCall() {
+            return eval("beam_acquire_pyarray(${p}Seq, \"${f}\", ${w}, &${p}Buffer, &${p}Length)",
+                        kv("f", getBufferFormat()),
+                        kv("w", getWritableMode()),
+                        kv("p", getName()));
+        }
+
+        private String getWritableMode() {
+            switch (parameter.getModifier()) {
+                case IN:
+                    return "0";
+                case RETURN:
+                    return "1";
+                default:
+                    return "2";
             }
-            */
-            return null;
         }
 
         @Override
-        public String generateParseArgs(GeneratorContext context) {
-            return eval("&${p}Seq", kv("p", getName()));
+        String generateReleaseCall() {
+            return eval("beam_release_pyarray(&${p}Buffer)", kv("p", getName()));
         }
 
-        @Override
-        public String generateParseFormat(GeneratorContext context) {
-            return "O";
+        String getBufferFormat() {
+            return PyCFunctionGenerator.getBufferFormat(getType().typeName());
+        }
+
+        boolean isReturnParameter() {
+            return parameter.getModifier() == ApiParameter.Modifier.RETURN;
         }
     }
 
 
+    /**
+     * An object array parameter. The argument may be any sequence of objects of the generated types or None.
+     */
     static class ObjectArray extends PyCParameterGenerator {
 
         ObjectArray(ApiParameter parameter) {
@@ -231,7 +231,7 @@ public abstract class PyCParameterGenerator implements ParameterGenerator {
 
         @Override
         public String generateLocalVarDecl(GeneratorContext context) {
-            return eval("${t} ${p};\n" +
+            return eval("${t}* ${p};\n" +
                                 "int ${p}Length;\n" +
                                 "PyObject* ${p}Seq;",
                         kv("t", CModuleGenerator.getComponentCClassName(getType())),
@@ -239,10 +239,14 @@ public abstract class PyCParameterGenerator implements ParameterGenerator {
         }
 
         @Override
-        public String generatePreCallCode(GeneratorContext context) {
-            return eval("${p} = beam_new_jobject_array_from_pyseq(\"${t}\", ${p}Seq, &${p}Length);",
-                        kv("p", getName()),
-                        kv("t", getComponentCTypeName(getType())));
+        String generateAcquireCall() {
+            return eval("(${p} = beam_new_jobject_array_from_pyseq(${p}Seq, &${p}Length))",
+                        kv("p", getName()));
+        }
+
+        @Override
+        String generateReleaseCall() {
+            return eval("free(${p})", kv("p", getName()));
         }
 
         @Override
@@ -252,17 +256,20 @@ public abstract class PyCParameterGenerator implements ParameterGenerator {
         }
 
         @Override
-        public String generateParseArgs(GeneratorContext context) {
-            return eval("&${p}Seq", kv("p", getName()));
+        public String generateConvertCall(String arg) {
+            return null;
         }
 
         @Override
-        public String generateParseFormat(GeneratorContext context) {
-            return "O";
+        public String generateArgAssignment(String arg) {
+            return eval("${p}Seq = ${a};", kv("p", getName()), kv("a", arg));
         }
     }
 
 
+    /**
+     * A string array parameter. The argument may be any sequence of strings, which are copied into one block.
+     */
     static class StringArray extends PyCParameterGenerator {
         StringArray(ApiParameter parameter) {
             super(parameter);
@@ -270,33 +277,39 @@ public abstract class PyCParameterGenerator implements ParameterGenerator {
 
         @Override
         public String generateLocalVarDecl(GeneratorContext context) {
-            return eval("char** ${p};\n" +
+            return eval("const char** ${p};\n" +
                                 "int ${p}Length;\n" +
                                 "PyObject* ${p}Seq;",
                         kv("p", getName()));
         }
 
         @Override
-        public String generatePreCallCode(GeneratorContext context) {
-            return eval("${p} = beam_new_string_array_from_pyseq(${p}Seq, &${p}Length);",
-                        kv("p", getName()),
-                        kv("c", CModuleGenerator.getComponentCClassVarName(getType())));
+        String generateAcquireCall() {
+            return eval("(${p} = beam_new_string_array_from_pyseq(${p}Seq, &${p}Length))",
+                        kv("p", getName()));
+        }
+
+        @Override
+        String generateReleaseCall() {
+            return eval("free(${p})", kv("p", getName()));
         }
 
         @Override
         public String generateCallCode(GeneratorContext context) {
-            return eval("${p}, ${p}Length",
+            // the C API function takes a char** if it writes into the array
+            return eval("${c}${p}, ${p}Length",
+                        kv("c", parameter.getModifier() == ApiParameter.Modifier.IN ? "" : "(char**) "),
                         kv("p", getName()));
         }
 
         @Override
-        public String generateParseArgs(GeneratorContext context) {
-            return eval("&${p}Seq", kv("p", getName()));
+        public String generateConvertCall(String arg) {
+            return null;
         }
 
         @Override
-        public String generateParseFormat(GeneratorContext context) {
-            return "O";
+        public String generateArgAssignment(String arg) {
+            return eval("${p}Seq = ${a};", kv("p", getName()), kv("a", arg));
         }
     }
 }
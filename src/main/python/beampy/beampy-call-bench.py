@@ -0,0 +1,43 @@
+"""
+Measures the time of small API calls from Python, for which unpacking the arguments costs as much as the call
+of the Java method, with pyperf (https://pypi.org/project/pyperf/).
+
+Usage: python beampy-call-bench.py <product-file> [pyperf options, e.g. -o result.json]
+
+Compare two builds of beampy with: python -m pyperf compare_to before.json after.json
+"""
+import sys
+
+import pyperf
+
+from beampy import *
+
+
+def bench_calls(loops, method, *args):
+    range_it = range(loops)
+    t0 = pyperf.perf_counter()
+    for _ in range_it:
+        method(*args)
+    return pyperf.perf_counter() - t0
+
+
+def add_cmdline_args(cmd, args):
+    cmd.append(args.product_file)
+
+
+runner = pyperf.Runner(add_cmdline_args=add_cmdline_args)
+runner.argparser.add_argument('product_file')
+args = runner.parse_args()
+
+product = ProductIO.readProduct(args.product_file)
+band = product.getBandAt(0)
+band_name = band.getName()
+
+# METH_NOARGS
+runner.bench_time_func('Band.getScalingFactor()', bench_calls, band.getScalingFactor)
+# METH_O
+runner.bench_time_func('Product.getBandIndex(name)', bench_calls, product.getBandIndex, band_name)
+# METH_FASTCALL
+runner.bench_time_func('Band.isPixelValid(x, y)', bench_calls, band.isPixelValid, 0, 0)
+
+product.dispose()
@@ -0,0 +1,119 @@
+package ${packageName};
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Makes the calls recorded by the ...Batched functions of the BEAM/C API, so that a whole batch of calls
+ * costs a single JNI call.
+ * <p/>
+ * Every call is encoded in 8-byte slots of the calls buffer: the call ID followed by the primitive arguments.
+ * The object arguments of all calls are passed in an array. A primitive result is written into the slot of the
+ * call in the results buffer, an object or string result into the element of the call in the object results array.
+ * The calls stop at a call which throws an exception, the exception is written into the element of the call in the
+ * object results array, so that the BEAM/C API can record it as error.
+ * <p/>
+ * This class must be compiled against the BEAM API and be on the class path of the Java VM.
+ */
+public final class ${className} {
+
+    // Keeps the dispatch methods small enough to be compiled by the JIT
+    private static final int CALLS_PER_METHOD = ${callsPerMethod};
+
+    private final ByteBuffer calls;
+    private final Object[] objects;
+    private final ByteBuffer results;
+    private final Object[] objectResults;
+    private int position;
+    private int objectIndex;
+
+    private ${className}(ByteBuffer calls, Object[] objects, ByteBuffer results, Object[] objectResults) {
+        this.calls = calls.order(ByteOrder.nativeOrder());
+        this.objects = objects;
+        this.results = results.order(ByteOrder.nativeOrder());
+        this.objectResults = objectResults;
+    }
+
+    /**
+     * Makes the given calls.
+     *
+     * @param count         The number of calls.
+     * @param calls         The call IDs and primitive arguments.
+     * @param objects       The object arguments.
+     * @param results       Receives the primitive results.
+     * @param objectResults Receives the object and string results, and the exception of a failed call.
+     * @return The number of calls made, less than {@code count} if a call has thrown an exception.
+     */
+    public static int run(int count, ByteBuffer calls, Object[] objects, ByteBuffer results, Object[] objectResults) {
+        return new ${className}(calls, objects, results, objectResults).run(count);
+    }
+
+    private int run(int count) {
+        int index = 0;
+        try {
+            for (; index < count; index++) {
+                final int id = getInt();
+                dispatch(id / CALLS_PER_METHOD, id, index);
+            }
+        } catch (Throwable t) {
+            putObject(index, t);
+        }
+        return index;
+    }
+
+    private int getInt() {
+        final int value = calls.getInt(position);
+        position += 8;
+        return value;
+    }
+
+    private long getLong() {
+        final long value = calls.getLong(position);
+        position += 8;
+        return value;
+    }
+
+    private float getFloat() {
+        final float value = calls.getFloat(position);
+        position += 8;
+        return value;
+    }
+
+    private double getDouble() {
+        final double value = calls.getDouble(position);
+        position += 8;
+        return value;
+    }
+
+    private boolean getBoolean() {
+        return getInt() != 0;
+    }
+
+    private Object getObject() {
+        return objects[objectIndex++];
+    }
+
+    private void putInt(int index, int value) {
+        results.putInt(8 * index, value);
+    }
+
+    private void putLong(int index, long value) {
+        results.putLong(8 * index, value);
+    }
+
+    private void putFloat(int index, float value) {
+        results.putFloat(8 * index, value);
+    }
+
+    private void putDouble(int index, double value) {
+        results.putDouble(8 * index, value);
+    }
+
+    private void putBoolean(int index, boolean value) {
+        putInt(index, value ? 1 : 0);
+    }
+
+    private void putObject(int index, Object value) {
+        objectResults[index] = value;
+    }
+
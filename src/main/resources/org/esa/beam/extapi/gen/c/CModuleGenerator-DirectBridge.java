@@ -0,0 +1,145 @@
+package ${packageName};
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Bridge methods called by the ...Direct functions of the BEAM/C API.
+ * <p/>
+ * The primitive arrays are passed as direct buffers which wrap the memory of the C caller. A bridge method
+ * converts the buffers into the Java arrays expected by the API method and copies the array elements once:
+ * into the array if it is an input parameter, into the buffer if it is an output parameter or the return value.
+ * <p/>
+ * This class must be compiled against the BEAM API and be on the class path of the Java VM.
+ */
+public final class ${className} {
+
+    private ${className}() {
+    }
+
+    private static byte[] newByteArray(ByteBuffer buffer) {
+        return buffer != null ? new byte[buffer.capacity()] : null;
+    }
+
+    private static byte[] getByteArray(ByteBuffer buffer) {
+        final byte[] array = newByteArray(buffer);
+        if (array != null) {
+            buffer.duplicate().get(array);
+        }
+        return array;
+    }
+
+    private static int putArray(byte[] array, ByteBuffer buffer) {
+        if (array == null || buffer == null) {
+            return -1;
+        }
+        final int length = Math.min(array.length, buffer.capacity());
+        buffer.duplicate().put(array, 0, length);
+        return length;
+    }
+
+    private static short[] newShortArray(ByteBuffer buffer) {
+        return buffer != null ? new short[buffer.capacity() / 2] : null;
+    }
+
+    private static short[] getShortArray(ByteBuffer buffer) {
+        final short[] array = newShortArray(buffer);
+        if (array != null) {
+            buffer.order(ByteOrder.nativeOrder()).asShortBuffer().get(array);
+        }
+        return array;
+    }
+
+    private static int putArray(short[] array, ByteBuffer buffer) {
+        if (array == null || buffer == null) {
+            return -1;
+        }
+        final int length = Math.min(array.length, buffer.capacity() / 2);
+        buffer.order(ByteOrder.nativeOrder()).asShortBuffer().put(array, 0, length);
+        return length;
+    }
+
+    private static int[] newIntArray(ByteBuffer buffer) {
+        return buffer != null ? new int[buffer.capacity() / 4] : null;
+    }
+
+    private static int[] getIntArray(ByteBuffer buffer) {
+        final int[] array = newIntArray(buffer);
+        if (array != null) {
+            buffer.order(ByteOrder.nativeOrder()).asIntBuffer().get(array);
+        }
+        return array;
+    }
+
+    private static int putArray(int[] array, ByteBuffer buffer) {
+        if (array == null || buffer == null) {
+            return -1;
+        }
+        final int length = Math.min(array.length, buffer.capacity() / 4);
+        buffer.order(ByteOrder.nativeOrder()).asIntBuffer().put(array, 0, length);
+        return length;
+    }
+
+    private static long[] newLongArray(ByteBuffer buffer) {
+        return buffer != null ? new long[buffer.capacity() / 8] : null;
+    }
+
+    private static long[] getLongArray(ByteBuffer buffer) {
+        final long[] array = newLongArray(buffer);
+        if (array != null) {
+            buffer.order(ByteOrder.nativeOrder()).asLongBuffer().get(array);
+        }
+        return array;
+    }
+
+    private static int putArray(long[] array, ByteBuffer buffer) {
+        if (array == null || buffer == null) {
+            return -1;
+        }
+        final int length = Math.min(array.length, buffer.capacity() / 8);
+        buffer.order(ByteOrder.nativeOrder()).asLongBuffer().put(array, 0, length);
+        return length;
+    }
+
+    private static float[] newFloatArray(ByteBuffer buffer) {
+        return buffer != null ? new float[buffer.capacity() / 4] : null;
+    }
+
+    private static float[] getFloatArray(ByteBuffer buffer) {
+        final float[] array = newFloatArray(buffer);
+        if (array != null) {
+            buffer.order(ByteOrder.nativeOrder()).asFloatBuffer().get(array);
+        }
+        return array;
+    }
+
+    private static int putArray(float[] array, ByteBuffer buffer) {
+        if (array == null || buffer == null) {
+            return -1;
+        }
+        final int length = Math.min(array.length, buffer.capacity() / 4);
+        buffer.order(ByteOrder.nativeOrder()).asFloatBuffer().put(array, 0, length);
+        return length;
+    }
+
+    private static double[] newDoubleArray(ByteBuffer buffer) {
+        return buffer != null ? new double[buffer.capacity() / 8] : null;
+    }
+
+    private static double[] getDoubleArray(ByteBuffer buffer) {
+        final double[] array = newDoubleArray(buffer);
+        if (array != null) {
+            buffer.order(ByteOrder.nativeOrder()).asDoubleBuffer().get(array);
+        }
+        return array;
+    }
+
+    private static int putArray(double[] array, ByteBuffer buffer) {
+        if (array == null || buffer == null) {
+            return -1;
+        }
+        final int length = Math.min(array.length, buffer.capacity() / 8);
+        buffer.order(ByteOrder.nativeOrder()).asDoubleBuffer().put(array, 0, length);
+        return length;
+    }
+
@@ -1,21 +1,55 @@
 #include "../beam_util.h"
 
-static JavaVM* jvm = NULL;
-static JNIEnv* jenv = NULL;
-static int api_init = 0;
+#ifdef WIN32
+#include <windows.h>
+#else
+#include <pthread.h>
+#endif
 
 int beam_init_api();
+JNIEnv* beam_get_jenv();
+
+/* Definition of a method in the method table */
+typedef struct {
+    jclass* class_ref;
+    const char* name;
+    const char* signature;
+    int is_static;
+} BeamMethodDef;
+
+/* Records the pending Java exception as error of the calling thread, see beam_has_error() */
+void beam_catch_exception(JNIEnv* jenv);
+
+/* Handles of the objects passed to the caller, see beam_release_handle() */
+void* beam_new_handle(JNIEnv* jenv, jobject object);
+jobject beam_get_handle_ref(const void* handle);
+jobject beam_resolve_handle(JNIEnv* jenv, const void* handle);
+
+/* Records the calls of the ...Batched functions, see beam_batch_run() */
+int beam_batch_add_call(BeamBatch batch, int call_id, char result_type, int num_values, int num_objects);
+void beam_batch_put_int(BeamBatch batch, jint value);
+void beam_batch_put_long(BeamBatch batch, jlong value);
+void beam_batch_put_float(BeamBatch batch, jfloat value);
+void beam_batch_put_double(BeamBatch batch, jdouble value);
+void beam_batch_put_object(BeamBatch batch, const void* handle);
 
 jobjectArray beam_new_jstring_array(const char** array_elems, int array_length);
-jobjectArray beam_new_jobject_array(const Object* obj_array_data, int obj_array_length, jclass comp_class);
+jobjectArray beam_new_jobject_array(void* const* array_elems, int array_length, jclass comp_class);
 
-void beam_copy_from_jarray(jarray array, void* elems, int array_length, size_t elem_size);
-void beam_copy_to_jarray(jarray array, const void* elems, int array_length, size_t elem_size);
+/* Java arrays passed to API methods, see beam_set_array_pooling() */
+jarray beam_acquire_array(JNIEnv* jenv, char type, jsize length);
+void beam_release_array(jarray array);
+
+/* Copies between C arrays and Java arrays, see beam_set_array_copy_limits() */
+int beam_copy_from_jarray(jarray array, char type, void* elems, int array_length);
+int beam_copy_to_jarray(jarray array, char type, const void* elems, int array_length);
 
 char* beam_alloc_string(jstring str);
+char* beam_copy_string(jstring str, char* chars, int capacity);
+const char* beam_intern_string(jstring str);
 char** beam_alloc_string_array(jarray array, int* array_length);
 void** beam_alloc_object_array(jarray array, int* array_length);
-void* beam_alloc_primitive_array(jarray array, int* array_length, size_t elem_size);
+void* beam_alloc_primitive_array(jarray array, char type, int* array_length);
 boolean* beam_alloc_boolean_array(jarray array, int* array_length);
 char* beam_alloc_char_array(jarray array, int* array_length);
 byte* beam_alloc_byte_array(jarray array, int* array_length);
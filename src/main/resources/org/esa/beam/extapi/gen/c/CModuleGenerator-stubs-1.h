@@ -5,5 +5,5 @@ typedef long long dlong;
 #ifdef _DEBUG
 #define BEAM_TRACE printf
 #else
-#define BEAM_TRACE //
+#define BEAM_TRACE(...)
 #endif
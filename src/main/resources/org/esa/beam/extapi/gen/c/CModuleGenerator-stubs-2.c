@@ -1,69 +1,1534 @@
 
+/*
+ * Every thread calling the API uses its own JNIEnv (see beam_get_jenv()). Threads which are not yet attached
+ * to the Java VM are attached on their first API call and detached again when they exit.
+ */
+
+#ifdef WIN32
+static DWORD jenv_key = FLS_OUT_OF_INDEXES;
+static INIT_ONCE jenv_key_once = INIT_ONCE_STATIC_INIT;
+static SRWLOCK api_lock = SRWLOCK_INIT;
+static SRWLOCK string_cache_lock = SRWLOCK_INIT;
+/* MSVC gives volatile accesses acquire/release semantics */
+#define BEAM_LOAD_ACQUIRE(VAR) (*(volatile int*) &(VAR))
+#define BEAM_STORE_RELEASE(VAR, VALUE) (*(volatile int*) &(VAR) = (VALUE))
+#define BEAM_LOAD_ACQUIRE_PTR(VAR) (*(PVOID volatile*) &(VAR))
+#define BEAM_CAS_INT(PTR, OLD, NEW) (InterlockedCompareExchange((volatile LONG*) (PTR), (LONG) (NEW), (LONG) (OLD)) == (LONG) (OLD))
+#define BEAM_CAS_LONG(PTR, OLD, NEW) (InterlockedCompareExchange64((volatile LONGLONG*) (PTR), (LONGLONG) (NEW), (LONGLONG) (OLD)) == (LONGLONG) (OLD))
+#define BEAM_CAS_PTR(PTR, OLD, NEW) (InterlockedCompareExchangePointer((PVOID volatile*) (PTR), (NEW), (OLD)) == (OLD))
+#define BEAM_FETCH_ADD(PTR, VALUE) InterlockedExchangeAdd((volatile LONG*) (PTR), (VALUE))
+#else
+static pthread_key_t jenv_key;
+static pthread_once_t jenv_key_once = PTHREAD_ONCE_INIT;
+static pthread_mutex_t api_lock = PTHREAD_MUTEX_INITIALIZER;
+static pthread_mutex_t string_cache_lock = PTHREAD_MUTEX_INITIALIZER;
+#define BEAM_LOAD_ACQUIRE(VAR) __atomic_load_n(&(VAR), __ATOMIC_ACQUIRE)
+#define BEAM_STORE_RELEASE(VAR, VALUE) __atomic_store_n(&(VAR), (VALUE), __ATOMIC_RELEASE)
+#define BEAM_LOAD_ACQUIRE_PTR(VAR) __atomic_load_n(&(VAR), __ATOMIC_ACQUIRE)
+#define BEAM_CAS_INT(PTR, OLD, NEW) __sync_bool_compare_and_swap((PTR), (OLD), (NEW))
+#define BEAM_CAS_LONG(PTR, OLD, NEW) __sync_bool_compare_and_swap((PTR), (OLD), (NEW))
+#define BEAM_CAS_PTR(PTR, OLD, NEW) __sync_bool_compare_and_swap((PTR), (OLD), (NEW))
+#define BEAM_FETCH_ADD(PTR, VALUE) __sync_fetch_and_add((PTR), (VALUE))
+#endif
+
+/* Called on thread exit with the JNIEnv of a thread attached by beam_get_jenv() */
+static void beam_detach_thread(void* env)
+{
+    if (env != NULL && jvm != NULL) {
+        (*jvm)->DetachCurrentThread(jvm);
+    }
+}
+
+#ifdef WIN32
+
+static VOID WINAPI beam_detach_thread_callback(PVOID env)
+{
+    beam_detach_thread(env);
+}
+
+static BOOL CALLBACK beam_create_jenv_key_callback(PINIT_ONCE once, PVOID param, PVOID* context)
+{
+    jenv_key = FlsAlloc(beam_detach_thread_callback);
+    return jenv_key != FLS_OUT_OF_INDEXES;
+}
+
+static int beam_create_jenv_key()
+{
+    return InitOnceExecuteOnce(&jenv_key_once, beam_create_jenv_key_callback, NULL, NULL) ? 0 : 1;
+}
+
+#define BEAM_GET_THREAD_JENV() ((JNIEnv*) FlsGetValue(jenv_key))
+#define BEAM_SET_THREAD_JENV(ENV) FlsSetValue(jenv_key, (ENV))
+#define BEAM_LOCK_API() AcquireSRWLockExclusive(&api_lock)
+#define BEAM_UNLOCK_API() ReleaseSRWLockExclusive(&api_lock)
+#define BEAM_LOCK_STRING_CACHE() AcquireSRWLockExclusive(&string_cache_lock)
+#define BEAM_UNLOCK_STRING_CACHE() ReleaseSRWLockExclusive(&string_cache_lock)
+
+#else
+
+static void beam_create_jenv_key_callback()
+{
+    pthread_key_create(&jenv_key, beam_detach_thread);
+}
+
+static int beam_create_jenv_key()
+{
+    return pthread_once(&jenv_key_once, beam_create_jenv_key_callback);
+}
+
+#define BEAM_GET_THREAD_JENV() ((JNIEnv*) pthread_getspecific(jenv_key))
+#define BEAM_SET_THREAD_JENV(ENV) pthread_setspecific(jenv_key, (ENV))
+#define BEAM_LOCK_API() pthread_mutex_lock(&api_lock)
+#define BEAM_UNLOCK_API() pthread_mutex_unlock(&api_lock)
+#define BEAM_LOCK_STRING_CACHE() pthread_mutex_lock(&string_cache_lock)
+#define BEAM_UNLOCK_STRING_CACHE() pthread_mutex_unlock(&string_cache_lock)
+
+#endif
+
+/**
+ * Returns the JNIEnv of the calling thread, or NULL if the Java VM has not been created or the thread
+ * could not be attached to it.
+ *
+ * Threads created by the Java VM, and the thread which created it, are attached already and are never
+ * detached here. Other threads are attached as daemon threads, so that they do not keep the Java VM alive.
+ */
+static JNIEnv* beam_get_thread_jenv()
+{
+    JNIEnv* env;
+
+    if (jvm == NULL || beam_create_jenv_key() != 0) {
+        return NULL;
+    }
+
+    env = BEAM_GET_THREAD_JENV();
+    if (env != NULL) {
+        return env;
+    }
+
+    if ((*jvm)->GetEnv(jvm, (void**) &env, JNI_VERSION_1_6) == JNI_OK) {
+        return env;
+    }
+
+    if ((*jvm)->AttachCurrentThreadAsDaemon(jvm, (void**) &env, NULL) != JNI_OK) {
+        fprintf(stderr, "beam_capi error: AttachCurrentThreadAsDaemon failed\n");
+        return NULL;
+    }
+    BEAM_SET_THREAD_JENV(env);
+    return env;
+}
+
+/**
+ * Returns the JNIEnv of the calling thread, or NULL if the API has not been initialised.
+ */
+JNIEnv* beam_get_jenv()
+{
+    return BEAM_LOAD_ACQUIRE(api_init) != 0 ? beam_get_thread_jenv() : NULL;
+}
+
+/*
+ * Handle table of the Java objects passed to the caller (see beam_release_handle()).
+ *
+ * The API passes objects as integer handles, cast to its opaque pointer types, which index a table of global
+ * references. The table grows by slabs of BEAM_HANDLE_SLAB_SIZE entries, which are never moved or freed, so
+ * that entries are read without locking. Released entries are kept in a lock-free stack, whose head carries a
+ * tag against the ABA problem. Every entry has a generation counter, which is incremented when its handle is
+ * released, so that a stale handle is detected instead of resolving to another object. A release increments
+ * the generation before it deletes the global reference, and a reader checks the generation again after it
+ * has loaded the reference, so that it never returns a reference deleted by a concurrent release.
+ *
+ * A handle holds the entry index + 1 in its lower BEAM_HANDLE_INDEX_BITS bits and the generation of the entry
+ * in its upper bits, the generation wraps around after 1024 releases of the same entry. 0 is the NULL handle.
+ */
+
+#define BEAM_HANDLE_INDEX_BITS 22
+#define BEAM_HANDLE_INDEX_MASK ((1U << BEAM_HANDLE_INDEX_BITS) - 1)
+#define BEAM_HANDLE_GENERATION(G) ((G) & ((1U << (32 - BEAM_HANDLE_INDEX_BITS)) - 1))
+#define BEAM_HANDLE_SLAB_SIZE 4096
+#define BEAM_HANDLE_MAX_SLABS ((BEAM_HANDLE_INDEX_MASK + 1) / BEAM_HANDLE_SLAB_SIZE)
+
+typedef struct {
+    jobject volatile ref;               /* global reference, NULL if the entry is free */
+    volatile unsigned int generation;
+    unsigned int next_free;             /* index + 1 of the next free entry, 0 if none */
+} BeamHandleEntry;
+
+static BeamHandleEntry* volatile handle_slabs[BEAM_HANDLE_MAX_SLABS];
+/* Entries below this index have been used at least once */
+static volatile unsigned int handle_next_index = 0;
+/* Tag in the upper 32 bits, index + 1 of the first free entry in the lower 32 bits */
+static volatile unsigned long long handle_free_list = 0;
+static volatile int handle_count = 0;
+
+/*
+ * Handles allocated by a thread while it has open handle scopes (see beam_begin_handle_scope()).
+ */
+typedef struct {
+    void** handles;      /* in the order of their allocation */
+    int num_handles;
+    int capacity;
+    int* scope_starts;   /* index into handles of the first handle of every open scope */
+    int depth;
+    int max_depth;
+} BeamHandleScopes;
+
+#ifdef WIN32
+static DWORD handle_scopes_key = FLS_OUT_OF_INDEXES;
+static INIT_ONCE handle_scopes_key_once = INIT_ONCE_STATIC_INIT;
+#else
+static pthread_key_t handle_scopes_key;
+static pthread_once_t handle_scopes_key_once = PTHREAD_ONCE_INIT;
+#endif
+
+/* Called on thread exit with the handle scopes of the thread, the handles of open scopes are not released */
+static void beam_free_handle_scopes(void* data)
+{
+    BeamHandleScopes* scopes = (BeamHandleScopes*) data;
+
+    if (scopes != NULL) {
+        free(scopes->handles);
+        free(scopes->scope_starts);
+        free(scopes);
+    }
+}
+
+#ifdef WIN32
+
+static VOID WINAPI beam_free_handle_scopes_callback(PVOID scopes)
+{
+    beam_free_handle_scopes(scopes);
+}
+
+static BOOL CALLBACK beam_create_handle_scopes_key_callback(PINIT_ONCE once, PVOID param, PVOID* context)
+{
+    handle_scopes_key = FlsAlloc(beam_free_handle_scopes_callback);
+    return handle_scopes_key != FLS_OUT_OF_INDEXES;
+}
+
+static int beam_create_handle_scopes_key()
+{
+    return InitOnceExecuteOnce(&handle_scopes_key_once, beam_create_handle_scopes_key_callback, NULL, NULL) ? 0 : 1;
+}
+
+#define BEAM_GET_THREAD_HANDLE_SCOPES() ((BeamHandleScopes*) FlsGetValue(handle_scopes_key))
+#define BEAM_SET_THREAD_HANDLE_SCOPES(SCOPES) FlsSetValue(handle_scopes_key, (SCOPES))
+
+#else
+
+static void beam_create_handle_scopes_key_callback()
+{
+    pthread_key_create(&handle_scopes_key, beam_free_handle_scopes);
+}
+
+static int beam_create_handle_scopes_key()
+{
+    return pthread_once(&handle_scopes_key_once, beam_create_handle_scopes_key_callback);
+}
+
+#define BEAM_GET_THREAD_HANDLE_SCOPES() ((BeamHandleScopes*) pthread_getspecific(handle_scopes_key))
+#define BEAM_SET_THREAD_HANDLE_SCOPES(SCOPES) pthread_setspecific(handle_scopes_key, (SCOPES))
+
+#endif
+
+/* Returns the handle scopes of the calling thread, creates them if create is non-zero */
+static BeamHandleScopes* beam_get_handle_scopes(int create)
+{
+    BeamHandleScopes* scopes;
+
+    if (beam_create_handle_scopes_key() != 0) {
+        return NULL;
+    }
+    scopes = BEAM_GET_THREAD_HANDLE_SCOPES();
+    if (scopes == NULL && create) {
+        scopes = (BeamHandleScopes*) calloc(1, sizeof (BeamHandleScopes));
+        if (scopes != NULL) {
+            BEAM_SET_THREAD_HANDLE_SCOPES(scopes);
+        }
+    }
+    return scopes;
+}
+
+static BeamHandleEntry* beam_get_handle_entry(unsigned int index)
+{
+    BeamHandleEntry* slab = handle_slabs[index / BEAM_HANDLE_SLAB_SIZE];
+    return slab != NULL ? &slab[index % BEAM_HANDLE_SLAB_SIZE] : NULL;
+}
+
+/* Returns the entry of the given handle, or NULL if the handle is stale or invalid */
+static BeamHandleEntry* beam_find_handle_entry(const void* handle, unsigned int* index)
+{
+    unsigned int value = (unsigned int) (size_t) handle;
+    BeamHandleEntry* entry;
+
+    if ((value & BEAM_HANDLE_INDEX_MASK) == 0
+        || (value & BEAM_HANDLE_INDEX_MASK) > handle_next_index
+        || (entry = beam_get_handle_entry((value & BEAM_HANDLE_INDEX_MASK) - 1)) == NULL) {
+        fprintf(stderr, "beam_capi error: invalid handle %p\n", handle);
+        return NULL;
+    }
+    if (BEAM_HANDLE_GENERATION((unsigned int) BEAM_LOAD_ACQUIRE(entry->generation)) != value >> BEAM_HANDLE_INDEX_BITS) {
+        fprintf(stderr, "beam_capi error: stale handle %p, the object has been released\n", handle);
+        return NULL;
+    }
+    *index = (value & BEAM_HANDLE_INDEX_MASK) - 1;
+    return entry;
+}
+
+static void beam_push_free_handle_entry(unsigned int index)
+{
+    BeamHandleEntry* entry = beam_get_handle_entry(index);
+    unsigned long long head;
+    unsigned long long new_head;
+
+    do {
+        head = handle_free_list;
+        entry->next_free = (unsigned int) head;
+        new_head = (((head >> 32) + 1) << 32) | (index + 1);
+    } while (!BEAM_CAS_LONG(&handle_free_list, head, new_head));
+}
+
+/* Takes a released entry, or a new one, returns its index or -1 if the table is full */
+static int beam_pop_free_handle_entry()
+{
+    unsigned long long head;
+    unsigned long long new_head;
+    unsigned int index;
+    unsigned int slab_index;
+    BeamHandleEntry* slab;
+
+    for (;;) {
+        head = handle_free_list;
+        if ((unsigned int) head == 0) {
+            break;
+        }
+        index = (unsigned int) head - 1;
+        new_head = (((head >> 32) + 1) << 32) | beam_get_handle_entry(index)->next_free;
+        if (BEAM_CAS_LONG(&handle_free_list, head, new_head)) {
+            return (int) index;
+        }
+    }
+
+    index = BEAM_FETCH_ADD(&handle_next_index, 1);
+    if (index >= BEAM_HANDLE_INDEX_MASK) {
+        return -1;
+    }
+    slab_index = index / BEAM_HANDLE_SLAB_SIZE;
+    if (handle_slabs[slab_index] == NULL) {
+        slab = (BeamHandleEntry*) calloc(BEAM_HANDLE_SLAB_SIZE, sizeof (BeamHandleEntry));
+        if (slab == NULL) {
+            return -1;
+        }
+        if (!BEAM_CAS_PTR(&handle_slabs[slab_index], NULL, slab)) {
+            /* another thread has added the slab */
+            free(slab);
+        }
+    }
+    return (int) index;
+}
+
+/* Returns a handle of a new global reference to the given object, or NULL if the object is NULL */
+void* beam_new_handle(JNIEnv* jenv, jobject object)
+{
+    BeamHandleEntry* entry;
+    BeamHandleScopes* scopes;
+    void* handle;
+    int index;
+
+    if (object == NULL) {
+        return NULL;
+    }
+    index = beam_pop_free_handle_entry();
+    if (index < 0) {
+        fprintf(stderr, "beam_capi error: too many handles, objects must be released\n");
+        return NULL;
+    }
+    entry = beam_get_handle_entry(index);
+    entry->ref = (*jenv)->NewGlobalRef(jenv, object);
+    BEAM_FETCH_ADD(&handle_count, 1);
+    handle = (void*) (size_t) ((BEAM_HANDLE_GENERATION(entry->generation) << BEAM_HANDLE_INDEX_BITS) | (index + 1));
+
+    scopes = beam_get_handle_scopes(0);
+    if (scopes != NULL && scopes->depth > 0) {
+        if (scopes->num_handles == scopes->capacity) {
+            int capacity = scopes->capacity > 0 ? 2 * scopes->capacity : 256;
+            void** handles = (void**) realloc(scopes->handles, capacity * sizeof (void*));
+            if (handles == NULL) {
+                return handle;
+            }
+            scopes->handles = handles;
+            scopes->capacity = capacity;
+        }
+        scopes->handles[scopes->num_handles++] = handle;
+    }
+    return handle;
+}
+
+/* Returns the global reference of the given handle, or NULL if the handle is NULL, stale or invalid */
+jobject beam_get_handle_ref(const void* handle)
+{
+    unsigned int index;
+    BeamHandleEntry* entry;
+    jobject ref;
+
+    if (handle == NULL || (entry = beam_find_handle_entry(handle, &index)) == NULL) {
+        return NULL;
+    }
+    ref = (jobject) BEAM_LOAD_ACQUIRE_PTR(entry->ref);
+    if (BEAM_HANDLE_GENERATION((unsigned int) BEAM_LOAD_ACQUIRE(entry->generation)) != (unsigned int) (size_t) handle >> BEAM_HANDLE_INDEX_BITS) {
+        /* released concurrently, the reference may have been deleted */
+        fprintf(stderr, "beam_capi error: stale handle %p, the object has been released\n", handle);
+        return NULL;
+    }
+    return ref;
+}
+
+/* Releases all handles, called when the Java VM is destroyed, which has deleted the global references */
+static void beam_reset_handles()
+{
+    unsigned int n = handle_next_index < BEAM_HANDLE_INDEX_MASK ? handle_next_index : BEAM_HANDLE_INDEX_MASK;
+    unsigned int i;
+
+    handle_free_list = 0;
+    for (i = n; i > 0; i--) {
+        BeamHandleEntry* entry = beam_get_handle_entry(i - 1);
+        if (entry != NULL) {
+            if (entry->ref != NULL) {
+                entry->ref = NULL;
+                entry->generation++;
+            }
+            beam_push_free_handle_entry(i - 1);
+        }
+    }
+    handle_count = 0;
+}
+
+boolean beam_release_handle(const void* handle)
+{
+    JNIEnv* jenv;
+    BeamHandleEntry* entry;
+    unsigned int index;
+    unsigned int generation;
+    jobject ref;
+
+    if (handle == NULL || (entry = beam_find_handle_entry(handle, &index)) == NULL) {
+        return 0;
+    }
+    do {
+        generation = entry->generation;
+        if (BEAM_HANDLE_GENERATION(generation) != (unsigned int) (size_t) handle >> BEAM_HANDLE_INDEX_BITS) {
+            /* released concurrently */
+            return 0;
+        }
+    } while (!BEAM_CAS_INT(&entry->generation, generation, generation + 1));
+
+    ref = entry->ref;
+    entry->ref = NULL;
+    if ((jenv = beam_get_jenv()) != NULL) {
+        (*jenv)->DeleteGlobalRef(jenv, ref);
+    }
+    BEAM_FETCH_ADD(&handle_count, -1);
+    beam_push_free_handle_entry(index);
+    return 1;
+}
+
+int beam_get_handle_count()
+{
+    return BEAM_LOAD_ACQUIRE(handle_count);
+}
+
+int beam_begin_handle_scope()
+{
+    BeamHandleScopes* scopes = beam_get_handle_scopes(1);
+
+    if (scopes == NULL) {
+        return 0;
+    }
+    if (scopes->depth == scopes->max_depth) {
+        int max_depth = scopes->max_depth > 0 ? 2 * scopes->max_depth : 8;
+        int* scope_starts = (int*) realloc(scopes->scope_starts, max_depth * sizeof (int));
+        if (scope_starts == NULL) {
+            return 0;
+        }
+        scopes->scope_starts = scope_starts;
+        scopes->max_depth = max_depth;
+    }
+    scopes->scope_starts[scopes->depth++] = scopes->num_handles;
+    return scopes->depth;
+}
+
+void beam_end_handle_scope(int scope)
+{
+    BeamHandleScopes* scopes = beam_get_handle_scopes(0);
+    int start;
+    int i;
+
+    if (scopes == NULL || scope < 1 || scope > scopes->depth) {
+        return;
+    }
+    start = scopes->scope_starts[scope - 1];
+    for (i = scopes->num_handles - 1; i >= start; i--) {
+        unsigned int value = (unsigned int) (size_t) scopes->handles[i];
+        BeamHandleEntry* entry = beam_get_handle_entry((value & BEAM_HANDLE_INDEX_MASK) - 1);
+        /* handles which have been released already are stale and skipped */
+        if (BEAM_HANDLE_GENERATION(entry->generation) == value >> BEAM_HANDLE_INDEX_BITS) {
+            beam_release_handle(scopes->handles[i]);
+        }
+    }
+    scopes->num_handles = start;
+    scopes->depth = scope - 1;
+}
+
+/*
+ * Pool of the Java arrays passed to API methods (opt-in, see beam_set_array_pooling()).
+ *
+ * Every thread has its own pool of BEAM_ARRAY_POOL_SIZE arrays, kept as global references. An API function
+ * acquires an array of the element type and length it needs and releases it after the call, so that reading
+ * a product tile by tile does not create a new Java array per call. If all pooled arrays are in use, a new
+ * array is created and not pooled; otherwise the least recently used array is replaced.
+ */
+
+#define BEAM_ARRAY_POOL_SIZE 8
+
+typedef struct {
+    jarray array;     /* global reference, NULL if the slot is empty */
+    char type;        /* JNI signature character of the element type, e.g. 'F' */
+    jsize length;
+    int in_use;
+    long last_use;
+} BeamPooledArray;
+
+typedef struct {
+    BeamPooledArray slots[BEAM_ARRAY_POOL_SIZE];
+    int vm_generation;
+    long clock;
+    BeamArrayPoolStats stats;
+} BeamArrayPool;
+
+static int array_pooling = 0;
+/* Increased when the Java VM is destroyed, pooled references of an older generation are invalid */
+static int vm_generation = 0;
+
+#ifdef WIN32
+static DWORD array_pool_key = FLS_OUT_OF_INDEXES;
+static INIT_ONCE array_pool_key_once = INIT_ONCE_STATIC_INIT;
+#else
+static pthread_key_t array_pool_key;
+static pthread_once_t array_pool_key_once = PTHREAD_ONCE_INIT;
+#endif
+
+/* Called on thread exit with the array pool of the thread */
+static void beam_free_array_pool(void* data)
+{
+    BeamArrayPool* pool = (BeamArrayPool*) data;
+    JNIEnv* env;
+    int attached = 0;
+    int i;
+
+    if (pool == NULL) {
+        return;
+    }
+    if (jvm != NULL && pool->vm_generation == BEAM_LOAD_ACQUIRE(vm_generation)) {
+        /* the thread may have been detached already by beam_detach_thread() */
+        if ((*jvm)->GetEnv(jvm, (void**) &env, JNI_VERSION_1_6) != JNI_OK) {
+            attached = (*jvm)->AttachCurrentThreadAsDaemon(jvm, (void**) &env, NULL) == JNI_OK;
+            if (!attached) {
+                env = NULL;
+            }
+        }
+        for (i = 0; env != NULL && i < BEAM_ARRAY_POOL_SIZE; i++) {
+            if (pool->slots[i].array != NULL) {
+                (*env)->DeleteGlobalRef(env, pool->slots[i].array);
+            }
+        }
+        if (attached) {
+            (*jvm)->DetachCurrentThread(jvm);
+        }
+    }
+    free(pool);
+}
+
+#ifdef WIN32
+
+static VOID WINAPI beam_free_array_pool_callback(PVOID pool)
+{
+    beam_free_array_pool(pool);
+}
+
+static BOOL CALLBACK beam_create_array_pool_key_callback(PINIT_ONCE once, PVOID param, PVOID* context)
+{
+    array_pool_key = FlsAlloc(beam_free_array_pool_callback);
+    return array_pool_key != FLS_OUT_OF_INDEXES;
+}
+
+static int beam_create_array_pool_key()
+{
+    return InitOnceExecuteOnce(&array_pool_key_once, beam_create_array_pool_key_callback, NULL, NULL) ? 0 : 1;
+}
+
+#define BEAM_GET_THREAD_ARRAY_POOL() ((BeamArrayPool*) FlsGetValue(array_pool_key))
+#define BEAM_SET_THREAD_ARRAY_POOL(POOL) FlsSetValue(array_pool_key, (POOL))
+
+#else
+
+static void beam_create_array_pool_key_callback()
+{
+    pthread_key_create(&array_pool_key, beam_free_array_pool);
+}
+
+static int beam_create_array_pool_key()
+{
+    return pthread_once(&array_pool_key_once, beam_create_array_pool_key_callback);
+}
+
+#define BEAM_GET_THREAD_ARRAY_POOL() ((BeamArrayPool*) pthread_getspecific(array_pool_key))
+#define BEAM_SET_THREAD_ARRAY_POOL(POOL) pthread_setspecific(array_pool_key, (POOL))
+
+#endif
+
+/* Returns the array pool of the calling thread, creates it if create is non-zero */
+static BeamArrayPool* beam_get_array_pool(int create)
+{
+    BeamArrayPool* pool;
+    int generation;
+
+    if (beam_create_array_pool_key() != 0) {
+        return NULL;
+    }
+    pool = BEAM_GET_THREAD_ARRAY_POOL();
+    if (pool == NULL && create) {
+        pool = (BeamArrayPool*) calloc(1, sizeof (BeamArrayPool));
+        if (pool == NULL) {
+            return NULL;
+        }
+        pool->vm_generation = BEAM_LOAD_ACQUIRE(vm_generation);
+        BEAM_SET_THREAD_ARRAY_POOL(pool);
+    }
+    generation = BEAM_LOAD_ACQUIRE(vm_generation);
+    if (pool != NULL && pool->vm_generation != generation) {
+        /* the references belong to a destroyed Java VM */
+        memset(pool->slots, 0, sizeof (pool->slots));
+        pool->vm_generation = generation;
+    }
+    return pool;
+}
+
+static jarray beam_new_primitive_array(JNIEnv* jenv, char type, jsize length)
+{
+    switch (type) {
+        case 'Z': return (*jenv)->NewBooleanArray(jenv, length);
+        case 'C': return (*jenv)->NewCharArray(jenv, length);
+        case 'B': return (*jenv)->NewByteArray(jenv, length);
+        case 'S': return (*jenv)->NewShortArray(jenv, length);
+        case 'I': return (*jenv)->NewIntArray(jenv, length);
+        case 'J': return (*jenv)->NewLongArray(jenv, length);
+        case 'F': return (*jenv)->NewFloatArray(jenv, length);
+        case 'D': return (*jenv)->NewDoubleArray(jenv, length);
+        default: return NULL;
+    }
+}
+
+/**
+ * Returns a Java array of the given element type and length, which must be passed to beam_release_array()
+ * after use. If pooling is disabled, a new array is returned as local reference. The elements of a pooled
+ * array are those of its last use.
+ */
+jarray beam_acquire_array(JNIEnv* jenv, char type, jsize length)
+{
+    BeamArrayPool* pool;
+    BeamPooledArray* slot;
+    BeamPooledArray* free_slot;
+    jarray array;
+    int i;
+
+    if (BEAM_LOAD_ACQUIRE(array_pooling) == 0 || (pool = beam_get_array_pool(1)) == NULL) {
+        return beam_new_primitive_array(jenv, type, length);
+    }
+
+    pool->stats.acquired++;
+    free_slot = NULL;
+    for (i = 0; i < BEAM_ARRAY_POOL_SIZE; i++) {
+        slot = &pool->slots[i];
+        if (slot->in_use) {
+            continue;
+        }
+        if (slot->array != NULL && slot->type == type && slot->length == length) {
+            pool->stats.reused++;
+            slot->in_use = 1;
+            slot->last_use = ++pool->clock;
+            return slot->array;
+        }
+        /* prefer an empty slot, then the least recently used one */
+        if (free_slot == NULL
+            || (free_slot->array != NULL && (slot->array == NULL || slot->last_use < free_slot->last_use))) {
+            free_slot = slot;
+        }
+    }
+
+    array = beam_new_primitive_array(jenv, type, length);
+    pool->stats.allocated++;
+    if (array == NULL || free_slot == NULL) {
+        /* all pooled arrays are in use */
+        return array;
+    }
+    if (free_slot->array != NULL) {
+        (*jenv)->DeleteGlobalRef(jenv, free_slot->array);
+        pool->stats.evicted++;
+    }
+    free_slot->array = (*jenv)->NewGlobalRef(jenv, array);
+    (*jenv)->DeleteLocalRef(jenv, array);
+    free_slot->type = type;
+    free_slot->length = length;
+    free_slot->in_use = free_slot->array != NULL;
+    free_slot->last_use = ++pool->clock;
+    return free_slot->array;
+}
+
+/* Releases an array returned by beam_acquire_array() */
+void beam_release_array(jarray array)
+{
+    BeamArrayPool* pool;
+    int i;
+
+    if (array == NULL || (pool = beam_get_array_pool(0)) == NULL) {
+        return;
+    }
+    for (i = 0; i < BEAM_ARRAY_POOL_SIZE; i++) {
+        if (pool->slots[i].array == array) {
+            pool->slots[i].in_use = 0;
+            return;
+        }
+    }
+}
+
+void beam_set_array_pooling(boolean enabled)
+{
+    BEAM_STORE_RELEASE(array_pooling, enabled ? 1 : 0);
+}
+
+void beam_get_array_pool_stats(BeamArrayPoolStats* stats)
+{
+    BeamArrayPool* pool = beam_get_array_pool(0);
+    if (pool != NULL) {
+        *stats = pool->stats;
+    } else {
+        memset(stats, 0, sizeof (BeamArrayPoolStats));
+    }
+}
+
+/*
+ * Java exceptions thrown by the methods called by API functions (see beam_has_error()).
+ *
+ * Generated functions test for a pending exception once, by ExceptionCheck() right after the call of the Java
+ * method. Only if there is one, beam_catch_exception() clears it and records it in the error record of the
+ * calling thread: the class name and message are copied at once, the stack trace is formatted from a global
+ * reference to the exception when it is requested. Reading the error needs no further JNI call.
+ */
+
+typedef struct {
+    int pending;            /* 1 if the error has not been cleared by beam_clear_error() */
+    jthrowable exception;   /* global reference, NULL if no exception has been caught */
+    int vm_generation;
+    char* class_name;
+    char* message;
+    char* stack_trace;      /* NULL until requested */
+} BeamError;
+
+#ifdef WIN32
+static DWORD error_key = FLS_OUT_OF_INDEXES;
+static INIT_ONCE error_key_once = INIT_ONCE_STATIC_INIT;
+#else
+static pthread_key_t error_key;
+static pthread_once_t error_key_once = PTHREAD_ONCE_INIT;
+#endif
+
+/* Deletes the exception reference and frees the strings of the given error record */
+static void beam_reset_error(JNIEnv* env, BeamError* error)
+{
+    if (error->exception != NULL && env != NULL && error->vm_generation == BEAM_LOAD_ACQUIRE(vm_generation)) {
+        (*env)->DeleteGlobalRef(env, error->exception);
+    }
+    free(error->class_name);
+    free(error->message);
+    free(error->stack_trace);
+    memset(error, 0, sizeof (BeamError));
+}
+
+/* Called on thread exit with the error record of the thread */
+static void beam_free_error(void* data)
+{
+    BeamError* error = (BeamError*) data;
+    JNIEnv* env = NULL;
+    int attached = 0;
+
+    if (error == NULL) {
+        return;
+    }
+    if (jvm != NULL && error->exception != NULL && error->vm_generation == BEAM_LOAD_ACQUIRE(vm_generation)) {
+        /* the thread may have been detached already by beam_detach_thread() */
+        if ((*jvm)->GetEnv(jvm, (void**) &env, JNI_VERSION_1_6) != JNI_OK) {
+            attached = (*jvm)->AttachCurrentThreadAsDaemon(jvm, (void**) &env, NULL) == JNI_OK;
+            if (!attached) {
+                env = NULL;
+            }
+        }
+    }
+    beam_reset_error(env, error);
+    if (attached) {
+        (*jvm)->DetachCurrentThread(jvm);
+    }
+    free(error);
+}
+
+#ifdef WIN32
+
+static VOID WINAPI beam_free_error_callback(PVOID error)
+{
+    beam_free_error(error);
+}
+
+static BOOL CALLBACK beam_create_error_key_callback(PINIT_ONCE once, PVOID param, PVOID* context)
+{
+    error_key = FlsAlloc(beam_free_error_callback);
+    return error_key != FLS_OUT_OF_INDEXES;
+}
+
+static int beam_create_error_key()
+{
+    return InitOnceExecuteOnce(&error_key_once, beam_create_error_key_callback, NULL, NULL) ? 0 : 1;
+}
+
+#define BEAM_GET_THREAD_ERROR() ((BeamError*) FlsGetValue(error_key))
+#define BEAM_SET_THREAD_ERROR(ERROR) FlsSetValue(error_key, (ERROR))
+
+#else
+
+static void beam_create_error_key_callback()
+{
+    pthread_key_create(&error_key, beam_free_error);
+}
+
+static int beam_create_error_key()
+{
+    return pthread_once(&error_key_once, beam_create_error_key_callback);
+}
+
+#define BEAM_GET_THREAD_ERROR() ((BeamError*) pthread_getspecific(error_key))
+#define BEAM_SET_THREAD_ERROR(ERROR) pthread_setspecific(error_key, (ERROR))
+
+#endif
+
+/* Returns the error record of the calling thread, creates it if create is non-zero */
+static BeamError* beam_get_thread_error(int create)
+{
+    BeamError* error;
+
+    if (beam_create_error_key() != 0) {
+        return NULL;
+    }
+    error = BEAM_GET_THREAD_ERROR();
+    if (error == NULL && create) {
+        error = (BeamError*) calloc(1, sizeof (BeamError));
+        if (error != NULL) {
+            BEAM_SET_THREAD_ERROR(error);
+        }
+    }
+    return error;
+}
+
+/* Calls the given method of the object, which returns a string, and returns a copy of the string or NULL */
+static char* beam_call_string_method(JNIEnv* jenv, jobject object, const char* class_name, const char* method_name)
+{
+    jclass cls = (*jenv)->FindClass(jenv, class_name);
+    jmethodID method;
+    jstring str;
+    char* result = NULL;
+
+    if (cls != NULL && (method = (*jenv)->GetMethodID(jenv, cls, method_name, "()Ljava/lang/String;")) != NULL) {
+        str = (jstring) (*jenv)->CallObjectMethod(jenv, object, method);
+        if (!(*jenv)->ExceptionCheck(jenv)) {
+            result = beam_alloc_string(str);
+        }
+    }
+    (*jenv)->ExceptionClear(jenv);
+    return result;
+}
+
+void beam_catch_exception(JNIEnv* jenv)
+{
+    jthrowable exception;
+    BeamError* error;
+
+    exception = (*jenv)->ExceptionOccurred(jenv);
+    (*jenv)->ExceptionClear(jenv);
+    if (exception == NULL) {
+        return;
+    }
+    /* the calling function may not have pushed a local frame */
+    if ((*jenv)->PushLocalFrame(jenv, 4) == 0) {
+        if ((error = beam_get_thread_error(1)) != NULL) {
+            beam_reset_error(jenv, error);
+            error->pending = 1;
+            error->class_name = beam_call_string_method(jenv, (*jenv)->GetObjectClass(jenv, exception), "java/lang/Class", "getName");
+            error->message = beam_call_string_method(jenv, exception, "java/lang/Throwable", "getMessage");
+            error->exception = (jthrowable) (*jenv)->NewGlobalRef(jenv, exception);
+            error->vm_generation = BEAM_LOAD_ACQUIRE(vm_generation);
+        }
+        (*jenv)->PopLocalFrame(jenv, NULL);
+    }
+    (*jenv)->ExceptionClear(jenv);
+    (*jenv)->DeleteLocalRef(jenv, exception);
+}
+
+/* Records an error which has not been raised by a Java method, e.g. a failed allocation, as error of the calling thread */
+static void beam_record_error(JNIEnv* jenv, const char* class_name, const char* message)
+{
+    BeamError* error;
+
+    if ((error = beam_get_thread_error(1)) != NULL) {
+        beam_reset_error(jenv, error);
+        error->pending = 1;
+        error->class_name = (char*) malloc(strlen(class_name) + 1);
+        if (error->class_name != NULL) {
+            strcpy(error->class_name, class_name);
+        }
+        error->message = (char*) malloc(strlen(message) + 1);
+        if (error->message != NULL) {
+            strcpy(error->message, message);
+        }
+    }
+}
+
+/*
+ * Returns the global reference of a handle passed to an API function. If the handle is NULL, stale or invalid,
+ * an error is recorded as error of the calling thread and NULL is returned, the function must not call Java.
+ */
+jobject beam_resolve_handle(JNIEnv* jenv, const void* handle)
+{
+    jobject ref;
+
+    if (handle == NULL) {
+        beam_record_error(jenv, "java.lang.NullPointerException", "the object handle is NULL");
+        return NULL;
+    }
+    if ((ref = beam_get_handle_ref(handle)) == NULL) {
+        beam_record_error(jenv, "java.lang.IllegalArgumentException", "the object handle is stale or invalid, the object has been released");
+    }
+    return ref;
+}
+
+boolean beam_has_error()
+{
+    BeamError* error = beam_get_thread_error(0);
+    return error != NULL && error->pending;
+}
+
+const char* beam_get_error_class()
+{
+    BeamError* error = beam_get_thread_error(0);
+    return error != NULL ? error->class_name : NULL;
+}
+
+const char* beam_get_error_message()
+{
+    BeamError* error = beam_get_thread_error(0);
+    return error != NULL ? error->message : NULL;
+}
+
+const char* beam_get_error_stack_trace()
+{
+    BeamError* error = beam_get_thread_error(0);
+    JNIEnv* jenv;
+    jclass string_writer_class;
+    jclass print_writer_class;
+    jobject string_writer;
+    jobject print_writer;
+    jmethodID method;
+
+    if (error == NULL || error->stack_trace != NULL || error->exception == NULL
+        || error->vm_generation != BEAM_LOAD_ACQUIRE(vm_generation)
+        || (jenv = beam_get_jenv()) == NULL || (*jenv)->PushLocalFrame(jenv, 8) != 0) {
+        return error != NULL ? error->stack_trace : NULL;
+    }
+
+    /* new StringWriter(), exception.printStackTrace(new PrintWriter(stringWriter)) */
+    string_writer_class = (*jenv)->FindClass(jenv, "java/io/StringWriter");
+    print_writer_class = (*jenv)->FindClass(jenv, "java/io/PrintWriter");
+    if (string_writer_class != NULL && print_writer_class != NULL
+        && (method = (*jenv)->GetMethodID(jenv, string_writer_class, "<init>", "()V")) != NULL
+        && (string_writer = (*jenv)->NewObject(jenv, string_writer_class, method)) != NULL
+        && (method = (*jenv)->GetMethodID(jenv, print_writer_class, "<init>", "(Ljava/io/Writer;)V")) != NULL
+        && (print_writer = (*jenv)->NewObject(jenv, print_writer_class, method, string_writer)) != NULL
+        && (method = (*jenv)->GetMethodID(jenv, (*jenv)->FindClass(jenv, "java/lang/Throwable"), "printStackTrace", "(Ljava/io/PrintWriter;)V")) != NULL) {
+        (*jenv)->CallVoidMethod(jenv, error->exception, method, print_writer);
+        if (!(*jenv)->ExceptionCheck(jenv)) {
+            error->stack_trace = beam_call_string_method(jenv, string_writer, "java/io/StringWriter", "toString");
+        }
+    }
+    (*jenv)->ExceptionClear(jenv);
+    (*jenv)->PopLocalFrame(jenv, NULL);
+    return error->stack_trace;
+}
+
+void beam_clear_error()
+{
+    BeamError* error = beam_get_thread_error(0);
+    if (error != NULL) {
+        error->pending = 0;
+    }
+}
+
+/*
+ * Batched calls (see beam_batch_run()).
+ *
+ * A batch records the calls in native memory: every call is encoded in 8-byte slots, the call ID followed by
+ * the primitive arguments, and the handles of its object arguments are appended to a separate list. The handles
+ * are only resolved by beam_batch_run(), so that a handle released in the meantime is detected as stale instead
+ * of passing a deleted reference. beam_batch_run() wraps the slots and the results in direct buffers and passes
+ * them to the generated Java class BatchDispatcher, which makes all calls in a single JNI call.
+ */
+
+typedef union {
+    jint i;
+    jlong j;
+    jfloat f;
+    jdouble d;
+} BeamBatchValue;
+
+struct BeamBatchImpl {
+    int count;                   /* number of recorded calls */
+    int capacity;                /* number of calls for which memory has been allocated */
+    char* result_types;          /* JNI signature character of the result of each call, 'S' for strings */
+    BeamBatchValue* results;     /* primitive results, one per call */
+    void** object_results;       /* global references or strings not yet taken by the caller, one per call */
+    BeamBatchValue* values;      /* call IDs and primitive arguments */
+    int num_values;
+    int values_capacity;
+    const void** objects;        /* handles of the object arguments, not owned by the batch */
+    int num_objects;
+    int objects_capacity;
+};
+
+/* Grows the given array so that it can hold at least min_capacity elements, returns 0 on failure */
+static int beam_batch_grow(void** array, int* capacity, int min_capacity, size_t elem_size)
+{
+    void* new_array;
+    int new_capacity;
+
+    if (min_capacity <= *capacity) {
+        return 1;
+    }
+    new_capacity = 2 * *capacity > min_capacity ? 2 * *capacity : min_capacity;
+    if (new_capacity < 16) {
+        new_capacity = 16;
+    }
+    new_array = realloc(*array, new_capacity * elem_size);
+    if (new_array == NULL) {
+        return 0;
+    }
+    *array = new_array;
+    *capacity = new_capacity;
+    return 1;
+}
+
+/* Deletes the object and string results which the caller has not taken */
+static void beam_batch_free_results(BeamBatch batch)
+{
+    int i;
+
+    for (i = 0; i < batch->count; i++) {
+        if (batch->object_results[i] != NULL) {
+            if (batch->result_types[i] == 'S') {
+                free(batch->object_results[i]);
+            } else {
+                beam_release_handle(batch->object_results[i]);
+            }
+            batch->object_results[i] = NULL;
+        }
+        batch->results[i].j = 0;
+    }
+}
+
+/*
+ * Records a call with the given number of primitive and object arguments, which are then put by the
+ * beam_batch_put_...() functions. Returns the index of the call, or -1 on failure.
+ */
+int beam_batch_add_call(BeamBatch batch, int call_id, char result_type, int num_values, int num_objects)
+{
+    if (batch->count == batch->capacity) {
+        int capacity = batch->capacity;
+        /* the arrays only grow, so the batch stays consistent if one of them cannot be grown */
+        if (!beam_batch_grow((void**) &batch->result_types, &capacity, batch->count + 1, sizeof (char))) {
+            return -1;
+        }
+        capacity = batch->capacity;
+        if (!beam_batch_grow((void**) &batch->results, &capacity, batch->count + 1, sizeof (BeamBatchValue))) {
+            return -1;
+        }
+        capacity = batch->capacity;
+        if (!beam_batch_grow((void**) &batch->object_results, &capacity, batch->count + 1, sizeof (void*))) {
+            return -1;
+        }
+        batch->capacity = capacity;
+    }
+    if (!beam_batch_grow((void**) &batch->values, &batch->values_capacity, batch->num_values + 1 + num_values, sizeof (BeamBatchValue))
+        || !beam_batch_grow((void**) &batch->objects, &batch->objects_capacity, batch->num_objects + num_objects, sizeof (void*))) {
+        return -1;
+    }
+    batch->values[batch->num_values].j = 0;
+    batch->values[batch->num_values++].i = call_id;
+    batch->result_types[batch->count] = result_type;
+    batch->results[batch->count].j = 0;
+    batch->object_results[batch->count] = NULL;
+    return batch->count++;
+}
+
+void beam_batch_put_int(BeamBatch batch, jint value)
+{
+    batch->values[batch->num_values].j = 0;
+    batch->values[batch->num_values++].i = value;
+}
+
+void beam_batch_put_long(BeamBatch batch, jlong value)
+{
+    batch->values[batch->num_values++].j = value;
+}
+
+void beam_batch_put_float(BeamBatch batch, jfloat value)
+{
+    batch->values[batch->num_values].j = 0;
+    batch->values[batch->num_values++].f = value;
+}
+
+void beam_batch_put_double(BeamBatch batch, jdouble value)
+{
+    batch->values[batch->num_values++].d = value;
+}
+
+void beam_batch_put_object(BeamBatch batch, const void* handle)
+{
+    batch->objects[batch->num_objects++] = handle;
+}
+
+BeamBatch beam_batch_new()
+{
+    return (BeamBatch) calloc(1, sizeof (struct BeamBatchImpl));
+}
+
+void beam_batch_delete(BeamBatch batch)
+{
+    if (batch != NULL) {
+        beam_batch_free_results(batch);
+        free(batch->result_types);
+        free(batch->results);
+        free(batch->object_results);
+        free(batch->values);
+        free(batch->objects);
+        free(batch);
+    }
+}
+
+void beam_batch_clear(BeamBatch batch)
+{
+    beam_batch_free_results(batch);
+    batch->count = 0;
+    batch->num_values = 0;
+    batch->num_objects = 0;
+}
+
+int beam_batch_get_count(BeamBatch batch)
+{
+    return batch->count;
+}
+
+int beam_batch_run(BeamBatch batch)
+{
+    JNIEnv* jenv;
+    jmethodID method;
+    jobject values;
+    jobject results;
+    jclass object_class;
+    jobjectArray objects;
+    jobjectArray object_results;
+    int executed;
+    int i;
+
+    if ((jenv = beam_get_jenv()) == NULL || (method = beam_methods[BEAM_METHOD_BATCH_RUN]) == NULL) {
+        return -1;
+    }
+    beam_batch_free_results(batch);
+    if (batch->count == 0) {
+        return 0;
+    }
+    if ((*jenv)->PushLocalFrame(jenv, 8) != 0) {
+        return -1;
+    }
+
+    values = (*jenv)->NewDirectByteBuffer(jenv, batch->values, (jlong) batch->num_values * sizeof (BeamBatchValue));
+    results = (*jenv)->NewDirectByteBuffer(jenv, batch->results, (jlong) batch->count * sizeof (BeamBatchValue));
+    /* java.lang.Object */
+    object_class = (*jenv)->GetSuperclass(jenv, classString);
+    objects = (*jenv)->NewObjectArray(jenv, batch->num_objects, object_class, NULL);
+    object_results = (*jenv)->NewObjectArray(jenv, batch->count, object_class, NULL);
+    if (values == NULL || results == NULL || objects == NULL || object_results == NULL) {
+        (*jenv)->ExceptionClear(jenv);
+        (*jenv)->PopLocalFrame(jenv, NULL);
+        return -1;
+    }
+    for (i = 0; i < batch->num_objects; i++) {
+        (*jenv)->SetObjectArrayElement(jenv, objects, i, beam_get_handle_ref(batch->objects[i]));
+    }
+
+    executed = (*jenv)->CallStaticIntMethod(jenv, classBatchDispatcher, method,
+                                            batch->count, values, objects, results, object_results);
+    if ((*jenv)->ExceptionCheck(jenv)) {
+        beam_catch_exception(jenv);
+        executed = 0;
+    }
+
+    for (i = 0; i < executed; i++) {
+        char type = batch->result_types[i];
+        if (type == 'L' || type == 'S') {
+            jobject result = (*jenv)->GetObjectArrayElement(jenv, object_results, i);
+            if (result != NULL) {
+                batch->object_results[i] = type == 'S' ? (void*) beam_alloc_string((jstring) result) : beam_new_handle(jenv, result);
+                (*jenv)->DeleteLocalRef(jenv, result);
+            }
+        }
+    }
+    if (executed < batch->count) {
+        /* the dispatcher stops at a call which has thrown an exception and passes it as result of the call */
+        jobject exception = (*jenv)->GetObjectArrayElement(jenv, object_results, executed);
+        if (exception != NULL) {
+            (*jenv)->Throw(jenv, (jthrowable) exception);
+            beam_catch_exception(jenv);
+        }
+    }
+
+    (*jenv)->PopLocalFrame(jenv, NULL);
+    return executed;
+}
+
+int beam_batch_get_int(BeamBatch batch, int index)
+{
+    return index >= 0 && index < batch->count ? batch->results[index].i : 0;
+}
+
+dlong beam_batch_get_long(BeamBatch batch, int index)
+{
+    return index >= 0 && index < batch->count ? batch->results[index].j : 0;
+}
+
+float beam_batch_get_float(BeamBatch batch, int index)
+{
+    return index >= 0 && index < batch->count ? batch->results[index].f : 0.0F;
+}
+
+double beam_batch_get_double(BeamBatch batch, int index)
+{
+    return index >= 0 && index < batch->count ? batch->results[index].d : 0.0;
+}
+
+void* beam_batch_take_object(BeamBatch batch, int index)
+{
+    void* result = NULL;
+    if (index >= 0 && index < batch->count && batch->result_types[index] == 'L') {
+        result = batch->object_results[index];
+        batch->object_results[index] = NULL;
+    }
+    return result;
+}
+
+char* beam_batch_take_string(BeamBatch batch, int index)
+{
+    char* result = NULL;
+    if (index >= 0 && index < batch->count && batch->result_types[index] == 'S') {
+        result = (char*) batch->object_results[index];
+        batch->object_results[index] = NULL;
+    }
+    return result;
+}
+
+/* Returns a global reference to the given class, so that it can be used by all threads */
+static jclass beam_find_class(JNIEnv* jenv, const char* class_name)
+{
+    jclass local_class;
+    jclass global_class;
+
+    local_class = (*jenv)->FindClass(jenv, class_name);
+    if (local_class == NULL) {
+        return NULL;
+    }
+    global_class = (*jenv)->NewGlobalRef(jenv, local_class);
+    (*jenv)->DeleteLocalRef(jenv, local_class);
+    return global_class;
+}
+
+/*
+ * Resolves all methods of the method table at once, the classes must have been found before.
+ * Methods of optional classes which have not been found are left NULL.
+ */
+static int beam_init_methods(JNIEnv* jenv)
+{
+    int i;
+
+    for (i = 0; i < BEAM_METHOD_COUNT; i++) {
+        const BeamMethodDef* def = &beam_method_defs[i];
+        if (*def->class_ref == NULL) {
+            beam_methods[i] = NULL;
+            continue;
+        }
+        if (def->is_static) {
+            beam_methods[i] = (*jenv)->GetStaticMethodID(jenv, *def->class_ref, def->name, def->signature);
+        } else {
+            beam_methods[i] = (*jenv)->GetMethodID(jenv, *def->class_ref, def->name, def->signature);
+        }
+        if (beam_methods[i] == NULL) {
+            (*jenv)->ExceptionClear(jenv);
+            fprintf(stderr, "beam_capi error: method not found: %s%s\n", def->name, def->signature);
+            return 2000;
+        }
+    }
+    return 0;
+}
+
 String String_newString(const char* chars)
 {
-    jstring str = (*jenv)->NewStringUTF(jenv, chars);
-    return (*jenv)->NewGlobalRef(jenv, str);
+    JNIEnv* jenv = beam_get_jenv();
+    jstring str;
+    String result;
+
+    if (jenv == NULL) return NULL;
+    str = (*jenv)->NewStringUTF(jenv, chars);
+    result = beam_new_handle(jenv, str);
+    (*jenv)->DeleteLocalRef(jenv, str);
+    return result;
 }
 
 jobjectArray beam_new_jstring_array(const char** array_elems, int array_length)
 {
+    JNIEnv* jenv = beam_get_jenv();
     jobjectArray array;
     int i;
 
+    if (jenv == NULL) return NULL;
+
     array = (*jenv)->NewObjectArray(jenv, array_length, classString, NULL);
     for (i = 0; i < array_length; i++) {
         jstring str = (*jenv)->NewStringUTF(jenv, array_elems[i]);
         (*jenv)->SetObjectArrayElement(jenv, array, i, str);
+        (*jenv)->DeleteLocalRef(jenv, str);
     }
 
-    // todo: check if we must return (*jenv)->NewGlobalRef(jenv, array);
+    /* a local reference, deleted with the local frame of the calling API function */
     return array;
 }
 
-jobjectArray beam_new_jobject_array(const jobject* array_elems, int array_length, jclass comp_class)
+jobjectArray beam_new_jobject_array(void* const* array_elems, int array_length, jclass comp_class)
 {
+    JNIEnv* jenv = beam_get_jenv();
     jobjectArray array;
     int i;
 
+    if (jenv == NULL) return NULL;
+
     array = (*jenv)->NewObjectArray(jenv, array_length, comp_class, NULL);
     for (i = 0; i < array_length; i++) {
-        (*jenv)->SetObjectArrayElement(jenv, array, i, array_elems[i]);
+        (*jenv)->SetObjectArrayElement(jenv, array, i, beam_get_handle_ref(array_elems[i]));
     }
 
-     // todo: check if we must return (*jenv)->NewGlobalRef(jenv, obj_array);
+    /* a local reference, deleted with the local frame of the calling API function */
     return array;
 }
 
 void beam_release_jobject(jobject* object)
 {
     if (*object != NULL) {
-        (*jenv)->DeleteGlobalRef(jenv, *object);
+        beam_release_handle(*object);
         *object = NULL;
     }
 }
 
-void beam_copy_from_jarray(jarray array, void* elems, int array_length, size_t elem_size)
+/*
+ * Copies between C arrays and the Java arrays passed to API methods (see beam_set_array_copy_limits()).
+ *
+ * Arrays of up to array_region_limit bytes are copied by a single Get/Set<Type>ArrayRegion() call. Larger arrays
+ * are copied by one call per chunk of array_chunk_size bytes, because the Java VM cannot stop the copying thread
+ * for a garbage collection, and thus blocks every other thread allocating Java objects, until a call returns.
+ * The arrays are never pinned. Java chars are converted to and from C chars through a buffer.
+ */
+
+#define BEAM_CHAR_BUFFER_LENGTH 1024
+
+static int array_region_limit = 256 * 1024;
+static int array_chunk_size = 64 * 1024;
+
+/* Gets the size of the C type of the given array element type, e.g. 4 for 'F' (float) */
+static size_t beam_get_c_elem_size(char type)
+{
+    switch (type) {
+        case 'Z': return sizeof (boolean);
+        case 'C': return sizeof (char);
+        case 'B': return sizeof (byte);
+        case 'S': return sizeof (short);
+        case 'I': return sizeof (int);
+        case 'J': return sizeof (dlong);
+        case 'F': return sizeof (float);
+        case 'D': return sizeof (double);
+        default: return 0;
+    }
+}
+
+static void beam_get_array_region(JNIEnv* jenv, jarray array, char type, jsize start, jsize length, void* elems)
+{
+    switch (type) {
+        case 'Z': (*jenv)->GetBooleanArrayRegion(jenv, (jbooleanArray) array, start, length, (jboolean*) elems); break;
+        case 'C': (*jenv)->GetCharArrayRegion(jenv, (jcharArray) array, start, length, (jchar*) elems); break;
+        case 'B': (*jenv)->GetByteArrayRegion(jenv, (jbyteArray) array, start, length, (jbyte*) elems); break;
+        case 'S': (*jenv)->GetShortArrayRegion(jenv, (jshortArray) array, start, length, (jshort*) elems); break;
+        case 'I': (*jenv)->GetIntArrayRegion(jenv, (jintArray) array, start, length, (jint*) elems); break;
+        case 'J': (*jenv)->GetLongArrayRegion(jenv, (jlongArray) array, start, length, (jlong*) elems); break;
+        case 'F': (*jenv)->GetFloatArrayRegion(jenv, (jfloatArray) array, start, length, (jfloat*) elems); break;
+        case 'D': (*jenv)->GetDoubleArrayRegion(jenv, (jdoubleArray) array, start, length, (jdouble*) elems); break;
+    }
+}
+
+static void beam_set_array_region(JNIEnv* jenv, jarray array, char type, jsize start, jsize length, const void* elems)
+{
+    switch (type) {
+        case 'Z': (*jenv)->SetBooleanArrayRegion(jenv, (jbooleanArray) array, start, length, (const jboolean*) elems); break;
+        case 'C': (*jenv)->SetCharArrayRegion(jenv, (jcharArray) array, start, length, (const jchar*) elems); break;
+        case 'B': (*jenv)->SetByteArrayRegion(jenv, (jbyteArray) array, start, length, (const jbyte*) elems); break;
+        case 'S': (*jenv)->SetShortArrayRegion(jenv, (jshortArray) array, start, length, (const jshort*) elems); break;
+        case 'I': (*jenv)->SetIntArrayRegion(jenv, (jintArray) array, start, length, (const jint*) elems); break;
+        case 'J': (*jenv)->SetLongArrayRegion(jenv, (jlongArray) array, start, length, (const jlong*) elems); break;
+        case 'F': (*jenv)->SetFloatArrayRegion(jenv, (jfloatArray) array, start, length, (const jfloat*) elems); break;
+        case 'D': (*jenv)->SetDoubleArrayRegion(jenv, (jdoubleArray) array, start, length, (const jdouble*) elems); break;
+    }
+}
+
+void beam_set_array_copy_limits(int region_limit, int chunk_size)
+{
+    array_region_limit = region_limit >= 0 ? region_limit : 0;
+    /* a chunk holds at least one element of any type */
+    array_chunk_size = chunk_size >= 8 ? chunk_size : 8;
+}
+
+/* Records the exception pending after a failed copy, or an error if the array is NULL, returns 0 */
+static int beam_copy_failed(JNIEnv* jenv, jarray array)
+{
+    if ((*jenv)->ExceptionCheck(jenv)) {
+        beam_catch_exception(jenv);
+    } else if (array == NULL) {
+        beam_record_error(jenv, "java.lang.NullPointerException", "the Java array could not be created");
+    }
+    return 0;
+}
+
+/* Copies the elements of the Java array into the C array, returns 0 and records an error on failure */
+int beam_copy_from_jarray(jarray array, char type, void* elems, int array_length)
 {
-    void* addr = (*jenv)->GetPrimitiveArrayCritical(jenv, array, NULL);
-    memcpy(elems, addr, elem_size * array_length);
-    (*jenv)->ReleasePrimitiveArrayCritical(jenv, array, addr, 0);
+    JNIEnv* jenv = beam_get_jenv();
+    size_t elem_size = beam_get_c_elem_size(type);
+    int chunk_length;
+    int i, n;
+
+    if (jenv == NULL || array_length <= 0 || elem_size == 0) {
+        return jenv != NULL;
+    }
+    if (array == NULL) {
+        /* the caller must not read uninitialised elements */
+        memset(elems, 0, array_length * elem_size);
+        return beam_copy_failed(jenv, array);
+    }
+
+    if (type == 'C') {
+        jchar buffer[BEAM_CHAR_BUFFER_LENGTH];
+        char* chars = (char*) elems;
+        int j;
+        for (i = 0; i < array_length; i += n) {
+            n = array_length - i < BEAM_CHAR_BUFFER_LENGTH ? array_length - i : BEAM_CHAR_BUFFER_LENGTH;
+            (*jenv)->GetCharArrayRegion(jenv, (jcharArray) array, i, n, buffer);
+            if ((*jenv)->ExceptionCheck(jenv)) {
+                memset(elems, 0, array_length * elem_size);
+                return beam_copy_failed(jenv, array);
+            }
+            for (j = 0; j < n; j++) {
+                chars[i + j] = (char) buffer[j];
+            }
+        }
+        return 1;
+    }
+    chunk_length = (size_t) array_length * elem_size <= (size_t) array_region_limit ? array_length : (int) (array_chunk_size / elem_size);
+    for (i = 0; i < array_length; i += n) {
+        n = array_length - i < chunk_length ? array_length - i : chunk_length;
+        beam_get_array_region(jenv, array, type, i, n, (char*) elems + i * elem_size);
+        if ((*jenv)->ExceptionCheck(jenv)) {
+            memset(elems, 0, array_length * elem_size);
+            return beam_copy_failed(jenv, array);
+        }
+    }
+    return 1;
 }
 
-void beam_copy_to_jarray(jarray array, const void* elems, int array_length, size_t elem_size)
+/* Copies the elements of the C array into the Java array, returns 0 and records an error on failure */
+int beam_copy_to_jarray(jarray array, char type, const void* elems, int array_length)
 {
-    void* addr = (*jenv)->GetPrimitiveArrayCritical(jenv, array, NULL);
-    memcpy(addr, elems, elem_size * array_length);
-    (*jenv)->ReleasePrimitiveArrayCritical(jenv, array, addr, 0);
+    JNIEnv* jenv = beam_get_jenv();
+    size_t elem_size = beam_get_c_elem_size(type);
+    int chunk_length;
+    int i, n;
+
+    if (jenv == NULL || array_length <= 0 || elem_size == 0) {
+        return jenv != NULL;
+    }
+    if (array == NULL) {
+        return beam_copy_failed(jenv, array);
+    }
+
+    if (type == 'C') {
+        jchar buffer[BEAM_CHAR_BUFFER_LENGTH];
+        const char* chars = (const char*) elems;
+        int j;
+        for (i = 0; i < array_length; i += n) {
+            n = array_length - i < BEAM_CHAR_BUFFER_LENGTH ? array_length - i : BEAM_CHAR_BUFFER_LENGTH;
+            for (j = 0; j < n; j++) {
+                buffer[j] = (jchar) (unsigned char) chars[i + j];
+            }
+            (*jenv)->SetCharArrayRegion(jenv, (jcharArray) array, i, n, buffer);
+            if ((*jenv)->ExceptionCheck(jenv)) {
+                return beam_copy_failed(jenv, array);
+            }
+        }
+        return 1;
+    }
+    chunk_length = (size_t) array_length * elem_size <= (size_t) array_region_limit ? array_length : (int) (array_chunk_size / elem_size);
+    for (i = 0; i < array_length; i += n) {
+        n = array_length - i < chunk_length ? array_length - i : chunk_length;
+        beam_set_array_region(jenv, array, type, i, n, (const char*) elems + i * elem_size);
+        if ((*jenv)->ExceptionCheck(jenv)) {
+            return beam_copy_failed(jenv, array);
+        }
+    }
+    return 1;
 }
 
-void* beam_alloc_primitive_array(jarray array, int* array_length, size_t elem_size)
+void* beam_alloc_primitive_array(jarray array, char type, int* array_length)
 {
+    JNIEnv* jenv = beam_get_jenv();
     void* elems;
     int n;
 
+    if (jenv == NULL || array == NULL) {
+        return NULL;
+    }
     n = (*jenv)->GetArrayLength(jenv, array);
-    elems = (boolean*) malloc(n * elem_size);
-    beam_copy_from_jarray(array, elems, elem_size, n);
+    elems = malloc(n * beam_get_c_elem_size(type));
+    if (elems == NULL) {
+        return NULL;
+    }
+    if (!beam_copy_from_jarray(array, type, elems, n)) {
+        free(elems);
+        return NULL;
+    }
     if (array_length != NULL) {
         *array_length = n;
     }
@@ -73,56 +1538,62 @@ void* beam_alloc_primitive_array(jarray array, int* array_length, size_t elem_si
 
 boolean* beam_alloc_boolean_array(jarray array, int* array_length)
 {
-    return (boolean*) beam_alloc_primitive_array(array, array_length, sizeof (boolean));
+    return (boolean*) beam_alloc_primitive_array(array, 'Z', array_length);
 }
 
 char* beam_alloc_char_array(jarray array, int* array_length)
 {
-    return (char*) beam_alloc_primitive_array(array, array_length, sizeof (char));
+    return (char*) beam_alloc_primitive_array(array, 'C', array_length);
 }
 
 byte* beam_alloc_byte_array(jarray array, int* array_length)
 {
-    return (byte*) beam_alloc_primitive_array(array, array_length, sizeof (byte));
+    return (byte*) beam_alloc_primitive_array(array, 'B', array_length);
 }
 
 short* beam_alloc_short_array(jarray array, int* array_length)
 {
-    return (short*) beam_alloc_primitive_array(array, array_length, sizeof (short));
+    return (short*) beam_alloc_primitive_array(array, 'S', array_length);
 }
 
 int* beam_alloc_int_array(jarray array, int* array_length)
 {
-    return (int*) beam_alloc_primitive_array(array, array_length, sizeof (int));
+    return (int*) beam_alloc_primitive_array(array, 'I', array_length);
 }
 
 dlong* beam_alloc_long_array(jarray array, int* array_length)
 {
-    return (dlong*) beam_alloc_primitive_array(array, array_length, sizeof (dlong));
+    return (dlong*) beam_alloc_primitive_array(array, 'J', array_length);
 }
 
 float* beam_alloc_float_array(jarray array, int* array_length)
 {
-    return (float*) beam_alloc_primitive_array(array, array_length, sizeof (float));
+    return (float*) beam_alloc_primitive_array(array, 'F', array_length);
 }
 
 double* beam_alloc_double_array(jarray array, int* array_length)
 {
-    return (double*) beam_alloc_primitive_array(array, array_length, sizeof (double));
+    return (double*) beam_alloc_primitive_array(array, 'D', array_length);
 }
 
-Object* beam_alloc_object_array(jarray array, int* array_length)
+void** beam_alloc_object_array(jarray array, int* array_length)
 {
-    Object* array_elems;
+    JNIEnv* jenv = beam_get_jenv();
+    void** array_elems;
     jsize n;
     jsize i;
 
+    if (jenv == NULL || array == NULL) {
+        return NULL;
+    }
     n = (*jenv)->GetArrayLength(jenv, array);
 
-    array_elems = (Object*) malloc(n * sizeof (char*));
+    array_elems = (void**) malloc(n * sizeof (void*));
     for (i = 0; i < n; i++) {
-        // todo: check if we must incremenet a global reference here!
-        array_elems[i] = (*jenv)->GetObjectArrayElement(jenv, array, i);
+        /* the elements are returned to the caller, so they are passed as handles */
+        jobject elem = (*jenv)->GetObjectArrayElement(jenv, array, i);
+        array_elems[i] = beam_new_handle(jenv, elem);
+        (*jenv)->DeleteLocalRef(jenv, elem);
     }
 
     if (array_length != NULL) {
@@ -135,22 +1606,283 @@ Object* beam_alloc_object_array(jarray array, int* array_length)
 
 char* beam_alloc_string(jstring str)
 {
-    int len = (*jenv)->GetStringUTFLength(jenv, str);
-    const char* chars = (*jenv)->GetStringUTFChars(jenv, str, 0);
-    char* result = (char*) malloc((len + 1) * sizeof (char));
+    JNIEnv* jenv = beam_get_jenv();
+    int len;
+    char* result;
+
+    if (jenv == NULL || str == NULL) {
+        return NULL;
+    }
+    len = (*jenv)->GetStringUTFLength(jenv, str);
+    result = (char*) malloc((len + 1) * sizeof (char));
     if (result != NULL) {
-        strcpy(result, chars);
+        /* copies the characters directly, without the copy made by GetStringUTFChars() */
+        (*jenv)->GetStringUTFRegion(jenv, str, 0, (*jenv)->GetStringLength(jenv, str), result);
+        result[len] = 0;
+    }
+    return result;
+}
+
+char* beam_copy_string(jstring str, char* chars, int capacity)
+{
+    JNIEnv* jenv = beam_get_jenv();
+    jchar buffer[64];
+    jsize n;
+    jsize i;
+    int len;
+
+    if (jenv == NULL || str == NULL || chars == NULL || capacity <= 0) {
+        return NULL;
+    }
+    n = (*jenv)->GetStringLength(jenv, str);
+    len = (*jenv)->GetStringUTFLength(jenv, str);
+    if (len < capacity) {
+        (*jenv)->GetStringUTFRegion(jenv, str, 0, n, chars);
+        chars[len] = 0;
+        return chars;
+    }
+
+    /* the string is truncated after the last character which fits, it is encoded here like JNI does it */
+    len = 0;
+    for (i = 0; i < n; i++) {
+        jchar c;
+        int size;
+        if (i % 64 == 0) {
+            (*jenv)->GetStringRegion(jenv, str, i, n - i < 64 ? n - i : 64, buffer);
+        }
+        c = buffer[i % 64];
+        size = c != 0 && c < 0x80 ? 1 : c < 0x800 ? 2 : 3;
+        if (len + size >= capacity) {
+            break;
+        }
+        if (size == 1) {
+            chars[len++] = (char) c;
+        } else if (size == 2) {
+            chars[len++] = (char) (0xC0 | (c >> 6));
+            chars[len++] = (char) (0x80 | (c & 0x3F));
+        } else {
+            chars[len++] = (char) (0xE0 | (c >> 12));
+            chars[len++] = (char) (0x80 | ((c >> 6) & 0x3F));
+            chars[len++] = (char) (0x80 | (c & 0x3F));
+        }
+    }
+    chars[len] = 0;
+    return chars;
+}
+
+/*
+ * Cache of the strings returned by the ...Interned functions (see beam_intern_string()).
+ *
+ * The strings are kept in an open addressing hash table keyed by their characters, which are compared with the
+ * characters of the Java string, so that a cached string is found without converting it to UTF-8 again. The
+ * strings are never moved, so that the caller can use them without locking. If a new string does not fit into
+ * the cache, the table is retired and a new one is started. The limit thus bounds the table which is searched;
+ * the strings of the retired tables are not looked up anymore, but they are only freed by
+ * beam_clear_string_cache(), because a string returned earlier may still be in use by any thread.
+ */
+
+typedef struct {
+    jint hash;              /* String.hashCode() */
+    jsize utf16_length;
+    jchar* utf16_chars;     /* the characters of the Java string, NULL if the entry is empty */
+    char* chars;            /* the string returned, allocated with utf16_chars */
+} BeamStringCacheEntry;
+
+static BeamStringCacheEntry* string_cache = NULL;
+static int string_cache_capacity = 0;
+static int string_cache_count = 0;
+/* Number of bytes used by the strings and their entries, and its limit */
+static int string_cache_size = 0;
+static int string_cache_limit = 1024 * 1024;
+
+/* A table retired by an overflow */
+typedef struct BeamRetiredStringCache {
+    BeamStringCacheEntry* table;
+    int capacity;
+    struct BeamRetiredStringCache* next;
+} BeamRetiredStringCache;
+
+/* The tables retired since the last beam_clear_string_cache(), and the number of bytes used by them */
+static BeamRetiredStringCache* retired_string_cache = NULL;
+static int retired_string_cache_size = 0;
+
+static void beam_free_string_cache_table(BeamStringCacheEntry* table, int capacity)
+{
+    int i;
+
+    for (i = 0; i < capacity; i++) {
+        free(table[i].utf16_chars);
+    }
+    free(table);
+}
+
+/* Retires the current table and starts a new, empty one, returns 0 on failure */
+static int beam_retire_string_cache()
+{
+    BeamRetiredStringCache* retired = (BeamRetiredStringCache*) malloc(sizeof (BeamRetiredStringCache));
+
+    if (retired == NULL) {
+        return 0;
+    }
+    retired->table = string_cache;
+    retired->capacity = string_cache_capacity;
+    retired->next = retired_string_cache;
+    retired_string_cache = retired;
+    retired_string_cache_size += string_cache_size;
+    string_cache = NULL;
+    string_cache_capacity = 0;
+    string_cache_count = 0;
+    string_cache_size = 0;
+    return 1;
+}
+
+/* Doubles the capacity of the table, returns 0 on failure */
+static int beam_grow_string_cache()
+{
+    int capacity = string_cache_capacity > 0 ? 2 * string_cache_capacity : 256;
+    BeamStringCacheEntry* table = (BeamStringCacheEntry*) calloc(capacity, sizeof (BeamStringCacheEntry));
+    int i;
+
+    if (table == NULL) {
+        return 0;
+    }
+    for (i = 0; i < string_cache_capacity; i++) {
+        if (string_cache[i].utf16_chars != NULL) {
+            int j = string_cache[i].hash & (capacity - 1);
+            while (table[j].utf16_chars != NULL) {
+                j = (j + 1) & (capacity - 1);
+            }
+            table[j] = string_cache[i];
+        }
+    }
+    free(string_cache);
+    string_cache = table;
+    string_cache_capacity = capacity;
+    return 1;
+}
+
+const char* beam_intern_string(jstring str)
+{
+    JNIEnv* jenv = beam_get_jenv();
+    const char* result = NULL;
+    jchar buffer[128];
+    jchar* utf16_chars;
+    jsize utf16_length;
+    jint hash = 0;
+    int i;
+
+    if (jenv == NULL || str == NULL) {
+        return NULL;
+    }
+    utf16_length = (*jenv)->GetStringLength(jenv, str);
+    utf16_chars = utf16_length <= 128 ? buffer : (jchar*) malloc(utf16_length * sizeof (jchar));
+    if (utf16_chars == NULL) {
+        beam_record_error(jenv, "java.lang.OutOfMemoryError", "failed to allocate a string of the string cache");
+        return NULL;
+    }
+    (*jenv)->GetStringRegion(jenv, str, 0, utf16_length, utf16_chars);
+    for (i = 0; i < utf16_length; i++) {
+        hash = 31 * hash + utf16_chars[i];
+    }
+
+    BEAM_LOCK_STRING_CACHE();
+    if (string_cache_count + 1 > 3 * (string_cache_capacity / 4) && !beam_grow_string_cache()) {
+        beam_record_error(jenv, "java.lang.OutOfMemoryError", "failed to grow the string cache");
+    } else {
+        for (i = hash & (string_cache_capacity - 1); string_cache[i].utf16_chars != NULL; i = (i + 1) & (string_cache_capacity - 1)) {
+            if (string_cache[i].hash == hash && string_cache[i].utf16_length == utf16_length
+                    && memcmp(string_cache[i].utf16_chars, utf16_chars, utf16_length * sizeof (jchar)) == 0) {
+                result = string_cache[i].chars;
+                break;
+            }
+        }
+        if (result == NULL) {
+            /* a new string, a string larger than the limit is stored in an empty table anyway; if the table
+               cannot be retired, it simply exceeds the limit */
+            int length = (*jenv)->GetStringUTFLength(jenv, str);
+            int size = (int) (sizeof (BeamStringCacheEntry) + utf16_length * sizeof (jchar) + length + 1);
+            jchar* block;
+            if (string_cache_size + size > string_cache_limit && string_cache_count > 0 && beam_retire_string_cache()) {
+                if (!beam_grow_string_cache()) {
+                    beam_record_error(jenv, "java.lang.OutOfMemoryError", "failed to grow the string cache");
+                    BEAM_UNLOCK_STRING_CACHE();
+                    if (utf16_chars != buffer) {
+                        free(utf16_chars);
+                    }
+                    return NULL;
+                }
+                i = hash & (string_cache_capacity - 1);
+            }
+            if ((block = (jchar*) malloc(utf16_length * sizeof (jchar) + length + 1)) != NULL) {
+                char* chars = (char*) (block + utf16_length);
+                memcpy(block, utf16_chars, utf16_length * sizeof (jchar));
+                (*jenv)->GetStringUTFRegion(jenv, str, 0, utf16_length, chars);
+                chars[length] = 0;
+                string_cache[i].hash = hash;
+                string_cache[i].utf16_length = utf16_length;
+                string_cache[i].utf16_chars = block;
+                string_cache[i].chars = chars;
+                string_cache_count++;
+                string_cache_size += size;
+                result = chars;
+            } else {
+                beam_record_error(jenv, "java.lang.OutOfMemoryError", "failed to allocate a string of the string cache");
+            }
+        }
+    }
+    BEAM_UNLOCK_STRING_CACHE();
+
+    if (utf16_chars != buffer) {
+        free(utf16_chars);
     }
-    (*jenv)->ReleaseStringUTFChars(jenv, str, chars);
     return result;
 }
 
+void beam_set_string_cache_limit(int limit)
+{
+    BEAM_LOCK_STRING_CACHE();
+    string_cache_limit = limit;
+    BEAM_UNLOCK_STRING_CACHE();
+}
+
+int beam_get_string_cache_size()
+{
+    int size;
+
+    BEAM_LOCK_STRING_CACHE();
+    size = string_cache_size + retired_string_cache_size;
+    BEAM_UNLOCK_STRING_CACHE();
+    return size;
+}
+
+void beam_clear_string_cache()
+{
+    BEAM_LOCK_STRING_CACHE();
+    beam_free_string_cache_table(string_cache, string_cache_capacity);
+    string_cache = NULL;
+    string_cache_capacity = 0;
+    string_cache_count = 0;
+    string_cache_size = 0;
+    while (retired_string_cache != NULL) {
+        BeamRetiredStringCache* next = retired_string_cache->next;
+        beam_free_string_cache_table(retired_string_cache->table, retired_string_cache->capacity);
+        free(retired_string_cache);
+        retired_string_cache = next;
+    }
+    retired_string_cache_size = 0;
+    BEAM_UNLOCK_STRING_CACHE();
+}
+
 char** beam_alloc_string_array(jarray array, int* array_length)
 {
+    JNIEnv* jenv = beam_get_jenv();
     char** array_elems;
     jsize n;
     jsize i;
 
+    if (jenv == NULL || array == NULL) {
+        return NULL;
+    }
     n = (*jenv)->GetArrayLength(jenv, array);
 
     array_elems = (char**) malloc(n * sizeof (char*));
@@ -162,6 +1894,7 @@ char** beam_alloc_string_array(jarray array, int* array_length)
         char* elems = (char*) malloc((len + 1) * sizeof (char));
         strcpy(elems, chars);
         (*jenv)->ReleaseStringUTFChars(jenv, str, chars);
+        (*jenv)->DeleteLocalRef(jenv, str);
         array_elems[i] = elems;
     }
 
@@ -189,15 +1922,19 @@ JNIEXPORT jint JNICALL JNI_OnLoad(JavaVM *vm, void *reserved)
 {
     fprintf(stdout, "beam_capi: JNI_OnLoad() called\n");
     jvm = vm;
-    (*jvm)->GetEnv(vm, &jenv, JNI_VERSION_1_6);
+    if (beam_init_api() != 0) {
+        fprintf(stderr, "beam_capi error: failed to initialise the API\n");
+    }
     return JNI_VERSION_1_6;
 }
 
 JNIEXPORT void JNICALL JNI_OnUnload(JavaVM *vm, void *reserved)
 {
     fprintf(stdout, "beam_capi: JNI_OnUnload() called\n");
+    BEAM_STORE_RELEASE(api_init, 0);
+    BEAM_STORE_RELEASE(vm_generation, vm_generation + 1);
+    beam_reset_handles();
     jvm = NULL;
-    jenv = NULL;
 }
 
 /* Java VM functions that must be used if this module is used in stand-alone mode (= not loaded as shared library by a Java VM) */
@@ -211,10 +1948,11 @@ jboolean beam_create_jvm(const char* option_strings[], int option_count)
 {
     JavaVMInitArgs vm_args; 
     JavaVMOption* options;
+    JNIEnv* env;
     int res;
 
     if (jvm != NULL) {
-        return JNI_TRUE;
+        return beam_init_api() == 0;
     }
 
     options = (JavaVMOption*) calloc(option_count, sizeof (JavaVMOption));
@@ -229,7 +1967,7 @@ jboolean beam_create_jvm(const char* option_strings[], int option_count)
     vm_args.options = options;
     vm_args.nOptions = 4;
     vm_args.ignoreUnrecognized = 0;
-    res = JNI_CreateJavaVM(&jvm, (void**) &jenv, &vm_args);
+    res = JNI_CreateJavaVM(&jvm, (void**) &env, &vm_args);
 
     free(options);
 
@@ -238,7 +1976,7 @@ jboolean beam_create_jvm(const char* option_strings[], int option_count)
         return JNI_FALSE;
     }
 
-    return JNI_TRUE;
+    return beam_init_api() == 0;
 }
 
 jboolean beam_destroy_jvm() 
@@ -255,8 +1993,10 @@ jboolean beam_destroy_jvm()
         return JNI_FALSE;
     }
 
+    BEAM_STORE_RELEASE(api_init, 0);
+    BEAM_STORE_RELEASE(vm_generation, vm_generation + 1);
+    beam_reset_handles();
     jvm = NULL;
-    jenv = NULL;
     return JNI_TRUE;
 }
 
@@ -9,5 +9,153 @@ boolean beam_create_jvm(const char* option_strings[], int option_count);
 boolean beam_create_jvm_with_defaults();
 boolean beam_destroy_jvm();
 
+/*
+ * Initialises the API, creating the Java VM with defaults if it has not been created yet. Returns 0 on success.
+ * The API is initialised by beam_create_jvm() and when the module is loaded by a Java VM. API functions
+ * called before it has been initialised return 0 or NULL.
+ */
+int beam_init_api();
+
+/*
+ * Pooling of the Java arrays which API functions pass to Java methods. If enabled, every thread reuses the
+ * Java arrays of its previous calls with the same element type and length instead of creating new ones, which
+ * avoids garbage and GC pauses when, e.g., a product is read tile by tile. Pooling is disabled by default.
+ * It must only be enabled if the Java methods called do not keep references to the arrays passed to them.
+ * The elements of an output array which a method does not set are undefined.
+ */
+typedef struct {
+    long acquired;   /* number of Java arrays requested by API functions */
+    long reused;     /* number of requests served by a pooled array */
+    long allocated;  /* number of Java arrays created */
+    long evicted;    /* number of pooled arrays replaced by arrays of another type or length */
+} BeamArrayPoolStats;
+
+void beam_set_array_pooling(boolean enabled);
+
+/* Gets the array pool statistics of the calling thread */
+void beam_get_array_pool_stats(BeamArrayPoolStats* stats);
+
+/*
+ * Copying of primitive arrays between C and Java. Arrays of up to region_limit bytes are copied by the Java VM
+ * in one piece, larger arrays, e.g. whole tiles of a product, in chunks of chunk_size bytes. The Java VM cannot
+ * run the garbage collector while it copies a piece, which stalls every thread that allocates Java objects.
+ * The defaults are 256 kB and 64 kB, beam_capi_copy_bench compares the limits for the tile sizes of MERIS and
+ * OLCI products.
+ */
+void beam_set_array_copy_limits(int region_limit, int chunk_size);
+
+/*
+ * Handles. API functions return objects as handles, which refer to the Java objects in a global handle table and
+ * keep them alive until they are released. Every object returned must be released with beam_release_handle(),
+ * or by closing the handle scope in which it has been returned. A handle which has been released is stale:
+ * API functions passed a stale handle, or NULL as the object of an instance method, record an error (see
+ * beam_has_error()) and return 0 or NULL without calling Java, they never use another object. NULL passed as
+ * argument is passed to the Java method as null. Handles are released when the Java VM is destroyed.
+ */
+
+/* Releases the given handle, returns 0 if it is NULL, stale or invalid */
+boolean beam_release_handle(const void* handle);
+
+/*
+ * Opens a handle scope of the calling thread and returns its depth. All handles returned to the thread until the
+ * scope is closed are released by beam_end_handle_scope(), e.g. all objects obtained while processing a product.
+ * Scopes can be nested, handles are always recorded in the innermost scope. Returns 0 on failure.
+ */
+int beam_begin_handle_scope();
+
+/* Closes the given handle scope of the calling thread and the scopes nested in it, and releases their handles */
+void beam_end_handle_scope(int scope);
+
+/* Gets the number of handles which have not been released yet */
+int beam_get_handle_count();
+
+/*
+ * Errors. If the Java method called by an API function throws an exception, the function returns 0 or NULL and
+ * the exception is recorded as error of the calling thread. API functions do not clear the error when they
+ * succeed: call beam_clear_error() before a sequence of calls and test beam_has_error() afterwards, or test it
+ * whenever a function has returned 0 or NULL. Reading the error makes no call into the Java VM, except for the
+ * stack trace, which is formatted when it is requested first. The strings returned remain valid until the next
+ * exception is recorded for the thread, the caller must not free them.
+ */
+
+/* Returns 1 if an API function called by this thread has failed since the last call of beam_clear_error() */
+boolean beam_has_error();
+
+/* Gets the class name of the last exception, e.g. "java.io.IOException", or NULL if none has been thrown */
+const char* beam_get_error_class();
+
+/* Gets the message of the last exception, or NULL if it has none */
+const char* beam_get_error_message();
+
+/* Gets the stack trace of the last exception, as printed by Java, or NULL */
+const char* beam_get_error_stack_trace();
+
+/* Clears the error of the calling thread, beam_has_error() returns 0 until the next exception */
+void beam_clear_error();
+
+/*
+ * Strings. API functions return strings as copies, which the caller must free with free(). Functions returning a
+ * string also have two variants which avoid the allocation:
+ * - the ...Interned variant returns the string from a string cache, e.g. Band_getNameInterned(). The string is
+ *   only copied the first time it is returned. The caller must neither modify nor free it. It remains valid until
+ *   beam_clear_string_cache() is called, which is the only function freeing cached strings: if a new string does
+ *   not fit into the cache, the strings cached before are retired, i.e. they are not looked up anymore, but they
+ *   are kept until beam_clear_string_cache() as well. A program interning many different strings should clear
+ *   the cache from time to time, when none of its strings is in use by any thread.
+ * - the ...Into variant copies the string into the caller's buffer, e.g. Band_getNameInto(band, buf, sizeof buf),
+ *   which is truncated to the capacity of the buffer including the terminating zero, and returns the buffer.
+ */
+
+/* Sets the number of bytes after which the string cache overflows and retires its strings, which is 1 MB by
+   default. The retired strings are not bounded by the limit, they are kept until beam_clear_string_cache(). */
+void beam_set_string_cache_limit(int limit);
+
+/* Gets the number of bytes used by the string cache, including the retired strings */
+int beam_get_string_cache_size();
+
+/* Frees all strings of the string cache including the retired ones, which must not be used anymore */
+void beam_clear_string_cache();
+
+/*
+ * Batched calls. The API functions which take neither arrays nor strings and return no array, except constructors,
+ * have a ...Batched variant, which records the call in a batch instead of making it and returns the index of the
+ * call in the batch, or -1 on failure.
+ * beam_batch_run() makes all recorded calls in a single JNI call, which is much cheaper than making them one by
+ * one if the Java methods are small, e.g. the getters called to read the metadata of many bands.
+ * Objects passed to a ...Batched function must not be released before the batch is run, as the batch only refers
+ * to their handles: a call with a released object fails like a call with a NULL object.
+ * A batch must only be used by one thread at a time.
+ */
+typedef struct BeamBatchImpl* BeamBatch;
+
+BeamBatch beam_batch_new();
+void beam_batch_delete(BeamBatch batch);
+
+/* Removes all calls and results from the batch */
+void beam_batch_clear(BeamBatch batch);
+
+/* Gets the number of calls recorded in the batch */
+int beam_batch_get_count(BeamBatch batch);
+
+/*
+ * Makes all calls recorded in the batch, they remain recorded, so that the batch can be run again. Returns the
+ * number of calls made, which is less than the number of calls recorded if a call has thrown a Java exception,
+ * or -1 if the batch could not be run, e.g. because the generated Java class BatchDispatcher is not on the
+ * class path. The exception is recorded as error of the calling thread, see beam_has_error().
+ */
+int beam_batch_run(BeamBatch batch);
+
+/*
+ * Gets the result of a call made by beam_batch_run(). boolean, byte, char, short and int results are got as int.
+ * Object and string results are passed to the caller like the results of the API functions, strings must be
+ * freed with free(). Taking such a result a second time returns NULL.
+ */
+int beam_batch_get_int(BeamBatch batch, int index);
+dlong beam_batch_get_long(BeamBatch batch, int index);
+float beam_batch_get_float(BeamBatch batch, int index);
+double beam_batch_get_double(BeamBatch batch, int index);
+void* beam_batch_take_object(BeamBatch batch, int index);
+char* beam_batch_take_string(BeamBatch batch, int index);
+
 String String_newString(const char* chars);
 void beam_release_string_array(char** array_elems, int array_length);
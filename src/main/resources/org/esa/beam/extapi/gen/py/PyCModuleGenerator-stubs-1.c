@@ -1,5 +1,3 @@
-static PyObject* BeamPy_Error;
-
 boolean* beam_new_boolean_array_from_pyseq(PyObject* seq, int* length);
 char* beam_new_char_array_from_pyseq(PyObject* seq, int* length);
 byte* beam_new_byte_array_from_pyseq(PyObject* seq, int* length);
@@ -8,8 +6,8 @@ int* beam_new_int_array_from_pyseq(PyObject* seq, int* length);
 dlong* beam_new_dlong_array_from_pyseq(PyObject* seq, int* length);
 float* beam_new_float_array_from_pyseq(PyObject* seq, int* length);
 double* beam_new_double_array_from_pyseq(PyObject* seq, int* length);
-char** beam_new_string_array_from_pyseq(PyObject* seq, int* length);
-void** beam_new_jobject_array_from_pyseq(const char* type, PyObject* seq, int* length);
+const char** beam_new_string_array_from_pyseq(PyObject* seq, int* length);
+void** beam_new_jobject_array_from_pyseq(PyObject* seq, int* length);
 
 PyObject* beam_new_pyseq_from_boolean_array(const boolean* elems, int length);
 PyObject* beam_new_pyseq_from_char_array(const char* elems, int length);
@@ -20,4 +18,48 @@ PyObject* beam_new_pyseq_from_dlong_array(const dlong* elems, int length);
 PyObject* beam_new_pyseq_from_float_array(const float* elems, int length);
 PyObject* beam_new_pyseq_from_double_array(const double* elems, int length);
 PyObject* beam_new_pyseq_from_string_array(const char** elems, int length);
-PyObject* beam_new_pyseq_from_jobject_array(const char* type, const void* elems, int length);
\ No newline at end of file
+PyObject* beam_new_pyseq_from_jobject_array(PyTypeObject* type, void** elems, int length);
+
+/* Creates a CArray, which takes ownership of the given elements, of the buffer format "?", "c", "b", "h", "i", "q", "f" or "d" */
+PyObject* beam_new_pycarray(const char* format, void* elems, int length);
+int beam_add_pycarray_type(PyObject* module);
+
+/* A Java object, the instances of the types generated for the Java classes hold a handle of the C API */
+typedef struct {
+    PyObject_HEAD
+    void* handle;
+} BeamPy_JObject;
+
+/* The base type of the types generated for the Java classes */
+extern PyTypeObject BeamPy_JObjectType;
+
+/* Creates an object of the given type, which takes ownership of the given handle, or returns None if it is NULL */
+PyObject* beam_new_pyjobject(PyTypeObject* type, void* handle);
+/* Gets the handle of a Java object argument or NULL for None, see beam_convert_pyint() */
+int beam_convert_pyjobject(PyObject* obj, void** handle);
+int beam_add_pyjobject_type(PyObject* module, const char* name, PyTypeObject* type);
+int beam_add_pyjobject_types(PyObject* module);
+
+/*
+ * Arguments of the generated functions. A converter stores the C value of an argument, or returns 0 and raises a
+ * Python error if the argument is of the wrong type or out of the range of the Java type.
+ */
+int beam_check_pyargs(const char* name, Py_ssize_t nargs, Py_ssize_t expected);
+int beam_convert_pyboolean(PyObject* obj, boolean* value);
+int beam_convert_pychar(PyObject* obj, char* value);
+int beam_convert_pybyte(PyObject* obj, byte* value);
+int beam_convert_pyshort(PyObject* obj, short* value);
+int beam_convert_pyint(PyObject* obj, int* value);
+int beam_convert_pydlong(PyObject* obj, dlong* value);
+int beam_convert_pyfloat(PyObject* obj, float* value);
+int beam_convert_pydouble(PyObject* obj, double* value);
+int beam_convert_pystring(PyObject* obj, const char** value);
+
+/* Elements of array arguments, see beam_acquire_pyarray() */
+int beam_acquire_pyarray(PyObject* obj, const char* format, int writable, Py_buffer* buffer, int* length);
+void beam_release_pyarray(Py_buffer* buffer);
+PyObject* beam_return_pyarray(Py_buffer* buffer, PyObject* obj, const char* format, int length);
+
+/* Raises the error of the last API call, a Java exception, as Python error and clears it, returns NULL */
+PyObject* beam_raise_java_error();
+PyObject* BeamPy_getErrorStackTrace(PyObject* self, PyObject* args);
\ No newline at end of file
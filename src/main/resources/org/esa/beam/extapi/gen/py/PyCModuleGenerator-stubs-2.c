@@ -28,6 +28,10 @@ PyMODINIT_FUNC PyInit__${libName}()
     Py_INCREF(BeamPy_Error);
     PyModule_AddObject(m, "error", BeamPy_Error);
 
+    if (beam_add_pycarray_type(m) < 0 || beam_add_pyjobject_types(m) < 0) {
+        return NULL;
+    }
+
     if (!beam_create_jvm_with_defaults()) {
         PyErr_SetString(BeamPy_Error, "Failed to create Java VM");
         return NULL;
@@ -25,26 +25,41 @@ PyObject* beam_new_pyseq_from_${typeName}_array(const ${ctype}* elems, int lengt
 
 ${ctype}* beam_new_${typeName}_array_from_pyseq(PyObject* seq, int* length)
 {
+    PyObject* fast;
+    PyObject** items;
+    PyObject* item;
     Py_ssize_t size;
     ${ctype}* elems;
     Py_ssize_t i;
-    PyObject* item;
 
-    size = PySequence_Size(seq);
-    elems = (${ctype}*) malloc(size * sizeof (${ctype}));
+    /* a list or tuple is used as it is, the items are borrowed references */
+    fast = PySequence_Fast(seq, "expected a sequence or a buffer of ${typeName} elements");
+    if (fast == NULL) {
+        return NULL;
+    }
+    size = PySequence_Fast_GET_SIZE(fast);
+    if (size > INT_MAX) {
+        Py_DECREF(fast);
+        PyErr_SetString(PyExc_OverflowError, "sequence too long for a Java array");
+        return NULL;
+    }
+    elems = (${ctype}*) malloc((size > 0 ? size : 1) * sizeof (${ctype}));
     if (elems == NULL) {
-        /* todo: throw Python exception */
+        Py_DECREF(fast);
+        PyErr_NoMemory();
         return NULL;
     }
+    items = PySequence_Fast_ITEMS(fast);
     for (i = 0; i < size; i++) {
-        item = PySequence_GetItem(seq, i);
-        if (item == NULL) {
+        item = items[i];
+        elems[i] = ${itemToElemCall};
+        if (PyErr_Occurred()) {
+            Py_DECREF(fast);
             free(elems);
             return NULL;
         }
-        elems[i] = ${itemToElemCall};
     }
-    /* todo: check if conversion to int is ok */
+    Py_DECREF(fast);
     *length = (int) size;
     return elems;
 }
@@ -1,36 +1,273 @@
 
-PyObject* beam_new_pyseq_from_jobject_array(const char* type, const void** elems, int length)
+/*
+ * The JObject type: the base type of the types generated for the Java classes. An object holds a handle of the
+ * C API, which it releases when it is deallocated. Objects are only created by the API functions.
+ */
+static void BeamPy_JObject_dealloc(BeamPy_JObject* self)
+{
+    if (self->handle != NULL) {
+        beam_release_handle(self->handle);
+    }
+    Py_TYPE(self)->tp_free((PyObject*) self);
+}
+
+PyTypeObject BeamPy_JObjectType = {
+    PyVarObject_HEAD_INIT(NULL, 0)
+    "${libName}.JObject",                   /* tp_name */
+    sizeof (BeamPy_JObject),                /* tp_basicsize */
+    0,                                      /* tp_itemsize */
+    (destructor) BeamPy_JObject_dealloc,    /* tp_dealloc */
+    0,                                      /* tp_print */
+    0,                                      /* tp_getattr */
+    0,                                      /* tp_setattr */
+    0,                                      /* tp_reserved */
+    0,                                      /* tp_repr */
+    0,                                      /* tp_as_number */
+    0,                                      /* tp_as_sequence */
+    0,                                      /* tp_as_mapping */
+    0,                                      /* tp_hash  */
+    0,                                      /* tp_call */
+    0,                                      /* tp_str */
+    0,                                      /* tp_getattro */
+    0,                                      /* tp_setattro */
+    0,                                      /* tp_as_buffer */
+    Py_TPFLAGS_DEFAULT | Py_TPFLAGS_BASETYPE,  /* tp_flags */
+    "A Java object",                        /* tp_doc */
+};
+
+/* The base type of a generated type is set before, its superclass's type or JObject */
+int beam_add_pyjobject_type(PyObject* module, const char* name, PyTypeObject* type)
+{
+    if (PyType_Ready(type) < 0) {
+        return -1;
+    }
+    Py_INCREF(type);
+    return PyModule_AddObject(module, name, (PyObject*) type);
+}
+
+PyObject* beam_new_pyjobject(PyTypeObject* type, void* handle)
+{
+    BeamPy_JObject* obj;
+
+    if (handle == NULL) {
+        return Py_BuildValue("");
+    }
+    obj = PyObject_New(BeamPy_JObject, type);
+    if (obj == NULL) {
+        beam_release_handle(handle);
+        return NULL;
+    }
+    obj->handle = handle;
+    return (PyObject*) obj;
+}
+
+/*
+ * Any Java object is accepted, because the generated types do not reflect the runtime classes of the objects,
+ * e.g. a method declared to return a RasterDataNode returns a RasterDataNode object for a band.
+ */
+int beam_convert_pyjobject(PyObject* obj, void** handle)
+{
+    if (obj == Py_None) {
+        *handle = NULL;
+        return 1;
+    }
+    if (!PyObject_TypeCheck(obj, &BeamPy_JObjectType)) {
+        PyErr_Format(PyExc_TypeError, "expected a Java object or None, got '%s'", Py_TYPE(obj)->tp_name);
+        return 0;
+    }
+    *handle = ((BeamPy_JObject*) obj)->handle;
+    return 1;
+}
+
+int beam_check_pyargs(const char* name, Py_ssize_t nargs, Py_ssize_t expected)
+{
+    if (nargs != expected) {
+        PyErr_Format(PyExc_TypeError, "%s() takes exactly %zd arguments (%zd given)", name, expected, nargs);
+        return 0;
+    }
+    return 1;
+}
+
+int beam_convert_pyboolean(PyObject* obj, boolean* value)
+{
+    int truth = PyObject_IsTrue(obj);
+    if (truth < 0) {
+        return 0;
+    }
+    *value = (boolean) truth;
+    return 1;
+}
+
+/* Like the "C" format of PyArg_ParseTuple(), a string of one character */
+int beam_convert_pychar(PyObject* obj, char* value)
+{
+    if (!PyUnicode_Check(obj) || PyUnicode_GET_LENGTH(obj) != 1) {
+        PyErr_Format(PyExc_TypeError, "expected a string of length 1, got '%s'", Py_TYPE(obj)->tp_name);
+        return 0;
+    }
+    *value = (char) PyUnicode_READ_CHAR(obj, 0);
+    return 1;
+}
+
+/* Gets an integer argument in the given range */
+static int beam_convert_pylong(PyObject* obj, long min, long max, const char* type, long* value)
+{
+    long v = PyLong_AsLong(obj);
+    if (v == -1 && PyErr_Occurred()) {
+        return 0;
+    }
+    if (v < min || v > max) {
+        PyErr_Format(PyExc_OverflowError, "%ld is out of the range of a Java %s", v, type);
+        return 0;
+    }
+    *value = v;
+    return 1;
+}
+
+/* Like the "b" format of PyArg_ParseTuple(), unsigned values of bytes are accepted too */
+int beam_convert_pybyte(PyObject* obj, byte* value)
+{
+    long v;
+    if (!beam_convert_pylong(obj, SCHAR_MIN, UCHAR_MAX, "byte", &v)) {
+        return 0;
+    }
+    *value = (byte) v;
+    return 1;
+}
+
+int beam_convert_pyshort(PyObject* obj, short* value)
+{
+    long v;
+    if (!beam_convert_pylong(obj, SHRT_MIN, SHRT_MAX, "short", &v)) {
+        return 0;
+    }
+    *value = (short) v;
+    return 1;
+}
+
+int beam_convert_pyint(PyObject* obj, int* value)
+{
+    long v;
+    if (!beam_convert_pylong(obj, INT_MIN, INT_MAX, "int", &v)) {
+        return 0;
+    }
+    *value = (int) v;
+    return 1;
+}
+
+int beam_convert_pydlong(PyObject* obj, dlong* value)
+{
+    PY_LONG_LONG v = PyLong_AsLongLong(obj);
+    if (v == -1 && PyErr_Occurred()) {
+        return 0;
+    }
+    *value = (dlong) v;
+    return 1;
+}
+
+int beam_convert_pyfloat(PyObject* obj, float* value)
+{
+    double v = PyFloat_AsDouble(obj);
+    if (v == -1.0 && PyErr_Occurred()) {
+        return 0;
+    }
+    *value = (float) v;
+    return 1;
+}
+
+int beam_convert_pydouble(PyObject* obj, double* value)
+{
+    double v = PyFloat_AsDouble(obj);
+    if (v == -1.0 && PyErr_Occurred()) {
+        return 0;
+    }
+    *value = v;
+    return 1;
+}
+
+/* Like the "s" format of PyArg_ParseTuple(), the UTF-8 string is owned by the argument */
+int beam_convert_pystring(PyObject* obj, const char** value)
+{
+    const char* s;
+    Py_ssize_t size;
+
+    if (!PyUnicode_Check(obj)) {
+        PyErr_Format(PyExc_TypeError, "expected a string, got '%s'", Py_TYPE(obj)->tp_name);
+        return 0;
+    }
+    s = PyUnicode_AsUTF8AndSize(obj, &size);
+    if (s == NULL) {
+        return 0;
+    }
+    if ((size_t) size != strlen(s)) {
+        PyErr_SetString(PyExc_ValueError, "embedded null character");
+        return 0;
+    }
+    *value = s;
+    return 1;
+}
+
+/* Creates a list of objects of the given type, which take ownership of the given handles */
+PyObject* beam_new_pyseq_from_jobject_array(PyTypeObject* type, void** elems, int length)
 {
     PyObject* list;
     PyObject* item;
     int i;
     list = PyList_New(length);
     if (list == NULL) {
+        for (i = 0; i < length; i++) {
+            beam_release_handle(elems[i]);
+        }
         return NULL;
     }
     for (i = 0; i < length; i++) {
-        item = Py_BuildValue("(sK)", type, (unsigned PY_LONG_LONG) elems[i]);
+        item = beam_new_pyjobject(type, elems[i]);
         if (item == NULL) {
+            for (i = i + 1; i < length; i++) {
+                beam_release_handle(elems[i]);
+            }
             Py_DECREF(list);
             return NULL;
         }
-        if (PyList_SetItem(list, i, item) != 0) {
-            Py_DECREF(item);
-            Py_DECREF(list);
-            return NULL;
-        }
+        PyList_SET_ITEM(list, i, item);
     }
     return list;
 }
 
-void** beam_new_jobject_array_from_pyseq(const char* type, PyObject* seq, int* length)
+/* Gets the handles of the Java objects of a sequence, the returned array must be freed */
+void** beam_new_jobject_array_from_pyseq(PyObject* seq, int* length)
 {
-    /*
-       todo: implement me!
-       Use char* PyUnicode_AsUTF8AndSize(PyObject *unicode, Py_ssize_t *size)
-       PyArg_ParseTuple(item, "(sK)", &itemType, &itemObj);
-     */
-    return NULL;
+    PyObject* fast;
+    void** elems;
+    Py_ssize_t n;
+    Py_ssize_t i;
+
+    fast = PySequence_Fast(seq, "argument must be a sequence of Java objects");
+    if (fast == NULL) {
+        return NULL;
+    }
+    n = PySequence_Fast_GET_SIZE(fast);
+    if (n > INT_MAX) {
+        Py_DECREF(fast);
+        PyErr_SetString(PyExc_OverflowError, "sequence is too long");
+        return NULL;
+    }
+    elems = (void**) malloc((n > 0 ? n : 1) * sizeof (void*));
+    if (elems == NULL) {
+        Py_DECREF(fast);
+        PyErr_NoMemory();
+        return NULL;
+    }
+    for (i = 0; i < n; i++) {
+        if (!beam_convert_pyjobject(PySequence_Fast_GET_ITEM(fast, i), &elems[i])) {
+            free(elems);
+            Py_DECREF(fast);
+            return NULL;
+        }
+    }
+    Py_DECREF(fast);
+    *length = (int) n;
+    return elems;
 }
 
 
@@ -58,11 +295,346 @@ PyObject* beam_new_pyseq_from_string_array(const char** elems, int length)
     return list;
 }
 
-char** beam_new_string_array_from_pyseq(PyObject* seq, int* length)
+/*
+ * Copies the strings of a sequence. The pointers and the characters are stored in one block, so that the returned
+ * array is freed with a single free(), and the strings stay valid while the GIL is released.
+ */
+const char** beam_new_string_array_from_pyseq(PyObject* seq, int* length)
+{
+    PyObject* fast;
+    PyObject* item;
+    const char** elems;
+    const char* s;
+    char* chars;
+    Py_ssize_t n;
+    Py_ssize_t i;
+    Py_ssize_t size;
+    size_t total;
+
+    fast = PySequence_Fast(seq, "argument must be a sequence of strings");
+    if (fast == NULL) {
+        return NULL;
+    }
+    n = PySequence_Fast_GET_SIZE(fast);
+    if (n > INT_MAX) {
+        Py_DECREF(fast);
+        PyErr_SetString(PyExc_OverflowError, "sequence is too long");
+        return NULL;
+    }
+    total = (n > 0 ? n : 1) * sizeof (char*);
+    for (i = 0; i < n; i++) {
+        item = PySequence_Fast_GET_ITEM(fast, i);
+        if (!PyUnicode_Check(item)) {
+            Py_DECREF(fast);
+            PyErr_Format(PyExc_TypeError, "expected a string, got '%s'", Py_TYPE(item)->tp_name);
+            return NULL;
+        }
+        if (PyUnicode_AsUTF8AndSize(item, &size) == NULL) {
+            Py_DECREF(fast);
+            return NULL;
+        }
+        total += size + 1;
+    }
+    elems = (const char**) malloc(total);
+    if (elems == NULL) {
+        Py_DECREF(fast);
+        PyErr_NoMemory();
+        return NULL;
+    }
+    chars = (char*) (elems + (n > 0 ? n : 1));
+    for (i = 0; i < n; i++) {
+        s = PyUnicode_AsUTF8AndSize(PySequence_Fast_GET_ITEM(fast, i), &size);
+        memcpy(chars, s, size + 1);
+        elems[i] = chars;
+        chars += size + 1;
+    }
+    Py_DECREF(fast);
+    *length = (int) n;
+    return elems;
+}
+
+PyObject* beam_raise_java_error()
 {
-    /* todo: implement me!
-       Use char* PyUnicode_AsUTF8AndSize(PyObject *unicode, Py_ssize_t *size)
-     */
+    const char* class_name = beam_get_error_class();
+    const char* message = beam_get_error_message();
+
+    if (message != NULL) {
+        PyErr_Format(BeamPy_Error, "%s: %s", class_name != NULL ? class_name : "java.lang.Throwable", message);
+    } else {
+        PyErr_SetString(BeamPy_Error, class_name != NULL ? class_name : "java.lang.Throwable");
+    }
+    beam_clear_error();
     return NULL;
 }
 
+PyObject* BeamPy_getErrorStackTrace(PyObject* self, PyObject* args)
+{
+    const char* stack_trace = beam_get_error_stack_trace();
+    if (stack_trace != NULL) {
+        return PyUnicode_FromString(stack_trace);
+    } else {
+        return Py_BuildValue("");
+    }
+}
+
+/*
+ * The CArray type: a one-dimensional array which owns the C array returned by an API function and exposes it
+ * through the buffer protocol, so that memoryview() and numpy.asarray() use the elements without copying them.
+ * It is also a sequence, so that it can be indexed and iterated like the lists returned before.
+ */
+typedef struct {
+    PyObject_HEAD
+    void* elems;
+    Py_ssize_t length;
+    Py_ssize_t item_size;
+    Py_ssize_t shape[1];
+    Py_ssize_t strides[1];
+    char format[2];
+} BeamPy_CArray;
+
+static void BeamPy_CArray_dealloc(BeamPy_CArray* self)
+{
+    free(self->elems);
+    Py_TYPE(self)->tp_free((PyObject*) self);
+}
+
+static Py_ssize_t BeamPy_CArray_length(BeamPy_CArray* self)
+{
+    return self->length;
+}
+
+static PyObject* BeamPy_CArray_item(BeamPy_CArray* self, Py_ssize_t index)
+{
+    if (index < 0 || index >= self->length) {
+        PyErr_SetString(PyExc_IndexError, "CArray index out of range");
+        return NULL;
+    }
+    switch (self->format[0]) {
+        case '?': return PyBool_FromLong(((boolean*) self->elems)[index]);
+        case 'c': return PyUnicode_FromFormat("%c", ((char*) self->elems)[index]);
+        case 'b': return PyLong_FromLong(((byte*) self->elems)[index]);
+        case 'h': return PyLong_FromLong(((short*) self->elems)[index]);
+        case 'i': return PyLong_FromLong(((int*) self->elems)[index]);
+        case 'q': return PyLong_FromLongLong(((dlong*) self->elems)[index]);
+        case 'f': return PyFloat_FromDouble(((float*) self->elems)[index]);
+        case 'd': return PyFloat_FromDouble(((double*) self->elems)[index]);
+        default:
+            PyErr_Format(PyExc_TypeError, "unsupported CArray format '%s'", self->format);
+            return NULL;
+    }
+}
+
+static int BeamPy_CArray_getbuffer(BeamPy_CArray* self, Py_buffer* view, int flags)
+{
+    view->obj = (PyObject*) self;
+    view->buf = self->elems;
+    view->len = self->length * self->item_size;
+    view->readonly = 0;
+    view->itemsize = self->item_size;
+    view->format = (flags & PyBUF_FORMAT) != 0 ? self->format : NULL;
+    view->ndim = 1;
+    view->shape = (flags & PyBUF_ND) != 0 ? self->shape : NULL;
+    view->strides = (flags & PyBUF_STRIDES) == PyBUF_STRIDES ? self->strides : NULL;
+    view->suboffsets = NULL;
+    view->internal = NULL;
+    Py_INCREF(self);
+    return 0;
+}
+
+static PySequenceMethods BeamPy_CArray_SequenceMethods = {
+    (lenfunc) BeamPy_CArray_length,         /* sq_length */
+    0,                                      /* sq_concat */
+    0,                                      /* sq_repeat */
+    (ssizeargfunc) BeamPy_CArray_item,      /* sq_item */
+};
+
+static PyBufferProcs BeamPy_CArray_BufferProcs = {
+    (getbufferproc) BeamPy_CArray_getbuffer,  /* bf_getbuffer */
+    NULL,                                     /* bf_releasebuffer */
+};
+
+static PyTypeObject BeamPy_CArrayType = {
+    PyVarObject_HEAD_INIT(NULL, 0)
+    "${libName}.CArray",                    /* tp_name */
+    sizeof (BeamPy_CArray),                 /* tp_basicsize */
+    0,                                      /* tp_itemsize */
+    (destructor) BeamPy_CArray_dealloc,     /* tp_dealloc */
+    0,                                      /* tp_print */
+    0,                                      /* tp_getattr */
+    0,                                      /* tp_setattr */
+    0,                                      /* tp_reserved */
+    0,                                      /* tp_repr */
+    0,                                      /* tp_as_number */
+    &BeamPy_CArray_SequenceMethods,         /* tp_as_sequence */
+    0,                                      /* tp_as_mapping */
+    0,                                      /* tp_hash  */
+    0,                                      /* tp_call */
+    0,                                      /* tp_str */
+    0,                                      /* tp_getattro */
+    0,                                      /* tp_setattro */
+    &BeamPy_CArray_BufferProcs,             /* tp_as_buffer */
+    Py_TPFLAGS_DEFAULT,                     /* tp_flags */
+    "Array of primitive values returned by an API function, supports the buffer protocol",  /* tp_doc */
+};
+
+int beam_add_pycarray_type(PyObject* module)
+{
+    if (PyType_Ready(&BeamPy_CArrayType) < 0) {
+        return -1;
+    }
+    Py_INCREF(&BeamPy_CArrayType);
+    return PyModule_AddObject(module, "CArray", (PyObject*) &BeamPy_CArrayType);
+}
+
+/* Returns the size of the elements of the given buffer format, or 0 if it is not supported */
+static Py_ssize_t beam_get_pyarray_item_size(char format)
+{
+    switch (format) {
+        case '?': return sizeof (boolean);
+        case 'c': return sizeof (char);
+        case 'b': return sizeof (byte);
+        case 'h': return sizeof (short);
+        case 'i': return sizeof (int);
+        case 'q': return sizeof (dlong);
+        case 'f': return sizeof (float);
+        case 'd': return sizeof (double);
+        default: return 0;
+    }
+}
+
+PyObject* beam_new_pycarray(const char* format, void* elems, int length)
+{
+    BeamPy_CArray* array;
+    Py_ssize_t item_size = beam_get_pyarray_item_size(format[0]);
+
+    if (item_size == 0) {
+        free(elems);
+        PyErr_Format(PyExc_TypeError, "unsupported CArray format '%s'", format);
+        return NULL;
+    }
+    array = PyObject_New(BeamPy_CArray, &BeamPy_CArrayType);
+    if (array == NULL) {
+        free(elems);
+        return NULL;
+    }
+    array->elems = elems;
+    array->length = length;
+    array->item_size = item_size;
+    array->shape[0] = length;
+    array->strides[0] = item_size;
+    array->format[0] = format[0];
+    array->format[1] = '\0';
+    return (PyObject*) array;
+}
+
+/*
+ * Tests whether the elements of the buffer can be passed as elements of the given format. Integers of another
+ * format but of the same size are accepted, e.g. NumPy int64 arrays have the format 'l' on 64-bit Unix, and
+ * so are bytes for Java bytes and chars.
+ */
+static int beam_is_pyarray_format(const Py_buffer* buffer, char format, Py_ssize_t item_size)
+{
+    const char* buffer_format = buffer->format != NULL ? buffer->format : "B";
+
+    if (buffer_format[0] == '@' || buffer_format[0] == '=') {
+        buffer_format++;
+    }
+    if (buffer_format[0] == '\0' || buffer_format[1] != '\0' || buffer->itemsize != item_size) {
+        return 0;
+    }
+    if (buffer_format[0] == format) {
+        return 1;
+    }
+    switch (format) {
+        case 'c':
+        case 'b':
+            return strchr("cbB", buffer_format[0]) != NULL;
+        case 'h':
+        case 'i':
+        case 'q':
+            return strchr("hilq", buffer_format[0]) != NULL;
+        default:
+            return 0;
+    }
+}
+
+/*
+ * Acquires the elements of an array argument of the given buffer format. writable is 0 if the API function only
+ * reads the array, 1 if it writes into the array and returns it, 2 if it writes into the array without
+ * returning it. If the object exports a C-contiguous buffer of the format, which is writable if the API function
+ * writes into the array, its memory is passed to the API function. Otherwise the items of the object, which must
+ * be a sequence, are copied into a new C array, unless writable is 2: the caller would never see the elements
+ * written into the copy, so a TypeError is raised. Returns 0 and raises a Python error on failure.
+ */
+int beam_acquire_pyarray(PyObject* obj, const char* format, int writable, Py_buffer* buffer, int* length)
+{
+    Py_ssize_t item_size = beam_get_pyarray_item_size(format[0]);
+    int flags = PyBUF_C_CONTIGUOUS | PyBUF_FORMAT | (writable ? PyBUF_WRITABLE : 0);
+    void* elems;
+
+    if (PyObject_CheckBuffer(obj)) {
+        if (PyObject_GetBuffer(obj, buffer, flags) == 0) {
+            if (buffer->obj != NULL
+                    && beam_is_pyarray_format(buffer, format[0], item_size)
+                    && buffer->len / item_size <= INT_MAX) {
+                *length = (int) (buffer->len / item_size);
+                return 1;
+            }
+            PyBuffer_Release(buffer);
+        } else {
+            PyErr_Clear();
+        }
+    }
+    if (writable == 2) {
+        PyErr_Format(PyExc_TypeError, "argument must be a writable, C-contiguous buffer of format '%s'", format);
+        return 0;
+    }
+
+    switch (format[0]) {
+        case '?': elems = beam_new_boolean_array_from_pyseq(obj, length); break;
+        case 'c': elems = beam_new_char_array_from_pyseq(obj, length); break;
+        case 'b': elems = beam_new_byte_array_from_pyseq(obj, length); break;
+        case 'h': elems = beam_new_short_array_from_pyseq(obj, length); break;
+        case 'i': elems = beam_new_int_array_from_pyseq(obj, length); break;
+        case 'q': elems = beam_new_dlong_array_from_pyseq(obj, length); break;
+        case 'f': elems = beam_new_float_array_from_pyseq(obj, length); break;
+        case 'd': elems = beam_new_double_array_from_pyseq(obj, length); break;
+        default:
+            PyErr_Format(PyExc_TypeError, "unsupported array format '%s'", format);
+            return 0;
+    }
+    if (elems == NULL) {
+        return 0;
+    }
+    /* a buffer without object holds a copy */
+    buffer->buf = elems;
+    buffer->obj = NULL;
+    buffer->len = *length * item_size;
+    buffer->itemsize = item_size;
+    return 1;
+}
+
+/* Releases the elements acquired by beam_acquire_pyarray() */
+void beam_release_pyarray(Py_buffer* buffer)
+{
+    if (buffer->obj != NULL) {
+        PyBuffer_Release(buffer);
+    } else {
+        free(buffer->buf);
+    }
+    buffer->buf = NULL;
+}
+
+/*
+ * Returns the array argument, whose elements the API function has returned: the object itself if its memory
+ * was passed, otherwise a CArray which takes ownership of the copy of its items.
+ */
+PyObject* beam_return_pyarray(Py_buffer* buffer, PyObject* obj, const char* format, int length)
+{
+    if (buffer->obj != NULL) {
+        PyBuffer_Release(buffer);
+        Py_INCREF(obj);
+        return obj;
+    }
+    return beam_new_pycarray(format, buffer->buf, length);
+}
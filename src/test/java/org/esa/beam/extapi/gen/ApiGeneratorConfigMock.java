@@ -1,20 +1,24 @@
 package org.esa.beam.extapi.gen;
 
-import org.esa.beam.extapi.gen.test.TestClass2;
+import java.util.HashSet;
+import java.util.Set;
 
 /**
 * @author Norman Fomferra
 */
 public class ApiGeneratorConfigMock implements ApiGeneratorConfig {
-    private final Class<TestClass2> aClass;
+    private final Set<String> classNames;
 
-    public ApiGeneratorConfigMock(Class<TestClass2> aClass) {
-        this.aClass = aClass;
+    public ApiGeneratorConfigMock(Class<?>... classes) {
+        this.classNames = new HashSet<String>();
+        for (Class<?> aClass : classes) {
+            classNames.add(aClass.getName());
+        }
     }
 
     @Override
     public boolean isApiClass(String className) {
-        return aClass.getName().equals(className);
+        return classNames.contains(className);
     }
 
     @Override
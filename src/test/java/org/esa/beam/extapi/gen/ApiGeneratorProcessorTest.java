@@ -0,0 +1,73 @@
+package org.esa.beam.extapi.gen;
+
+import com.sun.javadoc.ClassDoc;
+import com.sun.javadoc.RootDoc;
+import org.esa.beam.extapi.gen.c.CModuleGenerator;
+import org.esa.beam.extapi.gen.test.TestClass2;
+import org.esa.beam.extapi.gen.test.TestClass3;
+import org.esa.beam.extapi.gen.test.TestEnum1;
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author Norman Fomferra
+ */
+public class ApiGeneratorProcessorTest {
+
+    @Test
+    public void testThatAllPublicClassesAreFound() throws Exception {
+        final Set<String> classNames = new HashSet<String>();
+        final ApiGeneratorDoclet.Handler handler = new ApiGeneratorDoclet.Handler() {
+            @Override
+            public boolean start(RootDoc root) {
+                for (ClassDoc c : root.classes()) {
+                    classNames.add(c.qualifiedName());
+                }
+                return true;
+            }
+        };
+        assertTrue(ApiGeneratorProcessor.run(handler, "src/test/java", "org.esa.beam.extapi.gen.test"));
+        assertEquals(4, classNames.size());
+        assertTrue(classNames.contains("org.esa.beam.extapi.gen.test.TestClass1"));
+        assertTrue(classNames.contains("org.esa.beam.extapi.gen.test.TestClass2"));
+        assertTrue(classNames.contains("org.esa.beam.extapi.gen.test.TestClass3"));
+        assertTrue(classNames.contains("org.esa.beam.extapi.gen.test.TestEnum1"));
+    }
+
+    @Test
+    public void testThatApiInfoIsSameAsFromDoclet() throws Exception {
+        final ApiGeneratorConfig config = new ApiGeneratorConfigMock(TestClass2.class, TestClass3.class, TestEnum1.class);
+        final ModuleManifest[] manifests = new ModuleManifest[2];
+        ApiGeneratorDoclet.run(new ManifestHandler(config, manifests, 0), "src/test/java", "org.esa.beam.extapi.gen.test");
+        assertTrue(ApiGeneratorProcessor.run(new ManifestHandler(config, manifests, 1), "src/test/java", "org.esa.beam.extapi.gen.test"));
+        assertNotNull(manifests[0]);
+        assertNotNull(manifests[1]);
+        assertEquals(manifests[0].getChangedClasses(null), manifests[1].getChangedClasses(null));
+        assertEquals(manifests[0].getChangedMethods(null), manifests[1].getChangedMethods(null));
+        assertEquals(0, manifests[1].getChangedMethods(manifests[0]).size());
+        assertEquals(0, manifests[1].getChangedClasses(manifests[0]).size());
+        assertTrue(manifests[1].isSameModule(manifests[0]));
+    }
+
+    private static class ManifestHandler implements ApiGeneratorDoclet.Handler {
+        private final ApiGeneratorConfig config;
+        private final ModuleManifest[] manifests;
+        private final int index;
+
+        private ManifestHandler(ApiGeneratorConfig config, ModuleManifest[] manifests, int index) {
+            this.config = config;
+            this.manifests = manifests;
+            this.index = index;
+        }
+
+        @Override
+        public boolean start(RootDoc root) {
+            manifests[index] = ModuleManifest.create(new CModuleGenerator(ApiInfo.create(config, root)));
+            return true;
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package org.esa.beam.extapi.gen;
+
+import com.sun.javadoc.ClassDoc;
+import com.sun.javadoc.MethodDoc;
+import com.sun.javadoc.RootDoc;
+import org.esa.beam.extapi.gen.c.CModuleGenerator;
+import org.esa.beam.extapi.gen.py.PyCModuleGenerator;
+import org.esa.beam.extapi.gen.test.TestClass2;
+import org.esa.beam.extapi.gen.test.TestClass3;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * @author Norman Fomferra
+ */
+public class ApiSnapshotTest {
+
+    @Test
+    public void testRootDocRoundTrip() throws Exception {
+        RootDoc rootDoc = writeAndRead(DocMock.createRootDoc(TestClass2.class, TestClass3.class));
+
+        ClassDoc[] classDocs = rootDoc.classes();
+        assertEquals(2, classDocs.length);
+        assertEquals(TestClass2.class.getName(), classDocs[0].qualifiedName());
+        assertEquals(TestClass3.class.getName(), classDocs[1].qualifiedName());
+        assertTrue(classDocs[0].isPublic());
+        assertNotNull(classDocs[0].superclass());
+        assertSame(classDocs[0], classDocs[0].asClassDoc());
+
+        MethodDoc[] methodDocs = classDocs[0].methods();
+        assertTrue(methodDocs.length > 0);
+        assertSame(classDocs[0], methodDocs[0].containingClass());
+        assertEquals(0, methodDocs[0].tags("deprecated").length);
+    }
+
+    @Test
+    public void testSnapshotApiInfoIsSameAsSourceApiInfo() throws Exception {
+        ApiGeneratorConfig config = new ApiGeneratorConfigMock(TestClass2.class, TestClass3.class);
+        RootDoc sourceRootDoc = DocMock.createRootDoc(TestClass2.class, TestClass3.class);
+        ApiInfo sourceApiInfo = ApiInfo.create(config, sourceRootDoc);
+        ApiInfo snapshotApiInfo = ApiInfo.create(config, writeAndRead(sourceRootDoc));
+
+        assertEquals(sourceApiInfo.getApiClasses(), snapshotApiInfo.getApiClasses());
+        assertEquals(sourceApiInfo.getAllClasses(), snapshotApiInfo.getAllClasses());
+
+        CModuleGenerator sourceGenerator = new CModuleGenerator(sourceApiInfo);
+        CModuleGenerator snapshotGenerator = new CModuleGenerator(snapshotApiInfo);
+        ModuleManifest sourceManifest = ModuleManifest.create(sourceGenerator);
+        ModuleManifest snapshotManifest = ModuleManifest.create(snapshotGenerator);
+        assertTrue(snapshotManifest.isSameModule(sourceManifest));
+        assertTrue(snapshotManifest.getChangedMethods(sourceManifest).isEmpty());
+
+        assertEquals(writeFunctionDefinitions(sourceGenerator), writeFunctionDefinitions(snapshotGenerator));
+        assertEquals(writeFunctionDefinitions(new PyCModuleGenerator(sourceGenerator)),
+                     writeFunctionDefinitions(new PyCModuleGenerator(snapshotGenerator)));
+    }
+
+    @Test
+    public void testUnsupportedMethod() throws Exception {
+        RootDoc rootDoc = writeAndRead(DocMock.createRootDoc(TestClass2.class));
+        try {
+            rootDoc.packageNamed("org.esa.beam.extapi.gen.test");
+            fail();
+        } catch (UnsupportedOperationException e) {
+            // ok
+        }
+    }
+
+    @Test
+    public void testInvalidSnapshot() {
+        try {
+            ApiSnapshot.read(new ByteArrayInputStream(new byte[]{1, 2, 3}));
+            fail();
+        } catch (IOException e) {
+            // ok
+        }
+    }
+
+    private static RootDoc writeAndRead(RootDoc rootDoc) throws IOException {
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        ApiSnapshot.write(rootDoc, stream);
+        return ApiSnapshot.read(new ByteArrayInputStream(stream.toByteArray()));
+    }
+
+    private static String writeFunctionDefinitions(ModuleGenerator generator) throws Exception {
+        StringWriter writer = new StringWriter();
+        PrintWriter printWriter = new PrintWriter(writer);
+        generator.writeFunctionDefinitions(printWriter);
+        printWriter.flush();
+        return writer.toString();
+    }
+}
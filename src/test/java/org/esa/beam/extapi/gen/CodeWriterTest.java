@@ -0,0 +1,73 @@
+package org.esa.beam.extapi.gen;
+
+import org.junit.Test;
+
+import java.io.StringWriter;
+
+import static org.esa.beam.extapi.gen.TemplateEval.kv;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * @author Norman Fomferra
+ */
+public class CodeWriterTest {
+
+    @Test
+    public void testWriteCodeIndentsEveryLine() throws Exception {
+        StringWriter out = new StringWriter();
+        CodeWriter writer = new CodeWriter(out).indent();
+        writer.writeCode("if (x) {\n    y();\n}");
+        writer.writeCode(null);
+        writer.writeCode("");
+        writer.writeCode("z();\n");
+        assertEquals("    if (x) {\n" +
+                             "        y();\n" +
+                             "    }\n" +
+                             "    z();\n", out.toString());
+    }
+
+    @Test
+    public void testWriteCodeIsSameAsSplittingLines() throws Exception {
+        String code = "a();\n\nb();\n\n";
+        StringBuilder expected = new StringBuilder();
+        for (String line : code.split("\n")) {
+            expected.append("    ").append(line).append("\n");
+        }
+        StringWriter out = new StringWriter();
+        new CodeWriter(out).indent().writeCode(code);
+        assertEquals(expected.toString(), out.toString());
+    }
+
+    @Test
+    public void testWriteTemplate() throws Exception {
+        StringWriter out = new StringWriter();
+        CodeWriter writer = new CodeWriter(out, "\t").indent().indent();
+        writer.writeTemplate("${r}Array = ${c};\n${r} = f(${r}Array);", kv("r", "_result"), kv("c", "call()"));
+        writer.outdent().writeCode("return _result;");
+        assertEquals("\t\t_resultArray = call();\n" +
+                             "\t\t_result = f(_resultArray);\n" +
+                             "\treturn _result;\n", out.toString());
+    }
+
+    @Test
+    public void testAppendFragments() throws Exception {
+        CodeWriter writer = new CodeWriter().indent();
+        writer.append("int ").append('x').append(" = 0;").append('\n');
+        writer.append("--y = 1;--", 2, 8);
+        writer.endLine();
+        assertEquals("    int x = 0;\n    y = 1;", writer.toCode());
+    }
+
+    @Test
+    public void testToCode() throws Exception {
+        assertNull(new CodeWriter().toCode());
+        assertNull(new CodeWriter().writeCode(null).toCode());
+        assertEquals("a();\nb();", new CodeWriter().writeCode("a();").writeCode("b();\n").toCode());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testOutdentBelowZero() throws Exception {
+        new CodeWriter().outdent();
+    }
+}
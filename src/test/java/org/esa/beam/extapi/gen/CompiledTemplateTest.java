@@ -0,0 +1,63 @@
+package org.esa.beam.extapi.gen;
+
+import org.junit.Test;
+
+import java.io.StringWriter;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.esa.beam.extapi.gen.TemplateEval.kv;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Norman Fomferra
+ */
+public class CompiledTemplateTest {
+
+    @Test
+    public void testCompileIsCached() {
+        CompiledTemplate t1 = CompiledTemplate.compile("${r}Array = ${c};");
+        CompiledTemplate t2 = CompiledTemplate.compile("${r}Array = ${c};");
+        assertSame(t1, t2);
+        assertTrue(t1.hasPlaceholders());
+        assertFalse(CompiledTemplate.compile("return;").hasPlaceholders());
+    }
+
+    @Test
+    public void testRenderMap() {
+        Map<String, Object> values = new HashMap<String, Object>();
+        values.put("r", "_result");
+        values.put("c", "call()");
+        values.put("x", null);
+        CompiledTemplate template = CompiledTemplate.compile("${r}Array = ${c}; ${x} ${y}");
+        assertEquals("_resultArray = call(); ${x} ${y}", template.render(values));
+    }
+
+    @Test
+    public void testRenderPairs() {
+        CompiledTemplate template = CompiledTemplate.compile("${a}-${b}-${a}");
+        assertEquals("1-2-1", template.render(kv("a", 1), kv("b", 2)));
+        assertEquals("1-${b}-1", template.render(kv("a", null), kv("a", 1)));
+    }
+
+    @Test
+    public void testRenderIntoAppendable() throws Exception {
+        StringWriter writer = new StringWriter();
+        CompiledTemplate.compile("int ${p}Length;").render(new TemplateEval.KV[]{kv("p", "data")}, writer);
+        assertEquals("int dataLength;", writer.toString());
+    }
+
+    @Test
+    public void testValuesAreNotReEvaluated() {
+        assertEquals("${b}", CompiledTemplate.compile("${a}").render(kv("a", "${b}"), kv("b", "x")));
+    }
+
+    @Test
+    public void testIncompletePlaceholders() {
+        assertEquals("$ {a} ${a", CompiledTemplate.compile("$ {a} ${a").render(kv("a", "x")));
+        assertEquals("x${", CompiledTemplate.compile("${a}${").render(kv("a", "x")));
+    }
+}
@@ -41,6 +41,8 @@ public class DocMock {
         when(classDoc.dimension()).thenReturn("");
         when(classDoc.isPrimitive()).thenReturn(clazz.isPrimitive());
         when(classDoc.isInterface()).thenReturn(clazz.isInterface());
+        when(classDoc.isEnum()).thenReturn(clazz.isEnum());
+        when(classDoc.asClassDoc()).thenReturn(classDoc);
         when(classDoc.isPublic()).thenReturn(Modifier.isPublic(clazz.getModifiers()));
         when(classDoc.isProtected()).thenReturn(Modifier.isProtected(clazz.getModifiers()));
         when(classDoc.isPrivate()).thenReturn(Modifier.isPrivate(clazz.getModifiers()));
@@ -85,6 +87,50 @@ public class DocMock {
         return classDoc;
     }
 
+    /**
+     * Creates a class document with the given name whose members and superclass are those of the given template,
+     * e.g. to build large synthetic APIs. The member documents are shared with the template.
+     */
+    public static ClassDoc createClassDoc(String qualifiedName, ClassDoc template) {
+        int pos = qualifiedName.lastIndexOf('.');
+        String typeName = pos > 0 ? qualifiedName.substring(pos + 1) : qualifiedName;
+
+        ClassDoc classDoc = mock(ClassDoc.class);
+        when(classDoc.qualifiedName()).thenReturn(qualifiedName);
+        when(classDoc.qualifiedTypeName()).thenReturn(qualifiedName);
+        when(classDoc.simpleTypeName()).thenReturn(typeName);
+        when(classDoc.typeName()).thenReturn(typeName);
+        when(classDoc.dimension()).thenReturn("");
+        when(classDoc.isPrimitive()).thenReturn(false);
+        when(classDoc.isInterface()).thenReturn(template.isInterface());
+        when(classDoc.isEnum()).thenReturn(template.isEnum());
+        when(classDoc.asClassDoc()).thenReturn(classDoc);
+        when(classDoc.isPublic()).thenReturn(template.isPublic());
+        when(classDoc.isProtected()).thenReturn(template.isProtected());
+        when(classDoc.isPrivate()).thenReturn(template.isPrivate());
+        when(classDoc.isStatic()).thenReturn(template.isStatic());
+
+        ConstructorDoc[] constructorDocs = template.constructors();
+        when(classDoc.constructors()).thenReturn(constructorDocs);
+        when(classDoc.constructors(true)).thenReturn(constructorDocs);
+        when(classDoc.constructors(false)).thenReturn(constructorDocs);
+
+        MethodDoc[] methodDocs = template.methods();
+        when(classDoc.methods()).thenReturn(methodDocs);
+        when(classDoc.methods(true)).thenReturn(methodDocs);
+        when(classDoc.methods(false)).thenReturn(methodDocs);
+
+        FieldDoc[] fieldDocs = template.fields();
+        when(classDoc.fields()).thenReturn(fieldDocs);
+        when(classDoc.fields(true)).thenReturn(fieldDocs);
+        when(classDoc.fields(false)).thenReturn(fieldDocs);
+
+        ClassDoc superclass = template.superclass();
+        when(classDoc.superclass()).thenReturn(superclass);
+
+        return classDoc;
+    }
+
     private static ConstructorDoc createConstructorDoc(ClassDoc classDoc, Constructor method) {
         ConstructorDoc constructorDoc = mock(ConstructorDoc.class);
         when(constructorDoc.containingClass()).thenReturn(classDoc);
@@ -213,7 +259,8 @@ public class DocMock {
 
         @Override
         public String qualifiedTypeName() {
-            return packageName() + "." + typeName();
+            String packageName = packageName();
+            return packageName.isEmpty() ? typeName() : packageName + "." + typeName();
         }
 
         @Override
@@ -0,0 +1,107 @@
+package org.esa.beam.extapi.gen;
+
+import org.esa.beam.extapi.gen.test.TestClass2;
+import org.esa.beam.extapi.gen.test.TestClass3;
+import org.esa.beam.extapi.gen.test.TestEnum1;
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.esa.beam.extapi.gen.ModuleGeneratorTest.createTempDir;
+import static org.esa.beam.extapi.gen.ModuleGeneratorTest.deleteDir;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Norman Fomferra
+ */
+public class GenerationSessionTest {
+
+    private static final String[] FILE_NAMES = {"beam_capi.c", "beam_capi.h", "beampy.c", "beampy.py"};
+
+    @Test
+    public void testConcurrentSessions() throws Exception {
+        final ApiGeneratorConfig config = new ApiGeneratorConfigMock(TestClass2.class, TestClass3.class, TestEnum1.class) {
+            @Override
+            public String[] getSourcePaths() {
+                return new String[]{"src/test/java"};
+            }
+
+            @Override
+            public String[] getPackages() {
+                return new String[]{"org.esa.beam.extapi.gen.test"};
+            }
+        };
+        final List<GenerationSession> sessions = new ArrayList<GenerationSession>();
+        for (int i = 0; i < 6; i++) {
+            final GenerationSession session = new GenerationSession(config);
+            session.setFrontEnd(i % 2 == 0 ? GenerationSession.FrontEnd.DOCLET : GenerationSession.FrontEnd.PROCESSOR);
+            session.setEmissionMode(i % 3 == 0 ? ModuleGenerator.EmissionMode.PARALLEL : ModuleGenerator.EmissionMode.SERIAL);
+            session.setIncremental(false);
+            session.setOutputDir(createTempDir());
+            sessions.add(session);
+        }
+        final ExecutorService executorService = Executors.newFixedThreadPool(sessions.size());
+        try {
+            final List<Future<Boolean>> results = executorService.invokeAll(sessions);
+            for (Future<Boolean> result : results) {
+                assertTrue(result.get());
+            }
+            for (GenerationSession session : sessions) {
+                assertNotNull(session.getApiInfo());
+                assertEquals(3, session.getApiInfo().getApiClasses().size());
+                for (String fileName : FILE_NAMES) {
+                    assertEquals(fileName,
+                                 readFile(new File(sessions.get(0).getOutputDir(), fileName)),
+                                 readFile(new File(session.getOutputDir(), fileName)));
+                }
+            }
+        } finally {
+            executorService.shutdown();
+            for (GenerationSession session : sessions) {
+                deleteDir(session.getOutputDir());
+            }
+        }
+    }
+
+    @Test
+    public void testSessionWithRootDoc() throws Exception {
+        final GenerationSession session = new GenerationSession(new ApiGeneratorConfigMock(TestClass2.class));
+        session.setRootDoc(DocMock.createRootDoc(TestClass2.class));
+        session.setOutputDir(createTempDir());
+        try {
+            assertTrue(session.call());
+            assertEquals(1, session.getApiInfo().getApiClasses().size());
+            for (String fileName : FILE_NAMES) {
+                assertTrue(fileName, new File(session.getOutputDir(), fileName).isFile());
+            }
+        } finally {
+            deleteDir(session.getOutputDir());
+        }
+    }
+
+    private static String readFile(File file) throws IOException {
+        final BufferedReader reader = new BufferedReader(new FileReader(file));
+        try {
+            final StringBuilder sb = new StringBuilder();
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (!line.contains("File created at")) {
+                    sb.append(line).append('\n');
+                }
+            }
+            return sb.toString();
+        } finally {
+            reader.close();
+        }
+    }
+}
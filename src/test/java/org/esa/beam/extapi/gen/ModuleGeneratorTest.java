@@ -0,0 +1,566 @@
+package org.esa.beam.extapi.gen;
+
+import org.esa.beam.extapi.gen.c.CModuleGenerator;
+import org.esa.beam.extapi.gen.py.PyCModuleGenerator;
+import org.esa.beam.extapi.gen.test.TestClass2;
+import org.esa.beam.extapi.gen.test.TestClass3;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * @author Norman Fomferra
+ */
+public class ModuleGeneratorTest {
+
+    private static ApiInfo apiInfo;
+
+    @BeforeClass
+    public static void setUp() throws Exception {
+        ApiGeneratorConfig config = new ApiGeneratorConfigMock(TestClass2.class, TestClass3.class);
+        apiInfo = ApiInfo.create(config, DocMock.createRootDoc(TestClass3.class, TestClass2.class));
+    }
+
+    @Test
+    public void testApiClassesAreSorted() {
+        CModuleGenerator generator = new CModuleGenerator(apiInfo);
+        Iterator<ApiClass> iterator = generator.getApiClasses().iterator();
+        assertEquals(TestClass2.class.getName(), iterator.next().getJavaName());
+        assertEquals(TestClass3.class.getName(), iterator.next().getJavaName());
+    }
+
+    @Test
+    public void testParallelEmissionIsSameAsSerialEmission() throws Exception {
+        CModuleGenerator cModuleGenerator = new CModuleGenerator(apiInfo);
+        testParallelEmission(cModuleGenerator);
+        testParallelEmission(new PyCModuleGenerator(cModuleGenerator));
+    }
+
+    @Test
+    public void testFunctionsUseJNIEnvOfCallingThread() throws Exception {
+        String code = writeFunctionDefinitions(new CModuleGenerator(apiInfo));
+        int numFunctions = countOccurrences(code, "    JNIEnv* jenv;\n");
+        assertTrue(numFunctions > 0);
+        assertEquals(numFunctions, countOccurrences(code, "if ((jenv = beam_get_jenv()) == NULL)"));
+    }
+
+    @Test
+    public void testFunctionsUseMethodTable() throws Exception {
+        CModuleGenerator generator = new CModuleGenerator(apiInfo);
+        String code = writeFunctionDefinitions(generator);
+        int numFunctions = 0;
+        for (ApiClass apiClass : generator.getApiClasses()) {
+            for (FunctionGenerator functionGenerator : generator.getFunctionGenerators(apiClass)) {
+                String indexName = generator.getMethodIndexName(functionGenerator);
+                assertEquals(indexName, 1, countOccurrences(code, "_method = beam_methods[" + indexName + "]"));
+                numFunctions++;
+            }
+        }
+        assertTrue(numFunctions > 0);
+        assertEquals(numFunctions, countOccurrences(code, "_method = beam_methods["));
+        assertFalse(code.contains("beam_init_api"));
+        assertFalse(code.contains("GetMethodID"));
+    }
+
+    @Test
+    public void testFunctionsPopTheirLocalFrames() throws Exception {
+        String code = writeFunctionDefinitions(new CModuleGenerator(apiInfo));
+        int numFrames = countOccurrences(code, "PushLocalFrame(jenv, ");
+        assertTrue(numFrames > 0);
+        // the functions also pop the frame if the elements of an array argument cannot be copied
+        int numCopies = countOccurrences(code, "if (!beam_copy_to_jarray(");
+        assertEquals(numFrames + numCopies, countOccurrences(code, "(*jenv)->PopLocalFrame(jenv, NULL);"));
+        // objects are returned as global references, which are created before the frame is popped
+        assertFalse(code.contains("return _result != NULL ? (*jenv)->NewGlobalRef(jenv, _result) : NULL;"));
+    }
+
+    @Test
+    public void testObjectsArePassedAsHandles() throws Exception {
+        String code = writeFunctionDefinitions(new CModuleGenerator(apiInfo));
+        int numHandles = countOccurrences(code, "_result = beam_new_handle(jenv, _result);");
+        assertTrue(numHandles > 0);
+        assertFalse(code.contains("NewGlobalRef"));
+        // a stale handle of the object, whose method is called, is detected before the Java method is called
+        assertTrue(code.contains("    if ((_thisRef = beam_resolve_handle(jenv, _this)) == NULL) return _result;\n"));
+        assertTrue(code.contains("(*jenv)->CallFloatMethod(jenv, _thisRef, _method, p1, p2);"));
+        // so is a stale handle of an argument, NULL is passed as null
+        assertTrue(code.contains("    if (p1 != NULL && (p1Ref = beam_resolve_handle(jenv, p1)) == NULL) return;\n"));
+        assertFalse(code.contains("_method, beam_get_handle_ref("));
+    }
+
+    @Test
+    public void testJavaExceptionsAreCaughtAfterTheCall() throws Exception {
+        String code = writeFunctionDefinitions(new CModuleGenerator(apiInfo));
+        // every function checks once, before the result is converted
+        assertEquals(countOccurrences(code, "_method = beam_methods["),
+                     countOccurrences(code, "beam_catch_exception(jenv);"));
+        assertTrue(code.contains("_resultString = (*jenv)->CallObjectMethod(jenv, _thisRef, _method);\n" +
+                                         "    if ((*jenv)->ExceptionCheck(jenv)) beam_catch_exception(jenv);\n" +
+                                         "    _result = beam_alloc_string(_resultString);\n"));
+
+        // the Python functions raise the exception
+        String pyCode = writeFunctionDefinitions(new PyCModuleGenerator(new CModuleGenerator(apiInfo)));
+        assertTrue(pyCode.contains("    Py_END_ALLOW_THREADS\n" +
+                                           "    if (beam_has_error()) {\n" +
+                                           "        return beam_raise_java_error();\n" +
+                                           "    }\n"));
+    }
+
+    @Test
+    public void testPythonFunctionsReleaseTheGilDuringTheCall() throws Exception {
+        PyCModuleGenerator generator = new PyCModuleGenerator(new CModuleGenerator(apiInfo));
+        String pyCode = writeFunctionDefinitions(generator);
+        int numFunctions = countOccurrences(pyCode, "(PyObject* self, ");
+        assertTrue(numFunctions > 0);
+        assertEquals(numFunctions, countOccurrences(pyCode, "    Py_BEGIN_ALLOW_THREADS\n"));
+        assertEquals(numFunctions, countOccurrences(pyCode, "    Py_END_ALLOW_THREADS\n"));
+        // the arguments are parsed while the GIL is held
+        assertTrue(pyCode.contains("        return NULL;\n" +
+                                           "    }\n" +
+                                           "    Py_BEGIN_ALLOW_THREADS\n" +
+                                           "    result = TestClass2_getPixel1((TestClass2) thisObj, p1, p2);\n" +
+                                           "    Py_END_ALLOW_THREADS\n"));
+    }
+
+    @Test
+    public void testPythonFunctionsReturnPrimitiveArraysAsCArrays() throws Exception {
+        String pyCode = writeFunctionDefinitions(new PyCModuleGenerator(new CModuleGenerator(apiInfo)));
+        // the C array is owned by the CArray, it is neither converted into a list nor freed
+        assertTrue(pyCode.contains("    if (result != NULL) {\n" +
+                                           "        return beam_new_pycarray(\"f\", result, resultLength);\n" +
+                                           "    } else {\n"));
+        assertFalse(pyCode.contains("beam_new_pyseq_from_float_array("));
+    }
+
+    @Test
+    public void testPythonArrayArgumentsAreAcquiredAsBuffers() throws Exception {
+        ApiGeneratorConfig config = new ApiGeneratorConfigMock(TestClass2.class, TestClass3.class) {
+            @Override
+            public ApiParameter.Modifier[] getParameterModifiers(String className, String methodName, String methodSignature) {
+                if (methodName.equals("readPixels")) {
+                    return new ApiParameter.Modifier[]{
+                            ApiParameter.Modifier.IN, ApiParameter.Modifier.IN, ApiParameter.Modifier.IN, ApiParameter.Modifier.IN,
+                            ApiParameter.Modifier.RETURN};
+                }
+                if (methodName.equals("getPixels")) {
+                    return new ApiParameter.Modifier[]{ApiParameter.Modifier.OUT, ApiParameter.Modifier.IN};
+                }
+                return null;
+            }
+        };
+        ApiInfo apiInfo = ApiInfo.create(config, DocMock.createRootDoc(TestClass3.class, TestClass2.class));
+        String pyCode = writeFunctionDefinitions(new PyCModuleGenerator(new CModuleGenerator(apiInfo)));
+        int numArrays = countOccurrences(pyCode, "beam_acquire_pyarray(p5Seq, ");
+        assertEquals(2, numArrays);
+        assertEquals(numArrays, countOccurrences(pyCode, "beam_release_pyarray(&p5Buffer);"));
+        assertFalse(pyCode.contains("beam_new_float_array_from_pyseq("));
+
+        // the elements are passed without copying them, the buffer must be writable if the method writes into it
+        assertTrue(pyCode.contains("    if (!beam_acquire_pyarray(p5Seq, \"f\", 0, &p5Buffer, &p5Length)) {\n" +
+                                           "        return NULL;\n" +
+                                           "    }\n" +
+                                           "    Py_BEGIN_ALLOW_THREADS\n" +
+                                           "    TestClass3_writePixels((TestClass3) thisObj, p1, p2, p3, p4, (float*) p5Buffer.buf, p5Length);\n"));
+        assertTrue(pyCode.contains("beam_acquire_pyarray(p5Seq, \"f\", 1, &p5Buffer, &p5Length)"));
+        // the elements of an OUT argument can't be copied, they must be written into its buffer
+        assertTrue(pyCode.contains("beam_acquire_pyarray(p1Seq, \"f\", 2, &p1Buffer, &p1Length)"));
+
+        // the RETURN argument is returned if its elements were filled
+        assertTrue(pyCode.contains("    if (result == NULL || (void*) result != p5Buffer.buf) {\n" +
+                                           "        beam_release_pyarray(&p5Buffer);\n" +
+                                           "    }\n"));
+        assertTrue(pyCode.contains("        return beam_return_pyarray(&p5Buffer, p5Seq, \"f\", p5Length);\n"));
+    }
+
+    @Test
+    public void testPythonObjectsAreInstancesOfGeneratedTypes() throws Exception {
+        File outputDir = createTempDir();
+        try {
+            PyCModuleGenerator generator = new PyCModuleGenerator(new CModuleGenerator(apiInfo));
+            generator.setOutputDir(outputDir);
+            generator.run();
+            String pyCode = readFile(new File(outputDir, "beampy.c"));
+            assertTrue(pyCode.contains("PyTypeObject BeamPy_TestClass2Type = {\n"));
+            assertTrue(pyCode.contains("    \"beampy.TestClass2\",               /* tp_name */\n"));
+            assertTrue(pyCode.contains("    BeamPy_TestClass2Type.tp_base = &BeamPy_JObjectType;\n"));
+            // the functions are the methods of the types, constructors and static methods are static methods
+            assertTrue(pyCode.contains("    {\"getPixel1\", (PyCFunction) BeamPyTestClass2_getPixel1, METH_FASTCALL, "));
+            assertTrue(pyCode.contains("    {\"getTimestamp\", (PyCFunction) BeamPyTestClass2_getTimestamp, METH_NOARGS, "));
+            assertTrue(pyCode.contains("    {\"newTestClass2\", (PyCFunction) BeamPyTestClass2_newTestClass2, METH_NOARGS | METH_STATIC, "));
+            assertTrue(pyCode.contains("    thisObj = ((BeamPy_JObject*) self)->handle;\n"));
+            assertTrue(pyCode.contains("    return beam_new_pyjobject(&BeamPy_DateType, result);\n"));
+            assertFalse(pyCode.contains("(sK)"));
+            assertEquals("from _beampy import *\n", readFile(new File(outputDir, "beampy.py")));
+        } finally {
+            deleteDir(outputDir);
+        }
+    }
+
+    @Test
+    public void testPythonObjectAndStringArraysAreAcquiredAndReleased() throws Exception {
+        String pyCode = writeFunctionDefinitions(new PyCModuleGenerator(new CModuleGenerator(apiInfo)));
+        assertTrue(pyCode.contains("    File* p1;\n"));
+        assertTrue(pyCode.contains("    if (!(p1 = beam_new_jobject_array_from_pyseq(p1Seq, &p1Length))) {\n" +
+                                           "        return NULL;\n" +
+                                           "    }\n"));
+        assertTrue(pyCode.contains("    const char** p1;\n"));
+        assertTrue(pyCode.contains("    if (!(p1 = beam_new_string_array_from_pyseq(p1Seq, &p1Length))) {\n" +
+                                           "        return NULL;\n" +
+                                           "    }\n"));
+        assertEquals(2, countOccurrences(pyCode, "    free(p1);\n"));
+    }
+
+    @Test
+    public void testPythonArgumentsAreConvertedWithoutFormatStrings() throws Exception {
+        String pyCode = writeFunctionDefinitions(new PyCModuleGenerator(new CModuleGenerator(apiInfo)));
+        assertFalse(pyCode.contains("PyArg_ParseTuple"));
+        // METH_FASTCALL
+        assertTrue(pyCode.contains("PyObject* BeamPyTestClass2_getPixel1(PyObject* self, PyObject* const* args, Py_ssize_t nargs)\n" +
+                                           "{\n"));
+        assertTrue(pyCode.contains("    if (!beam_check_pyargs(\"TestClass2.getPixel1\", nargs, 2)\n" +
+                                           "            || !beam_convert_pyint(args[0], &p1)\n" +
+                                           "            || !beam_convert_pyint(args[1], &p2)) {\n" +
+                                           "        return NULL;\n" +
+                                           "    }\n"));
+        // METH_O, arrays are kept as objects after the arguments have been checked
+        assertTrue(pyCode.contains("PyObject* BeamPyTestClass2_getFiles(PyObject* self, PyObject* arg)\n"));
+        assertTrue(pyCode.contains("            || !beam_convert_pyint(args[1], &p2)) {\n" +
+                                           "        return NULL;\n" +
+                                           "    }\n" +
+                                           "    p1Seq = args[0];\n"));
+        // METH_NOARGS
+        assertTrue(pyCode.contains("PyObject* BeamPyTestClass2_getName(PyObject* self, PyObject* args)\n"));
+    }
+
+    @Test
+    public void testInternedAndIntoVariantsOfStringFunctions() throws Exception {
+        String code = writeFunctionDefinitions(new CModuleGenerator(apiInfo));
+        assertTrue(code.contains("char* TestClass2_getName(TestClass2 _this)\n"));
+        assertTrue(code.contains("const char* TestClass2_getNameInterned(TestClass2 _this)\n"));
+        assertTrue(code.contains("_result = (char*) beam_intern_string(_resultString);"));
+        assertTrue(code.contains("char* TestClass2_getNameInto(TestClass2 _this, char* resultChars, int resultCapacity)\n"));
+        assertTrue(code.contains("_result = beam_copy_string(_resultString, resultChars, resultCapacity);"));
+        // functions which do not return a string have no such variants
+        assertFalse(code.contains("TestClass2_getTimestampInterned("));
+        assertFalse(code.contains("TestClass2_getTimestampInto("));
+    }
+
+    @Test
+    public void testFunctionNamesAreUniquePerClass() throws Exception {
+        CModuleGenerator cModuleGenerator = new CModuleGenerator(apiInfo);
+        assertFunctionNamesAreUnique(cModuleGenerator);
+        assertFunctionNamesAreUnique(new PyCModuleGenerator(cModuleGenerator));
+
+        // a function named like the ...Interned variant of TestClass2.getName()
+        ApiGeneratorConfig config = new ApiGeneratorConfigMock(TestClass2.class, TestClass3.class) {
+            @Override
+            public String getFunctionName(String className, String methodName, String methodSignature) {
+                return methodName.equals("getTimestamp") ? "getNameInterned" : methodName;
+            }
+        };
+        ApiInfo collidingApiInfo = ApiInfo.create(config, DocMock.createRootDoc(TestClass3.class, TestClass2.class));
+        cModuleGenerator = new CModuleGenerator(collidingApiInfo);
+        assertFunctionNamesAreUnique(cModuleGenerator);
+        assertFunctionNamesAreUnique(new PyCModuleGenerator(cModuleGenerator));
+        String code = writeFunctionDefinitions(cModuleGenerator);
+        assertEquals(1, countOccurrences(code, " TestClass2_getNameInterned(TestClass2 _this)\n{"));
+        // the API method wins over the variant
+        FunctionGenerator survivor = findFunctionGenerator(cModuleGenerator, "TestClass2_getNameInterned");
+        assertNotNull(survivor);
+        assertEquals("getTimestamp", survivor.getApiMethod().getJavaName());
+        assertTrue(code.contains("Date TestClass2_getNameInterned(TestClass2 _this)\n{"));
+
+        // a function named like the first of the overloaded TestClass2.getPixel() functions
+        config = new ApiGeneratorConfigMock(TestClass2.class, TestClass3.class) {
+            @Override
+            public String getFunctionName(String className, String methodName, String methodSignature) {
+                return methodName.equals("getTimestamp") ? "getPixel1" : methodName;
+            }
+        };
+        collidingApiInfo = ApiInfo.create(config, DocMock.createRootDoc(TestClass3.class, TestClass2.class));
+        cModuleGenerator = new CModuleGenerator(collidingApiInfo);
+        try {
+            assertFunctionNamesAreUnique(cModuleGenerator);
+            fail("IllegalStateException expected");
+        } catch (IllegalStateException e) {
+            assertTrue(e.getCause() instanceof GeneratorException);
+            assertTrue(e.getMessage(), e.getMessage().contains("getTimestamp"));
+        }
+    }
+
+    private static FunctionGenerator findFunctionGenerator(ModuleGenerator generator, String functionName) {
+        for (ApiClass apiClass : generator.getApiClasses()) {
+            for (FunctionGenerator functionGenerator : generator.getFunctionGenerators(apiClass)) {
+                if (functionGenerator.getFunctionName(generator).equals(functionName)) {
+                    return functionGenerator;
+                }
+            }
+        }
+        return null;
+    }
+
+    private static void assertFunctionNamesAreUnique(ModuleGenerator generator) {
+        for (ApiClass apiClass : generator.getApiClasses()) {
+            Set<String> functionNames = new HashSet<String>();
+            for (FunctionGenerator functionGenerator : generator.getFunctionGenerators(apiClass)) {
+                String functionName = functionGenerator.getFunctionName(generator);
+                assertTrue(generator.getModuleName() + ": " + functionName, functionNames.add(functionName));
+            }
+        }
+    }
+
+    @Test
+    public void testArrayParametersAreAcquiredFromPool() throws Exception {
+        String code = writeFunctionDefinitions(new CModuleGenerator(apiInfo));
+        int numArrays = countOccurrences(code, "Array = beam_acquire_array(jenv, 'F', ");
+        assertTrue(numArrays > 0);
+        int numCopies = countOccurrences(code, "if (!beam_copy_to_jarray(");
+        assertEquals(numArrays + numCopies, countOccurrences(code, "beam_release_array("));
+        assertFalse(code.contains("NewFloatArray"));
+    }
+
+    @Test
+    public void testDirectVariantsOfFunctionsWithPrimitiveArrays() throws Exception {
+        ApiGeneratorConfig config = new ApiGeneratorConfigMock(TestClass2.class, TestClass3.class) {
+            @Override
+            public ApiParameter.Modifier[] getParameterModifiers(String className, String methodName, String methodSignature) {
+                if (methodName.equals("readPixels")) {
+                    return new ApiParameter.Modifier[]{
+                            ApiParameter.Modifier.IN, ApiParameter.Modifier.IN, ApiParameter.Modifier.IN, ApiParameter.Modifier.IN,
+                            ApiParameter.Modifier.RETURN};
+                }
+                return null;
+            }
+        };
+        CModuleGenerator generator = new CModuleGenerator(ApiInfo.create(config, DocMock.createRootDoc(TestClass3.class, TestClass2.class)));
+        String code = writeFunctionDefinitions(generator);
+
+        // TestClass2.getPixels() returns an array which is not passed as RETURN parameter
+        assertFalse(code.contains("TestClass2_getPixelsDirect("));
+        assertTrue(code.contains("void TestClass3_writePixelsDirect(TestClass3 _this, int p1, int p2, int p3, int p4, const float* p5Elems, int p5Length)"));
+        assertTrue(code.contains("float* TestClass3_readPixelsDirect(TestClass3 _this, int p1, int p2, int p3, int p4, float* p5Elems, int p5Length, int* resultArrayLength)"));
+        assertEquals(2, countOccurrences(code, "p5Buffer = (*jenv)->NewDirectByteBuffer(jenv, (void*) p5Elems, (jlong) p5Length * sizeof (float));"));
+        assertEquals(2, countOccurrences(code, "if ((_method = beam_methods[BEAM_METHOD_"));
+        assertTrue(code.contains("_resultLength = (*jenv)->CallStaticIntMethod(jenv, classDirectBridge, _method, _thisRef, p1, p2, p3, p4, p5Buffer);"));
+
+        File outputDir = createTempDir();
+        try {
+            generator.setOutputDir(outputDir);
+            generator.run();
+            String bridge = readFile(new File(outputDir, "DirectBridge.java"));
+            assertTrue(bridge.contains("public static int TestClass3_readPixels(org.esa.beam.extapi.gen.test.TestClass3 _this, int p1, int p2, int p3, int p4, ByteBuffer p5Buffer) {\n" +
+                                               "        final float[] p5 = newFloatArray(p5Buffer);\n" +
+                                               "        return putArray(_this.readPixels(p1, p2, p3, p4, p5), p5Buffer);\n" +
+                                               "    }"));
+            assertTrue(bridge.contains("public static void TestClass3_writePixels(org.esa.beam.extapi.gen.test.TestClass3 _this, int p1, int p2, int p3, int p4, ByteBuffer p5Buffer) {\n" +
+                                               "        final float[] p5 = getFloatArray(p5Buffer);\n" +
+                                               "        _this.writePixels(p1, p2, p3, p4, p5);\n" +
+                                               "    }"));
+            String cSource = readFile(new File(outputDir, "beam_capi.c"));
+            assertTrue(cSource.contains("{&classDirectBridge, \"TestClass3_readPixels\", \"(Lorg/esa/beam/extapi/gen/test/TestClass3;IIIILjava/nio/ByteBuffer;)I\", 1},"));
+        } finally {
+            deleteDir(outputDir);
+        }
+    }
+
+    @Test
+    public void testBatchedVariantsOfFunctions() throws Exception {
+        CModuleGenerator generator = new CModuleGenerator(apiInfo);
+        File outputDir = createTempDir();
+        try {
+            generator.setOutputDir(outputDir);
+            generator.run();
+            String header = readFile(new File(outputDir, "beam_capi.h"));
+            assertTrue(header.contains("int TestClass2_getPixel1Batched(BeamBatch batch, TestClass2 _this, int p1, int p2);"));
+            assertTrue(header.contains("int TestClass2_getNameBatched(BeamBatch batch, TestClass2 _this);"));
+            // constructors and functions with array parameters are not batched
+            assertFalse(header.contains("TestClass2_newTestClass2Batched("));
+            assertFalse(header.contains("TestClass2_getPixelsBatched("));
+
+            String cSource = readFile(new File(outputDir, "beam_capi.c"));
+            // the call IDs depend on the order of the methods
+            assertTrue(cSource.contains("int TestClass2_getPixel1Batched(BeamBatch batch, TestClass2 _this, int p1, int p2)\n" +
+                                                "{\n" +
+                                                "    int _index = beam_batch_add_call(batch, "));
+            assertTrue(cSource.contains(", 'F', 2, 1);\n" +
+                                                "    if (_index >= 0) {\n" +
+                                                "        beam_batch_put_object(batch, _this);\n" +
+                                                "        beam_batch_put_int(batch, p1);\n" +
+                                                "        beam_batch_put_int(batch, p2);\n" +
+                                                "    }\n" +
+                                                "    return _index;\n" +
+                                                "}\n"));
+            assertTrue(cSource.contains("{&classBatchDispatcher, \"run\", \"(ILjava/nio/ByteBuffer;[Ljava/lang/Object;Ljava/nio/ByteBuffer;[Ljava/lang/Object;)I\", 1},"));
+
+            String dispatcher = readFile(new File(outputDir, "BatchDispatcher.java"));
+            assertTrue(dispatcher.contains("                putFloat(index, ((org.esa.beam.extapi.gen.test.TestClass2) getObject()).getPixel(getInt(), getInt()));\n" +
+                                                   "                break;\n"));
+            assertTrue(dispatcher.contains("putObject(index, ((org.esa.beam.extapi.gen.test.TestClass2) getObject()).getName());"));
+            // the exception of a failed call is passed to the C side
+            assertTrue(dispatcher.contains("        } catch (Throwable t) {\n" +
+                                                   "            putObject(index, t);\n"));
+            assertFalse(dispatcher.contains("printStackTrace"));
+        } finally {
+            deleteDir(outputDir);
+        }
+    }
+
+    @Test
+    public void testIncrementalRun() throws Exception {
+        File outputDir = createTempDir();
+        try {
+            CModuleGenerator generator1 = new CModuleGenerator(apiInfo);
+            generator1.setOutputDir(outputDir);
+            generator1.run();
+            File cFile = new File(outputDir, "beam_capi.c");
+            File manifestFile = new File(outputDir, "beam_capi" + ModuleGenerator.MANIFEST_FILE_EXT);
+            assertTrue(cFile.isFile());
+            assertTrue(manifestFile.isFile());
+            assertNotNull(generator1.getManifest().getFileHash("beam_capi.c"));
+
+            // nothing changed: the module is skipped, files are not touched
+            assertTrue(cFile.setLastModified(1000L));
+            CModuleGenerator generator2 = new CModuleGenerator(apiInfo);
+            generator2.setOutputDir(outputDir);
+            generator2.run();
+            assertEquals(1000L, cFile.lastModified());
+
+            // a generated file has been modified: the module is generated again, unchanged files are not rewritten
+            File hFile = new File(outputDir, "beam_capi.h");
+            writeFile(hFile, "/* modified */");
+            CModuleGenerator generator3 = new CModuleGenerator(apiInfo);
+            generator3.setOutputDir(outputDir);
+            generator3.run();
+            assertEquals(1000L, cFile.lastModified());
+            assertFalse(hFile.length() == "/* modified */".length());
+            assertTrue(generator1.getManifest().isSameModule(generator3.getManifest()));
+        } finally {
+            deleteDir(outputDir);
+        }
+    }
+
+    @Test
+    public void testSourcePerClassOutput() throws Exception {
+        File outputDir = createTempDir();
+        try {
+            CModuleGenerator cModuleGenerator = new CModuleGenerator(apiInfo);
+            PyCModuleGenerator pyCModuleGenerator = new PyCModuleGenerator(cModuleGenerator);
+            runSourcePerClass(cModuleGenerator, outputDir);
+            runSourcePerClass(pyCModuleGenerator, outputDir);
+            for (String fileName : new String[]{
+                    "beam_capi.c", "beam_capi.h", "beam_capi_private.h", "beam_capi.mk",
+                    "beam_capi_TestClass2.c", "beam_capi_TestClass3.c",
+                    "beampy.c", "beampy.h", "beampy_private.h", "beampy.mk",
+                    "beampy_TestClass2.c", "beampy_TestClass3.c"}) {
+                assertTrue(fileName, new File(outputDir, fileName).isFile());
+            }
+            File class2File = new File(outputDir, "beam_capi_TestClass2.c");
+            File class3File = new File(outputDir, "beam_capi_TestClass3.c");
+            assertTrue(class2File.setLastModified(1000L));
+            assertTrue(class3File.setLastModified(1000L));
+
+            // a changed function name of TestClass2 must only regenerate the source file of TestClass2
+            ApiGeneratorConfig config = new ApiGeneratorConfigMock(TestClass2.class, TestClass3.class) {
+                @Override
+                public String getFunctionName(String className, String methodName, String methodSignature) {
+                    return methodSignature.equals("(II)F") ? "getPixelXY" : methodName;
+                }
+            };
+            ApiInfo changedApiInfo = ApiInfo.create(config, DocMock.createRootDoc(TestClass3.class, TestClass2.class));
+            CModuleGenerator changedGenerator = new CModuleGenerator(changedApiInfo);
+            runSourcePerClass(changedGenerator, outputDir);
+            assertFalse(class2File.lastModified() == 1000L);
+            assertEquals(1000L, class3File.lastModified());
+        } finally {
+            deleteDir(outputDir);
+        }
+    }
+
+    private static void runSourcePerClass(ModuleGenerator generator, File outputDir) throws IOException {
+        generator.setOutputDir(outputDir);
+        generator.setOutputMode(ModuleGenerator.OutputMode.SOURCE_PER_CLASS);
+        generator.run();
+    }
+
+    private static void testParallelEmission(ModuleGenerator generator) throws Exception {
+        generator.setEmissionMode(ModuleGenerator.EmissionMode.SERIAL);
+        String serialCode = writeFunctionDefinitions(generator);
+        assertTrue(serialCode.length() > 0);
+
+        generator.setEmissionMode(ModuleGenerator.EmissionMode.PARALLEL);
+        for (int i = 0; i < 10; i++) {
+            assertEquals(serialCode, writeFunctionDefinitions(generator));
+        }
+    }
+
+    private static String writeFunctionDefinitions(ModuleGenerator generator) throws Exception {
+        StringWriter stringWriter = new StringWriter();
+        PrintWriter writer = new PrintWriter(stringWriter);
+        generator.writeFunctionDefinitions(writer);
+        writer.flush();
+        return stringWriter.toString();
+    }
+
+    private static int countOccurrences(String code, String s) {
+        int count = 0;
+        for (int i = code.indexOf(s); i >= 0; i = code.indexOf(s, i + s.length())) {
+            count++;
+        }
+        return count;
+    }
+
+    static File createTempDir() throws IOException {
+        File dir = File.createTempFile("beam-extapi", "");
+        assertTrue(dir.delete());
+        assertTrue(dir.mkdir());
+        return dir;
+    }
+
+    private static String readFile(File file) throws IOException {
+        BufferedReader reader = new BufferedReader(new FileReader(file));
+        try {
+            StringBuilder content = new StringBuilder();
+            for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+                content.append(line).append('\n');
+            }
+            return content.toString();
+        } finally {
+            reader.close();
+        }
+    }
+
+    private static void writeFile(File file, String content) throws IOException {
+        FileWriter writer = new FileWriter(file);
+        try {
+            writer.write(content);
+        } finally {
+            writer.close();
+        }
+    }
+
+    static void deleteDir(File dir) {
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        dir.delete();
+    }
+}
@@ -0,0 +1,120 @@
+package org.esa.beam.extapi.gen;
+
+import org.esa.beam.extapi.gen.c.CModuleGenerator;
+import org.esa.beam.extapi.gen.test.TestClass2;
+import org.esa.beam.extapi.gen.test.TestClass3;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Norman Fomferra
+ */
+public class ModuleManifestTest {
+
+    @Test
+    public void testFingerprintsAreStable() {
+        ModuleManifest manifest1 = createManifest(new ApiGeneratorConfigMock(TestClass2.class, TestClass3.class));
+        ModuleManifest manifest2 = createManifest(new ApiGeneratorConfigMock(TestClass2.class, TestClass3.class));
+        assertTrue(manifest1.isSameModule(manifest2));
+        assertTrue(manifest1.getChangedClasses(manifest2).isEmpty());
+        assertTrue(manifest1.getChangedMethods(manifest2).isEmpty());
+        assertNotNull(manifest1.getClassFingerprint(TestClass2.class.getName()));
+        assertNotNull(manifest1.getMethodFingerprint(TestClass2.class.getName() + "#getPixel(II)F"));
+    }
+
+    @Test
+    public void testConfigChangesAreDetected() {
+        ModuleManifest manifest1 = createManifest(new ApiGeneratorConfigMock(TestClass2.class, TestClass3.class));
+        ModuleManifest manifest2 = createManifest(new ApiGeneratorConfigMock(TestClass2.class, TestClass3.class) {
+            @Override
+            public String getFunctionName(String className, String methodName, String methodSignature) {
+                return methodSignature.equals("(II)F") ? "getPixelXY" : methodName;
+            }
+        });
+        assertFalse(manifest2.isSameModule(manifest1));
+        assertEquals(1, manifest2.getChangedClasses(manifest1).size());
+        assertEquals(TestClass2.class.getName(), manifest2.getChangedClasses(manifest1).iterator().next());
+        // the other overload of getPixel() loses its index suffix
+        assertEquals(2, manifest2.getChangedMethods(manifest1).size());
+        assertFalse(manifest2.isSameModule(null));
+        assertTrue(manifest2.getChangedClasses(null).contains(TestClass3.class.getName()));
+    }
+
+    @Test
+    public void testStoreAndLoad() throws Exception {
+        ModuleManifest manifest = createManifest(new ApiGeneratorConfigMock(TestClass2.class, TestClass3.class));
+        manifest.setFileHash("beam_capi.c", ModuleManifest.getContentHash("int i;\n"));
+        File file = File.createTempFile("beam_capi", ModuleGenerator.MANIFEST_FILE_EXT);
+        try {
+            manifest.store(file);
+            ModuleManifest loadedManifest = ModuleManifest.load(file);
+            assertNotNull(loadedManifest);
+            assertTrue(manifest.isSameModule(loadedManifest));
+            assertTrue(manifest.getChangedMethods(loadedManifest).isEmpty());
+            assertEquals(manifest.getFileHashes(), loadedManifest.getFileHashes());
+        } finally {
+            file.delete();
+        }
+        assertNull(ModuleManifest.load(file));
+    }
+
+    @Test
+    public void testCodeChangesAreDetected() throws Exception {
+        assertNotNull(ModuleManifest.getGeneratorFingerprint());
+        assertEquals(ModuleManifest.getGeneratorFingerprint(), ModuleManifest.getGeneratorFingerprint());
+
+        File dir = File.createTempFile("classes", "");
+        assertTrue(dir.delete());
+        File stubsDir = new File(dir, "gen");
+        assertTrue(stubsDir.mkdirs());
+        File stubsFile = new File(stubsDir, "stubs-1.c");
+        try {
+            writeString(stubsFile, "int i;\n");
+            String fingerprint1 = ModuleManifest.getCodeFingerprint(dir);
+            assertEquals(fingerprint1, ModuleManifest.getCodeFingerprint(dir));
+            writeString(stubsFile, "int j;\n");
+            String fingerprint2 = ModuleManifest.getCodeFingerprint(dir);
+            assertFalse(fingerprint2.equals(fingerprint1));
+        } finally {
+            stubsFile.delete();
+            stubsDir.delete();
+            dir.delete();
+        }
+        assertNull(ModuleManifest.getCodeFingerprint(dir));
+    }
+
+    @Test
+    public void testContentHashIgnoresCreationDate() {
+        String content1 = "/*\n * DO NOT EDIT THIS FILE, IT IS MACHINE-GENERATED\n * File created at Mon Jan 07 10:00:00 CET 2013 using X\n */\nint i;\n";
+        String content2 = "/*\n * DO NOT EDIT THIS FILE, IT IS MACHINE-GENERATED\n * File created at Tue Jan 08 11:00:00 CET 2013 using X\n */\nint i;\n";
+        String content3 = "/*\n * DO NOT EDIT THIS FILE, IT IS MACHINE-GENERATED\n * File created at Tue Jan 08 11:00:00 CET 2013 using X\n */\nint j;\n";
+        assertTrue(ModuleManifest.isSameContent(content1, content2));
+        assertEquals(ModuleManifest.getContentHash(content1), ModuleManifest.getContentHash(content2));
+        assertFalse(ModuleManifest.isSameContent(content2, content3));
+        assertFalse(ModuleManifest.getContentHash(content2).equals(ModuleManifest.getContentHash(content3)));
+    }
+
+    private static void writeString(File file, String content) throws IOException {
+        Writer writer = new FileWriter(file);
+        try {
+            writer.write(content);
+        } finally {
+            writer.close();
+        }
+    }
+
+    private static ModuleManifest createManifest(ApiGeneratorConfig config) {
+        ApiInfo apiInfo = ApiInfo.create(config, DocMock.createRootDoc(TestClass2.class, TestClass3.class));
+        return ModuleManifest.create(new CModuleGenerator(apiInfo));
+    }
+}
@@ -0,0 +1,75 @@
+package org.esa.beam.extapi.gen;
+
+import org.esa.beam.extapi.gen.test.TestClass2;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+
+import static org.esa.beam.extapi.gen.ApiInfoTest.getApiClass;
+import static org.esa.beam.extapi.gen.ApiInfoTest.getApiMethod;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+/**
+ * @author Norman Fomferra
+ */
+public class SymbolIndexTest {
+
+    @Test
+    public void testSymbolIndex() {
+        ApiInfo apiInfo = ApiInfo.create(new ApiGeneratorConfigMock(TestClass2.class), DocMock.createRootDoc(TestClass2.class));
+        SymbolIndex symbolIndex = apiInfo.getSymbolIndex();
+        assertSame(symbolIndex, apiInfo.getSymbolIndex());
+
+        Set<ApiClass> apiClasses = apiInfo.getApiClasses();
+        List<ApiMethod> apiMethods = apiInfo.getMethodsOf(getApiClass(apiClasses, TestClass2.class.getName()));
+        ApiMethod init = getApiMethod(apiMethods, "<init>", "()V");
+        ApiMethod getPixel1 = getApiMethod(apiMethods, "getPixel", "(II)F");
+        ApiMethod getPixel2 = getApiMethod(apiMethods, "getPixel", "(III)F");
+        ApiMethod getName = getApiMethod(apiMethods, "getName", "()Ljava/lang/String;");
+
+        assertEquals("TestClass2_newTestClass2", symbolIndex.getCFunctionName(init));
+        assertEquals("BeamPyTestClass2_newTestClass2", symbolIndex.getPyFunctionName(init));
+        assertEquals("newTestClass2", symbolIndex.getPyMethodName(init));
+
+        assertEquals("TestClass2_getPixel1", symbolIndex.getCFunctionName(getPixel1));
+        assertEquals("TestClass2_getPixel2", symbolIndex.getCFunctionName(getPixel2));
+        assertEquals("BeamPyTestClass2_getPixel2", symbolIndex.getPyFunctionName(getPixel2));
+        assertEquals("getPixel2", symbolIndex.getPyMethodName(getPixel2));
+        assertEquals(Arrays.asList(getPixel1, getPixel2), symbolIndex.getOverloadGroup(getPixel1));
+        assertSame(symbolIndex.getOverloadGroup(getPixel1), symbolIndex.getOverloadGroup(getPixel2));
+
+        assertEquals("TestClass2_getName", symbolIndex.getCFunctionName(getName));
+        assertEquals(Arrays.asList(getName), symbolIndex.getOverloadGroup(getName));
+
+        assertEquals(1, symbolIndex.getOverloadGroups().size());
+        assertEquals(Arrays.asList(getPixel1, getPixel2), symbolIndex.getOverloadGroups().get("TestClass2_getPixel"));
+    }
+
+    @Test
+    public void testPyTypeVarNames() {
+        ApiInfo apiInfo = ApiInfo.create(new ApiGeneratorConfigMock(TestClass2.class), DocMock.createRootDoc(TestClass2.class));
+        SymbolIndex symbolIndex = apiInfo.getSymbolIndex();
+        List<ApiMethod> apiMethods = apiInfo.getMethodsOf(getApiClass(apiInfo.getApiClasses(), TestClass2.class.getName()));
+
+        assertEquals("BeamPy_TestClass2Type",
+                     symbolIndex.getPyTypeVarName(getApiClass(apiInfo.getApiClasses(), TestClass2.class.getName()).getType()));
+        assertEquals("BeamPy_DateType",
+                     symbolIndex.getPyTypeVarName(getApiMethod(apiMethods, "getTimestamp", "()Ljava/util/Date;").getReturnType()));
+        assertEquals("BeamPy_JObjectType",
+                     symbolIndex.getPyTypeVarName(getApiMethod(apiMethods, "getName", "()Ljava/lang/String;").getReturnType()));
+    }
+
+    @Test
+    public void testUnknownMethod() {
+        ApiInfo apiInfo = ApiInfo.create(new ApiGeneratorConfigMock(TestClass2.class), DocMock.createRootDoc(TestClass2.class));
+        ApiInfo otherApiInfo = ApiInfo.create(new ApiGeneratorConfigMock(String.class), DocMock.createRootDoc(String.class));
+        ApiMethod otherMethod = otherApiInfo.getMethodsOf(otherApiInfo.getApiClasses().iterator().next()).get(0);
+        assertNull(apiInfo.getSymbolIndex().getSymbol(otherMethod));
+        assertNull(apiInfo.getSymbolIndex().getCFunctionName(otherMethod));
+        assertEquals(0, apiInfo.getSymbolIndex().getOverloadGroup(otherMethod).size());
+    }
+}
@@ -2,6 +2,9 @@ package org.esa.beam.extapi.gen;
 
 import org.junit.Test;
 
+import java.io.StringReader;
+import java.io.StringWriter;
+
 import static org.esa.beam.extapi.gen.TemplateEval.eval;
 import static org.esa.beam.extapi.gen.TemplateEval.kv;
 import static org.junit.Assert.assertEquals;
@@ -15,6 +18,15 @@ public class TemplateEvalTest {
         assertEquals("oha", eval("${name}", kv("name", "oha")));
         assertEquals("oha, oha!", eval("${name}, ${name}!", kv("name", "oha")));
         assertEquals("Bibo is now 50", eval("${name} is now ${x}", kv("name", "Bibo"), kv("x", 50)));
+        assertEquals("${name} is unknown", eval("${name} is unknown", kv("x", 50)));
+    }
+
+    @Test
+    public void testEvalReader() throws Exception {
+        TemplateEval templateEval = TemplateEval.create(kv("libName", "beam_capi"));
+        StringWriter writer = new StringWriter();
+        templateEval.eval(new StringReader("LIBRARY \"${libName}\"\n\nEXPORTS"), writer);
+        assertEquals("LIBRARY \"beam_capi\"\n\nEXPORTS\n", writer.toString());
     }
 
 }
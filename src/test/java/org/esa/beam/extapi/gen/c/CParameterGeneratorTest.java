@@ -43,16 +43,16 @@ public class CParameterGeneratorTest {
 
     @Test
     public void test_CodeGenParameter_ObjectScalar_API() {
-        testObjectScalar("product", Product.class, "Product product", "product");
-        testObjectScalar("band", Band.class, "Band band", "band");
-        testObjectScalar("data", ProductData.UShort.class, "ProductData_UShort data", "data");
+        testObjectScalar("product", Product.class, "Product product", "productRef");
+        testObjectScalar("band", Band.class, "Band band", "bandRef");
+        testObjectScalar("data", ProductData.UShort.class, "ProductData_UShort data", "dataRef");
     }
 
     @Test
     public void test_CodeGenParameter_ObjectScalar_nonAPI() {
-        testObjectScalar("point", Point2D.Double.class, "Point2D_Double point", "point");
-        testObjectScalar("file", File.class, "File file", "file");
-        testObjectScalar("parameters", Map.class, "Map parameters", "parameters");
+        testObjectScalar("point", Point2D.Double.class, "Point2D_Double point", "pointRef");
+        testObjectScalar("file", File.class, "File file", "fileRef");
+        testObjectScalar("parameters", Map.class, "Map parameters", "parametersRef");
     }
 
     @Test
@@ -70,29 +70,36 @@ public class CParameterGeneratorTest {
         testPrimitiveArray("data", boolean[].class, Modifier.IN,
                            "const boolean* dataElems, int dataLength",
                            "jarray dataArray = NULL;",
-                           "dataArray = (*jenv)->NewBooleanArray(jenv, dataLength);\n" +
-                                   "beam_copy_to_jarray(dataArray, dataElems, dataLength, sizeof (boolean));",
+                           "dataArray = beam_acquire_array(jenv, 'Z', dataLength);\n" +
+                                   "if (!beam_copy_to_jarray(dataArray, 'Z', dataElems, dataLength)) {\n" +
+                                   "    beam_release_array(dataArray);\n" +
+                                   "    (*jenv)->PopLocalFrame(jenv, NULL);\n" +
+                                   "    return _result;\n" +
+                                   "}",
                            "dataArray",
-                           null);
+                           "beam_release_array(dataArray);");
 
         testPrimitiveArray("data", int[].class, Modifier.OUT,
                            "int* dataElems, int dataLength",
                            "jarray dataArray = NULL;",
-                           "dataArray = (*jenv)->NewIntArray(jenv, dataLength);",
+                           "dataArray = beam_acquire_array(jenv, 'I', dataLength);",
                            "dataArray",
-                           "beam_copy_from_jarray(dataArray, dataElems, dataLength, sizeof (int));");
+                           "beam_copy_from_jarray(dataArray, 'I', dataElems, dataLength);\n" +
+                                   "beam_release_array(dataArray);");
 
         testPrimitiveArray("data", float[].class, Modifier.RETURN,
                            "float* dataElems, int dataLength",
                            "jarray dataArray = NULL;",
-                           "dataArray = (*jenv)->NewFloatArray(jenv, dataLength);",
+                           "dataArray = beam_acquire_array(jenv, 'F', dataLength);",
                            "dataArray",
                            "if (dataElems != NULL && (*jenv)->IsSameObject(jenv, dataArray, _resultArray)) {\n" +
-                                   "    beam_copy_from_jarray(_resultArray, dataElems, dataLength, sizeof (float));\n" +
-                                   "    _result = dataElems;\n" +
+                                   "    if (beam_copy_from_jarray(_resultArray, 'F', dataElems, dataLength)) {\n" +
+                                   "        _result = dataElems;\n" +
+                                   "    }\n" +
                                    "} else {\n" +
                                    "    _result = beam_alloc_float_array(_resultArray, resultArrayLength);\n" +
-                                   "}");
+                                   "}\n" +
+                                   "beam_release_array(dataArray);");
     }
 
     @Test
@@ -191,7 +198,7 @@ public class CParameterGeneratorTest {
 
     private void testObjectScalar(String name, Class<?> type, String paramListDecl, String callArgExpr) {
         testGenerators(new CParameterGenerator.ObjectScalar(createParam(name, type, Modifier.IN)),
-                       paramListDecl, null, null, callArgExpr, null);
+                       paramListDecl, "jobject " + callArgExpr + " = NULL;", null, callArgExpr, null);
     }
 
     private void testGenerators(ParameterGenerator parameterGenerator,
@@ -10,4 +10,10 @@ public class TestClass3 {
     public void writePixels(int x, int y, int w, int h, float[] data) {
 
     }
+    public void setNames(String[] names) {
+    }
+    public void setFiles(java.io.File[] files) {
+    }
+    public void setReference(TestClass2 reference) {
+    }
 }